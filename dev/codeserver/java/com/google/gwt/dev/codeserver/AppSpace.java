@@ -47,6 +47,10 @@ class AppSpace {
     return new File(root, "gwt-unitcache");
   }
 
+  File getPermutationCacheDir() {
+    return new File(root, "gwt-permutationcache");
+  }
+
   File getCompileDir(int compileId) {
     return new File(root, COMPILE_DIR_PREFIX + compileId);
   }
@@ -31,10 +31,12 @@ import java.util.List;
 class CompilerOptionsImpl extends UnmodifiableCompilerOptions {
   private final CompileDir compileDir;
   private final String moduleName;
+  private final File permutationCacheDir;
 
-  CompilerOptionsImpl(CompileDir compileDir, String moduleName) {
+  CompilerOptionsImpl(CompileDir compileDir, String moduleName, File permutationCacheDir) {
     this.compileDir = compileDir;
     this.moduleName = moduleName;
+    this.permutationCacheDir = permutationCacheDir;
   }
 
   @Override
@@ -62,6 +64,11 @@ class CompilerOptionsImpl extends UnmodifiableCompilerOptions {
     return compileDir.getGenDir();
   }
 
+  @Override
+  public int getLeftoversBudget() {
+    return -1;
+  }
+
   /**
    * Number of threads to use to compile permutations.
    */
@@ -90,6 +97,15 @@ class CompilerOptionsImpl extends UnmodifiableCompilerOptions {
     return OptionOptimize.OPTIMIZE_LEVEL_DRAFT;
   }
 
+  /**
+   * Reuses the compiled permutation when a refresh doesn't change any source,
+   * or switches back to binding properties that were compiled before.
+   */
+  @Override
+  public File getPermutationCacheDir() {
+    return permutationCacheDir;
+  }
+
   @Override
   public File getOutDir() {
     return null; // unused?
@@ -23,6 +23,7 @@ import com.google.gwt.core.linker.CrossSiteIframeLinker;
 import com.google.gwt.core.linker.IFrameLinker;
 import com.google.gwt.dev.Compiler;
 import com.google.gwt.dev.CompilerOptions;
+import com.google.gwt.dev.RebindCache;
 import com.google.gwt.dev.cfg.BindingProperty;
 import com.google.gwt.dev.cfg.ConfigurationProperty;
 import com.google.gwt.dev.cfg.ModuleDef;
@@ -32,7 +33,7 @@ import com.google.gwt.dev.cfg.ResourceLoader;
 import com.google.gwt.dev.cfg.ResourceLoaders;
 import com.google.gwt.dev.javac.CompilationStateBuilder;
 import com.google.gwt.dev.resource.impl.ResourceOracleImpl;
-import com.google.gwt.dev.resource.impl.ZipFileClassPathEntry;
+import com.google.gwt.dev.util.Util;
 import com.google.gwt.dev.util.log.CompositeTreeLogger;
 import com.google.gwt.dev.util.log.PrintWriterTreeLogger;
 
@@ -61,6 +62,19 @@ class Recompiler {
   private final AtomicReference<ResourceLoader> resourceLoader =
       new AtomicReference<ResourceLoader>();
 
+  /**
+   * The module compiled last time, reused while its module files and the
+   * requested binding properties stay the same.
+   */
+  private ModuleDef lastModule;
+  private Map<String, String> lastBindingProperties;
+
+  /**
+   * Generator results kept across recompiles, so that incremental generators
+   * only rerun when their inputs change.
+   */
+  private final RebindCache rebindCache = new RebindCache();
+
   Recompiler(AppSpace appSpace, String moduleName, List<File> sourcePath,
              String serverPrefix, TreeLogger logger) {
     this.appSpace = appSpace;
@@ -82,12 +96,29 @@ class Recompiler {
     CompileDir compileDir = makeCompileDir(++compilesDone);
     TreeLogger compileLogger = makeCompileLogger(compileDir);
 
-    ModuleDef module = loadModule(compileLogger, bindingProperties);
+    ModuleDef module;
+    if (lastModule != null && !lastModule.isGwtXmlFileStale()
+        && bindingProperties.equals(lastBindingProperties)) {
+      // Only the source and public paths need to be relisted.
+      module = lastModule;
+      module.refresh();
+    } else {
+      module = loadModule(compileLogger, bindingProperties);
+      module.setRebindCache(rebindCache);
+      lastModule = module;
+      lastBindingProperties = new HashMap<String, String>(bindingProperties);
+    }
     String newModuleName = module.getName(); // includes any rename
     moduleName.set(newModuleName);
 
+    // Generated units reused from the rebind cache aren't written out again.
+    CompileDir previousBuild = lastBuild.get();
+    if (previousBuild != null) {
+      copyTree(compileLogger, previousBuild.getGenDir(), compileDir.getGenDir());
+    }
 
-    CompilerOptions options = new CompilerOptionsImpl(compileDir, newModuleName);
+    CompilerOptions options = new CompilerOptionsImpl(compileDir, newModuleName,
+        appSpace.getPermutationCacheDir());
 
     boolean success = new Compiler(options).run(compileLogger, module);
     lastBuild.set(compileDir);
@@ -165,8 +196,8 @@ class Recompiler {
   private ModuleDef loadModule(TreeLogger logger, Map<String, String> bindingProperties)
       throws UnableToCompleteException {
 
-    // make sure we get the latest version of any modified jar
-    ZipFileClassPathEntry.clearCache();
+    // Jars are reindexed only when their timestamp changes, and directories are
+    // only relisted when they changed, so there's no need to clear those caches.
     ResourceOracleImpl.clearCache();
     ModuleDefLoader.clearModuleCache();
 
@@ -262,6 +293,25 @@ class Recompiler {
     }
   }
 
+  /**
+   * Copies the files under <code>from</code>, if it exists, to <code>to</code>.
+   */
+  private static void copyTree(TreeLogger logger, File from, File to)
+      throws UnableToCompleteException {
+    File[] children = from.listFiles();
+    if (children == null) {
+      return;
+    }
+    for (File child : children) {
+      File target = new File(to, child.getName());
+      if (child.isDirectory()) {
+        copyTree(logger, child, target);
+      } else {
+        Util.copy(logger, child, target);
+      }
+    }
+  }
+
   private CompileDir makeCompileDir(int compileId)
       throws UnableToCompleteException {
     return CompileDir.create(appSpace.getCompileDir(compileId), logger);
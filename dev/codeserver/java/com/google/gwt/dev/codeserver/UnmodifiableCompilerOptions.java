@@ -100,6 +100,11 @@ abstract class UnmodifiableCompilerOptions implements CompilerOptions {
     throw new UnsupportedOperationException();
   }
 
+  @Override
+  public void setLeftoversBudget(int bytes) {
+    throw new UnsupportedOperationException();
+  }
+
   @Override
   public final void setLocalWorkers(int localWorkers) {
     throw new UnsupportedOperationException();
@@ -125,6 +130,11 @@ abstract class UnmodifiableCompilerOptions implements CompilerOptions {
     throw new UnsupportedOperationException();
   }
 
+  @Override
+  public final void setPermutationCacheDir(File dir) {
+    throw new UnsupportedOperationException();
+  }
+
   @Override
   public final void setOptimizePrecompile(boolean optimize) {
     throw new UnsupportedOperationException();
@@ -29,6 +29,11 @@ import java.lang.annotation.Target;
  * rather than
  * {@link com.google.gwt.core.ext.Linker#link(com.google.gwt.core.ext.TreeLogger, com.google.gwt.core.ext.LinkerContext, ArtifactSet)}
  * .
+ *
+ * <p>
+ * With more than one local worker, several permutations may be linked at once.
+ * Each gets its own linker instance, but static state shared by a shardable
+ * linker must be thread-safe.
  */
 @Documented
 @Retention(RetentionPolicy.RUNTIME)
@@ -261,7 +261,8 @@ public class Compiler {
           }
           Link.link(logger.branch(TreeLogger.TRACE, logMessage), module,
               generatedArtifacts, allPerms, resultFiles, options.getWarDir(),
-              options.getDeployDir(), options.getExtraDir(), precompileOptions);
+              options.getDeployDir(), options.getExtraDir(), precompileOptions,
+              options.getLocalWorkers());
 
           linkEvent.end();
           long compileDone = System.currentTimeMillis();
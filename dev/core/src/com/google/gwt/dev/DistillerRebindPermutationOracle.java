@@ -58,6 +58,8 @@ class DistillerRebindPermutationOracle implements RebindPermutationOracle {
     rebindOracles = new RebindOracle[perms.size()];
     generatorContext = new StandardGeneratorContext(compilationState, module,
         genDir, generatorArtifacts, true);
+    RebindCache rebindCache = module.getRebindCache();
+    generatorContext.setGeneratorResultCachingEnabled(rebindCache != null);
     BindingProperty[] orderedProps = perms.getOrderedProperties();
     SortedSet<ConfigurationProperty> configPropSet = module.getProperties().getConfigurationProperties();
     ConfigurationProperty[] configProps = configPropSet.toArray(new ConfigurationProperty[configPropSet.size()]);
@@ -66,8 +68,10 @@ class DistillerRebindPermutationOracle implements RebindPermutationOracle {
       String[] orderedPropValues = perms.getOrderedPropertyValues(i);
       propertyOracles[i] = new StaticPropertyOracle(orderedProps,
           orderedPropValues, configProps);
-      rebindOracles[i] = new StandardRebindOracle(propertyOracles[i], rules,
-          generatorContext);
+      StandardRebindOracle rebindOracle =
+          new StandardRebindOracle(propertyOracles[i], rules, generatorContext);
+      rebindOracle.setRebindCache(rebindCache);
+      rebindOracles[i] = rebindOracle;
       permutations[i] = new Permutation(i, propertyOracles[i]);
     }
   }
@@ -43,9 +43,11 @@ import com.google.gwt.dev.util.OutputFileSetOnJar;
 import com.google.gwt.dev.util.Util;
 import com.google.gwt.dev.util.arg.ArgHandlerDeployDir;
 import com.google.gwt.dev.util.arg.ArgHandlerExtraDir;
+import com.google.gwt.dev.util.arg.ArgHandlerLocalWorkers;
 import com.google.gwt.dev.util.arg.ArgHandlerWarDir;
 import com.google.gwt.dev.util.arg.OptionDeployDir;
 import com.google.gwt.dev.util.arg.OptionExtraDir;
+import com.google.gwt.dev.util.arg.OptionLocalWorkers;
 import com.google.gwt.dev.util.arg.OptionOutDir;
 import com.google.gwt.dev.util.arg.OptionWarDir;
 import com.google.gwt.dev.util.log.speedtracer.CompilerEventType;
@@ -61,6 +63,11 @@ import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.jar.JarOutputStream;
@@ -82,7 +89,7 @@ public class Link {
    * Options for Link.
    */
   public interface LinkOptions extends OptionExtraDir,
-      OptionWarDir, OptionDeployDir, LegacyLinkOptions {
+      OptionWarDir, OptionDeployDir, OptionLocalWorkers, LegacyLinkOptions {
   }
 
   static class ArgProcessor extends CompileArgProcessor {
@@ -93,6 +100,7 @@ public class Link {
       registerHandler(new ArgHandlerWarDir(options));
       registerHandler(new ArgHandlerDeployDir(options));
       registerHandler(new ArgHandlerOutDirDeprecated(options));
+      registerHandler(new ArgHandlerLocalWorkers(options));
     }
 
     @Override
@@ -109,6 +117,7 @@ public class Link {
 
     private File deployDir;
     private File extraDir;
+    private int localWorkers;
     private File outDir;
     private File warDir;
 
@@ -123,6 +132,7 @@ public class Link {
       super.copyFrom(other);
       setDeployDir(other.getDeployDir());
       setExtraDir(other.getExtraDir());
+      setLocalWorkers(other.getLocalWorkers());
       setWarDir(other.getWarDir());
       setOutDir(other.getOutDir());
     }
@@ -138,6 +148,11 @@ public class Link {
       return extraDir;
     }
 
+    @Override
+    public int getLocalWorkers() {
+      return localWorkers;
+    }
+
     @Override
     @Deprecated
     public File getOutDir() {
@@ -159,6 +174,11 @@ public class Link {
       this.extraDir = extraDir;
     }
 
+    @Override
+    public void setLocalWorkers(int localWorkers) {
+      this.localWorkers = localWorkers;
+    }
+
     @Override
     @Deprecated
     public void setOutDir(File outDir) {
@@ -179,7 +199,7 @@ public class Link {
     StandardLinkerContext linkerContext = new StandardLinkerContext(logger,
         module, precompileOptions);
     ArtifactSet artifacts = doSimulatedShardingLink(logger, module,
-        linkerContext, generatedArtifacts, permutations, resultFiles);
+        linkerContext, generatedArtifacts, permutations, resultFiles, 1);
     OutputFileSet outFileSet = chooseOutputFileSet(outDir, module.getName()
         + "/");
     OutputFileSet deployFileSet = chooseOutputFileSet(outDir, module.getName()
@@ -195,10 +215,24 @@ public class Link {
       List<FileBackedObject<PermutationResult>> resultFiles, File outDir,
       File deployDir, File extrasDir, JJSOptions precompileOptions)
       throws UnableToCompleteException, IOException {
+    link(logger, module, generatedArtifacts, permutations, resultFiles, outDir,
+        deployDir, extrasDir, precompileOptions, 1);
+  }
+
+  /**
+   * Links the compiled permutations. The shardable part of the link runs for
+   * up to <code>localWorkers</code> permutations at once.
+   */
+  public static void link(TreeLogger logger, ModuleDef module,
+      ArtifactSet generatedArtifacts, Permutation[] permutations,
+      List<FileBackedObject<PermutationResult>> resultFiles, File outDir,
+      File deployDir, File extrasDir, JJSOptions precompileOptions,
+      int localWorkers) throws UnableToCompleteException, IOException {
     StandardLinkerContext linkerContext = new StandardLinkerContext(logger,
         module, precompileOptions);
     ArtifactSet artifacts = doSimulatedShardingLink(logger, module,
-        linkerContext, generatedArtifacts, permutations, resultFiles);
+        linkerContext, generatedArtifacts, permutations, resultFiles,
+        localWorkers);
     OutputFileSet extrasFileSet = chooseOutputFileSet(extrasDir,
         module.getName() + "/");
     // allow -deploy and -extra to point to the same directory/jar
@@ -337,6 +371,34 @@ public class Link {
     return thinnedArtifacts;
   }
 
+  /**
+   * Runs the shardable part of the link for every permutation, on up to
+   * <code>localWorkers</code> threads.
+   *
+   * @return the new artifacts of all the permutations
+   */
+  // @VisibleForTesting
+  static ArtifactSet linkPermutations(TreeLogger logger,
+      StandardLinkerContext linkerContext, ArtifactSet generatedArtifacts,
+      Permutation[] perms, List<FileBackedObject<PermutationResult>> resultFiles,
+      int localWorkers) throws UnableToCompleteException {
+    ArtifactSet combinedArtifacts = new ArtifactSet();
+    int threads = Math.min(localWorkers, perms.length);
+    if (threads <= 1) {
+      for (int i = 0; i < perms.length; ++i) {
+        ArtifactSet newArtifacts = finishPermutation(logger, perms[i],
+            resultFiles.get(i), linkerContext, generatedArtifacts);
+        combinedArtifacts.addAll(newArtifacts);
+      }
+    } else {
+      for (ArtifactSet newArtifacts : finishPermutations(logger, perms,
+          resultFiles, linkerContext, generatedArtifacts, threads)) {
+        combinedArtifacts.addAll(newArtifacts);
+      }
+    }
+    return combinedArtifacts;
+  }
+
   /**
    * Add to a compilation result all of the selection permutations from its
    * associated permutation.
@@ -441,19 +503,16 @@ public class Link {
   /**
    * This link operation simulates sharded linking even though all generating
    * and linking is happening on the same computer. It can tolerate
-   * non-shardable linkers.
+   * non-shardable linkers. The shardable part of the link runs on up to
+   * <code>localWorkers</code> threads.
    */
   private static ArtifactSet doSimulatedShardingLink(TreeLogger logger,
       ModuleDef module, StandardLinkerContext linkerContext,
       ArtifactSet generatedArtifacts, Permutation[] perms,
-      List<FileBackedObject<PermutationResult>> resultFiles)
+      List<FileBackedObject<PermutationResult>> resultFiles, int localWorkers)
       throws UnableToCompleteException {
-    ArtifactSet combinedArtifacts = new ArtifactSet();
-    for (int i = 0; i < perms.length; ++i) {
-      ArtifactSet newArtifacts = finishPermutation(logger, perms[i],
-          resultFiles.get(i), linkerContext, generatedArtifacts);
-      combinedArtifacts.addAll(newArtifacts);
-    }
+    ArtifactSet combinedArtifacts = linkPermutations(logger, linkerContext,
+        generatedArtifacts, perms, resultFiles, localWorkers);
 
     combinedArtifacts.addAll(linkerContext.getArtifactsForPublicResources(
         logger, module));
@@ -492,6 +551,53 @@ public class Link {
         permArtifacts);
   }
 
+  /**
+   * Runs {@link #finishPermutation} for every permutation on a pool of
+   * <code>threads</code> threads.
+   *
+   * @return the new artifacts of each permutation, in permutation order
+   */
+  private static List<ArtifactSet> finishPermutations(final TreeLogger logger,
+      Permutation[] perms,
+      List<FileBackedObject<PermutationResult>> resultFiles,
+      final StandardLinkerContext linkerContext,
+      final ArtifactSet generatedArtifacts, int threads)
+      throws UnableToCompleteException {
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<ArtifactSet>> futures = new ArrayList<Future<ArtifactSet>>(
+          perms.length);
+      for (int i = 0; i < perms.length; ++i) {
+        final Permutation perm = perms[i];
+        final FileBackedObject<PermutationResult> resultFile = resultFiles.get(i);
+        futures.add(executor.submit(new Callable<ArtifactSet>() {
+          public ArtifactSet call() throws UnableToCompleteException {
+            return finishPermutation(logger, perm, resultFile, linkerContext,
+                generatedArtifacts);
+          }
+        }));
+      }
+      List<ArtifactSet> toReturn = new ArrayList<ArtifactSet>(perms.length);
+      for (Future<ArtifactSet> future : futures) {
+        toReturn.add(future.get());
+      }
+      return toReturn;
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof UnableToCompleteException) {
+        throw (UnableToCompleteException) cause;
+      }
+      logger.log(TreeLogger.ERROR, "Unexpected exception while linking", cause);
+      throw new UnableToCompleteException();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      logger.log(TreeLogger.ERROR, "Interrupted while linking", e);
+      throw new UnableToCompleteException();
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
   private static String getFullArtifactPath(EmittedArtifact emittedArtifact,
       StandardLinkerContext context) {
     String path = emittedArtifact.getPartialPath();
@@ -674,7 +780,8 @@ public class Link {
         try {
           link(branch, module, precomp.getGeneratedArtifacts(), perms,
               resultFiles, options.getWarDir(), options.getDeployDir(),
-              options.getExtraDir(), precomp.getUnifiedAst().getOptions());
+              options.getExtraDir(), precomp.getUnifiedAst().getOptions(),
+              options.getLocalWorkers());
         } catch (IOException e) {
           logger.log(TreeLogger.ERROR,
               "Unexpected exception while producing output", e);
@@ -0,0 +1,334 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev;
+
+import com.google.gwt.core.ext.TreeLogger;
+import com.google.gwt.dev.cfg.BindingProperty;
+import com.google.gwt.dev.cfg.ConfigurationProperty;
+import com.google.gwt.dev.cfg.StaticPropertyOracle;
+import com.google.gwt.dev.jjs.JavaToJavaScriptCompiler;
+import com.google.gwt.dev.jjs.PermutationResult;
+import com.google.gwt.dev.jjs.UnifiedAst;
+import com.google.gwt.dev.util.FileBackedObject;
+import com.google.gwt.dev.util.Util;
+import com.google.gwt.util.tools.Utility;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * A persistent cache of compiled permutations. A permutation result is reused
+ * when the source of the unified AST, the compiler options and
+ * <code>gwt.jjs.*</code> system properties, the compiler jar, and the
+ * permutation's property values and rebind answers are all unchanged.
+ *
+ * The cache is off unless the -XpermutationCacheDir option (or the
+ * <code>gwt.permutationcachedir</code> system property) names the directory to
+ * keep the results in. Once the entries take more than {@link #MAX_CACHE_SIZE}
+ * bytes, the least recently used ones are deleted.
+ */
+class PermutationResultCache {
+
+  /**
+   * The system property naming the cache directory.
+   */
+  static final String CACHE_DIR_PROPERTY = "gwt.permutationcachedir";
+
+  /**
+   * The number of bytes the cache entries may take before the least recently
+   * used ones are evicted.
+   */
+  static final long MAX_CACHE_SIZE = 256L * 1024 * 1024;
+
+  private static final String SUFFIX = ".permutation";
+
+  private static String compilerHash;
+
+  private static boolean compilerHashComputed;
+
+  /**
+   * Returns a cache in the directory given by the AST's compiler options, or
+   * else by {@value #CACHE_DIR_PROPERTY}. Returns <code>null</code> if the
+   * cache is disabled, the AST does not know its source hash, or the directory
+   * cannot be used.
+   */
+  static PermutationResultCache create(TreeLogger logger, UnifiedAst unifiedAst) {
+    File cacheDir = unifiedAst.getOptions().getPermutationCacheDir();
+    if (cacheDir == null) {
+      String dirProp = System.getProperty(CACHE_DIR_PROPERTY);
+      cacheDir = dirProp == null ? null : new File(dirProp);
+    }
+    if (cacheDir == null || unifiedAst.getInputHash() == null) {
+      return null;
+    }
+    String compilerHash = getCompilerHash(logger);
+    if (compilerHash == null) {
+      return null;
+    }
+    if (!cacheDir.isDirectory() && !cacheDir.mkdirs()) {
+      logger.log(TreeLogger.WARN, "Unable to create permutation cache directory '"
+          + cacheDir.getAbsolutePath() + "'; permutation results will not be cached");
+      return null;
+    }
+    return new PermutationResultCache(cacheDir, unifiedAst, compilerHash, MAX_CACHE_SIZE);
+  }
+
+  /**
+   * Returns a hash of the jar the compiler was loaded from, or
+   * <code>null</code> if the compiler wasn't loaded from a jar, so that results
+   * are never reused across compiler builds.
+   */
+  private static synchronized String getCompilerHash(TreeLogger logger) {
+    if (compilerHashComputed) {
+      return compilerHash;
+    }
+    compilerHashComputed = true;
+    CodeSource source = JavaToJavaScriptCompiler.class.getProtectionDomain().getCodeSource();
+    URL location = source == null ? null : source.getLocation();
+    InputStream in = null;
+    try {
+      File jar = location == null ? null : new File(location.toURI());
+      if (jar == null || !jar.isFile()) {
+        logger.log(TreeLogger.DEBUG, "The compiler was not loaded from a jar; "
+            + "permutation results will not be cached");
+        return null;
+      }
+      MessageDigest md5 = MessageDigest.getInstance("MD5");
+      in = new FileInputStream(jar);
+      byte[] buf = new byte[8192];
+      int read;
+      while ((read = in.read(buf)) != -1) {
+        md5.update(buf, 0, read);
+      }
+      compilerHash = Util.toHexString(md5.digest());
+    } catch (IOException e) {
+      logger.log(TreeLogger.WARN, "Unable to read the compiler jar; "
+          + "permutation results will not be cached", e);
+    } catch (URISyntaxException e) {
+      logger.log(TreeLogger.DEBUG, "Unable to locate the compiler jar; "
+          + "permutation results will not be cached", e);
+    } catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException("Error initializing MD5", e);
+    } finally {
+      Utility.close(in);
+    }
+    return compilerHash;
+  }
+
+  private final File cacheDir;
+
+  private final long maxCacheSize;
+
+  /**
+   * The part of every key shared by all permutations of the AST.
+   */
+  private final String commonKey;
+
+  PermutationResultCache(File cacheDir, UnifiedAst unifiedAst, String compilerHash,
+      long maxCacheSize) {
+    this.cacheDir = cacheDir;
+    this.maxCacheSize = maxCacheSize;
+    StringBuilder key = new StringBuilder();
+    key.append(About.getGwtVersionNum()).append('\n');
+    key.append(compilerHash).append('\n');
+    key.append(unifiedAst.getInputHash()).append('\n');
+    key.append("optimize=").append(unifiedAst.getOptions().getOptimizationLevel()).append('\n');
+    key.append(Util.computeStrongName(serialize(unifiedAst.getOptions()))).append('\n');
+    // Flags such as gwt.jjs.incrementalOptimizer change the compiler's output.
+    for (Map.Entry<String, String> entry : getCompilerProperties().entrySet()) {
+      key.append(entry.getKey()).append('=').append(entry.getValue()).append('\n');
+    }
+    this.commonKey = key.toString();
+  }
+
+  /**
+   * Returns the key <code>permutation</code> is cached under.
+   */
+  String getKey(Permutation permutation) {
+    List<byte[]> contents = new ArrayList<byte[]>();
+    contents.add(Util.getBytes(commonKey));
+    contents.add(Util.getBytes(String.valueOf(permutation.getId())));
+    StaticPropertyOracle[] oracles = permutation.getPropertyOracles();
+    SortedMap<String, String>[] rebindAnswers = permutation.getOrderedRebindAnswers();
+    for (int i = 0; i < oracles.length; i++) {
+      StringBuilder sb = new StringBuilder();
+      BindingProperty[] props = oracles[i].getOrderedProps();
+      String[] values = oracles[i].getOrderedPropValues();
+      for (int j = 0; j < props.length; j++) {
+        sb.append(props[j].getName()).append('=').append(values[j]).append('\n');
+      }
+      for (ConfigurationProperty prop : oracles[i].getConfigurationProps()) {
+        sb.append(prop.getName()).append('=').append(prop.getValues()).append('\n');
+      }
+      sb.append(rebindAnswers[i]);
+      contents.add(Util.getBytes(sb.toString()));
+    }
+    return Util.computeStrongName(contents.toArray(new byte[contents.size()][]));
+  }
+
+  /**
+   * Copies a cached result for <code>permutation</code> into
+   * <code>resultFile</code>.
+   *
+   * @return <code>true</code> if a cached result was found and copied
+   */
+  boolean restore(TreeLogger logger, Permutation permutation,
+      FileBackedObject<PermutationResult> resultFile) {
+    File cached = getCacheFile(permutation);
+    if (!cached.isFile()) {
+      return false;
+    }
+    try {
+      copyFile(cached, resultFile.getFile());
+      // Keep recently used entries from being evicted.
+      cached.setLastModified(System.currentTimeMillis());
+      return true;
+    } catch (IOException e) {
+      logger.log(TreeLogger.WARN, "Unable to read cached permutation " + permutation.getId()
+          + " from '" + cached.getAbsolutePath() + "'", e);
+      return false;
+    }
+  }
+
+  /**
+   * Stores the compiled <code>resultFile</code> for <code>permutation</code>.
+   * Failures are logged and otherwise ignored.
+   */
+  void store(TreeLogger logger, Permutation permutation,
+      FileBackedObject<PermutationResult> resultFile) {
+    File cached = getCacheFile(permutation);
+    File temp = null;
+    try {
+      // Write under a temporary name so readers never see a partial entry.
+      temp = File.createTempFile("permutation", ".tmp", cacheDir);
+      copyFile(resultFile.getFile(), temp);
+      if (temp.renameTo(cached)) {
+        temp = null;
+      }
+    } catch (IOException e) {
+      logger.log(TreeLogger.WARN, "Unable to cache permutation " + permutation.getId()
+          + " in '" + cached.getAbsolutePath() + "'", e);
+    } finally {
+      if (temp != null) {
+        temp.delete();
+      }
+    }
+    evict();
+  }
+
+  /**
+   * Deletes the least recently used entries until the rest fit in the size
+   * limit. Entries deleted concurrently by another compile are skipped.
+   */
+  void evict() {
+    File[] files = cacheDir.listFiles();
+    if (files == null) {
+      return;
+    }
+    List<File> entries = new ArrayList<File>();
+    final Map<File, Long> lastUsed = new HashMap<File, Long>();
+    long totalSize = 0;
+    for (File file : files) {
+      if (file.getName().endsWith(SUFFIX)) {
+        entries.add(file);
+        lastUsed.put(file, file.lastModified());
+        totalSize += file.length();
+      }
+    }
+    if (totalSize <= maxCacheSize) {
+      return;
+    }
+    Collections.sort(entries, new Comparator<File>() {
+      @Override
+      public int compare(File a, File b) {
+        return lastUsed.get(a).compareTo(lastUsed.get(b));
+      }
+    });
+    for (File entry : entries) {
+      if (totalSize <= maxCacheSize) {
+        break;
+      }
+      long length = entry.length();
+      if (entry.delete()) {
+        totalSize -= length;
+      }
+    }
+  }
+
+  private File getCacheFile(Permutation permutation) {
+    return new File(cacheDir, getKey(permutation) + SUFFIX);
+  }
+
+  private static void copyFile(File from, File to) throws IOException {
+    InputStream in = null;
+    OutputStream out = null;
+    try {
+      in = new FileInputStream(from);
+      out = new FileOutputStream(to);
+      Util.copyNoClose(in, out);
+    } finally {
+      Utility.close(in);
+      Utility.close(out);
+    }
+  }
+
+  /**
+   * Returns the <code>gwt.jjs.*</code> system properties, sorted by name.
+   */
+  private static SortedMap<String, String> getCompilerProperties() {
+    SortedMap<String, String> result = new TreeMap<String, String>();
+    for (String name : System.getProperties().stringPropertyNames()) {
+      if (name.startsWith("gwt.jjs.")) {
+        result.put(name, System.getProperty(name));
+      }
+    }
+    return result;
+  }
+
+  private static byte[] serialize(Object object) {
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    ObjectOutputStream out = null;
+    try {
+      out = new ObjectOutputStream(baos);
+      out.writeObject(object);
+      out.flush();
+    } catch (IOException e) {
+      throw new RuntimeException("Unexpected exception serializing options", e);
+    } finally {
+      Utility.close(out);
+    }
+    return baos.toByteArray();
+  }
+}
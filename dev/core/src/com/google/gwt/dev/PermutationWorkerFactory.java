@@ -250,16 +250,28 @@ public abstract class PermutationWorkerFactory {
     assert Arrays.asList(precompilation.getPermutations()).containsAll(
         Arrays.asList(permutations));
 
-    // Create the work.
+    // Create the work, skipping permutations whose results are cached.
+    PermutationResultCache cache =
+        PermutationResultCache.create(logger, precompilation.getUnifiedAst());
     List<Work> work = new ArrayList<Work>(permutations.length);
     for (int i = 0; i < permutations.length; ++i) {
       Permutation perm = permutations[i];
+      if (cache != null && cache.restore(logger, perm, resultFiles.get(i))) {
+        continue;
+      }
       if (logger.isLoggable(TreeLogger.DEBUG)) {
         logger.log(TreeLogger.DEBUG,
             "Creating worker permutation " + perm.getId() + " of " + permutations.length);
       }
       work.add(new Work(logger, perm, resultFiles.get(i)));
     }
+    if (cache != null) {
+      logger.log(TreeLogger.INFO, "Reusing " + (permutations.length - work.size())
+          + " of " + permutations.length + " permutations from the permutation cache");
+    }
+    if (work.isEmpty()) {
+      return;
+    }
 
     // Create the workers.
     List<PermutationWorker> workers = new ArrayList<PermutationWorker>();
@@ -269,6 +281,12 @@ public abstract class PermutationWorkerFactory {
 
       // Get it done!
       Manager.run(logger, work, workers);
+
+      if (cache != null) {
+        for (Work w : work) {
+          cache.store(logger, w.getPerm(), w.getResultFile());
+        }
+      }
     } finally {
       Throwable caught = null;
       for (PermutationWorker worker : workers) {
@@ -63,6 +63,11 @@ class PrecompileTaskOptionsImpl extends CompileTaskOptionsImpl implements Precom
     return genDir;
   }
 
+  @Override
+  public int getLeftoversBudget() {
+    return jjsOptions.getLeftoversBudget();
+  }
+
   @Override
   public int getMaxPermsPerPrecompile() {
     return maxPermsPerPrecompile;
@@ -73,6 +78,11 @@ class PrecompileTaskOptionsImpl extends CompileTaskOptionsImpl implements Precom
     return jjsOptions.getOptimizationLevel();
   }
 
+  @Override
+  public File getPermutationCacheDir() {
+    return jjsOptions.getPermutationCacheDir();
+  }
+
   @Override
   public JsOutputOption getOutput() {
     return jjsOptions.getOutput();
@@ -207,6 +217,11 @@ class PrecompileTaskOptionsImpl extends CompileTaskOptionsImpl implements Precom
     jjsOptions.setFragmentsMerge(numFragments);
   }
 
+  @Override
+  public void setLeftoversBudget(int bytes) {
+    jjsOptions.setLeftoversBudget(bytes);
+  }
+
   @Override
   public void setGenDir(File genDir) {
     this.genDir = genDir;
@@ -222,6 +237,11 @@ class PrecompileTaskOptionsImpl extends CompileTaskOptionsImpl implements Precom
     jjsOptions.setOptimizationLevel(level);
   }
 
+  @Override
+  public void setPermutationCacheDir(File dir) {
+    jjsOptions.setPermutationCacheDir(dir);
+  }
+
   @Override
   public void setOptimizePrecompile(boolean optimize) {
     jjsOptions.setOptimizePrecompile(optimize);
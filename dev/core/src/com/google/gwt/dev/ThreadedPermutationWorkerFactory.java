@@ -88,7 +88,10 @@ public class ThreadedPermutationWorkerFactory extends PermutationWorkerFactory {
       return Collections.emptyList();
     }
 
-    // The worker will deserialize a new copy
+    /*
+     * Each worker deserializes its own copy of the AST, sharing only Strings
+     * and source origins with the other workers through the UnifiedAst.
+     */
     List<PermutationWorker> toReturn = new ArrayList<PermutationWorker>(
         numWorkers);
     for (int i = 0; i < numWorkers; i++) {
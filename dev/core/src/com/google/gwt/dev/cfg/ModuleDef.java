@@ -21,6 +21,7 @@ import com.google.gwt.core.ext.UnableToCompleteException;
 import com.google.gwt.core.ext.linker.LinkerOrder;
 import com.google.gwt.core.ext.linker.LinkerOrder.Order;
 import com.google.gwt.core.ext.typeinfo.TypeOracle;
+import com.google.gwt.dev.RebindCache;
 import com.google.gwt.dev.javac.CompilationProblemReporter;
 import com.google.gwt.dev.javac.CompilationState;
 import com.google.gwt.dev.javac.CompilationStateBuilder;
@@ -153,6 +154,12 @@ public class ModuleDef {
 
   private PathPrefixSet publicPrefixSet = new PathPrefixSet();
 
+  /**
+   * Generator results kept across compiles of this module, or <code>null</code>
+   * if generators start from scratch on every compile.
+   */
+  private RebindCache rebindCache;
+
   private final Rules rules = new Rules();
 
   private final Scripts scripts = new Scripts();
@@ -405,6 +412,14 @@ public class ModuleDef {
     return properties;
   }
 
+  /**
+   * Returns the generator results kept across compiles of this module, or
+   * <code>null</code> if there are none.
+   */
+  public synchronized RebindCache getRebindCache() {
+    return rebindCache;
+  }
+
   public synchronized ResourceOracle getResourcesOracle() {
     if (lazyResourcesOracle == null) {
       lazyResourcesOracle = new ResourceOracleImpl(TreeLogger.NULL, resources);
@@ -496,6 +511,15 @@ public class ModuleDef {
     this.nameOverride = nameOverride;
   }
 
+  /**
+   * Keeps generator results in <code>rebindCache</code> across compiles of this
+   * module, so that incremental generators can reuse their previous output
+   * when its inputs have not changed.
+   */
+  public synchronized void setRebindCache(RebindCache rebindCache) {
+    this.rebindCache = rebindCache;
+  }
+
   void addCompilationUnitArchiveURL(URL url) {
     archiveURLs.add(url);
   }
@@ -72,6 +72,13 @@ public class StaticPropertyOracle implements PropertyOracle, Serializable {
     throw new BadPropertyValueException(propertyName);
   }
 
+  /**
+   * @return an array of configuration properties.
+   */
+  public ConfigurationProperty[] getConfigurationProps() {
+    return configProps;
+  }
+
   /**
    * @return an array of binding properties.
    */
@@ -18,14 +18,18 @@ package com.google.gwt.dev.javac;
 import com.google.gwt.core.ext.TreeLogger;
 import com.google.gwt.dev.javac.CompilationStateBuilder.CompileMoreLater;
 import com.google.gwt.dev.javac.typemodel.TypeOracle;
+import com.google.gwt.dev.util.Util;
 import com.google.gwt.dev.util.log.speedtracer.DevModeEventType;
 import com.google.gwt.dev.util.log.speedtracer.SpeedTracerLogger;
 import com.google.gwt.dev.util.log.speedtracer.SpeedTracerLogger.Event;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 
 /**
  * Encapsulates the state of active compilation units in a particular module.
@@ -127,6 +131,18 @@ public class CompilationState {
     return exposedUnits;
   }
 
+  /**
+   * Returns a strong hash of the location and content of every compilation
+   * unit, including generated units. The hash changes whenever any unit does.
+   */
+  public String getContentHash() {
+    List<byte[]> contents = new ArrayList<byte[]>();
+    for (CompilationUnit unit : new TreeMap<String, CompilationUnit>(unitMap).values()) {
+      contents.add(Util.getBytes(unit.getResourcePath() + '\n' + unit.getContentId().get()));
+    }
+    return Util.computeStrongName(contents.toArray(new byte[contents.size()][]));
+  }
+
   public TypeOracle getTypeOracle() {
     return mediator.getTypeOracle();
   }
@@ -50,8 +50,11 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Manages a centralized cache for compiled units.
@@ -132,6 +135,7 @@ public class CompilationStateBuilder {
           builder.setClasses(compiledClasses).setTypes(types).setDependencies(dependencies)
               .setJsniMethods(jsniMethods.values()).setMethodArgs(methodArgs).setProblems(
                   cud.compilationResult().getProblems());
+          processedBuilders.add(builder);
           buildQueue.add(builder);
         } finally {
           event.end();
@@ -150,6 +154,12 @@ public class CompilationStateBuilder {
 
     private transient LinkedBlockingQueue<CompilationUnitBuilder> buildQueue;
 
+    /**
+     * The builders handed to {@link #buildQueue}, in the order JDT processed
+     * them. Only touched by the compiling thread.
+     */
+    private transient List<CompilationUnitBuilder> processedBuilders;
+
     /**
      * The JDT compiler.
      */
@@ -207,41 +217,50 @@ public class CompilationStateBuilder {
         final TreeLogger branch = logger.branch(TreeLogger.TRACE, "Compiling...");
         // Compile anything that needs to be compiled.
         buildQueue = new LinkedBlockingQueue<CompilationUnitBuilder>();
-        final ArrayList<CompilationUnit> newlyBuiltUnits = new ArrayList<CompilationUnit>();
+        processedBuilders = new ArrayList<CompilationUnitBuilder>();
+        final Map<CompilationUnitBuilder, CompilationUnit> builtUnits =
+            new ConcurrentHashMap<CompilationUnitBuilder, CompilationUnit>();
         final CompilationUnitBuilder sentinel = CompilationUnitBuilder.create((GeneratedUnit) null);
-        final Throwable[] workerException = new Throwable[1];
+        final AtomicReference<Throwable> workerException = new AtomicReference<Throwable>();
+        final AtomicInteger processedCompilationUnitBuilders = new AtomicInteger();
         final ProgressLogger progressLogger =
             new ProgressLogger(branch, TreeLogger.TRACE, builders.size(), 10);
-        Thread buildThread = new Thread() {
-          @Override
-          public void run() {
-            int processedCompilationUnitBuilders = 0;
-            try {
-              do {
-                CompilationUnitBuilder builder = buildQueue.take();
-                if (!progressLogger.isTimerStarted()) {
-                  // Set start time here, after first job has arrived, since it can take a little
-                  // while for the first job to arrive, and this helps with the accuracy of the
-                  // estimated times.
-                  progressLogger.startTimer();
-                }
-                if (builder == sentinel) {
-                  return;
-                }
-                // Expensive, must serialize GWT AST types to bytes.
-                CompilationUnit unit = builder.build();
-                newlyBuiltUnits.add(unit);
-
-                processedCompilationUnitBuilders++;
-                progressLogger.updateProgress(processedCompilationUnitBuilders);
-              } while (true);
-            } catch (Throwable e) {
-              workerException[0] = e;
+        int threadCount = getBuilderThreadCount();
+        Thread[] buildThreads = new Thread[threadCount];
+        for (int i = 0; i < threadCount; ++i) {
+          buildThreads[i] = new Thread() {
+            @Override
+            public void run() {
+              try {
+                do {
+                  CompilationUnitBuilder builder = buildQueue.take();
+                  synchronized (progressLogger) {
+                    if (!progressLogger.isTimerStarted()) {
+                      // Set start time here, after first job has arrived, since it can take a
+                      // little while for the first job to arrive, and this helps with the
+                      // accuracy of the estimated times.
+                      progressLogger.startTimer();
+                    }
+                  }
+                  if (builder == sentinel) {
+                    return;
+                  }
+                  // Expensive, must serialize GWT AST types to bytes.
+                  builtUnits.put(builder, builder.build());
+
+                  synchronized (progressLogger) {
+                    progressLogger.updateProgress(
+                        processedCompilationUnitBuilders.incrementAndGet());
+                  }
+                } while (true);
+              } catch (Throwable e) {
+                workerException.compareAndSet(null, e);
+              }
             }
-          }
-        };
-        buildThread.setName("CompilationUnitBuilder");
-        buildThread.start();
+          };
+          buildThreads[i].setName("CompilationUnitBuilder-" + i);
+          buildThreads[i].start();
+        }
         Event jdtCompilerEvent = SpeedTracerLogger.start(eventType);
         long compilationStartNanos = System.nanoTime();
         try {
@@ -249,16 +268,26 @@ public class CompilationStateBuilder {
         } finally {
           jdtCompilerEvent.end();
         }
-        buildQueue.add(sentinel);
+        // One sentinel per worker, each worker exits after taking one.
+        for (int i = 0; i < threadCount; ++i) {
+          buildQueue.add(sentinel);
+        }
+        final ArrayList<CompilationUnit> newlyBuiltUnits = new ArrayList<CompilationUnit>();
         try {
-          buildThread.join();
+          for (Thread buildThread : buildThreads) {
+            buildThread.join();
+          }
           long compilationNanos = System.nanoTime() - compilationStartNanos;
           // Convert nanos to seconds.
           double compilationSeconds = compilationNanos / (double) TimeUnit.SECONDS.toNanos(1);
           branch.log(TreeLogger.TRACE,
               String.format("Compilation completed in %.02f seconds", compilationSeconds));
-          if (workerException[0] != null) {
-            throw workerException[0];
+          if (workerException.get() != null) {
+            throw workerException.get();
+          }
+          // Preserve the order in which JDT produced the units.
+          for (CompilationUnitBuilder builder : processedBuilders) {
+            newlyBuiltUnits.add(builtUnits.get(builder));
           }
         } catch (RuntimeException e) {
           throw e;
@@ -266,6 +295,7 @@ public class CompilationStateBuilder {
           throw new RuntimeException("Exception processing units", e);
         } finally {
           buildQueue = null;
+          processedBuilders = null;
         }
         resultUnits.addAll(newlyBuiltUnits);
         builders.clear();
@@ -352,6 +382,14 @@ public class CompilationStateBuilder {
 
   private static final CompilationStateBuilder instance = new CompilationStateBuilder();
 
+  /**
+   * The number of threads used to build {@link CompilationUnit}s from JDT
+   * output, defaults to the number of available processors.
+   */
+  private static final int BUILDER_THREAD_COUNT =
+      Integer.getInteger("gwt.compilationUnitBuilderThreads",
+          Runtime.getRuntime().availableProcessors());
+
   /**
    * Use previously compiled {@link CompilationUnit}s to pre-populate the unit
    * cache.
@@ -395,6 +433,15 @@ public class CompilationStateBuilder {
     return instance;
   }
 
+  /**
+   * Returns the number of threads that concurrently build units while JDT
+   * compiles, configurable via the
+   * <code>gwt.compilationUnitBuilderThreads</code> system property.
+   */
+  static int getBuilderThreadCount() {
+    return Math.max(1, BUILDER_THREAD_COUNT);
+  }
+
   /**
    * Called to setup the directory where the persistent {@link CompilationUnit}
    * cache should be stored. Only the first call to init() will have an effect.
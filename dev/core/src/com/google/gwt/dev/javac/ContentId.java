@@ -26,4 +26,11 @@ class ContentId extends StringKey {
     super(sourceTypeName + ':' + strongHash);
   }
 
+  /**
+   * Recreates a content id from the value returned by {@link #get()}.
+   */
+  ContentId(String value) {
+    super(value);
+  }
+
 }
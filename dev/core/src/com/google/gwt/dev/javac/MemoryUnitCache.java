@@ -18,7 +18,7 @@ package com.google.gwt.dev.javac;
 import com.google.gwt.core.ext.TreeLogger;
 import com.google.gwt.thirdparty.guava.common.collect.MapMaker;
 
-import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * This cache stores {@link CompilationUnit} instances in a Map.
@@ -39,10 +39,22 @@ class MemoryUnitCache implements UnitCache {
       this.origin = source;
     }
 
+    public ContentId getContentId() {
+      return getUnit().getContentId();
+    }
+
+    public long getLastModified() {
+      return getUnit().getLastModified();
+    }
+
     public UnitOrigin getOrigin() {
       return origin;
     }
 
+    public String getResourcePath() {
+      return getUnit().getResourcePath();
+    }
+
     public CompilationUnit getUnit() {
       return unit;
     }
@@ -76,13 +88,15 @@ class MemoryUnitCache implements UnitCache {
    * 
    * The key is resource path.
    */
-  protected final Map<String, UnitCacheEntry> unitMap = new MapMaker().softValues().makeMap();
+  protected final ConcurrentMap<String, UnitCacheEntry> unitMap =
+      new MapMaker().softValues().makeMap();
 
   /**
    * References {@link CompilationUnit} objects by {@link ContentId}, which is
    * composed of the type name and a hash on the source code contents.
    */
-  protected final Map<ContentId, UnitCacheEntry> unitMapByContentId = new MapMaker().softValues().makeMap();
+  protected final ConcurrentMap<ContentId, UnitCacheEntry> unitMapByContentId =
+      new MapMaker().softValues().makeMap();
 
   /**
    * Adds a new entry into the cache.
@@ -133,14 +147,31 @@ class MemoryUnitCache implements UnitCache {
     unitMapByContentId.remove(unit.getContentId());
   }
 
-  private void add(CompilationUnit newUnit, UnitOrigin origin) {
-    UnitCacheEntry newEntry = new UnitCacheEntry(newUnit, origin);
-    String resourcePath = newUnit.getResourcePath();
+  /**
+   * Adds an entry into the cache, replacing any entry with the same resource
+   * path.
+   */
+  protected void addEntry(UnitCacheEntry newEntry) {
+    String resourcePath = newEntry.getResourcePath();
     UnitCacheEntry oldEntry = unitMap.get(resourcePath);
     if (oldEntry != null) {
-      remove(oldEntry.getUnit());
+      unitMap.remove(resourcePath);
+      unitMapByContentId.remove(oldEntry.getContentId());
     }
     unitMap.put(resourcePath, newEntry);
-    unitMapByContentId.put(newUnit.getContentId(), newEntry);
+    unitMapByContentId.put(newEntry.getContentId(), newEntry);
+  }
+
+  /**
+   * Removes <code>entry</code> from the cache, unless it has already been
+   * replaced.
+   */
+  protected void removeEntry(UnitCacheEntry entry) {
+    unitMap.remove(entry.getResourcePath(), entry);
+    unitMapByContentId.remove(entry.getContentId(), entry);
+  }
+
+  private void add(CompilationUnit newUnit, UnitOrigin origin) {
+    addEntry(new UnitCacheEntry(newUnit, origin));
   }
 }
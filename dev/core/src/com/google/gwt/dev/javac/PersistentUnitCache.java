@@ -26,13 +26,22 @@ import com.google.gwt.util.tools.Utility;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -56,14 +65,18 @@ import java.util.concurrent.atomic.AtomicBoolean;
  * intended to support only a single PersistentUnitCache instance in the
  * compiler at a time.
  * <p>
- * As new units are compiled, the cache data is appended to a log. This allows
- * Java serialization to efficiently store references. The next time the cache
- * is started, all logs are replayed and loaded into the cache in chronological
- * order, with newer units taking precedence. A new cache file is created for
- * any newly compiled units in this session. After a threshold of a certain
- * number of files in the directory is reached
- * {@link PersistentUnitCache#CACHE_FILE_THRESHOLD} , the cache files are
- * consolidated back into a single file.
+ * As new units are compiled, the cache data is appended to a log. Each unit is
+ * written as a separate record: a header holding the unit's resource path,
+ * content id, last modified time and AST version, followed by the unit
+ * serialized on its own. The next time the cache is started, only the record
+ * headers of all logs are read, in chronological order, with newer units
+ * taking precedence. Units are deserialized lazily the first time they are
+ * found. A new cache file is created for any newly compiled units in this
+ * session. After a threshold of a certain number of files in the directory is
+ * reached {@link PersistentUnitCache#CACHE_FILE_THRESHOLD}, the live records of
+ * the old files are copied, one file at a time, into the current file by the
+ * background thread, without deserializing them, and the old files are
+ * deleted.
  * 
  * <p>
  * System Properties (see {@link UnitCacheFactory}).
@@ -78,10 +91,9 @@ import java.util.concurrent.atomic.AtomicBoolean;
  * Known Issues:
  * 
  * <ul>
- * <li>This design uses an eager cache to load every unit in the cache on the
- * first reference to find() or add(). When the cache is large (10000 units), it
- * uses lots of heap and takes 5-10 seconds. Once the PersistentUnitCache is
- * created, it starts eagerly loading the cache in a background thread).</li>
+ * <li>The record headers of every cache file are read on the first reference
+ * to find() or add(). Once the PersistentUnitCache is created, it starts
+ * reading them in a background thread.</li>
  * 
  * <li>Although units logged to disk with the same resource path are eventually
  * cleaned up, the most recently compiled unit stays in the cache forever. This
@@ -95,6 +107,183 @@ import java.util.concurrent.atomic.AtomicBoolean;
  */
 class PersistentUnitCache extends MemoryUnitCache {
 
+  /**
+   * Counts the bytes read, so that the offset of each record is known.
+   */
+  private static class CountingInputStream extends FilterInputStream {
+    private long count;
+
+    public CountingInputStream(InputStream in) {
+      super(in);
+    }
+
+    public long getCount() {
+      return count;
+    }
+
+    @Override
+    public int read() throws IOException {
+      int result = super.read();
+      if (result >= 0) {
+        count++;
+      }
+      return result;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      int result = super.read(b, off, len);
+      if (result > 0) {
+        count += result;
+      }
+      return result;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      long result = super.skip(n);
+      count += result;
+      return result;
+    }
+  }
+
+  /**
+   * Counts the bytes written, so that the offset of each record is known even
+   * past the 2GB that {@link DataOutputStream#size()} can count.
+   */
+  private static class CountingOutputStream extends FilterOutputStream {
+    private long count;
+
+    public CountingOutputStream(OutputStream out) {
+      super(out);
+    }
+
+    public long getCount() {
+      return count;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      out.write(b, off, len);
+      count += len;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      out.write(b);
+      count++;
+    }
+  }
+
+  /**
+   * A unit stored in a cache file. Units loaded from a previous session are
+   * deserialized the first time they are needed.
+   */
+  private class DiskUnitCacheEntry extends UnitCacheEntry {
+    private final ContentId contentId;
+    private final long lastModified;
+    private final String resourcePath;
+    private CompilationUnit unit;
+
+    /**
+     * The file holding the serialized unit, or <code>null</code> if it hasn't
+     * been written yet.
+     */
+    private File file;
+    private long offset;
+    private int length;
+
+    /**
+     * Creates an entry for a newly compiled unit.
+     */
+    DiskUnitCacheEntry(CompilationUnit unit) {
+      super(null, UnitOrigin.RUN_TIME);
+      this.contentId = unit.getContentId();
+      this.lastModified = unit.getLastModified();
+      this.resourcePath = unit.getResourcePath();
+      this.unit = unit;
+    }
+
+    /**
+     * Creates an entry for a unit read from a cache file.
+     */
+    DiskUnitCacheEntry(String resourcePath, ContentId contentId, long lastModified, File file,
+        long offset, int length) {
+      super(null, UnitOrigin.PERSISTENT);
+      this.contentId = contentId;
+      this.lastModified = lastModified;
+      this.resourcePath = resourcePath;
+      setLocation(file, offset, length);
+    }
+
+    @Override
+    public ContentId getContentId() {
+      return contentId;
+    }
+
+    @Override
+    public long getLastModified() {
+      return lastModified;
+    }
+
+    @Override
+    public String getResourcePath() {
+      return resourcePath;
+    }
+
+    /**
+     * Returns the unit, or <code>null</code> if it could not be read back.
+     */
+    @Override
+    public synchronized CompilationUnit getUnit() {
+      if (unit == null && file != null) {
+        try {
+          ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(readBytes()));
+          unit = (CachedCompilationUnit) in.readObject();
+        } catch (IOException ex) {
+          logReadError(ex);
+        } catch (ClassNotFoundException ex) {
+          logReadError(ex);
+        } catch (ClassCastException ex) {
+          logReadError(ex);
+        }
+      }
+      return unit;
+    }
+
+    synchronized File getFile() {
+      return file;
+    }
+
+    /**
+     * Reads the serialized unit without deserializing it.
+     */
+    synchronized byte[] readBytes() throws IOException {
+      byte[] bytes = new byte[length];
+      RandomAccessFile in = new RandomAccessFile(file, "r");
+      try {
+        in.seek(offset);
+        in.readFully(bytes);
+      } finally {
+        Utility.close(in);
+      }
+      return bytes;
+    }
+
+    synchronized void setLocation(File file, long offset, int length) {
+      this.file = file;
+      this.offset = offset;
+      this.length = length;
+    }
+
+    private void logReadError(Throwable ex) {
+      if (logger.isLoggable(TreeLogger.TRACE)) {
+        logger.log(TreeLogger.TRACE, "Ignoring cached unit " + resourcePath + " in "
+            + file.getAbsolutePath() + " due to read error.", ex);
+      }
+    }
+  }
+
   /**
    * If there are more than this many files in the cache, clean up the old
    * files.
@@ -107,6 +296,12 @@ class PersistentUnitCache extends MemoryUnitCache {
   static final String UNIT_CACHE_PREFIX = "gwt-unitCache";
   static final String CACHE_FILE_PREFIX = UNIT_CACHE_PREFIX + "-";
 
+  /**
+   * Written at the start of every cache file, to recognize files in an older
+   * format.
+   */
+  static final int CACHE_FILE_MAGIC = 0x47555443;
+
   /**
    * Creates a new file with a name based on the current system time.
    */
@@ -162,24 +357,13 @@ class PersistentUnitCache extends MemoryUnitCache {
   private Future<Boolean> purgeTaskStatus;
   private AtomicBoolean purgeInProgress = new AtomicBoolean(false);
   
+  /**
+   * Runs once all old cache files have been compacted.
+   */
   private final Runnable purgeOldCacheFilesTask = new Runnable() {
     @Override
     public void run() {
       try {
-        // Delete all cache files in the directory except for the currently open
-        // file.
-        SpeedTracerLogger.Event deleteEvent = SpeedTracerLogger.start(DevModeEventType.DELETE_CACHE);
-        File[] filesToDelete = getCacheFiles(cacheDirectory);
-        logger.log(TreeLogger.TRACE, "Purging cache files from " + cacheDirectory);
-        for (File toDelete : filesToDelete) {
-          if (!currentCacheFile.equals(toDelete)) {
-            if (!toDelete.delete()) {
-              logger.log(TreeLogger.WARN, "Couldn't delete file: " + toDelete);
-            }
-          }
-        }
-        deleteEvent.end();
-        
         rotateCurrentCacheFile();
       } catch (UnableToCompleteException e) {
         backgroundService.shutdownNow();
@@ -242,7 +426,12 @@ class PersistentUnitCache extends MemoryUnitCache {
    * Current file and stream being written to.
    */
   private File currentCacheFile;
-  private ObjectOutputStream currentCacheFileStream;
+  private DataOutputStream currentCacheFileStream;
+
+  /**
+   * Counts the bytes written to {@link #currentCacheFile}.
+   */
+  private CountingOutputStream currentCacheFileCounter;
 
   private final TreeLogger logger;
 
@@ -298,7 +487,9 @@ class PersistentUnitCache extends MemoryUnitCache {
     try {
       fstream = new FileOutputStream(currentCacheFile);
       bstream = new BufferedOutputStream(fstream);
-      currentCacheFileStream = new ObjectOutputStream(bstream);
+      currentCacheFileCounter = new CountingOutputStream(bstream);
+      currentCacheFileStream = new DataOutputStream(currentCacheFileCounter);
+      currentCacheFileStream.writeInt(CACHE_FILE_MAGIC);
     } catch (IOException ex) {
       closeCurrentCacheFile(currentCacheFile, currentCacheFileStream);
       logger.log(TreeLogger.ERROR, "Error creating cache " + currentCacheFile
@@ -315,17 +506,18 @@ class PersistentUnitCache extends MemoryUnitCache {
   public void add(CompilationUnit newUnit) {
     awaitUnitCacheMapLoad();
     addedSinceLastCleanup++;
-    super.add(newUnit);
-    addImpl(unitMap.get(newUnit.getResourcePath()));
+    DiskUnitCacheEntry entry = new DiskUnitCacheEntry(newUnit);
+    addEntry(entry);
+    addImpl(entry);
   }
 
   /**
-   * Cleans up old cache files in the directory, migrating everything previously
-   * loaded in them to the current cache file.
+   * Cleans up old cache files in the directory, migrating the units still in
+   * use from them to the current cache file.
    * 
    * Normally, only newly compiled units are written to the current log, but
    * when it is time to cleanup, valid units from older log files need to be
-   * re-written.
+   * re-written. This is done one file at a time in the background thread.
    */
   @Override
   public void cleanup(TreeLogger logger) {
@@ -360,14 +552,17 @@ class PersistentUnitCache extends MemoryUnitCache {
       }
       
       /*
-       * Resend all units read in from the in-memory cache to the background
-       * thread. They will be re-written out and the old cache files removed.
+       * Have the background thread copy the live units out of each old cache
+       * file and remove it.
        */
-      synchronized (unitMap) {
-        for (UnitCacheEntry unitCacheEntry : unitMap.values()) {
-          if (unitCacheEntry.getOrigin() == UnitOrigin.PERSISTENT) {
-            addImpl(unitCacheEntry);
-          }
+      for (final File cacheFile : cacheFiles) {
+        if (!cacheFile.equals(currentCacheFile)) {
+          backgroundService.execute(new Runnable() {
+            @Override
+            public void run() {
+              compactCacheFile(cacheFile);
+            }
+          });
         }
       }
 
@@ -407,7 +602,9 @@ class PersistentUnitCache extends MemoryUnitCache {
     try {
       fstream = new FileOutputStream(currentCacheFile);
       bstream = new BufferedOutputStream(fstream);
-      currentCacheFileStream = new ObjectOutputStream(bstream);
+      currentCacheFileCounter = new CountingOutputStream(bstream);
+      currentCacheFileStream = new DataOutputStream(currentCacheFileCounter);
+      currentCacheFileStream.writeInt(CACHE_FILE_MAGIC);
     } catch (IOException ex) {
       // Close all 3 streams, not sure where the exception occurred.
       Utility.close(bstream);
@@ -434,17 +631,20 @@ class PersistentUnitCache extends MemoryUnitCache {
     }
   }
 
-  private void addImpl(final UnitCacheEntry entry) {
+  private void addImpl(final DiskUnitCacheEntry entry) {
     try {
       backgroundService.execute(new Runnable() {
         @Override
         public void run() {
           try {
-            assert entry.getOrigin() != UnitOrigin.ARCHIVE;
-            CompilationUnit unit = entry.getUnit();
-            assert unit != null;
-            currentCacheFileStream.writeObject(unit);
-            unitsWritten++;
+            CachedCompilationUnit unit = entry.getUnit().asCachedCompilationUnit();
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ObjectOutputStream out = new ObjectOutputStream(bytes);
+            out.writeObject(unit);
+            out.close();
+            byte[] serialized = bytes.toByteArray();
+            long offset = writeRecord(entry, unit.getTypesSerializedVersion(), serialized);
+            entry.setLocation(currentCacheFile, offset, serialized.length);
           } catch (IOException ex) {
             backgroundService.shutdownNow();
             if (logger.isLoggable(TreeLogger.TRACE)) {
@@ -476,7 +676,7 @@ class PersistentUnitCache extends MemoryUnitCache {
     }
   }
 
-  private void closeCurrentCacheFile(File openFile, ObjectOutputStream stream) {
+  private void closeCurrentCacheFile(File openFile, DataOutputStream stream) {
     Utility.close(stream);
     if (unitsWritten == 0) {
       // Remove useless empty file.
@@ -485,7 +685,71 @@ class PersistentUnitCache extends MemoryUnitCache {
   }
 
   /**
-   * Load everything cached on disk into memory.
+   * Copies the units still in use from <code>cacheFile</code> to the current
+   * cache file, and deletes it. Runs in the background thread.
+   */
+  private void compactCacheFile(File cacheFile) {
+    if (cacheFile.equals(currentCacheFile)) {
+      return;
+    }
+    Event deleteEvent = SpeedTracerLogger.start(DevModeEventType.DELETE_CACHE);
+    try {
+      // The map is concurrent, iterating it needs no lock.
+      List<DiskUnitCacheEntry> liveEntries = new ArrayList<DiskUnitCacheEntry>();
+      for (UnitCacheEntry entry : unitMap.values()) {
+        if (entry instanceof DiskUnitCacheEntry
+            && cacheFile.equals(((DiskUnitCacheEntry) entry).getFile())) {
+          liveEntries.add((DiskUnitCacheEntry) entry);
+        }
+      }
+      long[] offsets = new long[liveEntries.size()];
+      int[] lengths = new int[liveEntries.size()];
+      for (int i = 0; i < liveEntries.size(); i++) {
+        byte[] bytes;
+        try {
+          bytes = liveEntries.get(i).readBytes();
+        } catch (IOException ex) {
+          /*
+           * The file is about to be deleted, so drop the entry instead of
+           * leaving it pointing there; the unit will be recompiled.
+           */
+          removeEntry(liveEntries.get(i));
+          offsets[i] = -1;
+          if (logger.isLoggable(TreeLogger.TRACE)) {
+            logger.log(TreeLogger.TRACE, "Dropping unreadable cached unit "
+                + liveEntries.get(i).getResourcePath(), ex);
+          }
+          continue;
+        }
+        offsets[i] = writeRecord(liveEntries.get(i), GwtAstBuilder.getSerializationVersion(),
+            bytes);
+        lengths[i] = bytes.length;
+      }
+
+      // Units can only be read back from the current file once it's flushed.
+      currentCacheFileStream.flush();
+      for (int i = 0; i < liveEntries.size(); i++) {
+        if (offsets[i] >= 0) {
+          liveEntries.get(i).setLocation(currentCacheFile, offsets[i], lengths[i]);
+        }
+      }
+    } catch (IOException ex) {
+      backgroundService.shutdownNow();
+      if (logger.isLoggable(TreeLogger.TRACE)) {
+        logger.log(TreeLogger.TRACE, "Error compacting cache file " + cacheFile.getAbsolutePath(),
+            ex);
+      }
+      return;
+    } finally {
+      deleteEvent.end();
+    }
+    if (!cacheFile.delete()) {
+      logger.log(TreeLogger.WARN, "Couldn't delete file: " + cacheFile);
+    }
+  }
+
+  /**
+   * Load the record headers of everything cached on disk into memory.
    */
   private void loadUnitMap(TreeLogger logger, File currentCacheFile) {
     Event loadPersistentUnitEvent =
@@ -500,7 +764,7 @@ class PersistentUnitCache extends MemoryUnitCache {
         for (File cacheFile : files) {
           FileInputStream fis = null;
           BufferedInputStream bis = null;
-          ObjectInputStream inputStream = null;
+          DataInputStream inputStream = null;
           if (cacheFile.equals(currentCacheFile)) {
             continue;
           }
@@ -508,21 +772,26 @@ class PersistentUnitCache extends MemoryUnitCache {
           try {
             fis = new FileInputStream(cacheFile);
             bis = new BufferedInputStream(fis);
-            /*
-             * It is possible for the next call to throw an exception, leaving
-             * inputStream null and fis still live.
-             */
-            inputStream = new ObjectInputStream(bis);
+            CountingInputStream counter = new CountingInputStream(bis);
+            inputStream = new DataInputStream(counter);
+            if (inputStream.readInt() != CACHE_FILE_MAGIC) {
+              throw new IOException("Not a unit cache file");
+            }
             while (true) {
-              CachedCompilationUnit unit = (CachedCompilationUnit) inputStream.readObject();
-              if (unit == null) {
+              String resourcePath = inputStream.readUTF();
+              ContentId contentId = new ContentId(inputStream.readUTF());
+              long lastModified = inputStream.readLong();
+              long astVersion = inputStream.readLong();
+              int length = inputStream.readInt();
+              long offset = counter.getCount();
+              if (inputStream.skipBytes(length) < length) {
+                // Truncated record.
                 break;
               }
-              if (unit.getTypesSerializedVersion() != GwtAstBuilder.getSerializationVersion()) {
+              if (astVersion != GwtAstBuilder.getSerializationVersion()) {
                 continue;
               }
-              UnitCacheEntry entry = new UnitCacheEntry(unit, UnitOrigin.PERSISTENT);
-              UnitCacheEntry existingEntry = unitMap.get(unit.getResourcePath());
+              UnitCacheEntry existingEntry = unitMap.get(resourcePath);
               /*
                * Don't assume that an existing entry is stale - an entry might
                * have been loaded already from another source like a
@@ -531,14 +800,9 @@ class PersistentUnitCache extends MemoryUnitCache {
                * out to be stale, it will be recompiled and the updated unit
                * will win this test the next time the session starts.
                */
-              if (existingEntry != null
-                  && unit.getLastModified() >= existingEntry.getUnit().getLastModified()) {
-                super.remove(existingEntry.getUnit());
-                unitMap.put(unit.getResourcePath(), entry);
-                unitMapByContentId.put(unit.getContentId(), entry);
-              } else if (existingEntry == null) {
-                unitMap.put(unit.getResourcePath(), entry);
-                unitMapByContentId.put(unit.getContentId(), entry);
+              if (existingEntry == null || lastModified >= existingEntry.getLastModified()) {
+                addEntry(new DiskUnitCacheEntry(resourcePath, contentId, lastModified, cacheFile,
+                    offset, length));
               }
             }
           } catch (EOFException ex) {
@@ -549,12 +813,6 @@ class PersistentUnitCache extends MemoryUnitCache {
               logger.log(TreeLogger.TRACE, "Ignoring and deleting cache log "
                   + cacheFile.getAbsolutePath() + " due to read error.", ex);
             }
-          } catch (ClassNotFoundException ex) {
-            deleteCacheFile = true;
-            if (logger.isLoggable(TreeLogger.TRACE)) {
-              logger.log(TreeLogger.TRACE, "Ignoring and deleting cache log "
-                  + cacheFile.getAbsolutePath() + " due to deserialization error.", ex);
-            }
           } finally {
             Utility.close(inputStream);
             Utility.close(bis);
@@ -577,4 +835,23 @@ class PersistentUnitCache extends MemoryUnitCache {
       loadPersistentUnitEvent.end();
     }
   }
+
+  /**
+   * Appends a record for <code>entry</code> to the current cache file. Runs in
+   * the background thread.
+   * 
+   * @return the offset of the serialized unit in the current cache file
+   */
+  private long writeRecord(DiskUnitCacheEntry entry, long astVersion, byte[] bytes)
+      throws IOException {
+    currentCacheFileStream.writeUTF(entry.getResourcePath());
+    currentCacheFileStream.writeUTF(entry.getContentId().get());
+    currentCacheFileStream.writeLong(entry.getLastModified());
+    currentCacheFileStream.writeLong(astVersion);
+    currentCacheFileStream.writeInt(bytes.length);
+    long offset = currentCacheFileCounter.getCount();
+    currentCacheFileStream.write(bytes);
+    unitsWritten++;
+    return offset;
+  }
 }
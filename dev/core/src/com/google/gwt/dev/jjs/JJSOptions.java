@@ -22,8 +22,10 @@ import com.google.gwt.dev.util.arg.OptionEnableAssertions;
 import com.google.gwt.dev.util.arg.OptionEnableClosureCompiler;
 import com.google.gwt.dev.util.arg.OptionFragmentCount;
 import com.google.gwt.dev.util.arg.OptionFragmentsMerge;
+import com.google.gwt.dev.util.arg.OptionLeftoversBudget;
 import com.google.gwt.dev.util.arg.OptionOptimize;
 import com.google.gwt.dev.util.arg.OptionOptimizePrecompile;
+import com.google.gwt.dev.util.arg.OptionPermutationCacheDir;
 import com.google.gwt.dev.util.arg.OptionRunAsyncEnabled;
 import com.google.gwt.dev.util.arg.OptionScriptStyle;
 import com.google.gwt.dev.util.arg.OptionSoycDetailed;
@@ -38,6 +40,7 @@ public interface JJSOptions extends OptionOptimize, OptionAggressivelyOptimize,
     OptionDisableClassMetadata, OptionDisableCastChecking, OptionEnableAssertions,
     OptionRunAsyncEnabled, OptionScriptStyle, OptionSoycEnabled, OptionSoycDetailed,
     OptionOptimizePrecompile, OptionStrict, OptionSoycHtmlDisabled,
-    OptionEnableClosureCompiler, OptionFragmentsMerge, OptionFragmentCount {
+    OptionEnableClosureCompiler, OptionFragmentsMerge, OptionFragmentCount,
+    OptionLeftoversBudget, OptionPermutationCacheDir {
 
 }
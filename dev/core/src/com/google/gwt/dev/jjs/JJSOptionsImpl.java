@@ -17,6 +17,7 @@ package com.google.gwt.dev.jjs;
 
 import com.google.gwt.dev.util.arg.OptionOptimize;
 
+import java.io.File;
 import java.io.Serializable;
 
 /**
@@ -40,6 +41,8 @@ public class JJSOptionsImpl implements JJSOptions, Serializable {
   private boolean closureCompilerEnabled;
   private int fragmentCount = -1;
   private int fragmentsMerge = -1;
+  private int leftoversBudget = -1;
+  private File permutationCacheDir;
 
   public JJSOptionsImpl() {
   }
@@ -64,6 +67,8 @@ public class JJSOptionsImpl implements JJSOptions, Serializable {
     setClosureCompilerEnabled(other.isClosureCompilerEnabled());
     setFragmentsMerge(other.getFragmentsMerge());
     setFragmentCount(other.getFragmentCount());
+    setLeftoversBudget(other.getLeftoversBudget());
+    setPermutationCacheDir(other.getPermutationCacheDir());
   }
   
   @Override
@@ -76,11 +81,21 @@ public class JJSOptionsImpl implements JJSOptions, Serializable {
     return fragmentsMerge;
   }
   
+  @Override
+  public int getLeftoversBudget() {
+    return leftoversBudget;
+  }
+
   @Override
   public int getOptimizationLevel() {
     return optimizationLevel;
   }
 
+  @Override
+  public File getPermutationCacheDir() {
+    return permutationCacheDir;
+  }
+
   @Override
   public JsOutputOption getOutput() {
     return output;
@@ -190,11 +205,21 @@ public class JJSOptionsImpl implements JJSOptions, Serializable {
     this.fragmentsMerge = numFragments;
   }
 
+  @Override
+  public void setLeftoversBudget(int bytes) {
+    this.leftoversBudget = bytes;
+  }
+
   @Override
   public void setOptimizationLevel(int level) {
     optimizationLevel = level;
   }
 
+  @Override
+  public void setPermutationCacheDir(File dir) {
+    permutationCacheDir = dir;
+  }
+
   @Override
   public void setOptimizePrecompile(boolean optimize) {
     optimizePrecompile = optimize;
@@ -89,6 +89,7 @@ import com.google.gwt.dev.jjs.impl.LongEmulationNormalizer;
 import com.google.gwt.dev.jjs.impl.MakeCallsStatic;
 import com.google.gwt.dev.jjs.impl.MethodCallTightener;
 import com.google.gwt.dev.jjs.impl.MethodInliner;
+import com.google.gwt.dev.jjs.impl.MethodWorklist;
 import com.google.gwt.dev.jjs.impl.OptimizerStats;
 import com.google.gwt.dev.jjs.impl.PostOptimizationCompoundAssignmentNormalizer;
 import com.google.gwt.dev.jjs.impl.Pruner;
@@ -249,6 +250,13 @@ public class JavaToJavaScriptCompiler {
 
   private static final String ENUM_NAME_OBFUSCATION_PROPERTY = "compiler.enum.obfuscate.names";
 
+  /**
+   * Whether later iterations of the optimization loop only run per-method
+   * passes over methods affected by the previous iterations.
+   */
+  private static final boolean INCREMENTAL_OPTIMIZATION =
+      Boolean.getBoolean("gwt.jjs.incrementalOptimizer");
+
   /**
    * Compiles a particular permutation, based on a precompiled unified AST.
    *
@@ -391,11 +399,13 @@ public class JavaToJavaScriptCompiler {
           fragmentsMerge = options.getFragmentsMerge();
         }
         
+        int leftoversBudget = options.getLeftoversBudget();
+
         // Pick and choose which code splitter to use. Only use the experimental
         // one when the user explicitly decides the project needs fragment
         // merging.
-        if (fragmentsMerge > 0) {
-          CodeSplitter2.exec(logger, jprogram, jsProgram, jjsmap, fragmentsMerge,
+        if (fragmentsMerge > 0 || leftoversBudget > 0) {
+          CodeSplitter2.exec(logger, jprogram, jsProgram, jjsmap, fragmentsMerge, leftoversBudget,
               chooseDependencyRecorder(options.isSoycEnabled(), baos));
         } else {
           CodeSplitter.exec(logger, jprogram, jsProgram, jjsmap, chooseDependencyRecorder(options
@@ -648,6 +658,9 @@ public class JavaToJavaScriptCompiler {
         precompilationMetrics.setFinalTypeOracleTypes(finalTypeOracleTypes);
       }
 
+      // Hash the source before it's gone, so permutation results can be reused.
+      String inputHash = rpo.getCompilationState().getContentHash();
+
       // Free up memory.
       rpo.clear();
 
@@ -735,6 +748,7 @@ public class JavaToJavaScriptCompiler {
       Event createUnifiedAstEvent = SpeedTracerLogger.start(CompilerEventType.CREATE_UNIFIED_AST);
       UnifiedAst result =
           new UnifiedAst(options, new AST(jprogram, jsProgram), singlePermutation, rebindRequests);
+      result.setInputHash(inputHash);
       createUnifiedAstEvent.end();
       return result;
     } catch (Throwable e) {
@@ -763,6 +777,7 @@ public class JavaToJavaScriptCompiler {
     Event optimizeEvent = SpeedTracerLogger.start(CompilerEventType.OPTIMIZE);
 
     List<OptimizerStats> allOptimizerStats = new ArrayList<OptimizerStats>();
+    MethodWorklist worklist = INCREMENTAL_OPTIMIZATION ? new MethodWorklist(jprogram) : null;
     int counter = 0;
     int optimizationLevel = options.getOptimizationLevel();
     while (true) {
@@ -776,7 +791,7 @@ public class JavaToJavaScriptCompiler {
       }
       AstDumper.maybeDumpAST(jprogram);
       OptimizerStats stats =
-          optimizeLoop("Pass " + counter, jprogram, options.isAggressivelyOptimize());
+          optimizeLoop("Pass " + counter, jprogram, options.isAggressivelyOptimize(), worklist);
       allOptimizerStats.add(stats);
       if (!stats.didChange()) {
         break;
@@ -843,6 +858,16 @@ public class JavaToJavaScriptCompiler {
 
   protected static OptimizerStats optimizeLoop(String passName, JProgram jprogram,
       boolean isAggressivelyOptimize) {
+    return optimizeLoop(passName, jprogram, isAggressivelyOptimize, null);
+  }
+
+  /**
+   * Runs one iteration of the optimization loop. If <code>worklist</code> is
+   * not <code>null</code>, per-method passes only visit the methods it reports
+   * as affected by earlier modifications.
+   */
+  protected static OptimizerStats optimizeLoop(String passName, JProgram jprogram,
+      boolean isAggressivelyOptimize, MethodWorklist worklist) {
     Event optimizeEvent = SpeedTracerLogger.start(CompilerEventType.OPTIMIZE, "phase", "loop");
 
     // Count the number of nodes in the AST so we can measure the efficiency of
@@ -860,13 +885,13 @@ public class JavaToJavaScriptCompiler {
     OptimizerStats stats = new OptimizerStats(passName);
 
     // Remove unreferenced types, fields, methods, [params, locals]
-    stats.add(Pruner.exec(jprogram, true).recordVisits(numNodes));
+    stats.add(record(worklist, Pruner.exec(jprogram, true).recordVisits(numNodes)));
 
     // finalize locals, params, fields, methods, classes
-    stats.add(Finalizer.exec(jprogram).recordVisits(numNodes));
+    stats.add(record(worklist, Finalizer.exec(jprogram).recordVisits(numNodes)));
 
     // rewrite non-polymorphic calls as static calls; update all call sites
-    stats.add(MakeCallsStatic.exec(jprogram).recordVisits(numNodes));
+    stats.add(record(worklist, MakeCallsStatic.exec(jprogram).recordVisits(numNodes)));
 
     // type flow tightening
     // - fields, locals based on assignment
@@ -874,20 +899,33 @@ public class JavaToJavaScriptCompiler {
     // - method bodies based on return statements
     // - polymorphic methods based on return types of all implementors
     // - optimize casts and instance of
-    stats.add(TypeTightener.exec(jprogram).recordVisits(numNodes));
+    stats.add(record(worklist, TypeTightener.exec(jprogram).recordVisits(numNodes)));
 
     // tighten method call bindings
-    stats.add(MethodCallTightener.exec(jprogram).recordVisits(numNodes));
+    if (worklist == null) {
+      stats.add(MethodCallTightener.exec(jprogram).recordVisits(numNodes));
+    } else {
+      List<JMethod> methods = worklist.getMethodsFor(MethodCallTightener.NAME);
+      stats.add(record(worklist,
+          MethodCallTightener.exec(jprogram, methods).recordVisits(numNodes)));
+    }
 
     // dead code removal??
-    stats.add(DeadCodeElimination.exec(jprogram).recordVisits(numNodes));
+    if (worklist == null) {
+      stats.add(DeadCodeElimination.exec(jprogram).recordVisits(numNodes));
+    } else {
+      List<JMethod> methods = worklist.getMethodsFor(DeadCodeElimination.NAME);
+      stats.add(record(worklist,
+          DeadCodeElimination.exec(jprogram, methods).recordVisits(numNodes)));
+    }
 
     // inlining
-    stats.add(MethodInliner.exec(jprogram).recordVisits(numNodes));
+    stats.add(record(worklist, MethodInliner.exec(jprogram).recordVisits(numNodes)));
 
     if (isAggressivelyOptimize) {
       // remove same parameters value
-      stats.add(SameParameterValueOptimizer.exec(jprogram).recordVisits(numNodes));
+      stats.add(record(worklist,
+          SameParameterValueOptimizer.exec(jprogram).recordVisits(numNodes)));
 
       /*
        * Enum ordinalization.
@@ -895,7 +933,7 @@ public class JavaToJavaScriptCompiler {
        * TODO(jbrosenberg): graduate this out of the 'isAggressivelyOptimize'
        * block, over time.
        */
-      stats.add(EnumOrdinalizer.exec(jprogram).recordVisits(numNodes));
+      stats.add(record(worklist, EnumOrdinalizer.exec(jprogram).recordVisits(numNodes)));
     }
 
     // prove that any types that have been culled from the main tree are
@@ -905,6 +943,17 @@ public class JavaToJavaScriptCompiler {
     return stats;
   }
 
+  /**
+   * Records the modifications made by a pass in <code>worklist</code>, if
+   * there is one.
+   */
+  private static OptimizerStats record(MethodWorklist worklist, OptimizerStats stats) {
+    if (worklist != null) {
+      worklist.record(stats);
+    }
+    return stats;
+  }
+
   private static MultipleDependencyGraphRecorder chooseDependencyRecorder(boolean soycEnabled,
       OutputStream out) {
     MultipleDependencyGraphRecorder dependencyRecorder = CodeSplitter.NULL_RECORDER;
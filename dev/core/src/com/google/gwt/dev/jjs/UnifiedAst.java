@@ -23,9 +23,12 @@ import com.google.gwt.dev.Permutation;
 import com.google.gwt.dev.jjs.ast.JProgram;
 import com.google.gwt.dev.js.ast.JsProgram;
 import com.google.gwt.dev.util.DiskCache;
+import com.google.gwt.dev.util.StringInterner;
 import com.google.gwt.dev.util.Util;
+import com.google.gwt.util.tools.Utility;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
@@ -33,6 +36,8 @@ import java.util.Collections;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Represents a unified, non-permutation specific AST. This AST is used to drive
@@ -61,6 +66,34 @@ public class UnifiedAst implements Serializable {
     }
   }
 
+  /**
+   * Deserializes an AST, interning Strings and sharing source origins with
+   * every other AST deserialized through the same <code>sharedObjects</code>
+   * map.
+   */
+  private static class SharingObjectInputStream extends ObjectInputStream {
+    private final ConcurrentMap<Object, Object> sharedObjects;
+
+    public SharingObjectInputStream(InputStream in, ConcurrentMap<Object, Object> sharedObjects)
+        throws IOException {
+      super(in);
+      this.sharedObjects = sharedObjects;
+      enableResolveObject(true);
+    }
+
+    @Override
+    protected Object resolveObject(Object obj) {
+      if (obj instanceof String) {
+        return StringInterner.get().intern((String) obj);
+      }
+      if (obj instanceof SourceOrigin) {
+        Object shared = sharedObjects.putIfAbsent(obj, obj);
+        return shared == null ? obj : shared;
+      }
+      return obj;
+    }
+  }
+
   private static final DiskCache diskCache = DiskCache.INSTANCE;
 
   /**
@@ -69,6 +102,12 @@ public class UnifiedAst implements Serializable {
    */
   private transient AST initialAst;
 
+  /**
+   * A strong hash of the source the AST was built from, or <code>null</code>
+   * if unknown.
+   */
+  private String inputHash;
+
   /**
    * Metrics for the module load phase. Stored here so they can be written out
    * as artifacts in the compile phase.
@@ -101,6 +140,15 @@ public class UnifiedAst implements Serializable {
    */
   private transient long serializedAstToken;
 
+  /**
+   * Source origins shared by all the ASTs deserialized from
+   * {@link #serializedAstToken}. Only these and Strings are shared; every AST
+   * node is still copied per permutation, because the optimizers rewrite nodes
+   * in place.
+   */
+  private transient ConcurrentMap<Object, Object> sharedObjects =
+      new ConcurrentHashMap<Object, Object>();
+
   public UnifiedAst(JJSOptions options, AST initialAst, boolean singlePermutation,
       Set<String> rebindRequests) {
     this.options = new JJSOptionsImpl(options);
@@ -116,8 +164,10 @@ public class UnifiedAst implements Serializable {
     this.options = other.options;
     this.initialAst = other.initialAst;
     other.initialAst = null; // steal its copy
+    this.inputHash = other.inputHash;
     this.rebindRequests = other.rebindRequests;
     this.serializedAstToken = other.serializedAstToken;
+    this.sharedObjects = other.sharedObjects;
   }
 
   /**
@@ -146,14 +196,22 @@ public class UnifiedAst implements Serializable {
         AST result = initialAst;
         initialAst = null;
         return result;
-      } else {
-        if (serializedAstToken < 0) {
-          throw new IllegalStateException(
-              "No serialized AST was cached and AST was already consumed.");
-        }
-        return diskCache.readObject(serializedAstToken, AST.class);
+      } else if (serializedAstToken < 0) {
+        throw new IllegalStateException(
+            "No serialized AST was cached and AST was already consumed.");
       }
     }
+    // Deserialize outside the lock so that concurrent workers don't wait.
+    return readAst();
+  }
+
+  /**
+   * Returns a strong hash of the source the AST was built from, or
+   * <code>null</code> if unknown. Two ASTs with the same hash, compiled with
+   * the same options, produce the same permutation results.
+   */
+  public String getInputHash() {
+    return inputHash;
   }
 
   /**
@@ -191,11 +249,18 @@ public class UnifiedAst implements Serializable {
   public void prepare() {
     synchronized (myLockObject) {
       if (initialAst == null) {
-        initialAst = diskCache.readObject(serializedAstToken, AST.class);
+        initialAst = readAst();
       }
     }
   }
 
+  /**
+   * Save the hash of the source the AST was built from.
+   */
+  public void setInputHash(String inputHash) {
+    this.inputHash = inputHash;
+  }
+
   /**
    * Save some module load metrics in the AST.
    */
@@ -210,12 +275,30 @@ public class UnifiedAst implements Serializable {
     this.precompilationMetrics = metrics;
   }
 
+  /**
+   * Deserializes a new copy of the AST straight from the disk cache.
+   */
+  private AST readAst() {
+    ObjectInputStream in = null;
+    try {
+      in = new SharingObjectInputStream(diskCache.openStream(serializedAstToken), sharedObjects);
+      return AST.class.cast(in.readObject());
+    } catch (ClassNotFoundException e) {
+      throw new RuntimeException("Unexpected exception deserializing AST", e);
+    } catch (IOException e) {
+      throw new RuntimeException("Unexpected exception deserializing AST", e);
+    } finally {
+      Utility.close(in);
+    }
+  }
+
   /**
    * Re-initialize lock object; copy serialized AST straight to cache.
    */
   private void readObject(ObjectInputStream stream) throws IOException, ClassNotFoundException {
     stream.defaultReadObject();
     myLockObject = new Object();
+    sharedObjects = new ConcurrentHashMap<Object, Object>();
     serializedAstToken = diskCache.transferFromStream(stream);
   }
 
@@ -569,6 +569,19 @@ public class JTypeOracle implements Serializable {
     return instantiatedTypes;
   }
 
+  /**
+   * Eagerly computes the polymorphic method map of every class in the program,
+   * so that {@link #getPolyMethod(JClassType, String)} only reads shared state
+   * until the next call to {@link #setInstantiatedTypes(Set)}.
+   */
+  public void computePolyMaps() {
+    for (JDeclaredType type : program.getDeclaredTypes()) {
+      if (type instanceof JClassType) {
+        getOrCreatePolyMap((JClassType) type);
+      }
+    }
+  }
+
   public JMethod getPolyMethod(JClassType type, String signature) {
     return getOrCreatePolyMap(type).get(signature);
   }
@@ -43,12 +43,16 @@ import com.google.gwt.dev.jjs.impl.CodeSplitter.MultipleDependencyGraphRecorder;
 import com.google.gwt.dev.jjs.impl.FragmentExtractor.CfaLivenessPredicate;
 import com.google.gwt.dev.jjs.impl.FragmentExtractor.LivenessPredicate;
 import com.google.gwt.dev.jjs.impl.FragmentExtractor.NothingAlivePredicate;
+import com.google.gwt.dev.js.JsSourceGenerationVisitor;
+import com.google.gwt.dev.js.JsSourceGenerationVisitorWithSizeBreakdown;
 import com.google.gwt.dev.js.ast.JsBlock;
 import com.google.gwt.dev.js.ast.JsContext;
 import com.google.gwt.dev.js.ast.JsModVisitor;
+import com.google.gwt.dev.js.ast.JsName;
 import com.google.gwt.dev.js.ast.JsNumericEntry;
 import com.google.gwt.dev.js.ast.JsProgram;
 import com.google.gwt.dev.js.ast.JsStatement;
+import com.google.gwt.dev.util.DefaultTextOutput;
 import com.google.gwt.dev.util.JsniRef;
 import com.google.gwt.dev.util.collect.HashMap;
 import com.google.gwt.dev.util.collect.Lists;
@@ -164,6 +168,27 @@ public class CodeSplitter2 {
      * together.
      */
     EDGE_GREEDY,
+
+    /**
+     * Greedily merge the split points whose shared code would otherwise make
+     * the leftover fragment the largest, weighted by the estimated size of the
+     * code, until the leftover fragment fits within a byte budget.
+     */
+    SIZE_BALANCED,
+  }
+
+  /**
+   * An atom that is not part of the initial download, along with its estimated
+   * size and the split points it is live in.
+   */
+  private static class SizedAtom {
+    public final int size;
+    public final BitSet splitPoints;
+
+    public SizedAtom(BitSet splitPoints, int size) {
+      this.splitPoints = splitPoints;
+      this.size = size;
+    }
   }
 
   /**
@@ -298,13 +323,26 @@ public class CodeSplitter2 {
   public static void exec(TreeLogger logger, JProgram jprogram, JsProgram jsprogram,
       JavaToJavaScriptMap map, int fragmentsToMerge,
       MultipleDependencyGraphRecorder dependencyRecorder) {
+    exec(logger, jprogram, jsprogram, map, fragmentsToMerge, -1, dependencyRecorder);
+  }
+
+  /**
+   * Splits the program. If <code>leftoversBudget</code> is positive, split
+   * points are merged using {@link ParitionHeuristics#SIZE_BALANCED} until the
+   * estimated size of the leftover fragment is at most that many bytes, or
+   * until <code>fragmentsToMerge</code> merges have been made if that is also
+   * positive.
+   */
+  public static void exec(TreeLogger logger, JProgram jprogram, JsProgram jsprogram,
+      JavaToJavaScriptMap map, int fragmentsToMerge, int leftoversBudget,
+      MultipleDependencyGraphRecorder dependencyRecorder) {
     if (jprogram.getRunAsyncs().size() == 0) {
       // Don't do anything if there is no call to runAsync
       return;
     }
     Event codeSplitterEvent = SpeedTracerLogger.start(CompilerEventType.CODE_SPLITTER);
-    new CodeSplitter2(
-        logger, jprogram, jsprogram, map, fragmentsToMerge, dependencyRecorder).execImpl();
+    new CodeSplitter2(logger, jprogram, jsprogram, map, fragmentsToMerge, leftoversBudget,
+        dependencyRecorder).execImpl();
     codeSplitterEvent.end();
   }
   
@@ -435,6 +473,14 @@ public class CodeSplitter2 {
     return map;
   }
   
+  private static void addSharedSize(BitSet fragments, int size, long[][] matrix) {
+    for (int i = fragments.nextSetBit(0); i >= 0; i = fragments.nextSetBit(i + 1)) {
+      for (int j = fragments.nextSetBit(i + 1); j >= 0; j = fragments.nextSetBit(j + 1)) {
+        matrix[i][j] += size;
+      }
+    }
+  }
+
   private static <T> void countShardedAtomsOfType(Map<T, BitSet> livenessMap, int[][] matrix) {
     // Count the number of atoms shared only by 
     for (Entry<T, BitSet> fieldLiveness : livenessMap.entrySet()) {
@@ -640,7 +686,17 @@ public class CodeSplitter2 {
 
   private final JsProgram jsprogram;
 
+  /**
+   * The target size in bytes of the leftover fragment, or a non-positive
+   * number to merge split points without regard to size.
+   */
+  private final int leftoversBudget;
+
   private final LiveSplitPointMap liveness = new LiveSplitPointMap();
+
+  private final TreeLogger logger;
+
+  private final JavaToJavaScriptMap map;
   
   private final Set<JMethod> methodsInJavaScript;
   
@@ -666,11 +722,14 @@ public class CodeSplitter2 {
   private final int[] splitPointToFragmentMap;
 
   private CodeSplitter2(TreeLogger logger, JProgram jprogram, JsProgram jsprogram,
-      JavaToJavaScriptMap map, int splitPointsMerge,
+      JavaToJavaScriptMap map, int splitPointsMerge, int leftoversBudget,
       MultipleDependencyGraphRecorder dependencyRecorder) {
+    this.logger = logger;
     this.jprogram = jprogram;
     this.jsprogram = jsprogram;
+    this.map = map;
     this.splitPointsMerge = splitPointsMerge;
+    this.leftoversBudget = leftoversBudget;
     this.fragmentExtractor = new FragmentExtractor(jprogram, jsprogram, map);
     this.initialLoadSequence = new LinkedHashSet<Integer>(jprogram.getSplitPointInitialSequence());
     
@@ -714,6 +773,22 @@ public class CodeSplitter2 {
     fragmentStats.put(splitPoint, stats);
   }
   
+  /**
+   * Adds an entry to <code>atoms</code> for every atom in
+   * <code>livenessMap</code> that is not loaded by the initial download or by
+   * the initial load sequence.
+   */
+  private <T> void collectSizedAtoms(Map<T, BitSet> livenessMap, Map<JNode, Integer> atomSizes,
+      List<SizedAtom> atoms) {
+    for (Entry<T, BitSet> atomLiveness : livenessMap.entrySet()) {
+      BitSet liveSplitPoints = atomLiveness.getValue();
+      if (liveSplitPoints.get(0) || isLiveInInitialSequence(liveSplitPoints)) {
+        continue;
+      }
+      atoms.add(new SizedAtom(liveSplitPoints, estimateSize(atomLiveness.getKey(), atomSizes)));
+    }
+  }
+
   private ControlFlowAnalyzer computeAllButNCfas(
       ControlFlowAnalyzer liveAfterInitialSequence, List<Integer> sp) {
     List<ControlFlowAnalyzer> allButOnes = new ArrayList<ControlFlowAnalyzer>();
@@ -751,6 +826,35 @@ public class CodeSplitter2 {
      return cfa;
    }
 
+  /**
+   * Measures how many characters of JavaScript are generated for each method,
+   * type and field, using the same breakdown as the compile report. Names have
+   * not been obfuscated yet, so the sizes are only estimates of the final
+   * output, but they are good enough to compare split points with each other.
+   */
+  private Map<JNode, Integer> computeAtomSizes() {
+    DefaultTextOutput out = new DefaultTextOutput(true);
+    JsSourceGenerationVisitorWithSizeBreakdown v =
+        new JsSourceGenerationVisitorWithSizeBreakdown(out, map);
+    v.accept(jsprogram.getFragmentBlock(0));
+
+    Map<JNode, Integer> atomSizes = new HashMap<JNode, Integer>();
+    for (Entry<JsName, Integer> entry : v.getSizeBreakdown().getSizeMap().entrySet()) {
+      JsName name = entry.getKey();
+      JNode atom = map.nameToMethod(name);
+      if (atom == null) {
+        atom = map.nameToType(name);
+      }
+      if (atom == null) {
+        atom = map.nameToField(name);
+      }
+      if (atom != null) {
+        atomSizes.put(atom, entry.getValue());
+      }
+    }
+    return atomSizes;
+  }
+
   /**
    * Compute a CFA that covers the entire live code of the program.
    */
@@ -769,6 +873,20 @@ public class CodeSplitter2 {
     return cfa;
   }
   
+  /**
+   * Returns the estimated size of <code>atom</code>. Every atom counts for at
+   * least one byte, so that atoms without generated code of their own are
+   * still weighted like they are by {@link ParitionHeuristics#EDGE_GREEDY}.
+   */
+  private int estimateSize(Object atom, Map<JNode, Integer> atomSizes) {
+    if (atom instanceof String) {
+      // The literal plus its quotes.
+      return ((String) atom).length() + 2;
+    }
+    Integer size = atomSizes.get(atom);
+    return size == null ? 1 : Math.max(1, size);
+  }
+
   /**
    * This is the high level algorithm of the pass.
    */
@@ -808,6 +926,10 @@ public class CodeSplitter2 {
     
     // Step #7: Replaces the splitpoint number with the new fragment number.
     replaceFragmentId();
+
+    if (leftoversBudget > 0) {
+      logFragmentSizes();
+    }
   }
 
   /**
@@ -1051,13 +1173,69 @@ public class CodeSplitter2 {
     return initialLoadSequence.contains(entry);
   }
 
+  private boolean isLiveInInitialSequence(BitSet liveSplitPoints) {
+    for (int sp : initialLoadSequence) {
+      if (liveSplitPoints.get(sp)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Logs the size of every fragment, which shows how well the leftover
+   * fragment was kept within its budget.
+   */
+  private void logFragmentSizes() {
+    if (!logger.isLoggable(TreeLogger.INFO)) {
+      return;
+    }
+    TreeLogger branch = logger.branch(TreeLogger.INFO,
+        "Fragment sizes before obfuscation (leftovers budget " + leftoversBudget + " bytes)");
+    int numFragments = jsprogram.getFragmentCount();
+    for (int i = 0; i < numFragments; i++) {
+      DefaultTextOutput out = new DefaultTextOutput(true);
+      new JsSourceGenerationVisitor(out).accept(jsprogram.getFragmentBlock(i));
+
+      String contents;
+      if (i == 0) {
+        contents = "initial download";
+      } else if (i == numFragments - 1) {
+        contents = "leftovers";
+      } else {
+        List<Integer> splitPoints = new ArrayList<Integer>();
+        for (int sp = 1; sp < splitPointToCodeIndexMap.length; sp++) {
+          if (splitPointToCodeIndexMap[sp] == i) {
+            splitPoints.add(sp);
+          }
+        }
+        contents = "split points " + splitPoints;
+      }
+      branch.log(TreeLogger.INFO, "Fragment " + i + " (" + contents + "): "
+          + out.getPosition() + " bytes");
+    }
+  }
+
+  /**
+   * Merges the fragment <code>from</code> into the fragment <code>to</code>,
+   * where <code>to</code> has the lower index.
+   */
+  private void mergeFragments(int to, int from) {
+    for (int i = 1; i < splitPointToFragmentMap.length; i++) {
+      if (splitPointToFragmentMap[i] == from) {
+        splitPointToFragmentMap[i] = to;
+      }
+    }
+  }
+
   /**
    * We haves pinned down that fragment partition is an NP-Complete problem that maps right to
    * weight graph partitioning.
    */
   private void partitionFragments() {
-    // TODO(acleung): Currently this only use the Edge Greedy heuristics.
-    if (true) {
+    if (leftoversBudget > 0) {
+      partitionFragmentUsingSizeBalance();
+    } else {
       partitionFragmentUsingEdgeGreedy();
     }
   }
@@ -1112,6 +1290,91 @@ public class CodeSplitter2 {
     }
   }
 
+  /**
+   * Partition based on the estimated size of the code shared between split
+   * points. Code that is live in more than one fragment goes into the leftover
+   * fragment, which has to be downloaded before any of them can run. While the
+   * leftover fragment is over budget, merge the two fragments that take the
+   * most code out of it for the least code added to the merged fragment.
+   * Merging a pair only takes out code that is shared by no other fragment, so
+   * only the code shared by the fewest fragments is counted each round.
+   */
+  private void partitionFragmentUsingSizeBalance() {
+    Map<JNode, Integer> atomSizes = computeAtomSizes();
+    List<SizedAtom> atoms = new ArrayList<SizedAtom>();
+    collectSizedAtoms(liveness.fields, atomSizes, atoms);
+    collectSizedAtoms(liveness.methods, atomSizes, atoms);
+    collectSizedAtoms(liveness.strings, atomSizes, atoms);
+    collectSizedAtoms(liveness.types, atomSizes, atoms);
+
+    int numSplitPoints = splitPointToFragmentMap.length;
+    TreeLogger branch = logger.branch(TreeLogger.DEBUG,
+        "Merging split points until the leftover fragment is at most " + leftoversBudget
+            + " bytes");
+    for (int merges = 0; splitPointsMerge <= 0 || merges < splitPointsMerge; merges++) {
+      long[] fragmentSizes = new long[numSplitPoints];
+      long leftoversSize = 0;
+      List<BitSet> sharedFragments = new ArrayList<BitSet>();
+      List<SizedAtom> sharedAtoms = new ArrayList<SizedAtom>();
+      int minSharing = Integer.MAX_VALUE;
+      for (SizedAtom atom : atoms) {
+        BitSet fragments = new BitSet();
+        for (int sp = atom.splitPoints.nextSetBit(0); sp >= 0;
+            sp = atom.splitPoints.nextSetBit(sp + 1)) {
+          fragments.set(splitPointToFragmentMap[sp]);
+        }
+        int sharing = fragments.cardinality();
+        if (sharing == 1) {
+          fragmentSizes[fragments.nextSetBit(0)] += atom.size;
+        } else {
+          leftoversSize += atom.size;
+          sharedFragments.add(fragments);
+          sharedAtoms.add(atom);
+          minSharing = Math.min(minSharing, sharing);
+        }
+      }
+
+      branch.log(TreeLogger.DEBUG, "Estimated leftover fragment size: " + leftoversSize);
+      if (leftoversSize <= leftoversBudget) {
+        break;
+      }
+
+      // An edge from a to b with weight x implies fragments a and b, and no
+      // more than minSharing - 2 others, share x bytes.
+      long[][] matrix = new long[numSplitPoints][numSplitPoints];
+      for (int i = 0; i < sharedAtoms.size(); i++) {
+        if (sharedFragments.get(i).cardinality() == minSharing) {
+          addSharedSize(sharedFragments.get(i), sharedAtoms.get(i).size, matrix);
+        }
+      }
+
+      int bestI = 0, bestJ = 0;
+      double bestRatio = 0;
+      for (int i = 1; i < numSplitPoints; i++) {
+        for (int j = i + 1; j < numSplitPoints; j++) {
+          if (matrix[i][j] == 0) {
+            continue;
+          }
+          double ratio = (double) matrix[i][j]
+              / (fragmentSizes[i] + fragmentSizes[j] + matrix[i][j]);
+          if (ratio > bestRatio) {
+            bestI = i;
+            bestJ = j;
+            bestRatio = ratio;
+          }
+        }
+      }
+
+      if (bestRatio == 0) {
+        branch.log(TreeLogger.DEBUG, "No more split points share code; stopping");
+        break;
+      }
+      branch.log(TreeLogger.DEBUG, "Merging fragments " + bestI + " and " + bestJ + ", which share "
+          + matrix[bestI][bestJ] + " bytes");
+      mergeFragments(bestI, bestJ);
+    }
+  }
+
   private void replaceFragmentId() {
     (new JsModVisitor() {
       @Override
@@ -27,6 +27,7 @@ import com.google.gwt.dev.jjs.ast.JCastOperation;
 import com.google.gwt.dev.jjs.ast.JCharLiteral;
 import com.google.gwt.dev.jjs.ast.JClassType;
 import com.google.gwt.dev.jjs.ast.JConditional;
+import com.google.gwt.dev.jjs.ast.JConstructor;
 import com.google.gwt.dev.jjs.ast.JContinueStatement;
 import com.google.gwt.dev.jjs.ast.JDeclarationStatement;
 import com.google.gwt.dev.jjs.ast.JDeclaredType;
@@ -34,6 +35,7 @@ import com.google.gwt.dev.jjs.ast.JDoStatement;
 import com.google.gwt.dev.jjs.ast.JDoubleLiteral;
 import com.google.gwt.dev.jjs.ast.JExpression;
 import com.google.gwt.dev.jjs.ast.JExpressionStatement;
+import com.google.gwt.dev.jjs.ast.JField;
 import com.google.gwt.dev.jjs.ast.JFieldRef;
 import com.google.gwt.dev.jjs.ast.JForStatement;
 import com.google.gwt.dev.jjs.ast.JIfStatement;
@@ -60,6 +62,7 @@ import com.google.gwt.dev.jjs.ast.JTryStatement;
 import com.google.gwt.dev.jjs.ast.JType;
 import com.google.gwt.dev.jjs.ast.JUnaryOperator;
 import com.google.gwt.dev.jjs.ast.JValueLiteral;
+import com.google.gwt.dev.jjs.ast.JVariable;
 import com.google.gwt.dev.jjs.ast.JVariableRef;
 import com.google.gwt.dev.jjs.ast.JVisitor;
 import com.google.gwt.dev.jjs.ast.JWhileStatement;
@@ -499,7 +502,7 @@ public class DeadCodeElimination {
        * / it has no side effects.
        */
       if (ignoringExpressionOutput.contains(x)) {
-        if (!x.getTarget().isEmpty()) {
+        if (!isEmptyConstructor(x.getTarget())) {
           return;
         }
         JMultiExpression multi = new JMultiExpression(x.getSourceInfo());
@@ -1563,7 +1566,7 @@ public class DeadCodeElimination {
 
     private JLiteral tryGetConstant(JVariableRef x) {
       if (!lvalues.contains(x)) {
-        JLiteral lit = x.getTarget().getConstInitializer();
+        JLiteral lit = getConstInitializer(x.getTarget());
         if (lit != null) {
           /*
            * Upcast the initializer so that the semantics of any arithmetic on
@@ -1790,6 +1793,27 @@ public class DeadCodeElimination {
     return new DeadCodeElimination(program).execImpl(node);
   }
 
+  /**
+   * Runs dead code elimination over <code>methods</code> only.
+   */
+  public static OptimizerStats exec(JProgram program, List<JMethod> methods) {
+    return new DeadCodeElimination(program).execImpl(methods);
+  }
+
+  /**
+   * The constructors that were empty when a sharded pass started, or
+   * <code>null</code> if the pass is not sharded. Shards may empty constructors
+   * concurrently, so they consult this snapshot instead.
+   */
+  private Set<JConstructor> emptyConstructors;
+
+  /**
+   * The constant initializers of final fields when a sharded pass started, or
+   * <code>null</code> if the pass is not sharded. Field initializers live in
+   * the bodies of other methods, which shards may rewrite concurrently.
+   */
+  private Map<JField, JLiteral> fieldConstants;
+
   private final JProgram program;
 
   private final Map<JType, Class<?>> typeClassMap = new IdentityHashMap<JType, Class<?>>();
@@ -1809,6 +1833,9 @@ public class DeadCodeElimination {
   }
 
   private OptimizerStats execImpl(JNode node) {
+    if (node == program) {
+      return execImpl(ShardedMethodOptimizer.collectMethods(program));
+    }
     OptimizerStats stats = new OptimizerStats(NAME);
     Event optimizeEvent = SpeedTracerLogger.start(CompilerEventType.OPTIMIZE, "optimizer", NAME);
 
@@ -1818,4 +1845,50 @@ public class DeadCodeElimination {
     optimizeEvent.end("didChange", "" + stats.didChange());
     return stats;
   }
+
+  private OptimizerStats execImpl(List<JMethod> methods) {
+    OptimizerStats stats = new OptimizerStats(NAME);
+    Event optimizeEvent = SpeedTracerLogger.start(CompilerEventType.OPTIMIZE, "optimizer", NAME);
+
+    // Every rewrite is local to the method being visited, so shard by method.
+    if (ShardedMethodOptimizer.isEnabled()) {
+      emptyConstructors = new HashSet<JConstructor>();
+      for (JMethod method : ShardedMethodOptimizer.collectMethods(program)) {
+        if (method instanceof JConstructor && ((JConstructor) method).isEmpty()) {
+          emptyConstructors.add((JConstructor) method);
+        }
+      }
+      fieldConstants = new IdentityHashMap<JField, JLiteral>();
+      for (JDeclaredType type : program.getDeclaredTypes()) {
+        for (JField field : type.getFields()) {
+          JLiteral literal = field.getConstInitializer();
+          if (literal != null) {
+            fieldConstants.put(field, literal);
+          }
+        }
+      }
+    }
+    ShardedMethodOptimizer.exec(methods, new ShardedMethodOptimizer.VisitorFactory() {
+      @Override
+      public JModVisitor create() {
+        return new DeadCodeVisitor();
+      }
+    }, stats);
+    optimizeEvent.end("didChange", "" + stats.didChange());
+    return stats;
+  }
+
+  private JLiteral getConstInitializer(JVariable variable) {
+    if (fieldConstants != null && variable instanceof JField) {
+      return fieldConstants.get(variable);
+    }
+    return variable.getConstInitializer();
+  }
+
+  private boolean isEmptyConstructor(JConstructor constructor) {
+    if (emptyConstructors != null) {
+      return emptyConstructors.contains(constructor);
+    }
+    return constructor.isEmpty();
+  }
 }
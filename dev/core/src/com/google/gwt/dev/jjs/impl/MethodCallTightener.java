@@ -28,6 +28,8 @@ import com.google.gwt.dev.util.log.speedtracer.CompilerEventType;
 import com.google.gwt.dev.util.log.speedtracer.SpeedTracerLogger;
 import com.google.gwt.dev.util.log.speedtracer.SpeedTracerLogger.Event;
 
+import java.util.List;
+
 /**
  * Update polymorphic method calls to tighter bindings based on the type of the
  * qualifier. For a given polymorphic method call to a non-final target, see if
@@ -110,8 +112,15 @@ public class MethodCallTightener {
   public static final String NAME = MethodCallTightener.class.getSimpleName();
 
   public static OptimizerStats exec(JProgram program) {
+    return exec(program, ShardedMethodOptimizer.collectMethods(program));
+  }
+
+  /**
+   * Tightens method calls in <code>methods</code> only.
+   */
+  public static OptimizerStats exec(JProgram program, List<JMethod> methods) {
     Event optimizeEvent = SpeedTracerLogger.start(CompilerEventType.OPTIMIZE, "optimizer", NAME);
-    OptimizerStats stats = new MethodCallTightener(program).execImpl();
+    OptimizerStats stats = new MethodCallTightener(program).execImpl(methods);
     optimizeEvent.end("didChange", "" + stats.didChange());
     return stats;
   }
@@ -122,9 +131,18 @@ public class MethodCallTightener {
     this.program = program;
   }
 
-  private OptimizerStats execImpl() {
-    MethodCallTighteningVisitor tightener = new MethodCallTighteningVisitor();
-    tightener.accept(program);
-    return new OptimizerStats(NAME).recordModified(tightener.getNumMods());
+  private OptimizerStats execImpl(List<JMethod> methods) {
+    OptimizerStats stats = new OptimizerStats(NAME);
+    if (ShardedMethodOptimizer.isEnabled()) {
+      // Poly maps are built lazily; build them up front so shards only read.
+      program.typeOracle.computePolyMaps();
+    }
+    ShardedMethodOptimizer.exec(methods, new ShardedMethodOptimizer.VisitorFactory() {
+      @Override
+      public JModVisitor create() {
+        return new MethodCallTighteningVisitor();
+      }
+    }, stats);
+    return stats;
   }
-}
\ No newline at end of file
+}
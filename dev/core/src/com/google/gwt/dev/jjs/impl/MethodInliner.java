@@ -520,6 +520,7 @@ public class MethodInliner {
       InliningVisitor inliner = new InliningVisitor();
       inliner.accept(program);
       stats.recordModified(inliner.getNumMods());
+      stats.recordModifiedMethods(inliner.modifiedMethods);
       if (!inliner.didChange()) {
         break;
       }
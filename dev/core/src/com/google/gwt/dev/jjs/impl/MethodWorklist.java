@@ -0,0 +1,227 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev.jjs.impl;
+
+import com.google.gwt.dev.jjs.ast.Context;
+import com.google.gwt.dev.jjs.ast.JDeclarationStatement;
+import com.google.gwt.dev.jjs.ast.JField;
+import com.google.gwt.dev.jjs.ast.JFieldRef;
+import com.google.gwt.dev.jjs.ast.JMethod;
+import com.google.gwt.dev.jjs.ast.JMethodCall;
+import com.google.gwt.dev.jjs.ast.JProgram;
+import com.google.gwt.dev.jjs.ast.JVisitor;
+import com.google.gwt.dev.jjs.ast.js.JsniFieldRef;
+import com.google.gwt.dev.jjs.ast.js.JsniMethodRef;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Tracks which methods were modified by the passes of the optimization loop,
+ * so that per-method passes only revisit the methods that changed since they
+ * last ran, plus the methods that call, are called by, or read fields
+ * initialized by those methods.
+ *
+ * Passes that do not record the methods they modify (see
+ * {@link OptimizerStats#recordModifiedMethods(java.util.Collection)}) make
+ * every method dirty again whenever they change the AST.
+ */
+public class MethodWorklist {
+
+  /**
+   * Records the call and field initialization edges of the visited methods.
+   */
+  private class EdgeRecorder extends JVisitor {
+    private JMethod currentMethod;
+
+    @Override
+    public void endVisit(JFieldRef x, Context ctx) {
+      addFieldRead(x.getField());
+    }
+
+    @Override
+    public void endVisit(JMethod x, Context ctx) {
+      currentMethod = null;
+    }
+
+    @Override
+    public void endVisit(JMethodCall x, Context ctx) {
+      addCall(x.getTarget());
+    }
+
+    @Override
+    public void endVisit(JsniFieldRef x, Context ctx) {
+      addFieldRead(x.getField());
+    }
+
+    @Override
+    public void endVisit(JsniMethodRef x, Context ctx) {
+      addCall(x.getTarget());
+    }
+
+    @Override
+    public boolean visit(JDeclarationStatement x, Context ctx) {
+      if (currentMethod != null && x.getVariableRef() instanceof JFieldRef) {
+        add(initializersByField, ((JFieldRef) x.getVariableRef()).getField(), currentMethod);
+      }
+      return true;
+    }
+
+    @Override
+    public boolean visit(JMethod x, Context ctx) {
+      currentMethod = x;
+      return true;
+    }
+
+    private void addCall(JMethod target) {
+      if (currentMethod != null) {
+        add(calleesByCaller, currentMethod, target);
+        add(callersByCallee, target, currentMethod);
+      }
+    }
+
+    private void addFieldRead(JField field) {
+      if (currentMethod != null) {
+        add(readersByField, field, currentMethod);
+      }
+    }
+  }
+
+  private static <K, V> void add(Map<K, Set<V>> map, K key, V value) {
+    Set<V> values = map.get(key);
+    if (values == null) {
+      values = new HashSet<V>();
+      map.put(key, values);
+    }
+    values.add(value);
+  }
+
+  private static <K, V> Set<V> get(Map<K, Set<V>> map, K key) {
+    Set<V> values = map.get(key);
+    return values == null ? Collections.<V> emptySet() : values;
+  }
+
+  private final Map<JMethod, Set<JMethod>> calleesByCaller = new HashMap<JMethod, Set<JMethod>>();
+
+  private final Map<JMethod, Set<JMethod>> callersByCallee = new HashMap<JMethod, Set<JMethod>>();
+
+  /**
+   * Whether the edge maps need a full rebuild before they can be used.
+   */
+  private boolean edgesStale = true;
+
+  private final Map<JField, Set<JMethod>> initializersByField = new HashMap<JField, Set<JMethod>>();
+
+  /**
+   * Methods modified since each pass last ran, keyed by pass name. A
+   * <code>null</code> value means every method must be revisited.
+   */
+  private final Map<String, Set<JMethod>> pendingByPass = new HashMap<String, Set<JMethod>>();
+
+  private final JProgram program;
+
+  private final Map<JField, Set<JMethod>> readersByField = new HashMap<JField, Set<JMethod>>();
+
+  public MethodWorklist(JProgram program) {
+    this.program = program;
+  }
+
+  /**
+   * Returns the methods the pass named <code>passName</code> must visit, and
+   * marks them as visited for that pass.
+   */
+  public List<JMethod> getMethodsFor(String passName) {
+    List<JMethod> liveMethods = ShardedMethodOptimizer.collectMethods(program);
+    if (!pendingByPass.containsKey(passName) || pendingByPass.get(passName) == null) {
+      pendingByPass.put(passName, new HashSet<JMethod>());
+      return liveMethods;
+    }
+
+    Set<JMethod> pending = pendingByPass.put(passName, new HashSet<JMethod>());
+    if (pending.isEmpty()) {
+      return Collections.emptyList();
+    }
+    if (edgesStale) {
+      rebuildEdges(liveMethods);
+    }
+    Set<JMethod> affected = new HashSet<JMethod>(pending);
+    for (JMethod method : pending) {
+      affected.addAll(get(callersByCallee, method));
+      affected.addAll(get(calleesByCaller, method));
+    }
+    for (Map.Entry<JField, Set<JMethod>> entry : initializersByField.entrySet()) {
+      if (!Collections.disjoint(entry.getValue(), pending)) {
+        affected.addAll(get(readersByField, entry.getKey()));
+      }
+    }
+
+    // Keep program order, and drop methods that have been pruned.
+    List<JMethod> result = new ArrayList<JMethod>();
+    for (JMethod method : liveMethods) {
+      if (affected.contains(method)) {
+        result.add(method);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Records the modifications made by a pass that just ran.
+   */
+  public void record(OptimizerStats stats) {
+    if (!stats.didChange()) {
+      return;
+    }
+    Set<JMethod> modified = stats.getModifiedMethods();
+    if (modified == null) {
+      // Don't know what changed, everything must be revisited.
+      for (String passName : pendingByPass.keySet()) {
+        pendingByPass.put(passName, null);
+      }
+      edgesStale = true;
+      return;
+    }
+    for (Set<JMethod> pending : pendingByPass.values()) {
+      if (pending != null) {
+        pending.addAll(modified);
+      }
+    }
+    if (!edgesStale) {
+      // Modified methods may have gained new edges; stale edges are harmless.
+      EdgeRecorder recorder = new EdgeRecorder();
+      for (JMethod method : modified) {
+        recorder.accept(method);
+      }
+    }
+  }
+
+  private void rebuildEdges(List<JMethod> liveMethods) {
+    calleesByCaller.clear();
+    callersByCallee.clear();
+    initializersByField.clear();
+    readersByField.clear();
+    EdgeRecorder recorder = new EdgeRecorder();
+    for (JMethod method : liveMethods) {
+      recorder.accept(method);
+    }
+    edgesStale = false;
+  }
+}
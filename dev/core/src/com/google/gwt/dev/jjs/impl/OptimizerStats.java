@@ -16,14 +16,25 @@
 
 package com.google.gwt.dev.jjs.impl;
 
+import com.google.gwt.dev.jjs.ast.JMethod;
+
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Stores statistics on the results of running an optimizer pass.
  */
 public class OptimizerStats {
   private final List<OptimizerStats> children = new ArrayList<OptimizerStats>();
+  /**
+   * The methods modified by this pass, or <code>null</code> if the pass did not
+   * record where it modified the AST.
+   */
+  private Set<JMethod> modifiedMethods = null;
   private final String name;
   private int numMods = 0;
   private int numVisits = 0;
@@ -61,6 +72,29 @@ public class OptimizerStats {
     return children;
   }
 
+  /**
+   * Returns the methods modified by this pass and its children, or
+   * <code>null</code> if some pass changed the AST without recording which
+   * methods it modified.
+   */
+  public Set<JMethod> getModifiedMethods() {
+    if (numMods > 0 && modifiedMethods == null) {
+      return null;
+    }
+    Set<JMethod> result = new HashSet<JMethod>();
+    if (modifiedMethods != null) {
+      result.addAll(modifiedMethods);
+    }
+    for (OptimizerStats child : children) {
+      Set<JMethod> childMethods = child.getModifiedMethods();
+      if (childMethods == null) {
+        return null;
+      }
+      result.addAll(childMethods);
+    }
+    return Collections.unmodifiableSet(result);
+  }
+
   public String getName() {
     return name;
   }
@@ -114,6 +148,19 @@ public class OptimizerStats {
     return this;
   }
 
+  /**
+   * Record methods modified by this pass. A pass that calls this method must
+   * record every method it modifies, otherwise later passes may skip methods
+   * that changed.
+   */
+  public OptimizerStats recordModifiedMethods(Collection<JMethod> methods) {
+    if (modifiedMethods == null) {
+      modifiedMethods = new HashSet<JMethod>();
+    }
+    modifiedMethods.addAll(methods);
+    return this;
+  }
+
   /**
    * Increment the number of times tree nodes were visited.
    */
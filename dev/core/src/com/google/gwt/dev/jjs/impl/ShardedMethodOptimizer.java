@@ -0,0 +1,198 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev.jjs.impl;
+
+import com.google.gwt.dev.jjs.InternalCompilerException;
+import com.google.gwt.dev.jjs.ast.JDeclaredType;
+import com.google.gwt.dev.jjs.ast.JMethod;
+import com.google.gwt.dev.jjs.ast.JModVisitor;
+import com.google.gwt.dev.jjs.ast.JProgram;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs a per-method optimization over every method of a program, sharding the
+ * methods across a pool of worker threads.
+ *
+ * Only optimizations whose rewrites are confined to the method being visited
+ * may be sharded, and a shard must not read the parts of other methods that
+ * the same pass rewrites. Facts about other methods that a pass needs must be
+ * snapshotted before the pass starts; each shard's rewrites are published to
+ * the caller when its future is joined, so the next pass sees all of them.
+ *
+ * Each pass runs on its own pool of worker threads, which is shut down when
+ * the pass finishes.
+ *
+ * Sharding is off unless the <code>gwt.jjs.optimizerThreads</code> system
+ * property is set to a value greater than one.
+ */
+public class ShardedMethodOptimizer {
+
+  /**
+   * Creates the visitor that optimizes a single shard. Each shard gets its own
+   * visitor, so visitors may keep per-traversal state.
+   */
+  public interface VisitorFactory {
+    JModVisitor create();
+  }
+
+  /**
+   * Visits one shard of methods with its own visitor.
+   */
+  private static class Shard implements Callable<Shard> {
+    private final VisitorFactory factory;
+    private final List<JMethod> methods;
+    private final List<JMethod> modifiedMethods = new ArrayList<JMethod>();
+    private int numMods;
+
+    public Shard(List<JMethod> methods, VisitorFactory factory) {
+      this.factory = factory;
+      this.methods = methods;
+    }
+
+    @Override
+    public Shard call() {
+      JModVisitor visitor = factory.create();
+      for (JMethod method : methods) {
+        int modsBefore = visitor.getNumMods();
+        visitor.accept(method);
+        if (visitor.getNumMods() > modsBefore) {
+          modifiedMethods.add(method);
+        }
+      }
+      numMods = visitor.getNumMods();
+      return this;
+    }
+  }
+
+  /**
+   * The number of shards handed out per worker thread, so that a shard full of
+   * large methods does not leave the other workers idle.
+   */
+  private static final int SHARDS_PER_THREAD = 4;
+
+  private static int threadCount = Integer.getInteger("gwt.jjs.optimizerThreads", 1);
+
+  /**
+   * Returns every method of a non-external type in <code>program</code>, in
+   * type order.
+   */
+  public static List<JMethod> collectMethods(JProgram program) {
+    List<JMethod> methods = new ArrayList<JMethod>();
+    for (JDeclaredType type : program.getDeclaredTypes()) {
+      if (!type.isExternal()) {
+        methods.addAll(type.getMethods());
+      }
+    }
+    return methods;
+  }
+
+  /**
+   * Visits every method of <code>program</code> using visitors created by
+   * <code>factory</code>, recording the modifications made in
+   * <code>stats</code>.
+   */
+  public static void exec(JProgram program, VisitorFactory factory, OptimizerStats stats) {
+    exec(collectMethods(program), factory, stats);
+  }
+
+  /**
+   * Visits <code>methods</code> using visitors created by <code>factory</code>,
+   * recording the modifications made and the modified methods in
+   * <code>stats</code>.
+   */
+  public static void exec(List<JMethod> methods, VisitorFactory factory,
+      OptimizerStats stats) {
+    int numShards = Math.min(methods.size(), threadCount * SHARDS_PER_THREAD);
+    if (!isEnabled() || numShards <= 1) {
+      Shard shard = new Shard(methods, factory);
+      shard.call();
+      stats.recordModified(shard.numMods).recordModifiedMethods(shard.modifiedMethods);
+      return;
+    }
+    new ShardedMethodOptimizer(threadCount).execSharded(methods, factory, numShards, stats);
+  }
+
+  /**
+   * Returns <code>true</code> if sharded optimization is enabled.
+   */
+  public static boolean isEnabled() {
+    return threadCount > 1;
+  }
+
+  /**
+   * Overrides the number of worker threads; <code>1</code> disables sharding.
+   */
+  // @VisibleForTesting
+  static void setThreadCount(int count) {
+    threadCount = count;
+  }
+
+  private final ExecutorService executor;
+
+  private ShardedMethodOptimizer(int threadCount) {
+    final AtomicInteger threadIndex = new AtomicInteger();
+    executor = Executors.newFixedThreadPool(threadCount, new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, "ShardedMethodOptimizer-" + threadIndex.getAndIncrement());
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+  }
+
+  private void execSharded(List<JMethod> methods, VisitorFactory factory, int numShards,
+      OptimizerStats stats) {
+
+    List<Shard> shards = new ArrayList<Shard>(numShards);
+    int shardSize = (methods.size() + numShards - 1) / numShards;
+    for (int start = 0; start < methods.size(); start += shardSize) {
+      shards.add(new Shard(methods.subList(start, Math.min(start + shardSize, methods.size())),
+          factory));
+    }
+
+    try {
+      // Joining each future publishes that shard's rewrites and results.
+      for (Future<Shard> result : executor.invokeAll(shards)) {
+        Shard shard = result.get();
+        stats.recordModified(shard.numMods).recordModifiedMethods(shard.modifiedMethods);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InternalCompilerException("Interrupted while optimizing", e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new InternalCompilerException("Unexpected error while optimizing", cause);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
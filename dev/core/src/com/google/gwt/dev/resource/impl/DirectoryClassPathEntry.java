@@ -18,6 +18,7 @@ package com.google.gwt.dev.resource.impl;
 import com.google.gwt.core.ext.TreeLogger;
 import com.google.gwt.dev.util.collect.Lists;
 import com.google.gwt.dev.util.msg.Message1String;
+import com.google.gwt.thirdparty.guava.common.collect.MapMaker;
 
 import java.io.File;
 import java.util.ArrayList;
@@ -30,6 +31,41 @@ import java.util.Map;
  */
 public class DirectoryClassPathEntry extends ClassPathEntry {
 
+  /**
+   * The children of a directory as of its last modification time.
+   */
+  private static class DirectoryListing {
+    final File[] children;
+    final boolean[] isDirectory;
+    final boolean[] isFile;
+    final long lastModified;
+    final long listedAt;
+
+    DirectoryListing(File dir) {
+      this.lastModified = dir.lastModified();
+      this.listedAt = System.currentTimeMillis();
+      File[] files = dir.listFiles();
+      this.children = files == null ? new File[0] : files;
+      this.isDirectory = new boolean[children.length];
+      this.isFile = new boolean[children.length];
+      for (int i = 0; i < children.length; ++i) {
+        isDirectory[i] = children[i].isDirectory();
+        isFile[i] = !isDirectory[i] && children[i].isFile();
+      }
+    }
+
+    /**
+     * Adding, removing or renaming a child updates the modification time of
+     * its directory; changes to the contents of a file do not matter here.
+     * Since the file system may only record the time to the second or two, a
+     * listing taken too soon after the modification is never trusted.
+     */
+    boolean isCurrent(File dir) {
+      return listedAt - lastModified > TIMESTAMP_GRANULARITY
+          && dir.lastModified() == lastModified;
+    }
+  }
+
   private static class Messages {
     static final Message1String DESCENDING_INTO_DIR = new Message1String(
         TreeLogger.SPAM, "Descending into dir: $0");
@@ -38,6 +74,29 @@ public class DirectoryClassPathEntry extends ClassPathEntry {
         TreeLogger.DEBUG, "Including file: $0");
   }
 
+  /**
+   * The coarsest file system timestamp resolution we allow for, in
+   * milliseconds.
+   */
+  private static final long TIMESTAMP_GRANULARITY = 2000;
+
+  /**
+   * Memory-sensitive cache of directory listings, shared by every entry so that
+   * rescanning the same directories only lists the ones that changed. Stale
+   * listings are detected by modification time, so it never needs clearing.
+   */
+  private static final Map<File, DirectoryListing> listingCache =
+      new MapMaker().softValues().makeMap();
+
+  private static DirectoryListing list(File dir) {
+    DirectoryListing listing = listingCache.get(dir);
+    if (listing == null || !listing.isCurrent(dir)) {
+      listing = new DirectoryListing(dir);
+      listingCache.put(dir, listing);
+    }
+    return listing;
+  }
+
   /**
    * Absolute directory.
    */
@@ -98,10 +157,11 @@ public class DirectoryClassPathEntry extends ClassPathEntry {
 
     // Assert: this directory is included in the path prefix set.
 
-    File[] children = dir.listFiles();
-    for (File child : children) {
+    DirectoryListing listing = list(dir);
+    for (int c = 0; c < listing.children.length; ++c) {
+      File child = listing.children[c];
       String childPath = dirPath + child.getName();
-      if (child.isDirectory()) {
+      if (listing.isDirectory[c]) {
         String childDirPath = childPath + "/";
         for (int i = 0; i < len; ++i) {
           if (pathPrefixSets.get(i).includesDirectory(childDirPath)) {
@@ -111,7 +171,7 @@ public class DirectoryClassPathEntry extends ClassPathEntry {
             break;
           }
         }
-      } else if (child.isFile()) {
+      } else if (listing.isFile[c]) {
         for (int i = 0; i < len; ++i) {
           PathPrefix prefix = null;
           if ((prefix = pathPrefixSets.get(i).includesResource(childPath)) != null) {
@@ -80,12 +80,13 @@ public class ZipFileClassPathEntry extends ClassPathEntry {
 
   /**
    * @return the {@link ZipFileClassPathEntry} instance for given jar or zip
-   *         file, may be shared with other users.
+   *         file, may be shared with other users. A new instance is created if
+   *         the file was modified since it was last indexed.
    */
   public static synchronized ZipFileClassPathEntry get(File zipFile) throws IOException {
     String location = zipFile.toURI().toString();
     ZipFileClassPathEntry entry = entryCache.get(location);
-    if (entry == null) {
+    if (entry == null || entry.lastModified() != zipFile.lastModified()) {
       entry = new ZipFileClassPathEntry(zipFile);
       entryCache.put(location, entry);
     }
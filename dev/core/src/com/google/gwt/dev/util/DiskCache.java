@@ -15,7 +15,6 @@
  */
 package com.google.gwt.dev.util;
 
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
@@ -23,28 +22,112 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.RandomAccessFile;
 import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A nifty class that lets you squirrel away data on the file system. Write
- * once, read many times. Instance of this are thread-safe by way of internal
- * synchronization.
+ * once, read many times. Instances of this are thread-safe.
+ * 
+ * The backing temp file is an append-only sequence of memory-mapped segments.
+ * Writers reserve space in the current segment with an atomic increment, and
+ * only synchronize when a segment fills up and a new one must be mapped.
+ * Readers never lock.
+ * 
+ * Streams of unknown length are appended directly after the last segment in
+ * fixed-size chunks, and the region they fill becomes the start of a new
+ * segment.
  * 
  * Note that in the current implementation, the backing temp file will get
  * arbitrarily large as you continue adding things to it. There is no internal
  * GC or compaction.
  */
 public class DiskCache {
+
   /**
-   * For future thought: if we used Object tokens instead of longs, we could
-   * actually track references and do GC/compaction on the underlying file.
-   * 
-   * I considered using memory mapping, but I didn't see any obvious way to make
-   * the map larger after the fact, which kind of defeats the infinite-append
-   * design. At any rate, I measured the current performance of this design to
-   * be so fast relative to what I'm using it for, I didn't pursue this further.
+   * Streams the remaining bytes of a buffer.
+   */
+  private static class ByteBufferInputStream extends InputStream {
+    private final ByteBuffer buffer;
+
+    public ByteBufferInputStream(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    @Override
+    public int available() {
+      return buffer.remaining();
+    }
+
+    @Override
+    public int read() {
+      return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+      if (len == 0) {
+        return 0;
+      }
+      if (!buffer.hasRemaining()) {
+        return -1;
+      }
+      len = Math.min(len, buffer.remaining());
+      buffer.get(b, off, len);
+      return len;
+    }
+  }
+
+  /**
+   * A mapped region of the backing file. Each entry is stored as a length
+   * followed by that many bytes, and never straddles two segments.
    */
+  private static class Segment {
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private final long start;
+    private final AtomicInteger used = new AtomicInteger();
+
+    public Segment(FileChannel channel, long start, int capacity, int used) throws IOException {
+      this.buffer = channel.map(MapMode.READ_WRITE, start, capacity);
+      this.capacity = capacity;
+      this.start = start;
+      this.used.set(used);
+    }
+
+    /**
+     * Reserves <code>size</code> bytes, returning their offset in this segment
+     * or -1 if there isn't enough room left.
+     */
+    public int allocate(int size) {
+      while (true) {
+        int offset = used.get();
+        if ((long) offset + size > capacity) {
+          return -1;
+        }
+        if (used.compareAndSet(offset, offset + size)) {
+          return offset;
+        }
+      }
+    }
+
+    /**
+     * Returns a private view of the entry at <code>offset</code>, positioned at
+     * its first byte and limited to its length.
+     */
+    public ByteBuffer entryAt(int offset) {
+      ByteBuffer view = buffer.duplicate();
+      int length = view.getInt(offset);
+      view.position(offset + 4);
+      view.limit(offset + 4 + length);
+      return view;
+    }
+  }
 
   private static class Shutdown implements Runnable {
     @Override
@@ -61,6 +144,11 @@ public class DiskCache {
     }
   }
 
+  /**
+   * The size of a segment, unless a single entry needs more.
+   */
+  static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
   /**
    * A global shared Disk cache.
    */
@@ -68,42 +156,75 @@ public class DiskCache {
 
   private static List<WeakReference<DiskCache>> shutdownList;
 
-  private boolean atEnd = true;
+  private FileChannel channel;
   private RandomAccessFile file;
+  private final int segmentSize;
+
+  /**
+   * All segments, in file order. Replaced, never mutated, when a segment is
+   * added.
+   */
+  private volatile Segment[] segments = new Segment[0];
+
+  private File temp;
 
   DiskCache() {
+    this(DEFAULT_SEGMENT_SIZE);
+  }
+
+  DiskCache(int segmentSize) {
+    this.segmentSize = segmentSize;
     try {
-      File temp = File.createTempFile("gwt", "byte-cache");
+      temp = File.createTempFile("gwt", "byte-cache");
       temp.deleteOnExit();
       file = new RandomAccessFile(temp, "rw");
       file.setLength(0);
-      if (shutdownList == null) {
-        shutdownList = new ArrayList<WeakReference<DiskCache>>();
-        Runtime.getRuntime().addShutdownHook(new Thread(new Shutdown()));
+      channel = file.getChannel();
+      synchronized (DiskCache.class) {
+        if (shutdownList == null) {
+          shutdownList = new ArrayList<WeakReference<DiskCache>>();
+          Runtime.getRuntime().addShutdownHook(new Thread(new Shutdown()));
+        }
+        shutdownList.add(new WeakReference<DiskCache>(this));
       }
-      shutdownList.add(new WeakReference<DiskCache>(this));
     } catch (IOException e) {
       throw new RuntimeException("Unable to initialize byte cache", e);
     }
   }
 
+  /**
+   * Opens a stream over the underlying bytes, without copying them.
+   * 
+   * @param token a previously returned token
+   * @return a stream of the bytes that were written
+   */
+  public InputStream openStream(long token) {
+    return new ByteBufferInputStream(readByteBuffer(token));
+  }
+
+  /**
+   * Returns a read-only view of the underlying bytes, without copying them.
+   * 
+   * @param token a previously returned token
+   * @return a buffer positioned at the first byte written and limited to the
+   *         last
+   */
+  public ByteBuffer readByteBuffer(long token) {
+    Segment segment = findSegment(token);
+    return segment.entryAt((int) (token - segment.start)).asReadOnlyBuffer();
+  }
+
   /**
    * Retrieve the underlying bytes.
    * 
    * @param token a previously returned token
    * @return the bytes that were written
    */
-  public synchronized byte[] readByteArray(long token) {
-    try {
-      atEnd = false;
-      file.seek(token);
-      int length = file.readInt();
-      byte[] result = new byte[length];
-      file.readFully(result);
-      return result;
-    } catch (IOException e) {
-      throw new RuntimeException("Unable to read from byte cache", e);
-    }
+  public byte[] readByteArray(long token) {
+    ByteBuffer entry = readByteBuffer(token);
+    byte[] result = new byte[entry.remaining()];
+    entry.get(result);
+    return result;
   }
 
   /**
@@ -116,9 +237,7 @@ public class DiskCache {
    */
   public <T> T readObject(long token, Class<T> type) {
     try {
-      byte[] bytes = readByteArray(token);
-      ByteArrayInputStream in = new ByteArrayInputStream(bytes);
-      return Util.readStreamAsObject(in, type);
+      return Util.readStreamAsObject(openStream(token), type);
     } catch (ClassNotFoundException e) {
       throw new RuntimeException("Unexpected exception deserializing from disk cache", e);
     } catch (IOException e) {
@@ -144,31 +263,41 @@ public class DiskCache {
    * 
    * @return a token to retrieve the data later
    */
-  public synchronized long transferFromStream(InputStream in) {
+  public long transferFromStream(InputStream in) {
     assert in != null;
+    /*
+     * Entries can't grow once space is reserved for them, so append the stream
+     * past the end of the last segment, where nobody else can write until the
+     * new segment is published.
+     */
     byte[] buf = Util.takeThreadLocalBuf();
     try {
-      long position = moveToEndPosition();
-
-      // Placeholder, we don't know the length yet.
-      file.writeInt(-1);
-
-      // Transfer all the bytes.
-      int length = 0;
-      int bytesRead;
-      while ((bytesRead = in.read(buf)) != -1) {
-        file.write(buf, 0, bytesRead);
-        length += bytesRead;
+      synchronized (this) {
+        Segment[] current = segments;
+        Segment last = current.length == 0 ? null : current[current.length - 1];
+        long start = last == null ? 0 : last.start + last.capacity;
+        long position = start + 4;
+        int length = 0;
+        int read;
+        while ((read = in.read(buf)) != -1) {
+          if ((long) length + read > Integer.MAX_VALUE - 4) {
+            throw new IllegalArgumentException("Stream too large for byte cache");
+          }
+          ByteBuffer chunk = ByteBuffer.wrap(buf, 0, read);
+          while (chunk.hasRemaining()) {
+            position += channel.write(chunk, position);
+          }
+          length += read;
+        }
+        ByteBuffer header = ByteBuffer.allocate(4);
+        header.putInt(length).flip();
+        channel.write(header, start);
+        int size = 4 + length;
+        appendSegment(current, new Segment(channel, start, Math.max(segmentSize, size), size));
+        return start;
       }
-
-      // Now go back and fill in the length.
-      file.seek(position);
-      file.writeInt(length);
-      // Don't eagerly seek the end, the next operation might be a read.
-      atEnd = false;
-      return position;
     } catch (IOException e) {
-      throw new RuntimeException("Unable to read from byte cache", e);
+      throw new RuntimeException("Unable to write to byte cache", e);
     } finally {
       Util.releaseThreadLocalBuf(buf);
     }
@@ -180,21 +309,13 @@ public class DiskCache {
    * @param token a previously returned token
    * @param out the stream to write into
    */
-  public synchronized void transferToStream(long token, OutputStream out) {
+  public void transferToStream(long token, OutputStream out) {
+    ByteBuffer entry = readByteBuffer(token);
     byte[] buf = Util.takeThreadLocalBuf();
     try {
-      atEnd = false;
-      file.seek(token);
-      int length = file.readInt();
-      int bufLen = buf.length;
-      while (length > bufLen) {
-        int read = file.read(buf, 0, bufLen);
-        length -= read;
-        out.write(buf, 0, read);
-      }
-      while (length > 0) {
-        int read = file.read(buf, 0, length);
-        length -= read;
+      while (entry.hasRemaining()) {
+        int read = Math.min(buf.length, entry.remaining());
+        entry.get(buf, 0, read);
         out.write(buf, 0, read);
       }
     } catch (IOException e) {
@@ -209,14 +330,25 @@ public class DiskCache {
    * 
    * @return a token to retrieve the data later
    */
-  public synchronized long writeByteArray(byte[] bytes) {
-    try {
-      long position = moveToEndPosition();
-      file.writeInt(bytes.length);
-      file.write(bytes);
-      return position;
-    } catch (IOException e) {
-      throw new RuntimeException("Unable to write to byte cache", e);
+  public long writeByteArray(byte[] bytes) {
+    if (bytes.length > Integer.MAX_VALUE - 4) {
+      throw new IllegalArgumentException("Array too large for byte cache: " + bytes.length);
+    }
+    int size = 4 + bytes.length;
+    while (true) {
+      Segment[] current = segments;
+      Segment last = current.length == 0 ? null : current[current.length - 1];
+      int offset = last == null ? -1 : last.allocate(size);
+      if (offset < 0) {
+        addSegment(last, size);
+        continue;
+      }
+      // The reserved range belongs to this thread alone.
+      ByteBuffer view = last.buffer.duplicate();
+      view.position(offset);
+      view.putInt(bytes.length);
+      view.put(bytes);
+      return last.start + offset;
     }
   }
 
@@ -245,34 +377,70 @@ public class DiskCache {
   }
 
   @Override
-  protected synchronized void finalize() throws Throwable {
+  protected void finalize() throws Throwable {
     close();
   }
 
-  private void close() throws Throwable {
+  /**
+   * Maps a new segment after <code>last</code> with room for at least
+   * <code>size</code> bytes, unless another thread already did.
+   */
+  private synchronized void addSegment(Segment last, int size) {
+    Segment[] current = segments;
+    if (current.length > 0 && current[current.length - 1] != last) {
+      // Someone else already added a segment, retry there.
+      return;
+    }
+    long start = last == null ? 0 : last.start + last.capacity;
+    try {
+      appendSegment(current, new Segment(channel, start, Math.max(segmentSize, size), 0));
+    } catch (IOException e) {
+      throw new RuntimeException("Unable to write to byte cache", e);
+    }
+  }
+
+  private void appendSegment(Segment[] current, Segment segment) {
+    assert Thread.holdsLock(this);
+    Segment[] newSegments = new Segment[current.length + 1];
+    System.arraycopy(current, 0, newSegments, 0, current.length);
+    newSegments[current.length] = segment;
+    segments = newSegments;
+  }
+
+  /**
+   * Releases the backing file. The mapped segments are left to the garbage
+   * collector, since other threads, or views returned by
+   * {@link #readByteBuffer(long)}, may still be reading them; unmapping them
+   * here could crash the VM.
+   */
+  private synchronized void close() throws Throwable {
     if (file != null) {
-      file.setLength(0);
+      channel.close();
       file.close();
+      temp.delete();
+      channel = null;
       file = null;
     }
   }
 
   /**
-   * Moves to the end of the file if necessary and returns the offset position.
-   * Caller must synchronize.
-   * 
-   * @return the offset position of the end of the file
-   * @throws IOException
+   * Returns the segment containing the entry for <code>token</code>.
    */
-  private long moveToEndPosition() throws IOException {
-    // Get an end pointer.
-    if (atEnd) {
-      return file.getFilePointer();
-    } else {
-      long position = file.length();
-      file.seek(position);
-      atEnd = true;
-      return position;
+  private Segment findSegment(long token) {
+    Segment[] current = segments;
+    int low = 0;
+    int high = current.length - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      Segment segment = current[mid];
+      if (token < segment.start) {
+        high = mid - 1;
+      } else if (token >= segment.start + segment.capacity) {
+        low = mid + 1;
+      } else {
+        return segment;
+      }
     }
+    throw new IllegalArgumentException("Unknown byte cache token " + token);
   }
-}
\ No newline at end of file
+}
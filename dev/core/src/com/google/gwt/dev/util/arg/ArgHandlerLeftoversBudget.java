@@ -0,0 +1,52 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev.util.arg;
+
+import com.google.gwt.util.tools.ArgHandlerInt;
+
+/**
+ * An ArgHandler to provide the -XleftoversBudget flag.
+ */
+public class ArgHandlerLeftoversBudget extends ArgHandlerInt {
+
+  private final OptionLeftoversBudget option;
+
+  public ArgHandlerLeftoversBudget(OptionLeftoversBudget option) {
+    this.option = option;
+  }
+
+  @Override
+  public String getPurpose() {
+    return "EXPERIMENTAL: " +
+       "Merges split points by estimated code size until the leftovers fragment fits " +
+       "within the given number of bytes.";
+  }
+
+  @Override
+  public String getTag() {
+    return "-XleftoversBudget";
+  }
+
+  @Override
+  public String[] getTagArgs() {
+    return new String[] {"bytes"};
+  }
+
+  @Override
+  public void setInt(int value) {
+    option.setLeftoversBudget(value);
+  }
+}
@@ -37,7 +37,8 @@ public class ArgHandlerLocalWorkers extends ArgHandlerInt {
 
   @Override
   public String getPurpose() {
-    return "The number of local workers to use when compiling permutations";
+    return "The number of local workers to use when compiling and linking permutations; "
+        + "shardable linkers must be thread-safe when this is greater than 1";
   }
 
   @Override
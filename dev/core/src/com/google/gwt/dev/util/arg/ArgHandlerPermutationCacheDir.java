@@ -0,0 +1,49 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev.util.arg;
+
+import com.google.gwt.util.tools.ArgHandlerDir;
+
+import java.io.File;
+
+/**
+ * An ArgHandler to provide the -XpermutationCacheDir flag.
+ */
+public class ArgHandlerPermutationCacheDir extends ArgHandlerDir {
+
+  private final OptionPermutationCacheDir option;
+
+  public ArgHandlerPermutationCacheDir(OptionPermutationCacheDir option) {
+    this.option = option;
+  }
+
+  @Override
+  public String getPurpose() {
+    return "EXPERIMENTAL: " +
+        "Reuses compiled permutations from the specified directory when their inputs are " +
+        "unchanged.";
+  }
+
+  @Override
+  public String getTag() {
+    return "-XpermutationCacheDir";
+  }
+
+  @Override
+  public void setDir(File dir) {
+    option.setPermutationCacheDir(dir);
+  }
+}
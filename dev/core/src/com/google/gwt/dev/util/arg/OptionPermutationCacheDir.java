@@ -0,0 +1,35 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev.util.arg;
+
+import java.io.File;
+
+/**
+ * Option to set the directory compiled permutations are cached in.
+ */
+public interface OptionPermutationCacheDir {
+
+  /**
+   * Returns the permutation cache directory, or <code>null</code> if compiled
+   * permutations are not cached.
+   */
+  File getPermutationCacheDir();
+
+  /**
+   * Sets the permutation cache directory.
+   */
+  void setPermutationCacheDir(File dir);
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev;
+
+import com.google.gwt.core.ext.LinkerContext;
+import com.google.gwt.core.ext.TreeLogger;
+import com.google.gwt.core.ext.UnableToCompleteException;
+import com.google.gwt.core.ext.linker.AbstractLinker;
+import com.google.gwt.core.ext.linker.Artifact;
+import com.google.gwt.core.ext.linker.ArtifactSet;
+import com.google.gwt.core.ext.linker.CompilationResult;
+import com.google.gwt.core.ext.linker.EmittedArtifact;
+import com.google.gwt.core.ext.linker.LinkerOrder;
+import com.google.gwt.core.ext.linker.LinkerOrder.Order;
+import com.google.gwt.core.ext.linker.SelectionProperty;
+import com.google.gwt.core.ext.linker.Shardable;
+import com.google.gwt.core.ext.linker.StatementRanges;
+import com.google.gwt.core.ext.linker.impl.StandardLinkerContext;
+import com.google.gwt.dev.cfg.BindingProperty;
+import com.google.gwt.dev.cfg.ConfigurationProperty;
+import com.google.gwt.dev.cfg.ModuleDef;
+import com.google.gwt.dev.cfg.StaticPropertyOracle;
+import com.google.gwt.dev.jjs.JJSOptionsImpl;
+import com.google.gwt.dev.jjs.PermutationResult;
+import com.google.gwt.dev.util.FileBackedObject;
+import com.google.gwt.dev.util.Util;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Tests {@link Link}.
+ */
+public class LinkTest extends TestCase {
+
+  /**
+   * Emits the code of each permutation under its strong name.
+   */
+  @LinkerOrder(Order.PRIMARY)
+  @Shardable
+  public static class TestPrimaryLinker extends AbstractLinker {
+    @Override
+    public String getDescription() {
+      return "Test primary linker";
+    }
+
+    @Override
+    public ArtifactSet link(TreeLogger logger, LinkerContext context,
+        ArtifactSet artifacts, boolean onePermutation)
+        throws UnableToCompleteException {
+      ArtifactSet toReturn = new ArtifactSet(artifacts);
+      if (onePermutation) {
+        for (CompilationResult result : artifacts.find(CompilationResult.class)) {
+          StringBuilder js = new StringBuilder();
+          for (String fragment : result.getJavaScript()) {
+            js.append(fragment).append('\n');
+          }
+          toReturn.add(emitString(logger, js.toString(), result.getStrongName()
+              + ".cache.js"));
+        }
+      }
+      return toReturn;
+    }
+  }
+
+  /**
+   * Emits the selection properties of each permutation, and the files the
+   * primary linker emitted for it.
+   */
+  @LinkerOrder(Order.POST)
+  @Shardable
+  public static class TestPostLinker extends AbstractLinker {
+    @Override
+    public String getDescription() {
+      return "Test post linker";
+    }
+
+    @Override
+    public ArtifactSet link(TreeLogger logger, LinkerContext context,
+        ArtifactSet artifacts, boolean onePermutation)
+        throws UnableToCompleteException {
+      ArtifactSet toReturn = new ArtifactSet(artifacts);
+      if (onePermutation) {
+        for (CompilationResult result : artifacts.find(CompilationResult.class)) {
+          StringBuilder summary = new StringBuilder();
+          for (SortedMap<SelectionProperty, String> map : result.getPropertyMap()) {
+            for (Map.Entry<SelectionProperty, String> entry : map.entrySet()) {
+              summary.append(entry.getKey().getName()).append('=');
+              summary.append(entry.getValue()).append('\n');
+            }
+          }
+          for (EmittedArtifact emitted : artifacts.find(EmittedArtifact.class)) {
+            summary.append(emitted.getPartialPath()).append('\n');
+          }
+          toReturn.add(emitString(logger, summary.toString(), "permutation"
+              + result.getPermutationId() + ".txt"));
+        }
+      }
+      return toReturn;
+    }
+  }
+
+  /**
+   * A compiled permutation.
+   */
+  private static class TestPermutationResult implements PermutationResult {
+    private final ArtifactSet artifacts = new ArtifactSet();
+    private final byte[][] js;
+    private final Permutation permutation;
+
+    public TestPermutationResult(Permutation permutation, String... js) {
+      this.permutation = permutation;
+      this.js = new byte[js.length][];
+      for (int i = 0; i < js.length; i++) {
+        this.js[i] = Util.getBytes(js[i]);
+      }
+    }
+
+    public void addArtifacts(Collection<? extends Artifact<?>> newArtifacts) {
+      artifacts.addAll(newArtifacts);
+    }
+
+    public ArtifactSet getArtifacts() {
+      return artifacts;
+    }
+
+    public byte[][] getJs() {
+      return js;
+    }
+
+    public Permutation getPermutation() {
+      return permutation;
+    }
+
+    public byte[] getSerializedSymbolMap() {
+      return new byte[0];
+    }
+
+    public StatementRanges[] getStatementRanges() {
+      return new StatementRanges[js.length];
+    }
+  }
+
+  private static final String[] USER_AGENTS = {
+      "gecko1_8", "ie6", "ie8", "ie9", "opera", "safari"};
+
+  /**
+   * Tests that linking permutations on several workers gives the same
+   * artifacts as linking them one after the other.
+   */
+  public void testLocalWorkers() throws IOException, UnableToCompleteException {
+    ModuleDef module = new ModuleDef("com.google.gwt.dev.LinkTest");
+    BindingProperty userAgent = module.getProperties().createBinding("user.agent");
+    for (String value : USER_AGENTS) {
+      userAgent.addDefinedValue(userAgent.getRootCondition(), value);
+    }
+    module.defineLinker(TreeLogger.NULL, "primary", TestPrimaryLinker.class);
+    module.addLinker("primary");
+    module.defineLinker(TreeLogger.NULL, "post", TestPostLinker.class);
+    module.addLinker("post");
+
+    Permutation[] perms = new Permutation[USER_AGENTS.length];
+    List<FileBackedObject<PermutationResult>> resultFiles =
+        new ArrayList<FileBackedObject<PermutationResult>>();
+    for (int i = 0; i < perms.length; i++) {
+      perms[i] = new Permutation(i, new StaticPropertyOracle(
+          new BindingProperty[] {userAgent}, new String[] {USER_AGENTS[i]},
+          new ConfigurationProperty[0]));
+      FileBackedObject<PermutationResult> resultFile =
+          new FileBackedObject<PermutationResult>(PermutationResult.class);
+      resultFile.set(TreeLogger.NULL, new TestPermutationResult(perms[i],
+          "var permutation = " + i + ";", "var fragment = '" + USER_AGENTS[i] + "';"));
+      resultFiles.add(resultFile);
+    }
+
+    ArtifactSet generatedArtifacts = new ArtifactSet();
+    StandardLinkerContext linkerContext = new StandardLinkerContext(
+        TreeLogger.NULL, module, new JJSOptionsImpl());
+    try {
+      Map<String, String> sequential = contents(Link.linkPermutations(
+          TreeLogger.NULL, linkerContext, generatedArtifacts, perms, resultFiles, 1));
+      Map<String, String> parallel = contents(Link.linkPermutations(
+          TreeLogger.NULL, linkerContext, generatedArtifacts, perms, resultFiles, 4));
+
+      // A compilation, its script and its summary per permutation
+      assertEquals(3 * perms.length, sequential.size());
+      assertEquals(sequential, parallel);
+    } finally {
+      for (FileBackedObject<PermutationResult> resultFile : resultFiles) {
+        resultFile.getFile().delete();
+      }
+    }
+  }
+
+  /**
+   * Returns the contents of each emitted artifact by path, and the strong name
+   * of each compilation by permutation id.
+   */
+  private Map<String, String> contents(ArtifactSet artifacts)
+      throws UnableToCompleteException {
+    Map<String, String> toReturn = new TreeMap<String, String>();
+    for (EmittedArtifact emitted : artifacts.find(EmittedArtifact.class)) {
+      toReturn.put(emitted.getPartialPath(), Util.readStreamAsString(
+          emitted.getContents(TreeLogger.NULL)));
+    }
+    for (CompilationResult result : artifacts.find(CompilationResult.class)) {
+      toReturn.put("compilation" + result.getPermutationId(), result.getStrongName());
+    }
+    return toReturn;
+  }
+}
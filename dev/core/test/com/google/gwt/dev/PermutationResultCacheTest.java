@@ -0,0 +1,162 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev;
+
+import com.google.gwt.core.ext.TreeLogger;
+import com.google.gwt.dev.cfg.BindingProperty;
+import com.google.gwt.dev.cfg.ConfigurationProperty;
+import com.google.gwt.dev.cfg.StaticPropertyOracle;
+import com.google.gwt.dev.jjs.JJSOptionsImpl;
+import com.google.gwt.dev.jjs.PermutationResult;
+import com.google.gwt.dev.jjs.UnifiedAst;
+import com.google.gwt.dev.jjs.ast.JProgram;
+import com.google.gwt.dev.js.ast.JsProgram;
+import com.google.gwt.dev.util.FileBackedObject;
+import com.google.gwt.dev.util.Util;
+import com.google.gwt.util.tools.Utility;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+
+/**
+ * Tests {@link PermutationResultCache}.
+ */
+public class PermutationResultCacheTest extends TestCase {
+
+  private File cacheDir;
+
+  public void testKeyDependsOnInputHash() {
+    Permutation perm = createPermutation(0, "safari");
+    assertEquals(createCache("abc").getKey(perm), createCache("abc").getKey(perm));
+    assertFalse(createCache("abc").getKey(perm).equals(createCache("abd").getKey(perm)));
+  }
+
+  public void testKeyDependsOnCompilerAndOptions() {
+    Permutation perm = createPermutation(0, "safari");
+    String key = createCache("abc").getKey(perm);
+    assertFalse(key.equals(new PermutationResultCache(cacheDir,
+        createAst("abc", new JJSOptionsImpl()), "other compiler", Long.MAX_VALUE).getKey(perm)));
+
+    JJSOptionsImpl options = new JJSOptionsImpl();
+    options.setOptimizationLevel(0);
+    assertFalse(key.equals(new PermutationResultCache(cacheDir, createAst("abc", options),
+        "compiler", Long.MAX_VALUE).getKey(perm)));
+
+    String old = System.getProperty("gwt.jjs.incrementalOptimizer");
+    System.setProperty("gwt.jjs.incrementalOptimizer", "true");
+    try {
+      assertFalse(key.equals(createCache("abc").getKey(perm)));
+    } finally {
+      if (old == null) {
+        System.clearProperty("gwt.jjs.incrementalOptimizer");
+      } else {
+        System.setProperty("gwt.jjs.incrementalOptimizer", old);
+      }
+    }
+  }
+
+  public void testKeyDependsOnPermutation() {
+    PermutationResultCache cache = createCache("abc");
+    Permutation safari = createPermutation(0, "safari");
+    String key = cache.getKey(safari);
+    assertFalse(key.equals(cache.getKey(createPermutation(0, "gecko1_8"))));
+    assertFalse(key.equals(cache.getKey(createPermutation(1, "safari"))));
+
+    safari.putRebindAnswer("com.example.Foo", "com.example.FooImpl");
+    assertFalse(key.equals(cache.getKey(safari)));
+  }
+
+  public void testRestoreAndStore() throws IOException {
+    PermutationResultCache cache = createCache("abc");
+    Permutation perm = createPermutation(0, "safari");
+    FileBackedObject<PermutationResult> compiled =
+        new FileBackedObject<PermutationResult>(PermutationResult.class);
+    FileBackedObject<PermutationResult> restored =
+        new FileBackedObject<PermutationResult>(PermutationResult.class);
+
+    assertFalse(cache.restore(TreeLogger.NULL, perm, restored));
+
+    Util.writeStringAsFile(compiled.getFile(), "compiled result");
+    cache.store(TreeLogger.NULL, perm, compiled);
+    assertTrue(cache.restore(TreeLogger.NULL, perm, restored));
+    assertEquals("compiled result", Util.readFileAsString(restored.getFile()));
+
+    assertFalse(cache.restore(TreeLogger.NULL, createPermutation(0, "gecko1_8"), restored));
+  }
+
+  public void testEvictsLeastRecentlyUsed() throws IOException {
+    PermutationResultCache cache = new PermutationResultCache(cacheDir,
+        createAst("abc", new JJSOptionsImpl()), "compiler", 25);
+    FileBackedObject<PermutationResult> compiled =
+        new FileBackedObject<PermutationResult>(PermutationResult.class);
+    FileBackedObject<PermutationResult> restored =
+        new FileBackedObject<PermutationResult>(PermutationResult.class);
+    Util.writeStringAsFile(compiled.getFile(), "ten bytes!");
+
+    Permutation first = createPermutation(0, "safari");
+    Permutation second = createPermutation(1, "safari");
+    Permutation third = createPermutation(2, "safari");
+    cache.store(TreeLogger.NULL, first, compiled);
+    cache.store(TreeLogger.NULL, second, compiled);
+    // Make the first entry the most recently used.
+    File firstFile = new File(cacheDir, cache.getKey(first) + ".permutation");
+    File secondFile = new File(cacheDir, cache.getKey(second) + ".permutation");
+    assertTrue(secondFile.setLastModified(firstFile.lastModified() - 10000));
+    cache.store(TreeLogger.NULL, third, compiled);
+
+    assertTrue(cache.restore(TreeLogger.NULL, first, restored));
+    assertFalse(cache.restore(TreeLogger.NULL, second, restored));
+    assertTrue(cache.restore(TreeLogger.NULL, third, restored));
+  }
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    cacheDir = Utility.makeTemporaryDirectory(null, "permutation-cache-test-");
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    Util.recursiveDelete(cacheDir, false);
+    super.tearDown();
+  }
+
+  private UnifiedAst createAst(String inputHash, JJSOptionsImpl options) {
+    UnifiedAst ast = new UnifiedAst(options,
+        new UnifiedAst.AST(new JProgram(), new JsProgram()), true,
+        Collections.<String> emptySet());
+    ast.setInputHash(inputHash);
+    return ast;
+  }
+
+  private PermutationResultCache createCache(String inputHash) {
+    return new PermutationResultCache(cacheDir, createAst(inputHash, new JJSOptionsImpl()),
+        "compiler", Long.MAX_VALUE);
+  }
+
+  private Permutation createPermutation(int id, String userAgent) {
+    BindingProperty prop = new BindingProperty("user.agent");
+    prop.addDefinedValue(prop.getRootCondition(), "gecko1_8");
+    prop.addDefinedValue(prop.getRootCondition(), "safari");
+    ConfigurationProperty config = new ConfigurationProperty("compiler.stackMode");
+    config.setValue("strip");
+    return new Permutation(id, new StaticPropertyOracle(new BindingProperty[] {prop},
+        new String[] {userAgent}, new ConfigurationProperty[] {config}));
+  }
+}
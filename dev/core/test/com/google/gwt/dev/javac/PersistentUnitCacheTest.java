@@ -21,13 +21,17 @@ import com.google.gwt.dev.util.Util;
 
 import junit.framework.TestCase;
 
+import java.io.DataInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
 import java.io.Serializable;
+import java.util.Arrays;
 import java.util.concurrent.ExecutionException;
 
 /**
@@ -68,6 +72,84 @@ public class PersistentUnitCacheTest extends TestCase {
     checkInvalidObjectInCache(new ThrowsClassNotFoundException());
   }
 
+  /**
+   * Compaction should copy the live units of old files into the current file,
+   * and drop the units that can no longer be read before deleting their file.
+   */
+  public void testCompaction() throws IOException, InterruptedException,
+      UnableToCompleteException, ExecutionException {
+    TreeLogger logger = TreeLogger.NULL;
+    File cacheDir = lastCacheDir = File.createTempFile("persistentCacheTest", "");
+    File unitCacheDir = mkCacheDir(cacheDir);
+
+    int numFiles = PersistentUnitCache.CACHE_FILE_THRESHOLD - 1;
+    MockCompilationUnit[] units = new MockCompilationUnit[numFiles];
+    for (int i = 0; i < numFiles; i++) {
+      PersistentUnitCache cache = new PersistentUnitCache(logger, cacheDir);
+      units[i] = new MockCompilationUnit("com.example.Unit" + i, "Unit source" + i);
+      cache.add(units[i]);
+      cache.cleanup(logger);
+      cache.shutdown();
+    }
+    assertNumCacheFiles(unitCacheDir, numFiles);
+
+    PersistentUnitCache cache = new PersistentUnitCache(logger, cacheDir);
+    // Wait for the headers to load, then make the first unit unreadable.
+    assertNull(cache.find("com/example/Missing.java"));
+    File[] files = unitCacheDir.listFiles();
+    Arrays.sort(files);
+    RandomAccessFile truncated = new RandomAccessFile(files[0], "rw");
+    truncated.setLength(4);
+    truncated.close();
+
+    cache.add(new MockCompilationUnit("com.example.Last", "Last source"));
+    cache.cleanup(logger);
+    cache.shutdown();
+    assertNumCacheFiles(unitCacheDir, 1);
+    assertFalse(cache.unitMap.containsKey(units[0].getResourcePath()));
+
+    cache = new PersistentUnitCache(logger, cacheDir);
+    assertNull(cache.find(units[0].getResourcePath()));
+    for (int i = 1; i < numFiles; i++) {
+      CompilationUnit result = cache.find(units[i].getResourcePath());
+      assertNotNull(result);
+      assertEquals(units[i].getContentId(), result.getContentId());
+    }
+    assertNotNull(cache.find("com/example/Last.java"));
+    cache.shutdown();
+  }
+
+  /**
+   * Units should be deserialized one at a time when first found, so a damaged
+   * unit does not prevent the other units of its file from loading.
+   */
+  public void testLazyLoading() throws IOException, InterruptedException,
+      UnableToCompleteException, ExecutionException {
+    TreeLogger logger = TreeLogger.NULL;
+    File cacheDir = lastCacheDir = File.createTempFile("persistentCacheTest", "");
+    File unitCacheDir = mkCacheDir(cacheDir);
+
+    PersistentUnitCache cache = new PersistentUnitCache(logger, cacheDir);
+    MockCompilationUnit foo = new MockCompilationUnit("com.example.Foo", "Foo: source1");
+    MockCompilationUnit bar = new MockCompilationUnit("com.example.Bar", "Bar: source1");
+    cache.add(foo);
+    cache.add(bar);
+    cache.cleanup(logger);
+    cache.shutdown();
+    assertNumCacheFiles(unitCacheDir, 1);
+    corruptUnit(unitCacheDir.listFiles()[0], foo.getResourcePath());
+
+    cache = new PersistentUnitCache(logger, cacheDir);
+    // Both headers are still readable.
+    assertTrue(cache.unitMap.containsKey(foo.getResourcePath()));
+    assertTrue(cache.unitMap.containsKey(bar.getResourcePath()));
+    assertNull(cache.find(foo.getResourcePath()));
+    CompilationUnit result = cache.find(bar.getContentId());
+    assertNotNull(result);
+    assertEquals("com.example.Bar", result.getTypeName());
+    cache.shutdown();
+  }
+
   /**
    * Test if a file already exists with the name we want to put the cache dir
    * in.
@@ -263,6 +345,42 @@ public class PersistentUnitCacheTest extends TestCase {
     assertNumCacheFiles(unitCacheDir, 0);
   }
 
+  /**
+   * Overwrites the serialized form of the unit at <code>resourcePath</code> in
+   * <code>cacheFile</code>, leaving its record header intact.
+   */
+  private void corruptUnit(File cacheFile, String resourcePath) throws IOException {
+    long offset = -1;
+    int length = 0;
+    DataInputStream in = new DataInputStream(new FileInputStream(cacheFile));
+    try {
+      long position = 4;
+      in.readInt();
+      while (offset < 0) {
+        String path = in.readUTF();
+        String contentId = in.readUTF();
+        in.readLong();
+        in.readLong();
+        length = in.readInt();
+        position += 2 + Util.getBytes(path).length + 2 + Util.getBytes(contentId).length + 20;
+        if (path.equals(resourcePath)) {
+          offset = position;
+        }
+        in.skipBytes(length);
+        position += length;
+      }
+    } finally {
+      in.close();
+    }
+    RandomAccessFile out = new RandomAccessFile(cacheFile, "rw");
+    try {
+      out.seek(offset);
+      out.write(new byte[length]);
+    } finally {
+      out.close();
+    }
+  }
+
   private File mkCacheDir(File cacheDir) {
     assertNotNull(cacheDir);
     assertTrue(cacheDir.exists());
@@ -59,6 +59,7 @@ public class CodeSplitter2Test extends JJSTestBase {
   
   private JProgram jProgram = null;
   private JsProgram jsProgram = null;
+  private int leftoversBudget = -1;
   
   public void setUp() throws Exception{
     super.setUp();
@@ -129,6 +130,61 @@ public class CodeSplitter2Test extends JJSTestBase {
     assertFragmentCount(5);
   }
   
+  public void testLeftoversBudget() throws UnableToCompleteException {
+    leftoversBudget = 1;
+    StringBuffer code = new StringBuffer();
+    code.append("package test;\n");
+    code.append("import com.google.gwt.core.client.GWT;\n");
+    code.append("import com.google.gwt.core.client.RunAsyncCallback;\n");
+    code.append("public class EntryPoint {\n");
+    code.append(functionA); 
+    code.append(functionB);
+    code.append(functionC);
+    code.append("  public static void onModuleLoad() {\n");
+    // Fragment #1
+    code.append(createRunAsync("functionA();"));
+    // Fragment #1 (merged)
+    code.append(createRunAsync("functionA();"));
+    // Fragment #1 (merged)
+    code.append(createRunAsync("functionA();"));
+    code.append("  }\n");
+    code.append("}\n");    
+    compileSnippet(code.toString());
+    
+    // init + 1 fragment + leftover, since any code shared by the split points
+    // would push the leftover fragment over its budget.
+    assertFragmentCount(3);
+    assertInFragment("functionA", 1);
+    assertNotInFragment("functionA", 2);
+  }
+
+  public void testLeftoversWithinBudget() throws UnableToCompleteException {
+    leftoversBudget = 100000;
+    StringBuffer code = new StringBuffer();
+    code.append("package test;\n");
+    code.append("import com.google.gwt.core.client.GWT;\n");
+    code.append("import com.google.gwt.core.client.RunAsyncCallback;\n");
+    code.append("public class EntryPoint {\n");
+    code.append(functionA); 
+    code.append(functionB);
+    code.append(functionC);
+    code.append("  public static void onModuleLoad() {\n");
+    // Fragment #1
+    code.append(createRunAsync("functionA();"));
+    // Fragment #2
+    code.append(createRunAsync("functionA(); functionB();"));
+    // Fragment #3
+    code.append(createRunAsync("functionC();"));
+    code.append("  }\n");
+    code.append("}\n");    
+    compileSnippet(code.toString());
+    
+    // init + 3 fragments + leftover, since the leftover fragment is already
+    // within its budget.
+    assertFragmentCount(5);
+    assertInFragment("functionA", 4);
+  }
+
   public void testDoubleMerge() throws UnableToCompleteException {
     StringBuffer code = new StringBuffer();
     code.append("package test;\n");
@@ -217,7 +273,7 @@ public class CodeSplitter2Test extends JJSTestBase {
     JavaToJavaScriptMap map = GenerateJavaScriptAST.exec(
         jProgram, jsProgram, JsOutputOption.PRETTY, symbolTable, new PropertyOracle[]{
             new StaticPropertyOracle(orderedProps, orderedPropValues, configProps)});
-    CodeSplitter2.exec(logger, jProgram, jsProgram, map, 4, null);    
+    CodeSplitter2.exec(logger, jProgram, jsProgram, map, 4, leftoversBudget, null);
   }
   
   private static String createRunAsync(String body) {
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev.jjs.impl;
+
+import com.google.gwt.core.ext.UnableToCompleteException;
+import com.google.gwt.dev.jjs.ast.JProgram;
+
+/**
+ * Tests that {@link ShardedMethodOptimizer} and {@link MethodWorklist} produce
+ * the same program as the sequential optimization loop.
+ */
+public class ShardedMethodOptimizerTest extends JJSTestBase {
+
+  @Override
+  public void setUp() throws Exception {
+    addSnippetClassDecl("static volatile boolean b;");
+    addSnippetClassDecl("static volatile int i;");
+    addSnippetClassDecl("static class A {",
+        "  A() { }",
+        "  int f() { return 1; }",
+        "}");
+    addSnippetClassDecl("static class B extends A {",
+        "  B() { super(); if (false) { i = 2; } }",
+        "  int f() { return b ? 2 : 3; }",
+        "}");
+    addSnippetClassDecl("static class C {",
+        "  C() { do { } while (false); }",
+        "}");
+    addSnippetClassDecl("static int call(A a) { if (true) { return a.f(); } return 0; }");
+    addSnippetClassDecl("static void loop() { while (false) { i++; } new C(); }");
+    addSnippetClassDecl("static int constant() { return true ? 4 : 5; }");
+    addSnippetClassDecl("static void chain() { loop(); i = constant() + call(new B()); }");
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    ShardedMethodOptimizer.setThreadCount(1);
+  }
+
+  public void testShardedMatchesSequential() throws Exception {
+    assertEquals(optimize(false, false), optimize(true, false));
+  }
+
+  public void testWorklistMatchesSequential() throws Exception {
+    assertEquals(optimize(false, false), optimize(false, true));
+  }
+
+  public void testShardedWorklistMatchesSequential() throws Exception {
+    assertEquals(optimize(false, false), optimize(true, true));
+  }
+
+  private String optimize(boolean sharded, boolean useWorklist)
+      throws UnableToCompleteException {
+    ShardedMethodOptimizer.setThreadCount(sharded ? 4 : 1);
+    JProgram program = compileSnippet("void",
+        "A a = b ? new A() : new B(); i = call(a); chain(); new C(); if (b) { } else { }");
+    MethodWorklist worklist = useWorklist ? new MethodWorklist(program) : null;
+    while (optimizeOnce(program, worklist)) {
+    }
+    return program.toSource();
+  }
+
+  /**
+   * Runs the per-method passes of the optimization loop, and the passes that
+   * feed them new work, once.
+   */
+  private boolean optimizeOnce(JProgram program, MethodWorklist worklist) {
+    OptimizerStats stats = new OptimizerStats("Pass");
+    stats.add(record(worklist, MakeCallsStatic.exec(program)));
+    if (worklist == null) {
+      stats.add(MethodCallTightener.exec(program));
+      stats.add(DeadCodeElimination.exec(program));
+    } else {
+      stats.add(record(worklist, MethodCallTightener.exec(program,
+          worklist.getMethodsFor(MethodCallTightener.NAME))));
+      stats.add(record(worklist, DeadCodeElimination.exec(program,
+          worklist.getMethodsFor(DeadCodeElimination.NAME))));
+    }
+    stats.add(record(worklist, MethodInliner.exec(program)));
+    return stats.didChange();
+  }
+
+  private OptimizerStats record(MethodWorklist worklist, OptimizerStats stats) {
+    if (worklist != null) {
+      worklist.record(stats);
+    }
+    return stats;
+  }
+}
@@ -16,10 +16,16 @@
 package com.google.gwt.dev.resource.impl;
 
 import com.google.gwt.core.ext.TreeLogger;
+import com.google.gwt.dev.util.Util;
+import com.google.gwt.util.tools.Utility;
 
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 public class ClassPathEntryTest extends AbstractResourceOrientedTestBase {
 
@@ -35,6 +41,70 @@ public class ClassPathEntryTest extends AbstractResourceOrientedTestBase {
     testAllCpe2FilesFound(getClassPathEntry2AsZip());
   }
 
+  public void testDirectoryChangesFound() throws IOException {
+    TreeLogger logger = createTestTreeLogger();
+    PathPrefixSet pps = new PathPrefixSet();
+    pps.add(new PathPrefix("", null));
+
+    File dir = Utility.makeTemporaryDirectory(null, "cpe-dir-");
+    try {
+      File subDir = new File(dir, "sub");
+      assertTrue(subDir.mkdir());
+      assertTrue(Util.writeStringAsFile(new File(subDir, "A.java"), "a"));
+      // Pretend nothing changed for a while, so listings can be reused.
+      long longAgo = System.currentTimeMillis() - 60 * 1000;
+      assertTrue(subDir.setLastModified(longAgo));
+      assertTrue(dir.setLastModified(longAgo));
+      ClassPathEntry cpe = new DirectoryClassPathEntry(dir);
+
+      Set<AbstractResource> r = cpe.findApplicableResources(logger, pps).keySet();
+      assertEquals(1, r.size());
+      assertPathIncluded(r, "sub/A.java");
+
+      r = cpe.findApplicableResources(logger, pps).keySet();
+      assertEquals(1, r.size());
+      assertPathIncluded(r, "sub/A.java");
+
+      assertTrue(Util.writeStringAsFile(new File(subDir, "B.java"), "b"));
+      r = cpe.findApplicableResources(logger, pps).keySet();
+      assertEquals(2, r.size());
+      assertPathIncluded(r, "sub/A.java");
+      assertPathIncluded(r, "sub/B.java");
+
+      assertTrue(new File(subDir, "A.java").delete());
+      r = cpe.findApplicableResources(logger, pps).keySet();
+      assertEquals(1, r.size());
+      assertPathIncluded(r, "sub/B.java");
+    } finally {
+      Util.recursiveDelete(dir, false);
+    }
+  }
+
+  public void testModifiedZipReindexed() throws IOException {
+    TreeLogger logger = createTestTreeLogger();
+    PathPrefixSet pps = new PathPrefixSet();
+    pps.add(new PathPrefix("", null));
+
+    File zip = File.createTempFile("cpe-zip-", ".jar");
+    try {
+      writeZip(zip, "A.java");
+      assertTrue(zip.setLastModified(System.currentTimeMillis() - 60 * 1000));
+      ZipFileClassPathEntry cpe = ZipFileClassPathEntry.get(zip);
+      assertSame(cpe, ZipFileClassPathEntry.get(zip));
+      Set<AbstractResource> r = cpe.findApplicableResources(logger, pps).keySet();
+      assertEquals(1, r.size());
+      assertPathIncluded(r, "A.java");
+
+      writeZip(zip, "B.java");
+      cpe = ZipFileClassPathEntry.get(zip);
+      r = cpe.findApplicableResources(logger, pps).keySet();
+      assertEquals(1, r.size());
+      assertPathIncluded(r, "B.java");
+    } finally {
+      zip.delete();
+    }
+  }
+
   public void testPathPrefixSetChanges() throws IOException, URISyntaxException {
     ClassPathEntry cpe1jar = getClassPathEntry1AsJar();
     ClassPathEntry cpe1dir = getClassPathEntry1AsDirectory();
@@ -291,4 +361,15 @@ public class ClassPathEntryTest extends AbstractResourceOrientedTestBase {
     }
   }
 
+
+  private void writeZip(File zip, String entryName) throws IOException {
+    ZipOutputStream out = new ZipOutputStream(new FileOutputStream(zip));
+    try {
+      out.putNextEntry(new ZipEntry(entryName));
+      out.write(Util.getBytes(entryName));
+      out.closeEntry();
+    } finally {
+      out.close();
+    }
+  }
 }
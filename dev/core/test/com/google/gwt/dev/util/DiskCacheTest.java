@@ -17,7 +17,11 @@ package com.google.gwt.dev.util;
 
 import junit.framework.TestCase;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 /**
  * Tests {@link DiskCache}.
@@ -76,4 +80,79 @@ public class DiskCacheTest extends TestCase {
           expected, actual);
     }
   }
+
+  public void testSegments() {
+    DiskCache smallCache = new DiskCache(64);
+    List<byte[]> values = new ArrayList<byte[]>();
+    List<Long> tokens = new ArrayList<Long>();
+    for (int size = 0; size < 200; size += 7) {
+      byte[] value = new byte[size];
+      Arrays.fill(value, (byte) size);
+      values.add(value);
+      tokens.add(smallCache.writeByteArray(value));
+    }
+    for (int i = 0; i < values.size(); ++i) {
+      assertTrue(Arrays.equals(values.get(i), smallCache.readByteArray(tokens.get(i))));
+    }
+  }
+
+  public void testStreams() {
+    byte[] bytes = new byte[10000];
+    for (int i = 0; i < bytes.length; ++i) {
+      bytes[i] = (byte) (i * 31);
+    }
+    long token = diskCache.transferFromStream(new ByteArrayInputStream(bytes));
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    diskCache.transferToStream(token, out);
+    assertTrue(Arrays.equals(bytes, out.toByteArray()));
+    assertEquals(bytes.length, diskCache.readByteBuffer(token).remaining());
+  }
+
+  public void testStreamsBetweenSegments() {
+    DiskCache smallCache = new DiskCache(64);
+    long before = smallCache.writeString("before");
+    byte[] bytes = new byte[1000];
+    for (int i = 0; i < bytes.length; ++i) {
+      bytes[i] = (byte) (i * 7);
+    }
+    long token = smallCache.transferFromStream(new ByteArrayInputStream(bytes));
+    long after = smallCache.writeString("after");
+    long empty = smallCache.transferFromStream(new ByteArrayInputStream(new byte[0]));
+    assertEquals("before", smallCache.readString(before));
+    assertTrue(Arrays.equals(bytes, smallCache.readByteArray(token)));
+    assertEquals("after", smallCache.readString(after));
+    assertEquals(0, smallCache.readByteArray(empty).length);
+  }
+
+  public void testConcurrentWrites() throws InterruptedException {
+    final DiskCache smallCache = new DiskCache(1024);
+    final long[][] tokens = new long[8][100];
+    final Throwable[] failure = new Throwable[1];
+    Thread[] threads = new Thread[tokens.length];
+    for (int t = 0; t < threads.length; ++t) {
+      final int thread = t;
+      threads[t] = new Thread() {
+        @Override
+        public void run() {
+          try {
+            for (int i = 0; i < tokens[thread].length; ++i) {
+              tokens[thread][i] = smallCache.writeString(thread + ":" + i);
+            }
+          } catch (Throwable e) {
+            failure[0] = e;
+          }
+        }
+      };
+      threads[t].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertNull(failure[0]);
+    for (int t = 0; t < tokens.length; ++t) {
+      for (int i = 0; i < tokens[t].length; ++i) {
+        assertEquals(t + ":" + i, smallCache.readString(tokens[t][i]));
+      }
+    }
+  }
 }
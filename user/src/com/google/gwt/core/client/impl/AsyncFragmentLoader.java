@@ -47,6 +47,25 @@ public class AsyncFragmentLoader {
     void startLoadingFragment(int fragment, LoadTerminatedHandler loadTerminatedHandler);
   }
 
+  /**
+   * A strategy for loading code fragments that can also download a fragment
+   * before it is needed, without installing it. This lets the loader download
+   * several fragments at once while still installing them one at a time, in
+   * the order their dependencies require. See
+   * {@link AsyncFragmentLoader#setMaxConcurrentDownloads(int)}.
+   */
+  public interface ConcurrentLoadingStrategy extends LoadingStrategy {
+    /**
+     * Start downloading <code>fragment</code>, but do not install it. The code
+     * should be installed by a later call to
+     * {@link #startLoadingFragment(int, LoadTerminatedHandler)} for the same
+     * fragment, once both that call has been made and the download has
+     * finished. Calls for a fragment that is already downloading should be
+     * ignored. If the download fails, the later call should start over.
+     */
+    void startDownloadingFragment(int fragment);
+  }
+
   /**
    * An interface for handlers of load completion. On a failed download, this
    * callback should be invoked or else the requested download will hang
@@ -185,6 +204,15 @@ public class AsyncFragmentLoader {
       write = 0;
     }
 
+    /**
+     * Returns the element <code>index</code> places behind the head of the
+     * queue.
+     */
+    public int get(int index) {
+      assert read + index < write;
+      return array[read + index];
+    }
+
     public int peek() {
       assert read < write;
       return array[read];
@@ -235,6 +263,15 @@ public class AsyncFragmentLoader {
 
       fragmentLoading = -1;
 
+      /*
+       * Fragments downloading ahead might never be requested again, so stop
+       * counting them against the limit.
+       */
+      for (int i = 0; i < isDownloadingAhead.length; i++) {
+        isDownloadingAhead[i] = false;
+      }
+      downloadsAhead = 0;
+
       /*
        * Run the handlers. If an exception is thrown while canceling any of
        * them, remember and throw the last one.
@@ -307,6 +344,12 @@ public class AsyncFragmentLoader {
    */
   private final Object[][] allCallbacks;
 
+  /**
+   * The number of fragments that have started downloading ahead of being
+   * loaded.
+   */
+  private int downloadsAhead = 0;
+
   /**
    * The fragment currently loading, or -1 if there aren't any.
    */
@@ -322,6 +365,12 @@ public class AsyncFragmentLoader {
    */
   private final int[] initialLoadSequence;
 
+  /**
+   * This array indicates which fragments have started downloading ahead of
+   * being loaded, and have not started loading yet.
+   */
+  private final boolean[] isDownloadingAhead;
+
   /**
    * This array indicates which fragments have been successfully loaded.
    */
@@ -331,6 +380,12 @@ public class AsyncFragmentLoader {
 
   private final Logger logger;
 
+  /**
+   * The maximum number of fragments to download at the same time, including
+   * the fragment that is loading.
+   */
+  private int maxConcurrentDownloads = 1;
+
   /**
    * The total number of entry points in the program, which is the number of
    * split points plus one for the main entry point of the program.
@@ -377,6 +432,7 @@ public class AsyncFragmentLoader {
     int numEntriesPlusOne = numEntries + 1;
     this.allCallbacks = new Object[numEntriesPlusOne][];
     this.requestedExclusives = new BoundedIntQueue(numEntriesPlusOne);
+    this.isDownloadingAhead = new boolean[numEntriesPlusOne];
     this.isLoaded = new boolean[numEntriesPlusOne];
     this.pendingDownloadErrorHandlers = new LoadTerminatedHandler[numEntriesPlusOne];
   }
@@ -385,6 +441,27 @@ public class AsyncFragmentLoader {
     return isLoaded[splitPoint];
   }
 
+  /**
+   * Returns whether no fragment is currently loading.
+   */
+  public boolean isIdle() {
+    return fragmentLoading < 0;
+  }
+
+  /**
+   * Set the maximum number of fragments to download at the same time. While
+   * one fragment loads, fragments that have been requested, and the initial
+   * fragments that must be loaded before them, are downloaded ahead. They are
+   * still installed one at a time, in the same order as they would be if they
+   * were downloaded one after another. Downloading ahead requires a
+   * {@link ConcurrentLoadingStrategy}; with any other strategy, or with a
+   * maximum of one, fragments are downloaded one at a time.
+   */
+  public void setMaxConcurrentDownloads(int max) {
+    maxConcurrentDownloads = max;
+    startDownloadsAhead();
+  }
+
   /**
    * Request that a sequence of split points be prefetched. Code for the split
    * points in <code>splitPoints</code> will be downloaded and installed
@@ -479,6 +556,21 @@ public class AsyncFragmentLoader {
     }
   }
 
+  /**
+   * Start downloading the fragments in <code>queue</code> ahead, while there
+   * is room for more concurrent downloads.
+   */
+  private void downloadAhead(ConcurrentLoadingStrategy strategy, BoundedIntQueue queue) {
+    for (int i = 0; i < queue.size() && downloadsAhead + 1 < maxConcurrentDownloads; i++) {
+      int fragment = queue.get(i);
+      if (fragment != fragmentLoading && !isLoaded[fragment] && !isDownloadingAhead[fragment]) {
+        isDownloadingAhead[fragment] = true;
+        downloadsAhead++;
+        strategy.startDownloadingFragment(fragment);
+      }
+    }
+  }
+
   private String downloadGroup(int fragment) {
     return (fragment == leftoversFragment()) ? LwmLabels.LEFTOVERS_DOWNLOAD : LwmLabels
         .downloadGroupForExclusive(fragment);
@@ -615,11 +707,32 @@ public class AsyncFragmentLoader {
     }
   }
 
+  /**
+   * Start downloading the fragments that will be loaded next, if the loading
+   * strategy supports it and there is room for more concurrent downloads.
+   * Fragments that are only prefetched are not downloaded ahead, since the
+   * prefetch queue can be replaced before they are loaded.
+   */
+  private void startDownloadsAhead() {
+    if (maxConcurrentDownloads <= 1 || remainingInitialFragments == null
+        || !(loadingStrategy instanceof ConcurrentLoadingStrategy)) {
+      return;
+    }
+    ConcurrentLoadingStrategy strategy = (ConcurrentLoadingStrategy) loadingStrategy;
+    downloadAhead(strategy, remainingInitialFragments);
+    downloadAhead(strategy, requestedExclusives);
+  }
+
   private void startLoadingFragment(int fragment) {
     assert (fragmentLoading < 0);
     fragmentLoading = fragment;
+    if (isDownloadingAhead[fragment]) {
+      isDownloadingAhead[fragment] = false;
+      downloadsAhead--;
+    }
     logDownloadStart(fragment);
     loadingStrategy.startLoadingFragment(fragment, new ResetAfterDownloadFailure(fragment));
+    startDownloadsAhead();
   }
 
   /**
@@ -627,7 +740,8 @@ public class AsyncFragmentLoader {
    */
   private void startLoadingNextFragment() {
     if (fragmentLoading >= 0) {
-      // Already loading something
+      // Already loading something, but maybe more can download at once
+      startDownloadsAhead();
       return;
     }
 
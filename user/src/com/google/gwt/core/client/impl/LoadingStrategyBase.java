@@ -16,9 +16,11 @@
 package com.google.gwt.core.client.impl;
 
 import com.google.gwt.core.client.JavaScriptObject;
-import com.google.gwt.core.client.impl.AsyncFragmentLoader.LoadTerminatedHandler;
-import com.google.gwt.core.client.impl.AsyncFragmentLoader.LoadingStrategy;
+import com.google.gwt.core.client.Scheduler;
+import com.google.gwt.core.client.Scheduler.ScheduledCommand;
+import com.google.gwt.core.client.impl.AsyncFragmentLoader.ConcurrentLoadingStrategy;
 import com.google.gwt.core.client.impl.AsyncFragmentLoader.HttpInstallFailure;
+import com.google.gwt.core.client.impl.AsyncFragmentLoader.LoadTerminatedHandler;
 
 /**
  * Base for a standard loading strategy used in a web browser. Subclasses
@@ -48,8 +50,15 @@ import com.google.gwt.core.client.impl.AsyncFragmentLoader.HttpInstallFailure;
  * also provide a function <code>__gwtInstallCode</code> for actually installing
  * the code once it is downloaded. That function will be passed the loaded code
  * once it has been downloaded.
+ * 
+ * Fragments may also be downloaded ahead of being loaded, see
+ * {@link ConcurrentLoadingStrategy}. Since calling
+ * <code>__gwtStartLoadingFragment</code> lets a linker that handles the
+ * download itself load and install the fragment, fragments are only downloaded
+ * ahead once <code>__gwtStartLoadingFragment</code> has returned a URL for a
+ * fragment being loaded.
  */
-public class LoadingStrategyBase implements LoadingStrategy {
+public class LoadingStrategyBase implements ConcurrentLoadingStrategy {
   /**
    * Subclasses will need to implement this and pass it in in the constructor.
    * This is how they control how the download will be done (XHR, Script tag, etc.)
@@ -61,6 +70,23 @@ public class LoadingStrategyBase implements LoadingStrategy {
     void tryDownload(final RequestData request);
   }
   
+  /**
+   * Handles the failure of a fragment that is downloading ahead of being
+   * loaded, before and after its request has been created.
+   */
+  private static final class DownloadAheadTerminatedHandler implements LoadTerminatedHandler {
+    private boolean failed;
+    private RequestData request;
+
+    public void loadTerminated(Throwable reason) {
+      if (request == null) {
+        failed = true;
+      } else {
+        request.onLoadError(reason, false);
+      }
+    }
+  }
+
   /**
    * A trivial JavaScript map from ints to ints.  Used to keep a global count of
    * how many times a user has manually retried fetching a fragment.
@@ -81,6 +107,30 @@ public class LoadingStrategyBase implements LoadingStrategy {
     }-*/;
   }
   
+  /**
+   * A trivial JavaScript map from ints to the requests for fragments that are
+   * downloading ahead of being loaded.
+   */
+  private static final class RequestDataMap extends JavaScriptObject {
+    public static RequestDataMap create() {
+      return (RequestDataMap) JavaScriptObject.createArray();
+    }
+
+    protected RequestDataMap() { }
+
+    public native RequestData get(int x) /*-{
+      return this[x] ? this[x] : null;
+    }-*/;
+
+    public native void put(int x, RequestData y) /*-{
+      this[x] = y;
+    }-*/;
+
+    public native void remove(int x) /*-{
+      delete this[x];
+    }-*/;
+  }
+
   /**    
    * Since LoadingStrategy must support concurrent requests, we keep most of the
    * relevant info in the RequestData, and pass it around.  Once created, a
@@ -91,9 +141,12 @@ public class LoadingStrategyBase implements LoadingStrategy {
   protected static class RequestData {
     private static final int MAX_LOG_LENGTH = 200;
 
+    private String downloadedCode = null;
+    private boolean downloadFailed = false;
     private DownloadStrategy downloadStrategy;
     private LoadTerminatedHandler errorHandler = null;
     private int fragment;
+    private boolean installDeferred = false;
     private int maxRetryCount;
     private String originalUrl;
     private int retryCount;
@@ -110,9 +163,43 @@ public class LoadingStrategyBase implements LoadingStrategy {
       this.downloadStrategy = downloadStrategy;
     }
     
+    /**
+     * Keep the code when the download succeeds, instead of installing it,
+     * until {@link #installWhenDownloaded(LoadTerminatedHandler)} is called.
+     */
+    public void deferInstall() {
+      installDeferred = true;
+    }
+
     public int getFragment() { return fragment; }
     
     public String getUrl() { return url; }
+
+    /**
+     * Install the code of a request whose install was deferred, as soon as it
+     * has been downloaded. Returns <code>false</code> if the download already
+     * failed, in which case nothing is installed and the load should be
+     * started over.
+     */
+    public boolean installWhenDownloaded(LoadTerminatedHandler errorHandler) {
+      if (downloadFailed) {
+        return false;
+      }
+      this.errorHandler = errorHandler;
+      installDeferred = false;
+      if (downloadedCode != null) {
+        final String code = downloadedCode;
+        downloadedCode = null;
+        // The installed code reports back to the loader, which is still in the
+        // middle of asking for this fragment, so install it afterwards.
+        Scheduler.get().scheduleDeferred(new ScheduledCommand() {
+          public void execute() {
+            tryInstall(code);
+          }
+        });
+      }
+      return true;
+    }
     
     public void onLoadError(Throwable e, boolean mayRetry) {
       if (mayRetry) {
@@ -124,6 +211,11 @@ public class LoadingStrategyBase implements LoadingStrategy {
           return;
         }
       }
+      if (installDeferred) {
+        // Nobody is waiting for this fragment yet
+        downloadFailed = true;
+        return;
+      }
       errorHandler.loadTerminated(e); 
     }
     
@@ -132,6 +224,10 @@ public class LoadingStrategyBase implements LoadingStrategy {
     }
     
     public void tryInstall(String code) {
+      if (installDeferred) {
+        downloadedCode = code;
+        return;
+      }
       try {
         gwtInstallCode(code);
       } catch (RuntimeException e) {
@@ -175,6 +271,18 @@ public class LoadingStrategyBase implements LoadingStrategy {
   }-*/;
   
   private DownloadStrategy downloadStrategy;
+
+  /**
+   * Requests for fragments that started downloading ahead of being loaded.
+   */
+  private final RequestDataMap downloadsAhead = RequestDataMap.create();
+
+  /**
+   * Whether <code>__gwtStartLoadingFragment</code> returned a URL, rather than
+   * loading the fragment itself, the last time it was called.
+   */
+  private boolean linkerReturnsUrls = false;
+
   private final FragmentReloadTracker manualRetryNumbers = FragmentReloadTracker.create();
 
   /**
@@ -184,14 +292,57 @@ public class LoadingStrategyBase implements LoadingStrategy {
     this.downloadStrategy = downloadStrategy;
   }
 
+  /**
+   * Starts downloading <code>fragment</code> if the linker is known to return
+   * URLs rather than loading fragments itself, and does nothing otherwise.
+   */
+  @Override
+  public void startDownloadingFragment(int fragment) {
+    if (!linkerReturnsUrls || downloadsAhead.get(fragment) != null) {
+      return;
+    }
+    DownloadAheadTerminatedHandler errorHandler = new DownloadAheadTerminatedHandler();
+    RequestData request = createRequest(fragment, errorHandler);
+    if (request == null || errorHandler.failed) {
+      // The linker did not give us the download after all
+      return;
+    }
+    errorHandler.request = request;
+    request.deferInstall();
+    downloadsAhead.put(fragment, request);
+    request.tryDownload();
+  }
+
   @Override
   public void startLoadingFragment(int fragment,
       final LoadTerminatedHandler loadErrorHandler) {
-    String url = gwtStartLoadingFragment(fragment, loadErrorHandler);
-    if (url == null) {
+    RequestData downloadAhead = downloadsAhead.get(fragment);
+    if (downloadAhead != null) {
+      downloadsAhead.remove(fragment);
+      if (downloadAhead.installWhenDownloaded(loadErrorHandler)) {
+        return;
+      }
+    }
+    RequestData request = createRequest(fragment, loadErrorHandler);
+    if (request == null) {
       // The linker is going to handle this fetch - nothing more to do
       return;
     }
+    request.tryDownload();
+  }
+
+  protected int getMaxAutoRetryCount() { return MAX_AUTO_RETRY_COUNT; }
+
+  /**
+   * Returns a request to download <code>fragment</code>, or <code>null</code>
+   * if the linker handles the download itself.
+   */
+  private RequestData createRequest(int fragment, LoadTerminatedHandler loadErrorHandler) {
+    String url = gwtStartLoadingFragment(fragment, loadErrorHandler);
+    linkerReturnsUrls = url != null;
+    if (url == null) {
+      return null;
+    }
     // Browsers will ignore too many script tags if it has previously failed
     // to download that url, so we add a parameter to the url if
     // this is not the first time we've tried to download this fragment.
@@ -200,13 +351,10 @@ public class LoadingStrategyBase implements LoadingStrategy {
       char connector = url.contains("?") ? '&' : '?';
       url += connector + "manualRetry=" + manualRetry; 
     }
-    RequestData request = new RequestData(url, loadErrorHandler, 
+    return new RequestData(url, loadErrorHandler, 
         fragment, downloadStrategy, getMaxAutoRetryCount());
-    request.tryDownload();
   }
 
-  protected int getMaxAutoRetryCount() { return MAX_AUTO_RETRY_COUNT; }
-
   private int getManualRetryNum(int fragment) {
     int ser = manualRetryNumbers.get(fragment);
     manualRetryNumbers.put(fragment, ser + 1);
@@ -16,6 +16,8 @@
 package com.google.gwt.core.client.prefetch;
 
 import com.google.gwt.core.client.GWT;
+import com.google.gwt.core.client.Scheduler;
+import com.google.gwt.core.client.Scheduler.RepeatingCommand;
 import com.google.gwt.core.client.impl.AsyncFragmentLoader;
 
 import java.util.Arrays;
@@ -26,6 +28,35 @@ import java.util.Arrays;
  * Currently, the only supported resource type is {@link RunAsyncCode}.
  */
 public class Prefetcher {
+  /**
+   * Starts prefetching once the fragment loader has been idle at two checks in
+   * a row.
+   */
+  private static class IdleStarter implements RepeatingCommand {
+    private boolean cancelled = false;
+    private boolean wasIdle = false;
+
+    @Override
+    public boolean execute() {
+      if (cancelled) {
+        return false;
+      }
+      boolean isIdle = AsyncFragmentLoader.BROWSER_LOADER.isIdle();
+      if (isIdle && wasIdle) {
+        idleStarter = null;
+        AsyncFragmentLoader.BROWSER_LOADER.startPrefetching();
+        return false;
+      }
+      wasIdle = isIdle;
+      return true;
+    }
+  }
+
+  /**
+   * The pending {@link #startWhenIdle(int)} request, if any.
+   */
+  private static IdleStarter idleStarter = null;
+
   /**
    * Specify which resources should be prefetched.
    */
@@ -62,6 +93,21 @@ public class Prefetcher {
     prefetch(Arrays.asList(resource));
   }
 
+  /**
+   * Set the maximum number of code fragments to download at the same time.
+   * Fragments are still installed one at a time and in dependency order, but
+   * on high-latency networks downloading them concurrently can save a round
+   * trip per fragment. The default is one.
+   */
+  public static void setMaxConcurrentDownloads(int max) {
+    if (!GWT.isScript()) {
+      // Nothing to do in development mode
+      return;
+    }
+
+    AsyncFragmentLoader.BROWSER_LOADER.setMaxConcurrentDownloads(max);
+  }
+
   /**
    * Start prefetching.
    */
@@ -75,7 +121,26 @@ public class Prefetcher {
   }
 
   /**
-   * Stop prefetching.
+   * Start prefetching once no code has been loading for a while, so that
+   * prefetches do not compete with the code the application needs right away.
+   * The loader is checked every <code>idleMillis</code> milliseconds, and
+   * prefetching starts once it has been idle at two checks in a row.
+   */
+  public static void startWhenIdle(int idleMillis) {
+    if (!GWT.isScript()) {
+      // Nothing to do in development mode
+      return;
+    }
+
+    if (idleStarter != null) {
+      idleStarter.cancelled = true;
+    }
+    idleStarter = new IdleStarter();
+    Scheduler.get().scheduleFixedDelay(idleStarter, idleMillis);
+  }
+
+  /**
+   * Stop prefetching. This also cancels a pending {@link #startWhenIdle(int)}.
    */
   public static void stop() {
     if (!GWT.isScript()) {
@@ -83,6 +148,10 @@ public class Prefetcher {
       return;
     }
 
+    if (idleStarter != null) {
+      idleStarter.cancelled = true;
+      idleStarter = null;
+    }
     AsyncFragmentLoader.BROWSER_LOADER.stopPrefetching();
   }
 }
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2013 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.precompress.linker;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * A compression format used by {@link PrecompressLinker}. Each codec named in
+ * the configuration property <code>precompress.codecs</code> produces one
+ * additional variant of every precompressed artifact. Implementations must
+ * have a public no-arg constructor and must be safe to use from several
+ * threads at once.
+ */
+public interface PrecompressCodec {
+
+  /**
+   * Writes a compressed copy of <code>in</code> to <code>out</code>.
+   * 
+   * @param in the uncompressed contents of an artifact
+   * @param out the stream receiving the compressed contents
+   * @param maximum if <code>true</code>, spend as much time as needed to
+   *          produce the smallest output, as for a release build
+   * @throws IOException if the contents cannot be read or compressed
+   */
+  void compress(InputStream in, OutputStream out, boolean maximum)
+      throws IOException;
+
+  /**
+   * Returns the extension appended to the path of a compressed artifact,
+   * including the leading dot, for example <code>".gz"</code>.
+   */
+  String getExtension();
+}
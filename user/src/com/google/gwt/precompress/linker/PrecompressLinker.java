@@ -29,11 +29,20 @@ import com.google.gwt.core.ext.linker.LinkerOrder.Order;
 import com.google.gwt.dev.util.collect.HashSet;
 import com.google.gwt.util.regexfilter.RegexFilter;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
 import java.util.zip.GZIPOutputStream;
 
 /**
@@ -55,10 +64,46 @@ import java.util.zip.GZIPOutputStream;
  * are left in the artifact set. If the configuration property
  * <code>precompress.leave.originals</code> is set to <code>false</code>,
  * however, then the uncompressed version is removed.
+ * 
+ * <p>
+ * Each artifact is compressed once for every codec listed in the configuration
+ * property <code>precompress.codecs</code>. The value <code>gzip</code> names
+ * the built-in gzip codec; any other value is the name of a
+ * {@link PrecompressCodec} class. A compressed variant is only emitted if it is
+ * smaller than the original. Setting <code>precompress.max.compression</code>
+ * to <code>true</code> makes the codecs trade time for smaller output. The
+ * configuration property <code>precompress.threads</code> sets the number of
+ * artifacts compressed at once; <code>0</code> uses one thread per processor
+ * in the final link, and a single thread in each permutation's shard, since
+ * shards may already be linked in parallel.
  */
 @Shardable
 @LinkerOrder(Order.POST)
 public class PrecompressLinker extends AbstractLinker {
+  /**
+   * The built-in codec, which produces <code>.gz</code> files.
+   */
+  private static class GzipCodec implements PrecompressCodec {
+    public void compress(InputStream in, OutputStream out, boolean maximum)
+        throws IOException {
+      GZIPOutputStream gzip = maximum ? new GZIPOutputStream(out, BUF_SIZE) {
+        {
+          def.setLevel(Deflater.BEST_COMPRESSION);
+        }
+      } : new GZIPOutputStream(out, BUF_SIZE);
+      byte[] buf = new byte[BUF_SIZE];
+      int n;
+      while ((n = in.read(buf)) > 0) {
+        gzip.write(buf, 0, n);
+      }
+      gzip.close();
+    }
+
+    public String getExtension() {
+      return GZIP_EXTENSION;
+    }
+  }
+
   private static class PrecompressFilter extends RegexFilter {
     public PrecompressFilter(TreeLogger logger, List<String> regexes)
         throws UnableToCompleteException {
@@ -82,25 +127,161 @@ public class PrecompressLinker extends AbstractLinker {
    */
   private static final int BUF_SIZE = 10000;
 
+  private static final String GZIP_CODEC = "gzip";
+
+  private static final String GZIP_EXTENSION = ".gz";
+
+  private static final String PROP_CODECS = "precompress.codecs";
+
   private static final String PROP_LEAVE_ORIGINALS = "precompress.leave.originals";
 
+  private static final String PROP_MAX_COMPRESSION = "precompress.max.compression";
+
   private static final String PROP_PATH_REGEXES = "precompress.path.regexes";
 
-  private static ConfigurationProperty findProperty(
-      TreeLogger logger,
-      Iterable<com.google.gwt.core.ext.linker.ConfigurationProperty> properties,
-      String propName) throws UnableToCompleteException {
+  private static final String PROP_THREADS = "precompress.threads";
+
+  /**
+   * Reads the contents of <code>art</code> once and returns its compressed
+   * form for each of <code>codecs</code>, or <code>null</code> where the
+   * compressed form would not be smaller.
+   */
+  private static byte[][] compress(TreeLogger logger, EmittedArtifact art,
+      List<PrecompressCodec> codecs, boolean maximum)
+      throws UnableToCompleteException, IOException {
+    InputStream originalBytes = art.getContents(logger);
+    ByteArrayOutputStream original = new ByteArrayOutputStream();
+    byte[] buf = new byte[BUF_SIZE];
+    int n;
+    while ((n = originalBytes.read(buf)) > 0) {
+      original.write(buf, 0, n);
+    }
+    originalBytes.close();
+
+    byte[] originalArray = original.toByteArray();
+    byte[][] compressed = new byte[codecs.size()][];
+    for (int i = 0; i < compressed.length; i++) {
+      ByteArrayOutputStream compressedBytes = new ByteArrayOutputStream();
+      codecs.get(i).compress(new ByteArrayInputStream(originalArray),
+          compressedBytes, maximum);
+      if (compressedBytes.size() < originalArray.length) {
+        compressed[i] = compressedBytes.toByteArray();
+      }
+    }
+    return compressed;
+  }
+
+  /**
+   * Returns the named property, or <code>null</code> if it is not defined by
+   * the module.
+   */
+  private static ConfigurationProperty findOptionalProperty(
+      Iterable<ConfigurationProperty> properties, String propName) {
     for (ConfigurationProperty prop : properties) {
       if (prop.getName().equals(propName)) {
         return prop;
       }
     }
+    return null;
+  }
+
+  private static ConfigurationProperty findProperty(
+      TreeLogger logger,
+      Iterable<com.google.gwt.core.ext.linker.ConfigurationProperty> properties,
+      String propName) throws UnableToCompleteException {
+    ConfigurationProperty prop = findOptionalProperty(properties, propName);
+    if (prop != null) {
+      return prop;
+    }
 
     logger.log(TreeLogger.ERROR, "Could not find configuration property "
         + propName);
     throw new UnableToCompleteException();
   }
 
+  /**
+   * Returns the codecs configured by <code>precompress.codecs</code>, or just
+   * the gzip codec if that property is not defined.
+   */
+  private static List<PrecompressCodec> getCodecs(TreeLogger logger,
+      LinkerContext context) throws UnableToCompleteException {
+    List<PrecompressCodec> codecs = new ArrayList<PrecompressCodec>();
+    ConfigurationProperty prop = findOptionalProperty(
+        context.getConfigurationProperties(), PROP_CODECS);
+    if (prop == null) {
+      codecs.add(new GzipCodec());
+      return codecs;
+    }
+    for (String name : prop.getValues()) {
+      name = name.trim();
+      if (GZIP_CODEC.equals(name)) {
+        codecs.add(new GzipCodec());
+        continue;
+      }
+      try {
+        codecs.add(Class.forName(name).asSubclass(
+            PrecompressCodec.class).newInstance());
+      } catch (ClassNotFoundException e) {
+        logger.log(TreeLogger.ERROR, "Could not find codec " + name, e);
+        throw new UnableToCompleteException();
+      } catch (ClassCastException e) {
+        logger.log(TreeLogger.ERROR, name + " is not a "
+            + PrecompressCodec.class.getName(), e);
+        throw new UnableToCompleteException();
+      } catch (InstantiationException e) {
+        logger.log(TreeLogger.ERROR, "Could not create codec " + name, e);
+        throw new UnableToCompleteException();
+      } catch (IllegalAccessException e) {
+        logger.log(TreeLogger.ERROR, "Could not create codec " + name, e);
+        throw new UnableToCompleteException();
+      }
+    }
+    return codecs;
+  }
+
+  /**
+   * Returns the number of threads configured by
+   * <code>precompress.threads</code>.
+   */
+  private static int getThreadCount(TreeLogger logger, LinkerContext context,
+      boolean onePermutation) throws UnableToCompleteException {
+    ConfigurationProperty prop = findOptionalProperty(
+        context.getConfigurationProperties(), PROP_THREADS);
+    int threads = 1;
+    if (prop != null) {
+      try {
+        threads = Integer.parseInt(prop.getValues().get(0).trim());
+      } catch (NumberFormatException e) {
+        logger.log(TreeLogger.ERROR, "Invalid value for " + PROP_THREADS, e);
+        throw new UnableToCompleteException();
+      }
+    }
+    if (threads <= 0) {
+      // Permutations may be linked on several workers at once
+      threads = onePermutation ? 1 : Runtime.getRuntime().availableProcessors();
+    }
+    return threads;
+  }
+
+  /**
+   * Returns <code>true</code> if <code>path</code> is itself compressed, or if
+   * a compressed variant of it has already been emitted.
+   */
+  private static boolean isCompressed(String path,
+      List<PrecompressCodec> codecs, Set<String> allPaths) {
+    for (PrecompressCodec codec : codecs) {
+      if (path.endsWith(codec.getExtension())) {
+        // Already a compressed artifact
+        return true;
+      }
+      if (allPaths.contains(path + codec.getExtension())) {
+        // It's already been compressed
+        return true;
+      }
+    }
+    return false;
+  }
+
   @Override
   public String getDescription() {
     return "PrecompressLinker";
@@ -115,6 +296,13 @@ public class PrecompressLinker extends AbstractLinker {
     boolean leaveOriginals = Boolean.valueOf(leaveOriginalsProp.getValues().get(
         0));
 
+    ConfigurationProperty maxCompressionProp = findOptionalProperty(
+        context.getConfigurationProperties(), PROP_MAX_COMPRESSION);
+    final boolean maxCompression = maxCompressionProp != null
+        && Boolean.valueOf(maxCompressionProp.getValues().get(0));
+
+    final List<PrecompressCodec> codecs = getCodecs(logger, context);
+
     PrecompressFilter filter = new PrecompressFilter(logger.branch(
         TreeLogger.TRACE, "Analyzing the path patterns"), findProperty(logger,
         context.getConfigurationProperties(), PROP_PATH_REGEXES).getValues());
@@ -125,57 +313,90 @@ public class PrecompressLinker extends AbstractLinker {
       allPaths.add(art.getPartialPath());
     }
 
-    try {
-      // Buffer for streaming data to be compressed
-      byte[] buf = new byte[BUF_SIZE];
-
-      ArtifactSet updated = new ArtifactSet(artifacts);
-      for (EmittedArtifact art : artifacts.find(EmittedArtifact.class)) {
-        if (art.getVisibility() != Visibility.Public) {
-          // only compress things that will be served to the client
-          continue;
-        }
-        if (art.getPartialPath().endsWith(".gz")) {
-          // Already a compressed artifact
-          continue;
-        }
-        if (allPaths.contains(art.getPartialPath() + ".gz")) {
-          // It's already been compressed
-          continue;
-        }
-        if (!filter.isIncluded(logger.branch(TreeLogger.TRACE,
-            "Checking the path patterns"), art.getPartialPath())) {
-          continue;
-        }
-
-        TreeLogger compressBranch = logger.branch(TreeLogger.TRACE,
-            "Compressing " + art.getPartialPath());
+    List<EmittedArtifact> toCompress = new ArrayList<EmittedArtifact>();
+    List<TreeLogger> compressBranches = new ArrayList<TreeLogger>();
+    for (EmittedArtifact art : artifacts.find(EmittedArtifact.class)) {
+      if (art.getVisibility() != Visibility.Public) {
+        // only compress things that will be served to the client
+        continue;
+      }
+      if (isCompressed(art.getPartialPath(), codecs, allPaths)) {
+        continue;
+      }
+      if (!filter.isIncluded(logger.branch(TreeLogger.TRACE,
+          "Checking the path patterns"), art.getPartialPath())) {
+        continue;
+      }
 
-        InputStream originalBytes = art.getContents(compressBranch);
-        ByteArrayOutputStream compressedBytes = new ByteArrayOutputStream();
-        GZIPOutputStream gzip = new GZIPOutputStream(compressedBytes);
+      toCompress.add(art);
+      compressBranches.add(logger.branch(TreeLogger.TRACE, "Compressing "
+          + art.getPartialPath()));
+    }
 
-        int originalLength = 0;
-        int n;
-        while ((n = originalBytes.read(buf)) > 0) {
-          originalLength += n;
-          gzip.write(buf, 0, n);
+    // Compress the artifacts, possibly in parallel
+    int threads = Math.min(getThreadCount(logger, context, onePermutation),
+        toCompress.size());
+    List<byte[][]> compressed = new ArrayList<byte[][]>(toCompress.size());
+    try {
+      if (threads <= 1) {
+        for (int i = 0; i < toCompress.size(); i++) {
+          compressed.add(compress(compressBranches.get(i), toCompress.get(i),
+              codecs, maxCompression));
         }
-        gzip.close();
-
-        byte[] compressed = compressedBytes.toByteArray();
-        if (compressed.length < originalLength) {
-          updated.add(emitBytes(compressBranch, compressed,
-              art.getPartialPath() + ".gz"));
-          if (!leaveOriginals) {
-            updated.remove(art);
+      } else {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+          List<Future<byte[][]>> futures = new ArrayList<Future<byte[][]>>(
+              toCompress.size());
+          for (int i = 0; i < toCompress.size(); i++) {
+            final TreeLogger compressBranch = compressBranches.get(i);
+            final EmittedArtifact art = toCompress.get(i);
+            futures.add(executor.submit(new Callable<byte[][]>() {
+              public byte[][] call() throws Exception {
+                return compress(compressBranch, art, codecs, maxCompression);
+              }
+            }));
+          }
+          for (Future<byte[][]> future : futures) {
+            compressed.add(future.get());
+          }
+        } catch (ExecutionException e) {
+          Throwable cause = e.getCause();
+          if (cause instanceof UnableToCompleteException) {
+            throw (UnableToCompleteException) cause;
           }
+          logger.log(TreeLogger.ERROR, "Unexpected exception", cause);
+          throw new UnableToCompleteException();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          logger.log(TreeLogger.ERROR, "Interrupted while compressing", e);
+          throw new UnableToCompleteException();
+        } finally {
+          executor.shutdownNow();
         }
       }
-      return updated;
     } catch (IOException e) {
       logger.log(TreeLogger.ERROR, "Unexpected exception", e);
       throw new UnableToCompleteException();
     }
+
+    // Emit the results in the original order
+    ArtifactSet updated = new ArtifactSet(artifacts);
+    for (int i = 0; i < toCompress.size(); i++) {
+      EmittedArtifact art = toCompress.get(i);
+      byte[][] variants = compressed.get(i);
+      boolean emitted = false;
+      for (int j = 0; j < variants.length; j++) {
+        if (variants[j] != null) {
+          updated.add(emitBytes(compressBranches.get(i), variants[j],
+              art.getPartialPath() + codecs.get(j).getExtension()));
+          emitted = true;
+        }
+      }
+      if (emitted && !leaveOriginals) {
+        updated.remove(art);
+      }
+    }
+    return updated;
   }
 }
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.user.client.rpc;
+
+/**
+ * An interface implemented by client-side RPC proxy objects. Cast the object
+ * returned from {@link com.google.gwt.core.client.GWT#create(Class)} on a
+ * {@link RemoteService} to this interface to send the calls made during the
+ * same pass of the browser event loop in a single HTTP request.
+ * <p>
+ * The service must be implemented by a
+ * {@link com.google.gwt.user.server.rpc.RemoteServiceServlet} that supports
+ * batched requests. Async methods that return a
+ * {@link com.google.gwt.http.client.Request} return <code>null</code> for
+ * calls that are batched, and methods that return a
+ * {@link com.google.gwt.http.client.RequestBuilder} are never batched.
+ */
+public interface HasRpcBatching {
+
+  /**
+   * Returns <code>true</code> if calls are batched.
+   */
+  boolean isRpcBatchingEnabled();
+
+  /**
+   * Sets whether calls made during the same pass of the event loop are sent in
+   * a single request. Batching is disabled by default.
+   */
+  void setRpcBatchingEnabled(boolean enabled);
+}
@@ -27,6 +27,14 @@ import com.google.gwt.http.client.RequestCallback;
  * {@link ServiceDefTarget#setRpcRequestBuilder}.
  */
 public class RpcRequestBuilder {
+  /**
+   * Sent with requests that combine several calls, see {@link HasRpcBatching}.
+   */
+  /*
+   * NB: Also used by RemoteServiceServlet.
+   */
+  public static final String BATCH_SIZE_HEADER = "X-GWT-RPC-Batch-Size";
+
   /**
    * Used by {@link #doSetContentType}.
    */
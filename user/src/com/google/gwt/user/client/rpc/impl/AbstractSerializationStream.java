@@ -59,11 +59,18 @@ public abstract class AbstractSerializationStream {
    * Indicates that RPC token is included in the RPC payload.
    */
   public static final int FLAG_RPC_TOKEN_INCLUDED = 0x2;
+
+  /**
+   * Indicates that the client accepts a compact encoding of numeric values in
+   * the response: longs that fit in a double are written as plain numbers, and
+   * floating point values are written with as few digits as possible.
+   */
+  public static final int FLAG_COMPACT_NUMERICS = 0x4;
   
   /**
    * Bit mask representing all valid flags.
    */
-  public static final int VALID_FLAGS_MASK = 0x3;
+  public static final int VALID_FLAGS_MASK = 0x7;
 
   private int flags = DEFAULT_FLAGS;
   private int version = SERIALIZATION_STREAM_VERSION;
@@ -375,7 +375,12 @@ public final class ClientSerializationStreamReader extends
   
   @Override
   public long readLong() {    
-    return LongLib.longFromBase64(((JsStringLiteral) decoder.getValues().get(--index)).getValue());
+    JsValueLiteral literal = decoder.getValues().get(--index);
+    if (literal instanceof JsNumberLiteral) {
+      // Written by a server honoring FLAG_COMPACT_NUMERICS
+      return (long) ((JsNumberLiteral) literal).getValue();
+    }
+    return LongLib.longFromBase64(((JsStringLiteral) literal).getValue());
   }
   
   @Override
@@ -16,11 +16,16 @@
 package com.google.gwt.user.client.rpc.impl;
 
 import com.google.gwt.core.client.JavaScriptObject;
+import com.google.gwt.core.client.Scheduler;
+import com.google.gwt.core.client.Scheduler.ScheduledCommand;
+import com.google.gwt.http.client.Header;
 import com.google.gwt.http.client.Request;
 import com.google.gwt.http.client.RequestBuilder;
 import com.google.gwt.http.client.RequestCallback;
 import com.google.gwt.http.client.RequestException;
+import com.google.gwt.http.client.Response;
 import com.google.gwt.user.client.rpc.AsyncCallback;
+import com.google.gwt.user.client.rpc.HasRpcBatching;
 import com.google.gwt.user.client.rpc.HasRpcToken;
 import com.google.gwt.user.client.rpc.InvocationException;
 import com.google.gwt.user.client.rpc.RpcRequestBuilder;
@@ -33,6 +38,9 @@ import com.google.gwt.user.client.rpc.SerializationStreamWriter;
 import com.google.gwt.user.client.rpc.ServiceDefTarget;
 import com.google.gwt.user.client.rpc.impl.RequestCallbackAdapter.ResponseReader;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Superclass for client-side
  * {@link com.google.gwt.user.client.rpc.RemoteService RemoteService} proxies.
@@ -40,7 +48,109 @@ import com.google.gwt.user.client.rpc.impl.RequestCallbackAdapter.ResponseReader
  * For internal use only.
  */
 public abstract class RemoteServiceProxy implements SerializationStreamFactory,
-    ServiceDefTarget, HasRpcToken {
+    ServiceDefTarget, HasRpcToken, HasRpcBatching {
+
+  /**
+   * Dispatches the parts of a batched response to the calls in the batch.
+   */
+  private static class BatchCallback implements RequestCallback {
+    private final List<BatchedCall> calls;
+
+    public BatchCallback(List<BatchedCall> calls) {
+      this.calls = calls;
+    }
+
+    public void onError(Request request, Throwable exception) {
+      for (BatchedCall call : calls) {
+        call.requestCallback.onError(request, exception);
+      }
+    }
+
+    public void onResponseReceived(Request request, Response response) {
+      if (response.getStatusCode() != Response.SC_OK || response.getText() == null) {
+        // Let each call report the failure.
+        for (BatchedCall call : calls) {
+          call.requestCallback.onResponseReceived(request, response);
+        }
+        return;
+      }
+
+      List<String> parts = RpcBatch.split(response.getText());
+      for (int i = 0; i < calls.size(); i++) {
+        BatchedCall call = calls.get(i);
+        if (parts == null || parts.size() != calls.size()) {
+          call.requestCallback.onError(request, new InvocationException(
+              "Malformed batch response from " + call.methodName));
+        } else {
+          call.requestCallback.onResponseReceived(request,
+              new BatchedResponse(response, parts.get(i)));
+        }
+      }
+    }
+  }
+
+  /**
+   * A call waiting to be sent as part of a batch.
+   */
+  private static class BatchedCall {
+    final AsyncCallback<?> callback;
+    final String methodName;
+    final RequestCallback requestCallback;
+    final String requestData;
+    final RpcStatsContext statsContext;
+
+    public BatchedCall(String methodName, RpcStatsContext statsContext, String requestData,
+        RequestCallback requestCallback, AsyncCallback<?> callback) {
+      this.callback = callback;
+      this.methodName = methodName;
+      this.requestCallback = requestCallback;
+      this.requestData = requestData;
+      this.statsContext = statsContext;
+    }
+  }
+
+  /**
+   * One call's part of a batched response.
+   */
+  private static class BatchedResponse extends Response {
+    private final Response batch;
+    private final String text;
+
+    public BatchedResponse(Response batch, String text) {
+      this.batch = batch;
+      this.text = text;
+    }
+
+    @Override
+    public String getHeader(String header) {
+      return batch.getHeader(header);
+    }
+
+    @Override
+    public Header[] getHeaders() {
+      return batch.getHeaders();
+    }
+
+    @Override
+    public String getHeadersAsString() {
+      return batch.getHeadersAsString();
+    }
+
+    @Override
+    public int getStatusCode() {
+      return batch.getStatusCode();
+    }
+
+    @Override
+    public String getStatusText() {
+      return batch.getStatusText();
+    }
+
+    @Override
+    public String getText() {
+      return text;
+    }
+  }
 
   /**
    * The content type to be used in HTTP requests.
@@ -203,12 +313,20 @@ public abstract class RemoteServiceProxy implements SerializationStreamFactory,
    */
   private final String moduleBaseURL;
 
+  /**
+   * Calls waiting to be sent as one batch, or <code>null</code> if no batch
+   * has been started.
+   */
+  private List<BatchedCall> pendingCalls;
+
   /**
    * URL of the {@link com.google.gwt.user.client.rpc.RemoteService
    * RemoteService}.
    */
   private String remoteServiceURL;
 
+  private boolean rpcBatchingEnabled;
+
   private RpcRequestBuilder rpcRequestBuilder;
 
   private RpcToken rpcToken;
@@ -294,6 +412,13 @@ public abstract class RemoteServiceProxy implements SerializationStreamFactory,
     return rpcTokenExceptionHandler;
   }
 
+  /**
+   * @see HasRpcBatching#isRpcBatchingEnabled()
+   */
+  public boolean isRpcBatchingEnabled() {
+    return rpcBatchingEnabled;
+  }
+
   public String getSerializationPolicyName() {
     return serializationPolicyName;
   }
@@ -305,6 +430,13 @@ public abstract class RemoteServiceProxy implements SerializationStreamFactory,
     return remoteServiceURL;
   }
 
+  /**
+   * @see HasRpcBatching#setRpcBatchingEnabled(boolean)
+   */
+  public void setRpcBatchingEnabled(boolean enabled) {
+    this.rpcBatchingEnabled = enabled;
+  }
+
   public void setRpcRequestBuilder(RpcRequestBuilder builder) {
     this.rpcRequestBuilder = builder;
   }
@@ -365,6 +497,16 @@ public abstract class RemoteServiceProxy implements SerializationStreamFactory,
       String methodName, RpcStatsContext statsContext, String requestData,
       AsyncCallback<T> callback) {
 
+    if (rpcBatchingEnabled) {
+      if (getServiceEntryPoint() == null) {
+        throw new NoServiceEntryPointSpecifiedException();
+      }
+      addToBatch(new BatchedCall(methodName, statsContext, requestData,
+          doCreateRequestCallback(responseReader, methodName, statsContext, callback),
+          callback));
+      return null;
+    }
+
     RequestBuilder rb = doPrepareRequestBuilderImpl(responseReader, methodName,
         statsContext, requestData, callback);
 
@@ -433,6 +575,27 @@ public abstract class RemoteServiceProxy implements SerializationStreamFactory,
     RequestCallback responseHandler = doCreateRequestCallback(responseReader,
         methodName, statsContext, callback);
 
+    return createRequestBuilder(responseHandler, statsContext, requestData);
+  }
+
+  /**
+   * Adds a call to the batch sent at the end of the current pass of the event
+   * loop.
+   */
+  private void addToBatch(BatchedCall call) {
+    if (pendingCalls == null) {
+      pendingCalls = new ArrayList<BatchedCall>();
+      Scheduler.get().scheduleFinally(new ScheduledCommand() {
+        public void execute() {
+          sendBatch();
+        }
+      });
+    }
+    pendingCalls.add(call);
+  }
+
+  private RequestBuilder createRequestBuilder(RequestCallback responseHandler,
+      RpcStatsContext statsContext, String requestData) {
     ensureRpcRequestBuilder();
 
     rpcRequestBuilder.create(getServiceEntryPoint());
@@ -448,4 +611,44 @@ public abstract class RemoteServiceProxy implements SerializationStreamFactory,
       rpcRequestBuilder = new RpcRequestBuilder();
     }
   }
+
+  /**
+   * Sends the pending calls, in a single request if there is more than one.
+   */
+  private void sendBatch() {
+    List<BatchedCall> calls = pendingCalls;
+    pendingCalls = null;
+
+    BatchedCall first = calls.get(0);
+    RequestBuilder rb;
+    if (calls.size() == 1) {
+      rb = createRequestBuilder(first.requestCallback, first.statsContext, first.requestData);
+    } else {
+      List<String> payloads = new ArrayList<String>(calls.size());
+      for (BatchedCall call : calls) {
+        payloads.add(call.requestData);
+      }
+      rb = createRequestBuilder(new BatchCallback(calls), first.statsContext,
+          RpcBatch.join(payloads));
+      rb.setHeader(RpcRequestBuilder.BATCH_SIZE_HEADER, String.valueOf(calls.size()));
+    }
+
+    try {
+      rb.send();
+    } catch (RequestException ex) {
+      for (BatchedCall call : calls) {
+        call.callback.onFailure(new InvocationException(
+            "Unable to initiate the asynchronous service invocation (" +
+            call.methodName + ") -- check the network connection",
+            ex));
+      }
+    } finally {
+      for (BatchedCall call : calls) {
+        if (call.statsContext.isStatsAvailable()) {
+          call.statsContext.stats(call.statsContext.bytesStat(call.methodName,
+              call.requestData.length(), "requestSent"));
+        }
+      }
+    }
+  }
 }
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.user.client.rpc.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * For internal use only. Combines the payloads of several RPC requests or
+ * responses into a single payload, and splits them apart again. Each payload
+ * is written as its length in characters, a colon, and the payload itself.
+ */
+public final class RpcBatch {
+
+  /**
+   * Returns a single payload containing <code>payloads</code>, in order.
+   */
+  public static String join(List<String> payloads) {
+    StringBuilder sb = new StringBuilder();
+    for (String payload : payloads) {
+      sb.append(payload.length()).append(':').append(payload);
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Returns the payloads combined into <code>batch</code> by
+   * {@link #join(List)}, or <code>null</code> if <code>batch</code> is
+   * malformed.
+   */
+  public static List<String> split(String batch) {
+    List<String> payloads = new ArrayList<String>();
+    int idx = 0;
+    while (idx < batch.length()) {
+      int colon = batch.indexOf(':', idx);
+      if (colon <= idx) {
+        return null;
+      }
+      int length;
+      try {
+        length = Integer.parseInt(batch.substring(idx, colon));
+      } catch (NumberFormatException e) {
+        return null;
+      }
+      int end = colon + 1 + length;
+      if (length < 0 || end > batch.length()) {
+        return null;
+      }
+      payloads.add(batch.substring(colon + 1, end));
+      idx = end;
+    }
+    return payloads;
+  }
+
+  private RpcBatch() {
+  }
+}
@@ -93,6 +93,12 @@ public class ProxyCreator {
   public static final String CACHED_PROPERTY_INFO_KEY = "cached-property-info";
   public static final String CACHED_TYPE_INFO_KEY = "cached-type-info";
 
+  /**
+   * Configuration property that lets the server use a compact encoding for
+   * numeric values in RPC responses.
+   */
+  public static final String GWT_COMPACT_NUMERICS_IN_RPC = "gwt.compactNumericsInRPC";
+
   /**
    * The directory within which RPC manifests are placed for individual
    * permutations.
@@ -103,7 +109,8 @@ public class ProxyCreator {
    * Properties which need to be checked to determine cache reusability.
    */
   private static final Collection<String> configPropsToCheck = Arrays.asList(
-      TypeSerializerCreator.GWT_ELIDE_TYPE_NAMES_FROM_RPC, Shared.RPC_ENHANCED_CLASSES);
+      TypeSerializerCreator.GWT_ELIDE_TYPE_NAMES_FROM_RPC, GWT_COMPACT_NUMERICS_IN_RPC,
+      Shared.RPC_ENHANCED_CLASSES);
   private static final Collection<String> selectionPropsToCheck = Arrays
       .asList(Shared.RPC_PROP_SUPPRESS_NON_STATIC_FINAL_FIELD_WARNINGS);
 
@@ -233,6 +240,8 @@ public class ProxyCreator {
 
   protected JClassType serviceIntf;
 
+  private boolean compactNumerics;
+
   private boolean elideTypeNames;
 
   /**
@@ -342,6 +351,16 @@ public class ProxyCreator {
       throw new UnableToCompleteException();
     }
 
+    try {
+      ConfigurationProperty prop =
+          context.getPropertyOracle().getConfigurationProperty(GWT_COMPACT_NUMERICS_IN_RPC);
+      compactNumerics = Boolean.parseBoolean(prop.getValues().get(0));
+    } catch (BadPropertyValueException e) {
+      logger.log(TreeLogger.ERROR, "Configuration property " + GWT_COMPACT_NUMERICS_IN_RPC
+          + " is not defined. Is RemoteService.gwt.xml inherited?");
+      throw new UnableToCompleteException();
+    }
+
     SourceWriter srcWriter = getSourceWriter(logger, context, serviceAsync);
     if (srcWriter == null) {
       // don't expect this to occur, but could happen if an instance was
@@ -680,6 +699,10 @@ public class ProxyCreator {
       srcWriter.println("toReturn.addFlags(ClientSerializationStreamWriter."
           + "FLAG_ELIDE_TYPE_NAMES);");
     }
+    if (compactNumerics) {
+      srcWriter.println("toReturn.addFlags(ClientSerializationStreamWriter."
+          + "FLAG_COMPACT_NUMERICS);");
+    }
     srcWriter.println("if (getRpcToken() != null) {");
     srcWriter.indent();
     srcWriter.println("toReturn.addFlags(ClientSerializationStreamWriter."
@@ -0,0 +1,594 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.user.server.rpc;
+
+import com.google.gwt.user.client.rpc.IncompatibleRemoteServiceException;
+import com.google.gwt.user.client.rpc.RpcRequestBuilder;
+import com.google.gwt.user.client.rpc.RpcTokenException;
+import com.google.gwt.user.client.rpc.SerializationException;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.servlet.ServletRequest;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * A {@link RemoteServiceServlet} whose service methods may complete after they
+ * return, so that calls waiting on slow backends need not hold a request
+ * thread. A service method defers its response by calling
+ * {@link #deferResponse()}, and later completes it from any thread:
+ *
+ * <pre>
+ * public String getQuote(String symbol) {
+ *   final DeferredResponse&lt;String&gt; response = deferResponse();
+ *   backend.fetchQuote(symbol, new QuoteCallback() {
+ *     public void onQuote(String quote) {
+ *       response.complete(quote);
+ *     }
+ *
+ *     public void onError(Throwable caught) {
+ *       response.fail(caught);
+ *     }
+ *   });
+ *   return null; // ignored
+ * }
+ * </pre>
+ *
+ * When running in a Servlet 3 container and the servlet is declared with
+ * <code>&lt;async-supported&gt;true&lt;/async-supported&gt;</code>, the request
+ * is suspended with <code>ServletRequest.startAsync()</code> and the request
+ * thread returns to the container. Otherwise the request thread waits for the
+ * response to be completed, so that the same service code runs in Servlet 2.5
+ * containers. Either way, a response that is not completed within the number
+ * of milliseconds given by the {@value #DEFERRED_RESPONSE_TIMEOUT_PARAM}
+ * servlet or servlet context parameter is reported to the client as an
+ * unexpected failure, and completing it afterwards throws
+ * {@link IllegalStateException}. Suspended requests that time out or fail in
+ * the container are reported through {@link #doUnexpectedFailure}.
+ *
+ * When a suspended request is completed, {@link #onAfterResponseSerialized},
+ * {@link #doUnexpectedFailure} and {@link #getThreadLocalRequest()} run on the
+ * completing thread and see the suspended request and response.
+ *
+ * Responses streamed by {@link #shouldStreamResponse(HttpServletRequest)}
+ * cannot be deferred.
+ */
+public class AsyncRemoteServiceServlet extends RemoteServiceServlet {
+
+  /**
+   * The response to a call whose result is not yet known. Exactly one of
+   * {@link #complete(Object)} or {@link #fail(Throwable)} must be called.
+   *
+   * @param <T> the return type of the service method
+   */
+  public static final class DeferredResponse<T> {
+    private final Object asyncContext;
+    private final AtomicBoolean completed = new AtomicBoolean();
+    private final CountDownLatch done = new CountDownLatch(1);
+    private Throwable failure;
+    private String payload;
+    private final HttpServletRequest request;
+    private final HttpServletResponse response;
+    private final RPCRequest rpcRequest;
+    private final AsyncRemoteServiceServlet servlet;
+
+    private DeferredResponse(AsyncRemoteServiceServlet servlet, HttpServletRequest request,
+        HttpServletResponse response, RPCRequest rpcRequest, Object asyncContext) {
+      this.asyncContext = asyncContext;
+      this.request = request;
+      this.response = response;
+      this.rpcRequest = rpcRequest;
+      this.servlet = servlet;
+    }
+
+    /**
+     * Sends <code>result</code> to the client as the return value of the
+     * service method.
+     *
+     * @throws IllegalStateException if the response was already completed, or
+     *           the request thread stopped waiting for it
+     */
+    public void complete(T result) {
+      String encoded;
+      try {
+        encoded = RPC.encodeResponseForSuccess(rpcRequest.getMethod(), result,
+            rpcRequest.getSerializationPolicy(), rpcRequest.getFlags());
+      } catch (Throwable e) {
+        finish(null, e);
+        return;
+      }
+      finish(encoded, null);
+    }
+
+    /**
+     * Sends <code>caught</code> to the client as if the service method had
+     * thrown it. Exceptions that the service method does not declare are
+     * reported as unexpected failures.
+     *
+     * @throws IllegalStateException if the response was already completed, or
+     *           the request thread stopped waiting for it
+     */
+    public void fail(Throwable caught) {
+      String encoded;
+      try {
+        encoded = RPC.encodeResponseForFailure(rpcRequest.getMethod(), caught,
+            rpcRequest.getSerializationPolicy(), rpcRequest.getFlags());
+      } catch (Throwable e) {
+        finish(null, e);
+        return;
+      }
+      finish(encoded, null);
+    }
+
+    /**
+     * Waits for the response to be completed and returns the encoded payload.
+     *
+     * @throws UnexpectedException if the response is not completed within
+     *           <code>timeout</code> milliseconds
+     */
+    private String awaitPayload(long timeout) throws SerializationException {
+      try {
+        if (!done.await(timeout, TimeUnit.MILLISECONDS)) {
+          if (completed.compareAndSet(false, true)) {
+            throw new UnexpectedException("No deferred response was completed within "
+                + timeout + " ms", null);
+          }
+          // The response was completed just as the wait timed out.
+          done.await();
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new UnexpectedException("Interrupted while waiting for a deferred response", e);
+      }
+      if (failure instanceof SerializationException) {
+        throw (SerializationException) failure;
+      } else if (failure instanceof RuntimeException) {
+        throw (RuntimeException) failure;
+      } else if (failure instanceof Error) {
+        throw (Error) failure;
+      } else if (failure != null) {
+        throw new UnexpectedException("Deferred call failed", failure);
+      }
+      return payload;
+    }
+
+    /**
+     * Reports an unexpected failure to the client of a suspended request that
+     * the container timed out or failed, unless the response was already
+     * completed.
+     */
+    // @VisibleForTesting
+    void expire(String message, Throwable cause) {
+      if (completed.compareAndSet(false, true)) {
+        write(null, new UnexpectedException(message, cause));
+      }
+    }
+
+    private void finish(String encoded, Throwable caught) {
+      if (!tryFinish(encoded, caught)) {
+        throw new IllegalStateException("The response has already been completed");
+      }
+    }
+
+    /**
+     * Records the outcome of the call, writing it to the client if the request
+     * was suspended.
+     *
+     * @return <code>false</code> if the response was already completed
+     */
+    private boolean tryFinish(String encoded, Throwable caught) {
+      if (!completed.compareAndSet(false, true)) {
+        return false;
+      }
+      if (asyncContext == null) {
+        // The request thread is waiting in processCall().
+        payload = encoded;
+        failure = caught;
+        done.countDown();
+        return true;
+      }
+      write(encoded, caught);
+      return true;
+    }
+
+    /**
+     * Writes the outcome of the call to the client of the suspended request and
+     * completes it.
+     */
+    private void write(String encoded, Throwable caught) {
+      // Let the servlet's hooks see the suspended request, as on a request thread.
+      HttpServletRequest previousRequest = servlet.perThreadRequest.get();
+      HttpServletResponse previousResponse = servlet.perThreadResponse.get();
+      servlet.perThreadRequest.set(request);
+      servlet.perThreadResponse.set(response);
+      try {
+        if (caught == null) {
+          servlet.onAfterResponseSerialized(encoded);
+          servlet.writeResponse(request, response, encoded);
+        } else {
+          servlet.doUnexpectedFailure(caught);
+        }
+      } catch (Throwable e) {
+        servlet.log("Unable to write a deferred response", e);
+      } finally {
+        restore(servlet.perThreadRequest, previousRequest);
+        restore(servlet.perThreadResponse, previousResponse);
+        servlet.completeAsync(asyncContext);
+      }
+    }
+  }
+
+  /**
+   * The servlet or servlet context parameter giving the number of milliseconds
+   * that a request thread which could not be suspended waits for a deferred
+   * response.
+   */
+  public static final String DEFERRED_RESPONSE_TIMEOUT_PARAM = "gwt.deferredResponseTimeout";
+
+  static final long DEFAULT_DEFERRED_RESPONSE_TIMEOUT = 60000;
+
+  /**
+   * Marks requests that were suspended by {@link #deferResponse()}.
+   */
+  private static final String SUSPENDED_ATTRIBUTE =
+      AsyncRemoteServiceServlet.class.getName() + ".suspended";
+
+  /**
+   * The deferred response of the call being processed by each thread. Calls in
+   * a batch share a request, so this state cannot be kept in the request.
+   */
+  private static final ThreadLocal<DeferredResponse<?>> perThreadDeferredResponse =
+      new ThreadLocal<DeferredResponse<?>>();
+
+  /**
+   * The call being processed by each thread.
+   */
+  private static final ThreadLocal<RPCRequest> perThreadRpcRequest =
+      new ThreadLocal<RPCRequest>();
+
+  /**
+   * <code>AsyncContext.addListener(AsyncListener)</code>, or <code>null</code>
+   * in a Servlet 2.5 container.
+   */
+  private static final Method ADD_LISTENER;
+
+  /**
+   * The <code>AsyncListener</code> interface, or <code>null</code> in a Servlet
+   * 2.5 container.
+   */
+  private static final Class<?> ASYNC_LISTENER;
+
+  /**
+   * <code>AsyncContext.complete()</code>, or <code>null</code> in a Servlet 2.5
+   * container.
+   */
+  private static final Method COMPLETE;
+
+  /**
+   * <code>ServletRequest.isAsyncSupported()</code>, or <code>null</code> in a
+   * Servlet 2.5 container.
+   */
+  private static final Method IS_ASYNC_SUPPORTED;
+
+  /**
+   * <code>AsyncContext.setTimeout(long)</code>, or <code>null</code> in a
+   * Servlet 2.5 container.
+   */
+  private static final Method SET_TIMEOUT;
+
+  /**
+   * <code>ServletRequest.startAsync()</code>, or <code>null</code> in a Servlet
+   * 2.5 container.
+   */
+  private static final Method START_ASYNC;
+
+  static {
+    // Looked up reflectively, so that this class loads in Servlet 2.5 containers.
+    Method addListener = null;
+    Class<?> asyncListener = null;
+    Method complete = null;
+    Method isAsyncSupported = null;
+    Method setTimeout = null;
+    Method startAsync = null;
+    try {
+      startAsync = ServletRequest.class.getMethod("startAsync");
+      Class<?> asyncContext = startAsync.getReturnType();
+      asyncListener = Class.forName("javax.servlet.AsyncListener", false,
+          asyncContext.getClassLoader());
+      addListener = asyncContext.getMethod("addListener", asyncListener);
+      complete = asyncContext.getMethod("complete");
+      setTimeout = asyncContext.getMethod("setTimeout", long.class);
+      isAsyncSupported = ServletRequest.class.getMethod("isAsyncSupported");
+    } catch (ClassNotFoundException e) {
+      startAsync = null;
+    } catch (NoSuchMethodException e) {
+      startAsync = null;
+    }
+    ADD_LISTENER = addListener;
+    ASYNC_LISTENER = asyncListener;
+    COMPLETE = complete;
+    IS_ASYNC_SUPPORTED = isAsyncSupported;
+    SET_TIMEOUT = setTimeout;
+    START_ASYNC = startAsync;
+  }
+
+  /**
+   * Returns the cause carried by an <code>AsyncEvent</code>, if any.
+   */
+  private static Throwable getThrowable(Object asyncEvent) {
+    try {
+      return (Throwable) asyncEvent.getClass().getMethod("getThrowable").invoke(asyncEvent);
+    } catch (Exception e) {
+      return null;
+    }
+  }
+
+  /**
+   * Sets <code>threadLocal</code> back to <code>value</code>, removing it if
+   * <code>value</code> is <code>null</code>.
+   */
+  private static <T> void restore(ThreadLocal<T> threadLocal, T value) {
+    if (value == null) {
+      threadLocal.remove();
+    } else {
+      threadLocal.set(value);
+    }
+  }
+
+  /**
+   * The implementation of the service.
+   */
+  private final Object delegate;
+
+  /**
+   * The value of {@link #DEFERRED_RESPONSE_TIMEOUT_PARAM}, or -1 if it has not
+   * been read yet.
+   */
+  private volatile long deferredResponseTimeout = -1;
+
+  /**
+   * The default constructor used by service implementations that extend this
+   * class. The servlet will delegate AJAX requests to the appropriate method in
+   * the subclass.
+   */
+  public AsyncRemoteServiceServlet() {
+    this.delegate = this;
+  }
+
+  /**
+   * The wrapping constructor used by service implementations that are separate
+   * from this class. The servlet will delegate AJAX requests to the
+   * appropriate method in the given object, which may call
+   * {@link #deferResponse()} on this servlet.
+   */
+  public AsyncRemoteServiceServlet(Object delegate) {
+    super(delegate);
+    this.delegate = delegate;
+  }
+
+  /**
+   * Defers the response to the current call until the returned
+   * {@link DeferredResponse} is completed. Once the response has been
+   * deferred, the value returned by the service method is ignored.
+   *
+   * @throws IllegalStateException if not called from a service method invoked
+   *           by this servlet, or if the response has already been deferred
+   */
+  public final <T> DeferredResponse<T> deferResponse() {
+    RPCRequest rpcRequest = perThreadRpcRequest.get();
+    if (rpcRequest == null) {
+      throw new IllegalStateException(
+          "deferResponse() must be called from a service method of this servlet");
+    }
+    if (perThreadDeferredResponse.get() != null) {
+      throw new IllegalStateException("The response has already been deferred");
+    }
+
+    // The calls in a batch are answered together, so they never suspend.
+    HttpServletRequest request = getThreadLocalRequest();
+    Object asyncContext = request.getHeader(RpcRequestBuilder.BATCH_SIZE_HEADER) == null
+        ? startAsync(request) : null;
+    DeferredResponse<T> deferred = new DeferredResponse<T>(this, request,
+        getThreadLocalResponse(), rpcRequest, asyncContext);
+    perThreadDeferredResponse.set(deferred);
+    if (asyncContext != null) {
+      watchAsync(asyncContext, deferred);
+      request.setAttribute(SUSPENDED_ATTRIBUTE, Boolean.TRUE);
+    }
+    return deferred;
+  }
+
+  /**
+   * Process a call originating from the given request, like
+   * {@link RemoteServiceServlet#processCall(String)}. If the service method
+   * defers its response and the request could be suspended, returns
+   * <code>null</code>; if the request could not be suspended, waits for the
+   * deferred response.
+   */
+  @Override
+  public String processCall(String payload) throws SerializationException {
+    // First, check for possible XSRF situation
+    checkPermutationStrongName();
+
+    RPCRequest rpcRequest;
+    try {
+      rpcRequest = RPC.decodeRequest(payload, delegate.getClass(), this);
+      onAfterRequestDeserialized(rpcRequest);
+    } catch (IncompatibleRemoteServiceException ex) {
+      log(
+          "An IncompatibleRemoteServiceException was thrown while processing this call.",
+          ex);
+      return RPC.encodeResponseForFailure(null, ex);
+    } catch (RpcTokenException tokenException) {
+      log("An RpcTokenException was thrown while processing this call.",
+          tokenException);
+      return RPC.encodeResponseForFailure(null, tokenException);
+    }
+
+    perThreadRpcRequest.set(rpcRequest);
+    RPC.SerializedResponse response;
+    DeferredResponse<?> deferred;
+    try {
+      response = RPC.invokeAndSerializeResponse(delegate, rpcRequest.getMethod(),
+          rpcRequest.getParameters(), rpcRequest.getSerializationPolicy(),
+          rpcRequest.getFlags());
+    } catch (RuntimeException e) {
+      deferred = perThreadDeferredResponse.get();
+      if (deferred == null) {
+        throw e;
+      }
+      // The method failed after deferring its response.
+      if (!deferred.tryFinish(null, e)) {
+        log("A service method failed after completing its deferred response", e);
+      }
+      return deferred.asyncContext == null
+        ? deferred.awaitPayload(getDeferredResponseTimeout()) : null;
+    } finally {
+      deferred = perThreadDeferredResponse.get();
+      perThreadDeferredResponse.remove();
+      perThreadRpcRequest.remove();
+    }
+
+    if (deferred == null) {
+      return response.toString();
+    }
+    if (response.wasThrown) {
+      // The method threw a checked exception after deferring its response.
+      if (!deferred.tryFinish(response.toString(), null)) {
+        log("A service method threw a checked exception after completing its deferred response");
+      }
+    }
+    return deferred.asyncContext == null
+        ? deferred.awaitPayload(getDeferredResponseTimeout()) : null;
+  }
+
+  /**
+   * Applies {@value #DEFERRED_RESPONSE_TIMEOUT_PARAM} to the suspended request
+   * whose <code>AsyncContext</code> is <code>asyncContext</code>, and registers
+   * a listener that expires <code>deferred</code> when the container times out
+   * or fails the request.
+   */
+  // @VisibleForTesting
+  void watchAsync(Object asyncContext, final DeferredResponse<?> deferred) {
+    // AsyncListener cannot be implemented directly without requiring Servlet 3.
+    Object listener = Proxy.newProxyInstance(ASYNC_LISTENER.getClassLoader(),
+        new Class<?>[] {ASYNC_LISTENER}, new InvocationHandler() {
+          public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (method.getDeclaringClass() == Object.class) {
+              if ("equals".equals(name)) {
+                return proxy == args[0];
+              } else if ("hashCode".equals(name)) {
+                return System.identityHashCode(proxy);
+              }
+              return "AsyncListener for " + deferred.rpcRequest;
+            }
+            if ("onTimeout".equals(name)) {
+              deferred.expire("No deferred response was completed within "
+                  + getDeferredResponseTimeout() + " ms", null);
+            } else if ("onError".equals(name)) {
+              deferred.expire("The suspended request failed", getThrowable(args[0]));
+            }
+            return null;
+          }
+        });
+    try {
+      SET_TIMEOUT.invoke(asyncContext, getDeferredResponseTimeout());
+      ADD_LISTENER.invoke(asyncContext, listener);
+    } catch (IllegalAccessException e) {
+      log("Unable to watch the suspended request for timeouts", e);
+    } catch (InvocationTargetException e) {
+      log("Unable to watch the suspended request for timeouts", e.getCause());
+    }
+  }
+
+  /**
+   * Completes the suspended request whose <code>AsyncContext</code> is
+   * <code>asyncContext</code>.
+   */
+  // @VisibleForTesting
+  void completeAsync(Object asyncContext) {
+    try {
+      COMPLETE.invoke(asyncContext);
+    } catch (IllegalAccessException e) {
+      log("Unable to complete a deferred response", e);
+    } catch (InvocationTargetException e) {
+      // Most likely the container has already timed out the request.
+      log("Unable to complete a deferred response", e.getCause());
+    }
+  }
+
+  /**
+   * Returns the number of milliseconds that a request thread waits for a
+   * deferred response, as configured by
+   * {@value #DEFERRED_RESPONSE_TIMEOUT_PARAM}.
+   */
+  long getDeferredResponseTimeout() {
+    long timeout = deferredResponseTimeout;
+    if (timeout < 0) {
+      timeout = DEFAULT_DEFERRED_RESPONSE_TIMEOUT;
+      // servlet configuration precedes context configuration
+      String value = getServletConfig().getInitParameter(DEFERRED_RESPONSE_TIMEOUT_PARAM);
+      if (value == null) {
+        value = getServletContext().getInitParameter(DEFERRED_RESPONSE_TIMEOUT_PARAM);
+      }
+      if (value != null) {
+        try {
+          timeout = Math.max(1, Long.parseLong(value.trim()));
+        } catch (NumberFormatException e) {
+          log("WARNING: Ignoring invalid " + DEFERRED_RESPONSE_TIMEOUT_PARAM + " '" + value
+              + "'");
+        }
+      }
+      deferredResponseTimeout = timeout;
+    }
+    return timeout;
+  }
+
+  @Override
+  boolean isResponseDeferred(HttpServletRequest request) {
+    return request.getAttribute(SUSPENDED_ATTRIBUTE) != null;
+  }
+
+  /**
+   * Suspends <code>request</code>, returning its <code>AsyncContext</code>, or
+   * returns <code>null</code> if the request cannot be suspended.
+   */
+  // @VisibleForTesting
+  Object startAsync(HttpServletRequest request) {
+    if (START_ASYNC == null) {
+      return null;
+    }
+    try {
+      if (!Boolean.TRUE.equals(IS_ASYNC_SUPPORTED.invoke(request))) {
+        return null;
+      }
+      return START_ASYNC.invoke(request);
+    } catch (IllegalAccessException e) {
+      log("Unable to suspend the request; waiting for the deferred response", e);
+    } catch (InvocationTargetException e) {
+      log("Unable to suspend the request; waiting for the deferred response", e.getCause());
+    }
+    return null;
+  }
+}
@@ -23,9 +23,7 @@ import com.google.gwt.user.client.rpc.SerializationException;
 
 import java.io.IOException;
 import java.io.OutputStream;
-import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Map;
 import java.util.Set;
 
 import javax.servlet.http.HttpServletRequest;
@@ -47,9 +45,9 @@ public class HybridServiceServlet extends RpcServlet implements
 
   /**
    * A cache of moduleBaseURL and serialization policy strong name to
-   * {@link SerializationPolicy}.
+   * {@link SerializationPolicy}, created on first use.
    */
-  private final Map<String, SerializationPolicy> serializationPolicyCache = new HashMap<String, SerializationPolicy>();
+  private volatile SerializationPolicyCache serializationPolicyCache;
 
   /**
    * This method will return <code>null</code> instead of throwing an exception.
@@ -168,16 +166,27 @@ public class HybridServiceServlet extends RpcServlet implements
 
   private SerializationPolicy getCachedSerializationPolicy(
       String moduleBaseURL, String strongName) {
-    synchronized (serializationPolicyCache) {
-      return serializationPolicyCache.get(moduleBaseURL + strongName);
+    return getSerializationPolicyCache().get(moduleBaseURL + strongName);
+  }
+
+  private SerializationPolicyCache getSerializationPolicyCache() {
+    SerializationPolicyCache cache = serializationPolicyCache;
+    if (cache == null) {
+      synchronized (this) {
+        cache = serializationPolicyCache;
+        if (cache == null) {
+          cache = new SerializationPolicyCache(
+              SerializationPolicyCache.getMaxSize(getServletContext()));
+          serializationPolicyCache = cache;
+        }
+      }
     }
+    return cache;
   }
 
   private void putCachedSerializationPolicy(String moduleBaseURL,
       String strongName, SerializationPolicy serializationPolicy) {
-    synchronized (serializationPolicyCache) {
-      serializationPolicyCache.put(moduleBaseURL + strongName,
-          serializationPolicy);
-    }
+    getSerializationPolicyCache().put(moduleBaseURL + strongName,
+        serializationPolicy);
   }
 }
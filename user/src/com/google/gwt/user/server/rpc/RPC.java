@@ -27,6 +27,8 @@ import com.google.gwt.user.server.rpc.impl.ServerSerializationStreamReader;
 import com.google.gwt.user.server.rpc.impl.ServerSerializationStreamWriter;
 import com.google.gwt.user.server.rpc.impl.TypeNameObfuscator;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Type;
@@ -36,6 +38,8 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Utility class for integrating with the RPC system. This class exposes methods
@@ -56,6 +60,51 @@ import java.util.Set;
  */
 public final class RPC {
 
+  /**
+   * A response that has been serialized but not yet encoded as a string.
+   */
+  static final class SerializedResponse {
+    final ServerSerializationStreamWriter stream;
+    final boolean wasThrown;
+
+    SerializedResponse(ServerSerializationStreamWriter stream, boolean wasThrown) {
+      this.stream = stream;
+      this.wasThrown = wasThrown;
+    }
+
+    @Override
+    public String toString() {
+      return getPrefix() + stream.toString();
+    }
+
+    void writeTo(Writer out) throws IOException {
+      out.write(getPrefix());
+      stream.writeTo(out);
+    }
+
+    private String getPrefix() {
+      return wasThrown ? "//EX" : "//OK";
+    }
+  }
+
+  /**
+   * A service method resolved from its name and serialized parameter types,
+   * along with the reflective data needed to decode its arguments.
+   */
+  private static final class ServiceMethod {
+    final Type[] genericParameterTypes;
+    final Method method;
+    final Class<?>[] parameterTypes;
+    final TypeVariable<Method>[] typeParameters;
+
+    ServiceMethod(Method method) {
+      this.genericParameterTypes = method.getGenericParameterTypes();
+      this.method = method;
+      this.parameterTypes = method.getParameterTypes();
+      this.typeParameters = method.getTypeParameters();
+    }
+  }
+
   /**
    * Maps primitive wrapper classes to their corresponding primitive class.
    */
@@ -68,6 +117,14 @@ public final class RPC {
    */
   private static Map<Class<?>, Set<String>> serviceToImplementedInterfacesMap;
 
+  /**
+   * Service methods that have been requested before, keyed by service
+   * interface and then by {@link #getMethodSignature(String, String[])}, so
+   * that steady-state requests don't need any reflective method lookups.
+   */
+  private static final ConcurrentMap<Class<?>, ConcurrentMap<String, ServiceMethod>>
+      serviceMethodCache = new ConcurrentHashMap<Class<?>, ConcurrentMap<String, ServiceMethod>>();
+
   private static final HashMap<String, Class<?>> TYPE_NAMES;
 
   static {
@@ -280,45 +337,34 @@ public final class RPC {
       if (paramCount > streamReader.getNumberOfTokens()) {
         throw new IncompatibleRemoteServiceException("Invalid number of parameters");
       }
-      Class<?>[] parameterTypes = new Class[paramCount];
-
-      for (int i = 0; i < parameterTypes.length; i++) {
-        String paramClassName = maybeDeobfuscate(streamReader, streamReader.readString());
-
-        try {
-          parameterTypes[i] = getClassFromSerializedName(paramClassName, classLoader);
-        } catch (ClassNotFoundException e) {
-          throw new IncompatibleRemoteServiceException("Parameter " + i
-              + " of is of an unknown type '" + paramClassName + "'", e);
-        }
+      String[] paramClassNames = new String[paramCount];
+      for (int i = 0; i < paramClassNames.length; i++) {
+        paramClassNames[i] = maybeDeobfuscate(streamReader, streamReader.readString());
       }
 
-      try {
-        Method method = serviceIntf.getMethod(serviceMethodName, parameterTypes);
-
-        // The parameter types we have are the non-parameterized versions in the
-        // RPC stream. For stronger message verification, get the parameterized
-        // types from the method declaration.
-        Type[] methodParameterTypes = method.getGenericParameterTypes();
-        DequeMap<TypeVariable<?>, Type> resolvedTypes = new DequeMap<TypeVariable<?>, Type>();
+      ServiceMethod serviceMethod =
+          getServiceMethod(serviceIntf, serviceMethodName, paramClassNames, classLoader);
+      Method method = serviceMethod.method;
+      Class<?>[] parameterTypes = serviceMethod.parameterTypes;
 
-        TypeVariable<Method>[] methodTypes = method.getTypeParameters();
-        for (TypeVariable<Method> methodType : methodTypes) {
-          SerializabilityUtil.resolveTypes(methodType, resolvedTypes);
-        }
+      // The parameter types we have are the non-parameterized versions in the
+      // RPC stream. For stronger message verification, get the parameterized
+      // types from the method declaration.
+      Type[] methodParameterTypes = serviceMethod.genericParameterTypes;
+      DequeMap<TypeVariable<?>, Type> resolvedTypes = new DequeMap<TypeVariable<?>, Type>();
 
-        Object[] parameterValues = new Object[parameterTypes.length];
-        for (int i = 0; i < parameterValues.length; i++) {
-          parameterValues[i] = streamReader.deserializeValue(parameterTypes[i],
-              methodParameterTypes[i], resolvedTypes);
-        }
+      for (TypeVariable<Method> methodType : serviceMethod.typeParameters) {
+        SerializabilityUtil.resolveTypes(methodType, resolvedTypes);
+      }
 
-        return new RPCRequest(method, parameterValues, rpcToken, serializationPolicy, streamReader
-            .getFlags());
-      } catch (NoSuchMethodException e) {
-        throw new IncompatibleRemoteServiceException(formatMethodNotFoundErrorMessage(serviceIntf,
-            serviceMethodName, parameterTypes));
+      Object[] parameterValues = new Object[parameterTypes.length];
+      for (int i = 0; i < parameterValues.length; i++) {
+        parameterValues[i] = streamReader.deserializeValue(parameterTypes[i],
+            methodParameterTypes[i], resolvedTypes);
       }
+
+      return new RPCRequest(method, parameterValues, rpcToken, serializationPolicy, streamReader
+          .getFlags());
     } catch (SerializationException ex) {
       throw new IncompatibleRemoteServiceException(ex.getMessage(), ex);
     }
@@ -377,20 +423,8 @@ public final class RPC {
 
   public static String encodeResponseForFailure(Method serviceMethod, Throwable cause,
       SerializationPolicy serializationPolicy, int flags) throws SerializationException {
-    if (cause == null) {
-      throw new NullPointerException("cause cannot be null");
-    }
-
-    if (serializationPolicy == null) {
-      throw new NullPointerException("serializationPolicy");
-    }
-
-    if (serviceMethod != null && !RPCServletUtils.isExpectedException(serviceMethod, cause)) {
-      throw new UnexpectedException("Service method '" + getSourceRepresentation(serviceMethod)
-          + "' threw an unexpected exception: " + cause.toString(), cause);
-    }
-
-    return encodeResponse(cause.getClass(), cause, true, flags, serializationPolicy);
+    return serializeResponseForFailure(serviceMethod, cause, serializationPolicy, flags)
+        .toString();
   }
 
   /**
@@ -444,31 +478,8 @@ public final class RPC {
 
   public static String encodeResponseForSuccess(Method serviceMethod, Object object,
       SerializationPolicy serializationPolicy, int flags) throws SerializationException {
-    if (serviceMethod == null) {
-      throw new NullPointerException("serviceMethod cannot be null");
-    }
-
-    if (serializationPolicy == null) {
-      throw new NullPointerException("serializationPolicy");
-    }
-
-    Class<?> methodReturnType = serviceMethod.getReturnType();
-    if (methodReturnType != void.class && object != null) {
-      Class<?> actualReturnType;
-      if (methodReturnType.isPrimitive()) {
-        actualReturnType = getPrimitiveClassFromWrapper(object.getClass());
-      } else {
-        actualReturnType = object.getClass();
-      }
-
-      if (actualReturnType == null || !methodReturnType.isAssignableFrom(actualReturnType)) {
-        throw new IllegalArgumentException("Type '" + printTypeName(object.getClass())
-            + "' does not match the return type in the method's signature: '"
-            + getSourceRepresentation(serviceMethod) + "'");
-      }
-    }
-
-    return encodeResponse(methodReturnType, object, false, flags, serializationPolicy);
+    return serializeResponseForSuccess(serviceMethod, object, serializationPolicy, flags)
+        .toString();
   }
 
   /**
@@ -548,6 +559,55 @@ public final class RPC {
 
   public static String invokeAndEncodeResponse(Object target, Method serviceMethod, Object[] args,
       SerializationPolicy serializationPolicy, int flags) throws SerializationException {
+    return invokeAndSerializeResponse(target, serviceMethod, args, serializationPolicy, flags)
+        .toString();
+  }
+
+  /**
+   * Writes the encoded result of calling a service method to <code>out</code>,
+   * exactly as {@link #invokeAndEncodeResponse(Object, Method, Object[],
+   * SerializationPolicy, int)} would return it, but without building the whole
+   * response as a string first. Nothing is written unless the result was
+   * serialized successfully.
+   * 
+   * <p>
+   * This method does no security checking; security checking must be done on
+   * the method prior to this invocation.
+   * </p>
+   * 
+   * @param target instance on which to invoke the serviceMethod
+   * @param serviceMethod the method to invoke
+   * @param args arguments used for the method invocation
+   * @param serializationPolicy determines the serialization policy to be used
+   * @param flags the flags to write to the response stream
+   * @param out the writer that receives the encoded response
+   * 
+   * @throws IOException if the response could not be written to
+   *           <code>out</code>
+   * @throws NullPointerException if the serviceMethod or the
+   *           serializationPolicy are <code>null</code>
+   * @throws SecurityException if the method cannot be accessed or if the number
+   *           or type of actual and formal arguments differ
+   * @throws SerializationException if an object could not be serialized by the
+   *           stream
+   * @throws UnexpectedException if the serviceMethod throws a checked exception
+   *           that is not declared in its signature
+   */
+  public static void invokeAndStreamResponse(Object target, Method serviceMethod, Object[] args,
+      SerializationPolicy serializationPolicy, int flags, Writer out)
+      throws IOException, SerializationException {
+    invokeAndSerializeResponse(target, serviceMethod, args, serializationPolicy, flags)
+        .writeTo(out);
+  }
+
+  /**
+   * Like {@link #invokeAndEncodeResponse(Object, Method, Object[],
+   * SerializationPolicy, int)}, but returns the serialized response before it
+   * is encoded.
+   */
+  static SerializedResponse invokeAndSerializeResponse(Object target,
+      Method serviceMethod, Object[] args, SerializationPolicy serializationPolicy, int flags)
+      throws SerializationException {
     if (serviceMethod == null) {
       throw new NullPointerException("serviceMethod");
     }
@@ -556,11 +616,11 @@ public final class RPC {
       throw new NullPointerException("serializationPolicy");
     }
 
-    String responsePayload;
+    SerializedResponse response;
     try {
       Object result = serviceMethod.invoke(target, args);
 
-      responsePayload = encodeResponseForSuccess(serviceMethod, result, serializationPolicy, flags);
+      response = serializeResponseForSuccess(serviceMethod, result, serializationPolicy, flags);
     } catch (IllegalAccessException e) {
       SecurityException securityException =
           new SecurityException(formatIllegalAccessErrorMessage(target, serviceMethod));
@@ -576,25 +636,26 @@ public final class RPC {
       //
       Throwable cause = e.getCause();
 
-      responsePayload = encodeResponseForFailure(serviceMethod, cause, serializationPolicy, flags);
+      response = serializeResponseForFailure(serviceMethod, cause, serializationPolicy, flags);
     }
 
-    return responsePayload;
+    return response;
   }
 
   /**
-   * Returns a string that encodes the results of an RPC call. Private overload
-   * that takes a flag signaling the preamble of the response payload.
+   * Serializes the results of an RPC call. Private overload that takes a flag
+   * signaling the preamble of the response payload.
    * 
    * @param object the object that we wish to send back to the client
    * @param wasThrown if true, the object being returned was an exception thrown
    *          by the service method; if false, it was the result of the service
    *          method's invocation
-   * @return a string that encodes the response from a service method
+   * @return the serialized response from a service method
    * @throws SerializationException if the object cannot be serialized
    */
-  private static String encodeResponse(Class<?> responseClass, Object object, boolean wasThrown,
-      int flags, SerializationPolicy serializationPolicy) throws SerializationException {
+  private static SerializedResponse serializeResponse(Class<?> responseClass, Object object,
+      boolean wasThrown, int flags, SerializationPolicy serializationPolicy)
+      throws SerializationException {
 
     ServerSerializationStreamWriter stream =
         new ServerSerializationStreamWriter(serializationPolicy);
@@ -605,8 +666,56 @@ public final class RPC {
       stream.serializeValue(object, responseClass);
     }
 
-    String bufferStr = (wasThrown ? "//EX" : "//OK") + stream.toString();
-    return bufferStr;
+    return new SerializedResponse(stream, wasThrown);
+  }
+
+  private static SerializedResponse serializeResponseForFailure(Method serviceMethod,
+      Throwable cause, SerializationPolicy serializationPolicy, int flags)
+      throws SerializationException {
+    if (cause == null) {
+      throw new NullPointerException("cause cannot be null");
+    }
+
+    if (serializationPolicy == null) {
+      throw new NullPointerException("serializationPolicy");
+    }
+
+    if (serviceMethod != null && !RPCServletUtils.isExpectedException(serviceMethod, cause)) {
+      throw new UnexpectedException("Service method '" + getSourceRepresentation(serviceMethod)
+          + "' threw an unexpected exception: " + cause.toString(), cause);
+    }
+
+    return serializeResponse(cause.getClass(), cause, true, flags, serializationPolicy);
+  }
+
+  private static SerializedResponse serializeResponseForSuccess(Method serviceMethod,
+      Object object, SerializationPolicy serializationPolicy, int flags)
+      throws SerializationException {
+    if (serviceMethod == null) {
+      throw new NullPointerException("serviceMethod cannot be null");
+    }
+
+    if (serializationPolicy == null) {
+      throw new NullPointerException("serializationPolicy");
+    }
+
+    Class<?> methodReturnType = serviceMethod.getReturnType();
+    if (methodReturnType != void.class && object != null) {
+      Class<?> actualReturnType;
+      if (methodReturnType.isPrimitive()) {
+        actualReturnType = getPrimitiveClassFromWrapper(object.getClass());
+      } else {
+        actualReturnType = object.getClass();
+      }
+
+      if (actualReturnType == null || !methodReturnType.isAssignableFrom(actualReturnType)) {
+        throw new IllegalArgumentException("Type '" + printTypeName(object.getClass())
+            + "' does not match the return type in the method's signature: '"
+            + getSourceRepresentation(serviceMethod) + "'");
+      }
+    }
+
+    return serializeResponse(methodReturnType, object, false, flags, serializationPolicy);
   }
 
   private static String formatIllegalAccessErrorMessage(Object target, Method serviceMethod) {
@@ -688,6 +797,18 @@ public final class RPC {
     return Class.forName(serializedName, false, classLoader);
   }
 
+  /**
+   * Returns a key identifying a method by its name and serialized parameter
+   * types.
+   */
+  private static String getMethodSignature(String methodName, String[] paramClassNames) {
+    StringBuilder sb = new StringBuilder(methodName).append('(');
+    for (String paramClassName : paramClassNames) {
+      sb.append(paramClassName).append(';');
+    }
+    return sb.append(')').toString();
+  }
+
   /**
    * Returns the {@link java.lang.Class Class} for a primitive type given its
    * corresponding wrapper {@link java.lang.Class Class}.
@@ -699,6 +820,52 @@ public final class RPC {
     return PRIMITIVE_WRAPPER_CLASS_TO_PRIMITIVE_CLASS.get(wrapperClass);
   }
 
+  /**
+   * Finds the method of a service interface with the given name and serialized
+   * parameter types. Methods are only looked up reflectively the first time
+   * they are requested.
+   * 
+   * @throws IncompatibleRemoteServiceException if a parameter type or the
+   *           method cannot be found
+   */
+  private static ServiceMethod getServiceMethod(Class<?> serviceIntf, String methodName,
+      String[] paramClassNames, ClassLoader classLoader) {
+    ConcurrentMap<String, ServiceMethod> methods = serviceMethodCache.get(serviceIntf);
+    if (methods == null) {
+      methods = new ConcurrentHashMap<String, ServiceMethod>();
+      ConcurrentMap<String, ServiceMethod> existing =
+          serviceMethodCache.putIfAbsent(serviceIntf, methods);
+      if (existing != null) {
+        methods = existing;
+      }
+    }
+
+    String signature = getMethodSignature(methodName, paramClassNames);
+    ServiceMethod serviceMethod = methods.get(signature);
+    if (serviceMethod != null) {
+      return serviceMethod;
+    }
+
+    Class<?>[] parameterTypes = new Class[paramClassNames.length];
+    for (int i = 0; i < parameterTypes.length; i++) {
+      try {
+        parameterTypes[i] = getClassFromSerializedName(paramClassNames[i], classLoader);
+      } catch (ClassNotFoundException e) {
+        throw new IncompatibleRemoteServiceException("Parameter " + i
+            + " of is of an unknown type '" + paramClassNames[i] + "'", e);
+      }
+    }
+
+    try {
+      serviceMethod = new ServiceMethod(serviceIntf.getMethod(methodName, parameterTypes));
+    } catch (NoSuchMethodException e) {
+      throw new IncompatibleRemoteServiceException(formatMethodNotFoundErrorMessage(serviceIntf,
+          methodName, parameterTypes));
+    }
+    methods.put(signature, serviceMethod);
+    return serviceMethod;
+  }
+
   /**
    * Returns the source representation for a method signature.
    * 
@@ -15,9 +15,13 @@
  */
 package com.google.gwt.user.server.rpc;
 
+import java.io.BufferedWriter;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.lang.reflect.Method;
 import java.nio.charset.Charset;
 import java.util.concurrent.ConcurrentHashMap;
@@ -33,6 +37,38 @@ import javax.servlet.http.HttpServletResponse;
  * the RPC system.
  */
 public class RPCServletUtils {
+
+  /**
+   * The writer returned by {@link #openResponseWriter}, which can release its
+   * compressor without finishing the response.
+   */
+  private static class ResponseWriter extends BufferedWriter {
+    private final ResponseGzipStream gzip;
+
+    public ResponseWriter(OutputStream out, ResponseGzipStream gzip) {
+      super(new OutputStreamWriter(out, CHARSET_UTF8), BUFFER_SIZE);
+      this.gzip = gzip;
+    }
+
+    public void abort() {
+      if (gzip != null) {
+        gzip.abort();
+      }
+    }
+  }
+
+  /**
+   * Exposes the native compressor of a {@link GZIPOutputStream}.
+   */
+  private static class ResponseGzipStream extends GZIPOutputStream {
+    public ResponseGzipStream(OutputStream out) throws IOException {
+      super(out, BUFFER_SIZE);
+    }
+
+    public void abort() {
+      def.end();
+    }
+  }
   
   public static final String CHARSET_UTF8_NAME = "UTF-8";
   
@@ -48,6 +84,8 @@ public class RPCServletUtils {
    */
   static final int BUFFER_SIZE = 4096;
 
+  static final String GENERIC_FAILURE_MSG = "The call failed on the server; see server log for details";
+
   private static final String ACCEPT_ENCODING = "Accept-Encoding";
 
   private static final String ATTACHMENT = "attachment";
@@ -60,8 +98,6 @@ public class RPCServletUtils {
 
   private static final String CONTENT_TYPE_APPLICATION_JSON_UTF8 = "application/json; charset=utf-8";
 
-  private static final String GENERIC_FAILURE_MSG = "The call failed on the server; see server log for details";
-
   private static final String GWT_RPC_CONTENT_TYPE = "text/x-gwt-rpc";
 
   /**
@@ -84,6 +120,20 @@ public class RPCServletUtils {
     CHARSET_CACHE.put(CHARSET_UTF8_NAME, CHARSET_UTF8);
   }
 
+  /**
+   * Releases a writer returned by {@link #openResponseWriter} whose content
+   * could not be written in full. Unlike closing it, this neither flushes the
+   * buffered content nor closes the response, so the response can still be
+   * reset to report the failure.
+   *
+   * @param out a writer returned by {@link #openResponseWriter}
+   */
+  public static void abortResponseWriter(Writer out) {
+    if (out instanceof ResponseWriter) {
+      ((ResponseWriter) out).abort();
+    }
+  }
+
   /**
    * Returns <code>true</code> if the {@link HttpServletRequest} accepts Gzip
    * encoding. This is done by checking that the accept-encoding header
@@ -178,6 +228,34 @@ public class RPCServletUtils {
     return false;
   }
 
+  /**
+   * Prepares a successful response whose length is not known in advance, and
+   * returns a writer that encodes the response content as UTF-8, compressing
+   * it on the fly if <code>gzipResponse</code> is <code>true</code>. Because
+   * no <code>Content-Length</code> is sent, the content is never buffered in
+   * full. The caller must close the writer once the content has been written,
+   * or pass it to {@link #abortResponseWriter(Writer)} if writing fails.
+   *
+   * @param response the response to write to
+   * @param gzipResponse if <code>true</code> the content will be gzipped
+   * @return a writer for the response content
+   * @throws IOException if the response's output stream cannot be accessed
+   */
+  public static Writer openResponseWriter(HttpServletResponse response,
+      boolean gzipResponse) throws IOException {
+    response.setContentType(CONTENT_TYPE_APPLICATION_JSON_UTF8);
+    response.setStatus(HttpServletResponse.SC_OK);
+    response.setHeader(CONTENT_DISPOSITION, ATTACHMENT);
+
+    OutputStream out = response.getOutputStream();
+    if (!gzipResponse) {
+      return new ResponseWriter(out, null);
+    }
+    setGzipEncodingHeader(response);
+    ResponseGzipStream gzip = new ResponseGzipStream(out);
+    return new ResponseWriter(gzip, gzip);
+  }
+
   /**
    * Returns the content of an {@link HttpServletRequest} by decoding it using
    * <code>expectedCharSet</code>, or <code>UTF-8</code> if
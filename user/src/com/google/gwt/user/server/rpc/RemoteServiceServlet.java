@@ -16,16 +16,24 @@
 package com.google.gwt.user.server.rpc;
 
 import com.google.gwt.user.client.rpc.IncompatibleRemoteServiceException;
+import com.google.gwt.user.client.rpc.RpcRequestBuilder;
 import com.google.gwt.user.client.rpc.RpcTokenException;
 import com.google.gwt.user.client.rpc.SerializationException;
+import com.google.gwt.user.client.rpc.impl.RpcBatch;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.Writer;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.text.ParseException;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
@@ -40,6 +48,13 @@ import javax.servlet.http.HttpServletResponse;
 public class RemoteServiceServlet extends AbstractRemoteServiceServlet
     implements SerializationPolicyProvider {
 
+  /**
+   * The servlet or servlet context parameter which, when set to
+   * <code>true</code>, causes every serialization policy file in the web
+   * application to be loaded when the servlet is initialized.
+   */
+  public static final String PRELOAD_POLICIES_PARAM = "gwt.preloadSerializationPolicies";
+
   /**
    * Used by HybridServiceServlet.
    */
@@ -81,46 +96,92 @@ public class RemoteServiceServlet extends AbstractRemoteServiceServlet
       String serializationPolicyFilePath = SerializationPolicyLoader.getSerializationPolicyFileName(contextRelativePath
           + strongName);
 
-      // Open the RPC resource file and read its contents.
-      InputStream is = servlet.getServletContext().getResourceAsStream(
-          serializationPolicyFilePath);
-      try {
-        if (is != null) {
-          try {
-            serializationPolicy = SerializationPolicyLoader.loadFromStream(is,
-                null);
-          } catch (ParseException e) {
-            servlet.log("ERROR: Failed to parse the policy file '"
-                + serializationPolicyFilePath + "'", e);
-          } catch (IOException e) {
-            servlet.log("ERROR: Could not read the policy file '"
-                + serializationPolicyFilePath + "'", e);
-          }
-        } else {
-          String message = "ERROR: The serialization policy file '"
-              + serializationPolicyFilePath
-              + "' was not found; did you forget to include it in this deployment?";
-          servlet.log(message);
+      serializationPolicy = loadSerializationPolicyFile(servlet, serializationPolicyFilePath);
+    }
+
+    return serializationPolicy;
+  }
+
+  /**
+   * Parses every serialization policy file in the web application of
+   * <code>servlet</code> into the policy cache shared by its RPC servlets.
+   */
+  static void preloadSerializationPolicies(HttpServlet servlet) {
+    preloadSerializationPolicies(servlet, "/");
+  }
+
+  /**
+   * Returns the serialization policy in the context-relative file
+   * <code>serializationPolicyFilePath</code>, parsing it unless it has already
+   * been parsed by an RPC servlet in the same web application.
+   */
+  private static SerializationPolicy loadSerializationPolicyFile(HttpServlet servlet,
+      String serializationPolicyFilePath) {
+    SerializationPolicyCache cache =
+        SerializationPolicyCache.forContext(servlet.getServletContext());
+    SerializationPolicy serializationPolicy = cache.get(serializationPolicyFilePath);
+    if (serializationPolicy != null) {
+      return serializationPolicy;
+    }
+
+    // Open the RPC resource file and read its contents.
+    InputStream is = servlet.getServletContext().getResourceAsStream(
+        serializationPolicyFilePath);
+    try {
+      if (is != null) {
+        try {
+          serializationPolicy = SerializationPolicyLoader.loadFromStream(is,
+              null);
+          cache.put(serializationPolicyFilePath, serializationPolicy);
+        } catch (ParseException e) {
+          servlet.log("ERROR: Failed to parse the policy file '"
+              + serializationPolicyFilePath + "'", e);
+        } catch (IOException e) {
+          servlet.log("ERROR: Could not read the policy file '"
+              + serializationPolicyFilePath + "'", e);
         }
-      } finally {
-        if (is != null) {
-          try {
-            is.close();
-          } catch (IOException e) {
-            // Ignore this error
-          }
+      } else {
+        String message = "ERROR: The serialization policy file '"
+            + serializationPolicyFilePath
+            + "' was not found; did you forget to include it in this deployment?";
+        servlet.log(message);
+      }
+    } finally {
+      if (is != null) {
+        try {
+          is.close();
+        } catch (IOException e) {
+          // Ignore this error
         }
       }
     }
-
     return serializationPolicy;
   }
 
+  private static void preloadSerializationPolicies(HttpServlet servlet, String dir) {
+    Set<?> paths = servlet.getServletContext().getResourcePaths(dir);
+    if (paths == null) {
+      return;
+    }
+    String suffix = SerializationPolicyLoader.getSerializationPolicyFileName("");
+    for (Object path : paths) {
+      String resourcePath = (String) path;
+      if (resourcePath.endsWith("/")) {
+        // Policy files are never deployed under WEB-INF, which can be huge.
+        if (!resourcePath.equals("/WEB-INF/")) {
+          preloadSerializationPolicies(servlet, resourcePath);
+        }
+      } else if (resourcePath.endsWith(suffix)) {
+        loadSerializationPolicyFile(servlet, resourcePath);
+      }
+    }
+  }
+
   /**
    * A cache of moduleBaseURL and serialization policy strong name to
-   * {@link SerializationPolicy}.
+   * {@link SerializationPolicy}, created on first use.
    */
-  private final Map<String, SerializationPolicy> serializationPolicyCache = new HashMap<String, SerializationPolicy>();
+  private volatile SerializationPolicyCache serializationPolicyCache;
 
   /**
    * The implementation of the service.
@@ -145,6 +206,23 @@ public class RemoteServiceServlet extends AbstractRemoteServiceServlet
     this.delegate = delegate;
   }
 
+  /**
+   * Preloads the serialization policies of the web application if the
+   * {@value #PRELOAD_POLICIES_PARAM} parameter is <code>true</code>.
+   */
+  @Override
+  public void init() throws ServletException {
+    super.init();
+    // servlet configuration precedes context configuration
+    String preload = getServletConfig().getInitParameter(PRELOAD_POLICIES_PARAM);
+    if (preload == null) {
+      preload = getServletContext().getInitParameter(PRELOAD_POLICIES_PARAM);
+    }
+    if (Boolean.parseBoolean(preload)) {
+      preloadSerializationPolicies();
+    }
+  }
+
   public final SerializationPolicy getSerializationPolicy(String moduleBaseURL,
       String strongName) {
 
@@ -238,15 +316,37 @@ public class RemoteServiceServlet extends AbstractRemoteServiceServlet
     //
     String requestPayload = readContent(request);
 
+    String batchSize = request.getHeader(RpcRequestBuilder.BATCH_SIZE_HEADER);
+    if (batchSize != null) {
+      // Process each call in the batch as if it had been sent on its own.
+      //
+      writeResponse(request, response,
+          processBatch(requestPayload, batchSize, request, response));
+      return;
+    }
+
     // Let subclasses see the serialized request.
     //
     onBeforeRequestDeserialized(requestPayload);
 
+    if (shouldStreamResponse(request)) {
+      // Serialize the result straight into the response.
+      //
+      streamCall(requestPayload, request, response);
+      return;
+    }
+
     // Invoke the core dispatching logic, which returns the serialized
     // result.
     //
     String responsePayload = processCall(requestPayload);
 
+    if (isResponseDeferred(request)) {
+      // The response is written once the deferred call completes.
+      //
+      return;
+    }
+
     // Let subclasses see the serialized response.
     //
     onAfterResponseSerialized(responsePayload);
@@ -313,6 +413,32 @@ public class RemoteServiceServlet extends AbstractRemoteServiceServlet
   protected void onBeforeRequestDeserialized(String serializedRequest) {
   }
 
+  /**
+   * Loads every serialization policy file in the web application into the cache
+   * shared by its RPC servlets, so that the first requests from each
+   * permutation need not parse them. Called by {@link #init()} when the
+   * {@value #PRELOAD_POLICIES_PARAM} parameter is <code>true</code>.
+   * <p>
+   * Subclasses that override {@link #doGetSerializationPolicy} to load
+   * policies from elsewhere may override this method to preload them.
+   * </p>
+   */
+  protected void preloadSerializationPolicies() {
+    preloadSerializationPolicies(this);
+  }
+
+  /**
+   * Returns the executor used to process the calls in a batched request in
+   * parallel, or <code>null</code> to process them one after another. Calls
+   * processed in parallel see the same thread-local request and response. The
+   * default implementation returns <code>null</code>.
+   * 
+   * @see com.google.gwt.user.client.rpc.HasRpcBatching
+   */
+  protected Executor getBatchExecutor() {
+    return null;
+  }
+
   /**
    * Determines whether the response to a given servlet request should or should
    * not be GZIP compressed. This method is only called in cases where the
@@ -334,22 +460,35 @@ public class RemoteServiceServlet extends AbstractRemoteServiceServlet
     return RPCServletUtils.exceedsUncompressedContentLengthLimit(responsePayload);
   }
 
-  private SerializationPolicy getCachedSerializationPolicy(
-      String moduleBaseURL, String strongName) {
-    synchronized (serializationPolicyCache) {
-      return serializationPolicyCache.get(moduleBaseURL + strongName);
-    }
+  /**
+   * Override this method to return <code>true</code> to have the response to
+   * a given request written to the client as it is encoded, rather than first
+   * encoded into a string. This avoids holding several copies of very large
+   * responses in memory, but {@link #processCall(String)} and
+   * {@link #onAfterResponseSerialized(String)} are not called for streamed
+   * responses, and they are always GZIP compressed if the requester accepts
+   * GZIP encoding.
+   * <p>
+   * The default implementation returns <code>false</code>.
+   * </p>
+   * 
+   * @param request the request being served
+   * @return <code>true</code> if the response should be streamed
+   */
+  protected boolean shouldStreamResponse(HttpServletRequest request) {
+    return false;
   }
 
-  private void putCachedSerializationPolicy(String moduleBaseURL,
-      String strongName, SerializationPolicy serializationPolicy) {
-    synchronized (serializationPolicyCache) {
-      serializationPolicyCache.put(moduleBaseURL + strongName,
-          serializationPolicy);
-    }
+  /**
+   * Returns <code>true</code> if the response to <code>request</code> will be
+   * written after {@link #processCall(String)} returns. Overridden by
+   * {@link AsyncRemoteServiceServlet}.
+   */
+  boolean isResponseDeferred(HttpServletRequest request) {
+    return false;
   }
 
-  private void writeResponse(HttpServletRequest request,
+  void writeResponse(HttpServletRequest request,
       HttpServletResponse response, String responsePayload) throws IOException {
     boolean gzipEncode = RPCServletUtils.acceptsGzipEncoding(request)
         && shouldCompressResponse(request, response, responsePayload);
@@ -357,4 +496,162 @@ public class RemoteServiceServlet extends AbstractRemoteServiceServlet
     RPCServletUtils.writeResponse(getServletContext(), response,
         responsePayload, gzipEncode);
   }
+
+  private SerializationPolicy getCachedSerializationPolicy(
+      String moduleBaseURL, String strongName) {
+    return getSerializationPolicyCache().get(moduleBaseURL + strongName);
+  }
+
+  /**
+   * Returns the response to a batched call that failed with <code>e</code>.
+   * Undeclared checked exceptions are sent to the client's callback; other
+   * failures are reported with the generic failure message, as they would be
+   * for a call sent on its own.
+   */
+  private String encodeBatchedFailure(Throwable e) {
+    Throwable cause = e.getCause();
+    if (e instanceof UnexpectedException && cause instanceof Exception
+        && !(cause instanceof RuntimeException)) {
+      try {
+        return RPC.encodeResponseForFailure(null, cause);
+      } catch (SerializationException ex) {
+        log("Unable to encode the failure of a batched RPC call", ex);
+      }
+    }
+    return RPCServletUtils.GENERIC_FAILURE_MSG;
+  }
+
+  /**
+   * Processes the calls in a batched request, returning their combined
+   * responses. A call that fails unexpectedly is logged and reported to the
+   * client without affecting the other calls.
+   */
+  private String processBatch(String payload, String batchSize,
+      final HttpServletRequest request, final HttpServletResponse response)
+      throws SerializationException {
+    List<String> calls = RpcBatch.split(payload);
+    if (calls == null || !String.valueOf(calls.size()).equals(batchSize)) {
+      throw new SerializationException("Malformed batch of " + batchSize + " calls");
+    }
+
+    List<String> responses = new ArrayList<String>(calls.size());
+    Executor executor = getBatchExecutor();
+    if (executor == null || calls.size() == 1) {
+      for (String call : calls) {
+        responses.add(processBatchedCall(call));
+      }
+      return RpcBatch.join(responses);
+    }
+
+    List<FutureTask<String>> tasks = new ArrayList<FutureTask<String>>(calls.size());
+    for (final String call : calls) {
+      FutureTask<String> task = new FutureTask<String>(new Callable<String>() {
+        public String call() {
+          perThreadRequest.set(request);
+          perThreadResponse.set(response);
+          try {
+            return processBatchedCall(call);
+          } finally {
+            // Pool threads outlive the request.
+            perThreadRequest.remove();
+            perThreadResponse.remove();
+          }
+        }
+      });
+      tasks.add(task);
+      executor.execute(task);
+    }
+    for (FutureTask<String> task : tasks) {
+      try {
+        responses.add(task.get());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new UnexpectedException("Interrupted while processing a batch", e);
+      } catch (ExecutionException e) {
+        throw new UnexpectedException("Unexpected failure processing a batch", e.getCause());
+      }
+    }
+    return RpcBatch.join(responses);
+  }
+
+  private String processBatchedCall(String payload) {
+    try {
+      onBeforeRequestDeserialized(payload);
+      String responsePayload = processCall(payload);
+      onAfterResponseSerialized(responsePayload);
+      return responsePayload;
+    } catch (Throwable e) {
+      log("Exception while dispatching a batched RPC call", e);
+      return encodeBatchedFailure(e);
+    }
+  }
+
+  private SerializationPolicyCache getSerializationPolicyCache() {
+    SerializationPolicyCache cache = serializationPolicyCache;
+    if (cache == null) {
+      synchronized (this) {
+        cache = serializationPolicyCache;
+        if (cache == null) {
+          cache = new SerializationPolicyCache(
+              SerializationPolicyCache.getMaxSize(getServletContext()));
+          serializationPolicyCache = cache;
+        }
+      }
+    }
+    return cache;
+  }
+
+  private void putCachedSerializationPolicy(String moduleBaseURL,
+      String strongName, SerializationPolicy serializationPolicy) {
+    getSerializationPolicyCache().put(moduleBaseURL + strongName,
+        serializationPolicy);
+  }
+
+  /**
+   * Handles a call like {@link #processCall(String)}, writing a successful
+   * result directly to <code>response</code>.
+   */
+  private void streamCall(String payload, HttpServletRequest request,
+      HttpServletResponse response) throws IOException, SerializationException {
+    // First, check for possible XSRF situation
+    checkPermutationStrongName();
+
+    RPCRequest rpcRequest;
+    try {
+      rpcRequest = RPC.decodeRequest(payload, delegate.getClass(), this);
+      onAfterRequestDeserialized(rpcRequest);
+    } catch (IncompatibleRemoteServiceException ex) {
+      log(
+          "An IncompatibleRemoteServiceException was thrown while processing this call.",
+          ex);
+      writeResponse(request, response, RPC.encodeResponseForFailure(null, ex));
+      return;
+    } catch (RpcTokenException tokenException) {
+      log("An RpcTokenException was thrown while processing this call.",
+          tokenException);
+      writeResponse(request, response, RPC.encodeResponseForFailure(null, tokenException));
+      return;
+    }
+
+    /*
+     * Nothing is committed to the client until the result has been serialized,
+     * so a failure can still be reported by doUnexpectedFailure().
+     */
+    Writer out = RPCServletUtils.openResponseWriter(response,
+        RPCServletUtils.acceptsGzipEncoding(request));
+    boolean written = false;
+    try {
+      RPC.invokeAndStreamResponse(delegate, rpcRequest.getMethod(),
+          rpcRequest.getParameters(), rpcRequest.getSerializationPolicy(),
+          rpcRequest.getFlags(), out);
+      written = true;
+    } finally {
+      if (written) {
+        out.close();
+      } else {
+        // Leaves the response uncommitted, for doUnexpectedFailure()
+        RPCServletUtils.abortResponseWriter(out);
+      }
+    }
+  }
 }
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.user.server.rpc;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.servlet.ServletContext;
+
+/**
+ * A bounded, thread-safe cache of {@link SerializationPolicy} instances. Once
+ * the cache is full, the policies that were added first are evicted first, so
+ * that policies for permutations which are no longer deployed eventually age
+ * out.
+ */
+final class SerializationPolicyCache {
+
+  /**
+   * The servlet context parameter that sets the maximum number of entries in
+   * each cache.
+   */
+  static final String MAX_SIZE_PARAM = "gwt.serializationPolicyCacheSize";
+
+  static final int DEFAULT_MAX_SIZE = 512;
+
+  private static final String CONTEXT_ATTRIBUTE = SerializationPolicyCache.class.getName();
+
+  /**
+   * Returns the cache of parsed policy files shared by all RPC servlets in the
+   * web application of <code>servletContext</code>.
+   */
+  static SerializationPolicyCache forContext(ServletContext servletContext) {
+    synchronized (SerializationPolicyCache.class) {
+      SerializationPolicyCache cache =
+          (SerializationPolicyCache) servletContext.getAttribute(CONTEXT_ATTRIBUTE);
+      if (cache == null) {
+        cache = new SerializationPolicyCache(getMaxSize(servletContext));
+        servletContext.setAttribute(CONTEXT_ATTRIBUTE, cache);
+      }
+      return cache;
+    }
+  }
+
+  /**
+   * Returns the maximum cache size configured for the web application of
+   * <code>servletContext</code>.
+   */
+  static int getMaxSize(ServletContext servletContext) {
+    String value = servletContext.getInitParameter(MAX_SIZE_PARAM);
+    if (value != null) {
+      try {
+        return Math.max(1, Integer.parseInt(value.trim()));
+      } catch (NumberFormatException e) {
+        servletContext.log("WARNING: Ignoring invalid " + MAX_SIZE_PARAM + " '" + value + "'");
+      }
+    }
+    return DEFAULT_MAX_SIZE;
+  }
+
+  /**
+   * The cached keys, oldest first. May briefly contain keys that have already
+   * been evicted from {@link #policies}.
+   */
+  private final Queue<String> insertionOrder = new ConcurrentLinkedQueue<String>();
+
+  private final int maxSize;
+
+  private final ConcurrentMap<String, SerializationPolicy> policies =
+      new ConcurrentHashMap<String, SerializationPolicy>();
+
+  SerializationPolicyCache(int maxSize) {
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * Returns the policy cached under <code>key</code>, or <code>null</code>.
+   */
+  SerializationPolicy get(String key) {
+    return policies.get(key);
+  }
+
+  /**
+   * Caches <code>policy</code> under <code>key</code>, evicting the oldest
+   * entries if the cache is full.
+   */
+  void put(String key, SerializationPolicy policy) {
+    if (policies.putIfAbsent(key, policy) != null) {
+      return;
+    }
+    insertionOrder.add(key);
+    while (policies.size() > maxSize) {
+      String eldest = insertionOrder.poll();
+      if (eldest == null) {
+        break;
+      }
+      policies.remove(eldest);
+    }
+  }
+
+  int size() {
+    return policies.size();
+  }
+}
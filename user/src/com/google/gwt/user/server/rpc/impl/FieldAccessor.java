@@ -0,0 +1,224 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.user.server.rpc.impl;
+
+import com.google.gwt.user.client.rpc.SerializationException;
+import com.google.gwt.user.client.rpc.SerializationStreamWriter;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+
+/**
+ * Reads and writes one serializable field of a class. Accessors are created
+ * once per field by {@link SerializabilityUtil#getFieldAccessors(Class)}, with
+ * the access checks already overridden and the way to encode the field's type
+ * already chosen. Primitive fields are read and written through the typed
+ * {@link Field} methods, so no boxed value is created per field.
+ */
+abstract class FieldAccessor {
+
+  /**
+   * Creates the accessor for <code>field</code>.
+   */
+  static FieldAccessor create(Field field) {
+    if (!field.isAccessible() && !Modifier.isPublic(field.getModifiers())) {
+      // Override the access restrictions
+      field.setAccessible(true);
+    }
+
+    Class<?> type = field.getType();
+    if (type == boolean.class) {
+      return new FieldAccessor(field) {
+        @Override
+        void read(ServerSerializationStreamReader stream, Object instance,
+            DequeMap<TypeVariable<?>, Type> resolvedTypes) throws IllegalAccessException,
+            SerializationException {
+          field.setBoolean(instance, stream.readBoolean());
+        }
+
+        @Override
+        void write(SerializationStreamWriter stream, Object instance)
+            throws IllegalAccessException, SerializationException {
+          stream.writeBoolean(field.getBoolean(instance));
+        }
+      };
+    } else if (type == byte.class) {
+      return new FieldAccessor(field) {
+        @Override
+        void read(ServerSerializationStreamReader stream, Object instance,
+            DequeMap<TypeVariable<?>, Type> resolvedTypes) throws IllegalAccessException,
+            SerializationException {
+          field.setByte(instance, stream.readByte());
+        }
+
+        @Override
+        void write(SerializationStreamWriter stream, Object instance)
+            throws IllegalAccessException, SerializationException {
+          stream.writeByte(field.getByte(instance));
+        }
+      };
+    } else if (type == char.class) {
+      return new FieldAccessor(field) {
+        @Override
+        void read(ServerSerializationStreamReader stream, Object instance,
+            DequeMap<TypeVariable<?>, Type> resolvedTypes) throws IllegalAccessException,
+            SerializationException {
+          field.setChar(instance, stream.readChar());
+        }
+
+        @Override
+        void write(SerializationStreamWriter stream, Object instance)
+            throws IllegalAccessException, SerializationException {
+          stream.writeChar(field.getChar(instance));
+        }
+      };
+    } else if (type == double.class) {
+      return new FieldAccessor(field) {
+        @Override
+        void read(ServerSerializationStreamReader stream, Object instance,
+            DequeMap<TypeVariable<?>, Type> resolvedTypes) throws IllegalAccessException,
+            SerializationException {
+          field.setDouble(instance, stream.readDouble());
+        }
+
+        @Override
+        void write(SerializationStreamWriter stream, Object instance)
+            throws IllegalAccessException, SerializationException {
+          stream.writeDouble(field.getDouble(instance));
+        }
+      };
+    } else if (type == float.class) {
+      return new FieldAccessor(field) {
+        @Override
+        void read(ServerSerializationStreamReader stream, Object instance,
+            DequeMap<TypeVariable<?>, Type> resolvedTypes) throws IllegalAccessException,
+            SerializationException {
+          field.setFloat(instance, stream.readFloat());
+        }
+
+        @Override
+        void write(SerializationStreamWriter stream, Object instance)
+            throws IllegalAccessException, SerializationException {
+          stream.writeFloat(field.getFloat(instance));
+        }
+      };
+    } else if (type == int.class) {
+      return new FieldAccessor(field) {
+        @Override
+        void read(ServerSerializationStreamReader stream, Object instance,
+            DequeMap<TypeVariable<?>, Type> resolvedTypes) throws IllegalAccessException,
+            SerializationException {
+          field.setInt(instance, stream.readInt());
+        }
+
+        @Override
+        void write(SerializationStreamWriter stream, Object instance)
+            throws IllegalAccessException, SerializationException {
+          stream.writeInt(field.getInt(instance));
+        }
+      };
+    } else if (type == long.class) {
+      return new FieldAccessor(field) {
+        @Override
+        void read(ServerSerializationStreamReader stream, Object instance,
+            DequeMap<TypeVariable<?>, Type> resolvedTypes) throws IllegalAccessException,
+            SerializationException {
+          field.setLong(instance, stream.readLong());
+        }
+
+        @Override
+        void write(SerializationStreamWriter stream, Object instance)
+            throws IllegalAccessException, SerializationException {
+          stream.writeLong(field.getLong(instance));
+        }
+      };
+    } else if (type == short.class) {
+      return new FieldAccessor(field) {
+        @Override
+        void read(ServerSerializationStreamReader stream, Object instance,
+            DequeMap<TypeVariable<?>, Type> resolvedTypes) throws IllegalAccessException,
+            SerializationException {
+          field.setShort(instance, stream.readShort());
+        }
+
+        @Override
+        void write(SerializationStreamWriter stream, Object instance)
+            throws IllegalAccessException, SerializationException {
+          stream.writeShort(field.getShort(instance));
+        }
+      };
+    } else if (type == String.class) {
+      return new FieldAccessor(field) {
+        @Override
+        void read(ServerSerializationStreamReader stream, Object instance,
+            DequeMap<TypeVariable<?>, Type> resolvedTypes) throws IllegalAccessException,
+            SerializationException {
+          field.set(instance, stream.readString());
+        }
+
+        @Override
+        void write(SerializationStreamWriter stream, Object instance)
+            throws IllegalAccessException, SerializationException {
+          stream.writeString((String) field.get(instance));
+        }
+      };
+    } else {
+      return new FieldAccessor(field) {
+        @Override
+        void read(ServerSerializationStreamReader stream, Object instance,
+            DequeMap<TypeVariable<?>, Type> resolvedTypes) throws IllegalAccessException,
+            SerializationException {
+          field.set(instance, stream.readObject(genericType, resolvedTypes));
+        }
+
+        @Override
+        void write(SerializationStreamWriter stream, Object instance)
+            throws IllegalAccessException, SerializationException {
+          stream.writeObject(field.get(instance));
+        }
+      };
+    }
+  }
+
+  final Field field;
+
+  /**
+   * The declared type of the field, resolved once rather than per instance.
+   */
+  final Type genericType;
+
+  private FieldAccessor(Field field) {
+    this.field = field;
+    this.genericType = field.getGenericType();
+  }
+
+  /**
+   * Reads the next value from <code>stream</code> into the field of
+   * <code>instance</code>.
+   */
+  abstract void read(ServerSerializationStreamReader stream, Object instance,
+      DequeMap<TypeVariable<?>, Type> resolvedTypes) throws IllegalAccessException,
+      SerializationException;
+
+  /**
+   * Writes the value of the field of <code>instance</code> to
+   * <code>stream</code>.
+   */
+  abstract void write(SerializationStreamWriter stream, Object instance)
+      throws IllegalAccessException, SerializationException;
+}
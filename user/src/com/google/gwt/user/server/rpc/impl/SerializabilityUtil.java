@@ -74,6 +74,13 @@ public class SerializabilityUtil {
   private static final Map<Class<?>, Field[]> classSerializableFieldsCache =
       new ConcurrentHashMap<Class<?>, Field[]>();
 
+  /**
+   * A permanent cache of the accessors for the serializable fields of classes,
+   * in the same order as {@link #classSerializableFieldsCache}.
+   */
+  private static final Map<Class<?>, FieldAccessor[]> classFieldAccessorsCache =
+      new ConcurrentHashMap<Class<?>, FieldAccessor[]>();
+
   /**
    * A permanent cache of all which classes onto custom field serializers. This
    * is safe to do because a Class is guaranteed not to change within the
@@ -194,6 +201,23 @@ public class SerializabilityUtil {
     return serializableFields;
   }
 
+  /**
+   * Returns accessors for the fields returned by
+   * {@link #applyFieldSerializationPolicy(Class)}, in the same order.
+   */
+  static FieldAccessor[] getFieldAccessors(Class<?> clazz) {
+    FieldAccessor[] accessors = classFieldAccessorsCache.get(clazz);
+    if (accessors == null) {
+      Field[] fields = applyFieldSerializationPolicy(clazz);
+      accessors = new FieldAccessor[fields.length];
+      for (int i = 0; i < fields.length; ++i) {
+        accessors[i] = FieldAccessor.create(fields[i]);
+      }
+      classFieldAccessorsCache.put(clazz, accessors);
+    }
+    return accessors;
+  }
+
   public static SerializedInstanceReference decodeSerializedInstanceReference(
       String encodedSerializedInstanceReference) {
     final String[] components =
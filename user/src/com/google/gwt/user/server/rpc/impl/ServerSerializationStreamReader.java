@@ -794,38 +794,43 @@ public final class ServerSerializationStreamReader extends AbstractSerialization
       }
 
       setters = getSetters(instanceClass);
-    }
-
-    Field[] serializableFields = SerializabilityUtil.applyFieldSerializationPolicy(instanceClass);
-    for (Field declField : serializableFields) {
-      assert (declField != null);
-      if ((clientFieldNames != null) && !clientFieldNames.contains(declField.getName())) {
-        continue;
-      }
 
-      Type declGenericType = declField.getGenericType();
-      Object value = deserializeValue(declField.getType(), declGenericType, resolvedTypes);
-
-      String fieldName = declField.getName();
-      Method setter;
-      /*
-       * If setters is non-null and there is a setter method for the given
-       * field, call the setter. Otherwise, set the field value directly. For
-       * persistence APIs such as JDO, the setter methods have been enhanced to
-       * manipulate additional object state, causing direct field writes to fail
-       * to update the object state properly.
-       */
-      if ((setters != null) && ((setter = setters.get(fieldName)) != null)) {
-        setter.invoke(instance, value);
-      } else {
-        boolean isAccessible = declField.isAccessible();
-        boolean needsAccessOverride = !isAccessible && !Modifier.isPublic(declField.getModifiers());
-        if (needsAccessOverride) {
-          // Override access restrictions
-          declField.setAccessible(true);
+      Field[] serializableFields = SerializabilityUtil.applyFieldSerializationPolicy(instanceClass);
+      for (Field declField : serializableFields) {
+        assert (declField != null);
+        if (!clientFieldNames.contains(declField.getName())) {
+          continue;
         }
 
-        declField.set(instance, value);
+        Type declGenericType = declField.getGenericType();
+        Object value = deserializeValue(declField.getType(), declGenericType, resolvedTypes);
+
+        String fieldName = declField.getName();
+        Method setter;
+        /*
+         * If there is a setter method for the given field, call the setter.
+         * Otherwise, set the field value directly. For persistence APIs such as
+         * JDO, the setter methods have been enhanced to manipulate additional
+         * object state, causing direct field writes to fail to update the
+         * object state properly.
+         */
+        if ((setter = setters.get(fieldName)) != null) {
+          setter.invoke(instance, value);
+        } else {
+          boolean isAccessible = declField.isAccessible();
+          boolean needsAccessOverride =
+              !isAccessible && !Modifier.isPublic(declField.getModifiers());
+          if (needsAccessOverride) {
+            // Override access restrictions
+            declField.setAccessible(true);
+          }
+
+          declField.set(instance, value);
+        }
+      }
+    } else {
+      for (FieldAccessor accessor : SerializabilityUtil.getFieldAccessors(instanceClass)) {
+        accessor.read(this, instance, resolvedTypes);
       }
     }
 
@@ -24,6 +24,7 @@ import com.google.gwt.user.server.rpc.SerializationPolicy;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.ObjectOutputStream;
+import java.io.Writer;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
@@ -100,6 +101,62 @@ public final class ServerSerializationStreamWriter extends
     }
   }
 
+  /**
+   * Writes the same output as {@link LengthConstrainedArray} directly to a
+   * {@link Writer}, so that large payloads are never held as a single string.
+   */
+  private static class StreamingLengthConstrainedArray {
+    private int count = 0;
+    private boolean needsComma = false;
+    private final Writer out;
+    private int total = 0;
+
+    public StreamingLengthConstrainedArray(Writer out) throws IOException {
+      this.out = out;
+      out.write('[');
+    }
+
+    public void addToken(String token) throws IOException {
+      startToken();
+      out.write(String.valueOf(token));
+    }
+
+    public void addToken(int i) throws IOException {
+      addToken(String.valueOf(i));
+    }
+
+    public void close() throws IOException {
+      if (total > LengthConstrainedArray.MAXIMUM_ARRAY_LENGTH) {
+        out.write(LengthConstrainedArray.POSTLUDE);
+      } else {
+        out.write(']');
+      }
+    }
+
+    /**
+     * Writes the separator that precedes the next token, leaving the caller to
+     * write the token itself.
+     */
+    public void startToken() throws IOException {
+      total++;
+      if (count++ == LengthConstrainedArray.MAXIMUM_ARRAY_LENGTH) {
+        if (total == LengthConstrainedArray.MAXIMUM_ARRAY_LENGTH + 1) {
+          out.write(LengthConstrainedArray.PRELUDE);
+        } else {
+          out.write("],[");
+        }
+        count = 0;
+        needsComma = false;
+      }
+
+      if (needsComma) {
+        out.write(',');
+      } else {
+        needsComma = true;
+      }
+    }
+  }
+
   /**
    * Enumeration used to provided typed instance writers.
    */
@@ -313,6 +370,12 @@ public final class ServerSerializationStreamWriter extends
    */
   private static final char JS_QUOTE_CHAR = '\"';
 
+  /**
+   * The largest magnitude a long can have and still be represented exactly by
+   * a JavaScript number (2 ^ 53).
+   */
+  private static final long MAX_EXACT_LONG = 1L << 53;
+
   /**
    * Index into this array using a nibble, 4 bits, to get the corresponding
    * hexa-decimal character representation.
@@ -608,10 +671,74 @@ public final class ServerSerializationStreamWriter extends
 
     return stream.toString();
   }
-  
+
+  /**
+   * Removes a redundant fractional part from the result of
+   * {@link Double#toString(double)} or {@link Float#toString(float)}, so that
+   * <code>"3.0"</code> becomes <code>"3"</code> and <code>"1.0E10"</code>
+   * becomes <code>"1E10"</code>.
+   */
+  static String compactDouble(String value) {
+    if (value.endsWith(".0")) {
+      return value.substring(0, value.length() - 2);
+    }
+    int exponent = value.indexOf(".0E");
+    if (exponent >= 0) {
+      return value.substring(0, exponent) + value.substring(exponent + 2);
+    }
+    return value;
+  }
+
+  /**
+   * Writes the same payload as {@link #toString()} to <code>out</code>, one
+   * token at a time, without building it up in memory first.
+   */
+  public void writeTo(Writer out) throws IOException {
+    StreamingLengthConstrainedArray stream = new StreamingLengthConstrainedArray(out);
+    ListIterator<String> tokenIterator = tokenList.listIterator(tokenList.size());
+    while (tokenIterator.hasPrevious()) {
+      stream.addToken(tokenIterator.previous());
+    }
+
+    stream.startToken();
+    StreamingLengthConstrainedArray tableStream = new StreamingLengthConstrainedArray(out);
+    for (String s : getStringTable()) {
+      tableStream.addToken(escapeStringSplitNodes(s));
+    }
+    tableStream.close();
+
+    stream.addToken(getFlags());
+    stream.addToken(getVersion());
+    stream.close();
+  }
+
+  @Override
+  public void writeDouble(double fieldValue) {
+    if (hasFlags(FLAG_COMPACT_NUMERICS)) {
+      append(compactDouble(String.valueOf(fieldValue)));
+    } else {
+      super.writeDouble(fieldValue);
+    }
+  }
+
+  @Override
+  public void writeFloat(float fieldValue) {
+    if (hasFlags(FLAG_COMPACT_NUMERICS)) {
+      // The shortest decimal that rounds to fieldValue, rather than all the
+      // digits of its exact double value
+      append(compactDouble(String.valueOf(fieldValue)));
+    } else {
+      super.writeFloat(fieldValue);
+    }
+  }
+
   @Override
   public void writeLong(long value) {
-    if (getVersion() == SERIALIZATION_STREAM_MIN_VERSION) {
+    if (hasFlags(FLAG_COMPACT_NUMERICS) && value >= -MAX_EXACT_LONG
+        && value <= MAX_EXACT_LONG) {
+      // The client can read this back as a double without losing precision
+      append(String.valueOf(value));
+    } else if (getVersion() == SERIALIZATION_STREAM_MIN_VERSION) {
       // Write longs as a pair of doubles for backwards compatibility
       double[] parts = getAsDoubleArray(value);
       assert parts != null && parts.length == 2;
@@ -693,7 +820,6 @@ public final class ServerSerializationStreamWriter extends
   private void serializeClass(Object instance, Class<?> instanceClass)
       throws SerializationException {
     assert (instance != null);
-    Field[] serializableFields = SerializabilityUtil.applyFieldSerializationPolicy(instanceClass);
 
     /**
      * If clientFieldNames is non-null, identify any additional server-only fields and serialize
@@ -702,43 +828,65 @@ public final class ServerSerializationStreamWriter extends
      */
     Set<String> clientFieldNames = serializationPolicy.getClientFieldNamesForEnhancedClass(instanceClass);
     if (clientFieldNames != null) {
-      List<Field> serverFields = new ArrayList<Field>();
-      for (Field declField : serializableFields) {
-        assert (declField != null);
-        
-        // Identify server-only fields
-        if (!clientFieldNames.contains(declField.getName())) {
-          serverFields.add(declField);
-          continue;
-        }
-      }
-      
-      // Serialize the server-only fields into a byte array and encode as a String
+      serializeEnhancedClassFields(instance, instanceClass, clientFieldNames);
+    } else {
       try {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        ObjectOutputStream oos = new ObjectOutputStream(baos);
-        oos.writeInt(serverFields.size());
-        for (Field f : serverFields) {
-          oos.writeObject(f.getName());
-          f.setAccessible(true);
-          Object fieldData = f.get(instance);
-          oos.writeObject(fieldData);
+        for (FieldAccessor accessor : SerializabilityUtil.getFieldAccessors(instanceClass)) {
+          accessor.write(this, instance);
         }
-        oos.close();
+      } catch (IllegalArgumentException e) {
+        throw new SerializationException(e);
 
-        byte[] serializedData = baos.toByteArray();
-        String encodedData = Base64Utils.toBase64(serializedData);
-        writeString(encodedData);
       } catch (IllegalAccessException e) {
         throw new SerializationException(e);
-      } catch (IOException e) {
-        throw new SerializationException(e);
       }
     }
+
+    Class<?> superClass = instanceClass.getSuperclass();
+    if (serializationPolicy.shouldSerializeFields(superClass)) {
+      serializeImpl(instance, superClass);
+    }
+  }
+
+  private void serializeEnhancedClassFields(Object instance, Class<?> instanceClass,
+      Set<String> clientFieldNames) throws SerializationException {
+    Field[] serializableFields = SerializabilityUtil.applyFieldSerializationPolicy(instanceClass);
+    List<Field> serverFields = new ArrayList<Field>();
+    for (Field declField : serializableFields) {
+      assert (declField != null);
+      
+      // Identify server-only fields
+      if (!clientFieldNames.contains(declField.getName())) {
+        serverFields.add(declField);
+        continue;
+      }
+    }
+    
+    // Serialize the server-only fields into a byte array and encode as a String
+    try {
+      ByteArrayOutputStream baos = new ByteArrayOutputStream();
+      ObjectOutputStream oos = new ObjectOutputStream(baos);
+      oos.writeInt(serverFields.size());
+      for (Field f : serverFields) {
+        oos.writeObject(f.getName());
+        f.setAccessible(true);
+        Object fieldData = f.get(instance);
+        oos.writeObject(fieldData);
+      }
+      oos.close();
+
+      byte[] serializedData = baos.toByteArray();
+      String encodedData = Base64Utils.toBase64(serializedData);
+      writeString(encodedData);
+    } catch (IllegalAccessException e) {
+      throw new SerializationException(e);
+    } catch (IOException e) {
+      throw new SerializationException(e);
+    }
     
     // Write the client-visible field data
     for (Field declField : serializableFields) {
-      if ((clientFieldNames != null) && !clientFieldNames.contains(declField.getName())) {
+      if (!clientFieldNames.contains(declField.getName())) {
         // Skip server-only fields
         continue;
       }
@@ -763,11 +911,6 @@ public final class ServerSerializationStreamWriter extends
         throw new SerializationException(e);
       }
     }
-
-    Class<?> superClass = instanceClass.getSuperclass();
-    if (serializationPolicy.shouldSerializeFields(superClass)) {
-      serializeImpl(instance, superClass);
-    }
   }
 
   private void serializeImpl(Object instance, Class<?> instanceClass)
@@ -0,0 +1,455 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.web.bindery.autobean.vm.impl;
+
+import com.google.gwt.dev.asm.ClassWriter;
+import com.google.gwt.dev.asm.MethodVisitor;
+import com.google.gwt.dev.asm.Opcodes;
+import com.google.gwt.dev.asm.Type;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Generates the bytecode of AutoBean shims and simple peers, so that calls to
+ * them don't go through {@link java.lang.reflect.Proxy} and
+ * {@link java.lang.reflect.Method#invoke}. {@link ProxyAutoBean} looks this
+ * class up by name and falls back to proxies when it is missing, or when a
+ * class cannot be generated, as on Android.
+ */
+public class BeanClassGenerator implements Opcodes {
+
+  /**
+   * Defines a single generated class. The AutoBean classes that generated
+   * classes use are resolved here, in case the bean interface's class loader
+   * cannot see them.
+   */
+  private static class BeanClassLoader extends ClassLoader {
+    public BeanClassLoader(ClassLoader parent) {
+      super(parent);
+    }
+
+    public Class<?> define(String binaryName, byte[] bytes) {
+      return defineClass(binaryName, bytes, 0, bytes.length);
+    }
+
+    @Override
+    protected synchronized Class<?> loadClass(String name, boolean resolve)
+        throws ClassNotFoundException {
+      if (name.equals(GeneratedShim.class.getName())) {
+        return GeneratedShim.class;
+      } else if (name.equals(GeneratedSimplePeer.class.getName())) {
+        return GeneratedSimplePeer.class;
+      }
+      try {
+        return super.loadClass(name, resolve);
+      } catch (ClassNotFoundException e) {
+        // For bean interfaces loaded by the bootstrap class loader
+        return Class.forName(name, false, BeanClassGenerator.class.getClassLoader());
+      }
+    }
+  }
+
+  /**
+   * The package of generated classes. Using a package of their own avoids
+   * defining classes in restricted packages, such as java.util for wrapped
+   * collections.
+   */
+  private static final String GENERATED_PACKAGE = "com.google.web.bindery.autobean.vm.gen.";
+
+  /**
+   * The name of the static field that holds the methods dispatched through
+   * {@link GeneratedSimplePeer#invoke}.
+   */
+  private static final String METHODS_FIELD = "methods";
+
+  private static final String OBJECT = Type.getInternalName(Object.class);
+
+  private static final String OBJECT_DESC = Type.getDescriptor(Object.class);
+
+  private static final String STRING_DESC = Type.getDescriptor(String.class);
+
+  /**
+   * Returns the constructor of a generated simple peer for <code>beanType</code>
+   * that takes a {@link ProxyAutoBean}, or <code>null</code> if one cannot be
+   * generated.
+   */
+  public static Constructor<?> peerConstructor(Class<?> beanType) {
+    if (!canImplement(beanType)) {
+      return null;
+    }
+    try {
+      List<Method> dispatched = new ArrayList<Method>();
+      String name = GENERATED_PACKAGE + beanType.getName() + "$Peer";
+      Class<?> clazz =
+          new BeanClassLoader(beanType.getClassLoader()).define(name, generatePeer(name,
+              beanType, dispatched));
+      clazz.getField(METHODS_FIELD).set(null, dispatched.toArray(new Method[dispatched.size()]));
+      return clazz.getConstructor(ProxyAutoBean.class);
+    } catch (Throwable e) {
+      // Fall back to a Proxy
+      return null;
+    }
+  }
+
+  /**
+   * Returns the constructor of a generated shim for <code>beanType</code> that
+   * takes a {@link ProxyAutoBean} and the object it wraps, or <code>null</code>
+   * if one cannot be generated.
+   */
+  public static Constructor<?> shimConstructor(Class<?> beanType) {
+    if (!canImplement(beanType)) {
+      return null;
+    }
+    try {
+      String name = GENERATED_PACKAGE + beanType.getName() + "$Shim";
+      Class<?> clazz =
+          new BeanClassLoader(beanType.getClassLoader()).define(name, generateShim(name,
+              beanType));
+      return clazz.getConstructor(ProxyAutoBean.class, Object.class);
+    } catch (Throwable e) {
+      // Fall back to a Proxy
+      return null;
+    }
+  }
+
+  /**
+   * Returns the methods that a class implementing <code>beanType</code> must
+   * define, without duplicates and without those that Object implements.
+   */
+  private static Map<String, Method> abstractMethods(Class<?> beanType) {
+    Map<String, Method> toReturn = new LinkedHashMap<String, Method>();
+    for (Method method : beanType.getMethods()) {
+      if (Modifier.isStatic(method.getModifiers())) {
+        continue;
+      }
+      String key = method.getName() + Type.getMethodDescriptor(method);
+      if (!isObjectMethod(key) && !toReturn.containsKey(key)) {
+        toReturn.put(key, method);
+      }
+    }
+    return toReturn;
+  }
+
+  /**
+   * Boxes the primitive value of <code>type</code> on top of the stack, or pushes
+   * <code>null</code> for void.
+   */
+  private static void box(MethodVisitor mv, Type type) {
+    Type boxed = boxedType(type);
+    if (type.getSort() == Type.VOID) {
+      mv.visitInsn(ACONST_NULL);
+    } else if (boxed != null) {
+      mv.visitMethodInsn(INVOKESTATIC, boxed.getInternalName(), "valueOf", Type
+          .getMethodDescriptor(boxed, new Type[] {type}));
+    }
+  }
+
+  /**
+   * Returns the wrapper type of a primitive type, or <code>null</code>.
+   */
+  private static Type boxedType(Type type) {
+    switch (type.getSort()) {
+      case Type.BOOLEAN:
+        return Type.getType(Boolean.class);
+      case Type.BYTE:
+        return Type.getType(Byte.class);
+      case Type.CHAR:
+        return Type.getType(Character.class);
+      case Type.DOUBLE:
+        return Type.getType(Double.class);
+      case Type.FLOAT:
+        return Type.getType(Float.class);
+      case Type.INT:
+        return Type.getType(Integer.class);
+      case Type.LONG:
+        return Type.getType(Long.class);
+      case Type.SHORT:
+        return Type.getType(Short.class);
+      case Type.VOID:
+        return Type.getType(Void.class);
+      default:
+        return null;
+    }
+  }
+
+  /**
+   * Generated classes live in their own class loader, so everything they cast
+   * to or implement has to be public.
+   */
+  private static boolean canImplement(Class<?> beanType) {
+    if (!beanType.isInterface() || !isPublic(beanType)) {
+      return false;
+    }
+    for (Class<?> intf : beanType.getInterfaces()) {
+      if (!canImplement(intf)) {
+        return false;
+      }
+    }
+    for (Method method : beanType.getMethods()) {
+      if (!isPublic(method.getReturnType())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Converts the object on top of the stack to <code>type</code> and returns it.
+   */
+  private static void convertAndReturn(MethodVisitor mv, Type type) {
+    Type boxed = boxedType(type);
+    if (type.getSort() == Type.VOID) {
+      mv.visitInsn(POP);
+    } else if (boxed != null) {
+      mv.visitTypeInsn(CHECKCAST, boxed.getInternalName());
+      mv.visitMethodInsn(INVOKEVIRTUAL, boxed.getInternalName(), type.getClassName() + "Value",
+          Type.getMethodDescriptor(type, new Type[0]));
+    } else if (!type.getInternalName().equals(OBJECT)) {
+      mv.visitTypeInsn(CHECKCAST, type.getInternalName());
+    }
+    mv.visitInsn(type.getOpcode(IRETURN));
+  }
+
+  /**
+   * Implements <code>method</code> by calling <code>helper</code> on the peer
+   * with the method's {@link Method} object and arguments.
+   */
+  private static void dispatch(MethodVisitor mv, String className, int index, Method method) {
+    mv.visitVarInsn(ALOAD, 0);
+    mv.visitFieldInsn(GETSTATIC, className, METHODS_FIELD, Type.getDescriptor(Method[].class));
+    pushInt(mv, index);
+    mv.visitInsn(AALOAD);
+    pushArguments(mv, method);
+    mv.visitMethodInsn(INVOKEVIRTUAL, Type.getInternalName(GeneratedSimplePeer.class), "invoke",
+        "(" + Type.getDescriptor(Method.class) + "[" + OBJECT_DESC + ")" + OBJECT_DESC);
+    convertAndReturn(mv, Type.getReturnType(method));
+  }
+
+  private static byte[] generatePeer(String binaryName, Class<?> beanType,
+      List<Method> dispatched) throws NoSuchMethodException {
+    String className = binaryName.replace('.', '/');
+    String superName = Type.getInternalName(GeneratedSimplePeer.class);
+    ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+    cw.visit(V1_5, ACC_PUBLIC | ACC_FINAL | ACC_SUPER | ACC_SYNTHETIC, className, null,
+        superName, new String[] {Type.getInternalName(beanType)});
+    cw.visitField(ACC_PUBLIC | ACC_STATIC, METHODS_FIELD, Type.getDescriptor(Method[].class),
+        null, null).visitEnd();
+
+    String beanDesc = Type.getDescriptor(ProxyAutoBean.class);
+    MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "<init>", "(" + beanDesc + ")V", null, null);
+    mv.visitCode();
+    mv.visitVarInsn(ALOAD, 0);
+    mv.visitVarInsn(ALOAD, 1);
+    mv.visitMethodInsn(INVOKESPECIAL, superName, "<init>", "(" + beanDesc + ")V");
+    mv.visitInsn(RETURN);
+    mv.visitMaxs(0, 0);
+    mv.visitEnd();
+
+    // Object's methods may be implemented by categories
+    List<Method> methods = new ArrayList<Method>();
+    methods.add(Object.class.getMethod("equals", Object.class));
+    methods.add(Object.class.getMethod("hashCode"));
+    methods.add(Object.class.getMethod("toString"));
+    methods.addAll(abstractMethods(beanType).values());
+
+    for (Method method : methods) {
+      Type returnType = Type.getReturnType(method);
+      mv = cw.visitMethod(ACC_PUBLIC, method.getName(), Type.getMethodDescriptor(method), null,
+          null);
+      mv.visitCode();
+      // The same precedence as SimpleBeanHandler
+      if (BeanMethod.OBJECT.matches(method)) {
+        dispatched.add(method);
+        dispatch(mv, className, dispatched.size() - 1, method);
+      } else if (BeanMethod.GET.matches(method)) {
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitLdcInsn(BeanMethod.GET.inferName(method));
+        Type boxed = boxedType(returnType);
+        if (boxed == null) {
+          mv.visitMethodInsn(INVOKEVIRTUAL, superName, "get", "(" + STRING_DESC + ")"
+              + OBJECT_DESC);
+        } else {
+          mv.visitFieldInsn(GETSTATIC, boxed.getInternalName(), "TYPE", Type
+              .getDescriptor(Class.class));
+          mv.visitMethodInsn(INVOKEVIRTUAL, superName, "get", "(" + STRING_DESC
+              + Type.getDescriptor(Class.class) + ")" + OBJECT_DESC);
+        }
+        convertAndReturn(mv, returnType);
+      } else if (BeanMethod.SET.matches(method) || BeanMethod.SET_BUILDER.matches(method)) {
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitLdcInsn(BeanMethod.SET.inferName(method));
+        Type paramType = Type.getArgumentTypes(method)[0];
+        mv.visitVarInsn(paramType.getOpcode(ILOAD), 1);
+        box(mv, paramType);
+        mv.visitMethodInsn(INVOKEVIRTUAL, superName, "set", "(" + STRING_DESC + OBJECT_DESC
+            + ")V");
+        if (BeanMethod.SET.matches(method)) {
+          mv.visitInsn(RETURN);
+        } else {
+          mv.visitVarInsn(ALOAD, 0);
+          mv.visitMethodInsn(INVOKEVIRTUAL, superName, "as", "()" + OBJECT_DESC);
+          convertAndReturn(mv, returnType);
+        }
+      } else {
+        dispatched.add(method);
+        dispatch(mv, className, dispatched.size() - 1, method);
+      }
+      mv.visitMaxs(0, 0);
+      mv.visitEnd();
+    }
+    cw.visitEnd();
+    return cw.toByteArray();
+  }
+
+  private static byte[] generateShim(String binaryName, Class<?> beanType) {
+    String className = binaryName.replace('.', '/');
+    String superName = Type.getInternalName(GeneratedShim.class);
+    String beanName = Type.getInternalName(beanType);
+    ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+    cw.visit(V1_5, ACC_PUBLIC | ACC_FINAL | ACC_SUPER | ACC_SYNTHETIC, className, null,
+        superName, new String[] {beanName});
+
+    String ctorDesc = "(" + Type.getDescriptor(ProxyAutoBean.class) + OBJECT_DESC + ")V";
+    MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "<init>", ctorDesc, null, null);
+    mv.visitCode();
+    mv.visitVarInsn(ALOAD, 0);
+    mv.visitVarInsn(ALOAD, 1);
+    mv.visitVarInsn(ALOAD, 2);
+    mv.visitMethodInsn(INVOKESPECIAL, superName, "<init>", ctorDesc);
+    mv.visitInsn(RETURN);
+    mv.visitMaxs(0, 0);
+    mv.visitEnd();
+
+    String classDesc = Type.getDescriptor(Class.class);
+    for (Method method : abstractMethods(beanType).values()) {
+      String desc = Type.getMethodDescriptor(method);
+      Type returnType = Type.getReturnType(method);
+      Type[] argTypes = Type.getArgumentTypes(method);
+      mv = cw.visitMethod(ACC_PUBLIC, method.getName(), desc, null, null);
+      mv.visitCode();
+
+      // Object returned = ((BeanType) wrapped()).method(args...)
+      mv.visitVarInsn(ALOAD, 0);
+      mv.visitLdcInsn(method.getName());
+      mv.visitVarInsn(ALOAD, 0);
+      mv.visitMethodInsn(INVOKEVIRTUAL, superName, "wrapped", "()" + OBJECT_DESC);
+      mv.visitTypeInsn(CHECKCAST, beanName);
+      int local = 1;
+      for (Type argType : argTypes) {
+        mv.visitVarInsn(argType.getOpcode(ILOAD), local);
+        local += argType.getSize();
+      }
+      mv.visitMethodInsn(INVOKEINTERFACE, beanName, method.getName(), desc);
+      box(mv, returnType);
+
+      // The same classification as ShimHandler
+      if (BeanMethod.GET.matches(method)) {
+        pushClass(mv, returnType);
+        mv.visitMethodInsn(INVOKEVIRTUAL, superName, "afterGet", "(" + STRING_DESC
+            + OBJECT_DESC + classDesc + ")" + OBJECT_DESC);
+      } else if (BeanMethod.SET.matches(method) || BeanMethod.SET_BUILDER.matches(method)) {
+        // afterSet(name, value, returned, returnType)
+        mv.visitVarInsn(argTypes[0].getOpcode(ILOAD), 1);
+        box(mv, argTypes[0]);
+        mv.visitInsn(SWAP);
+        pushClass(mv, returnType);
+        mv.visitMethodInsn(INVOKEVIRTUAL, superName, "afterSet", "(" + STRING_DESC
+            + OBJECT_DESC + OBJECT_DESC + classDesc + ")" + OBJECT_DESC);
+      } else {
+        pushArguments(mv, method);
+        pushClass(mv, returnType);
+        mv.visitMethodInsn(INVOKEVIRTUAL, superName, "afterCall", "(" + STRING_DESC
+            + OBJECT_DESC + "[" + OBJECT_DESC + classDesc + ")" + OBJECT_DESC);
+      }
+      convertAndReturn(mv, returnType);
+      mv.visitMaxs(0, 0);
+      mv.visitEnd();
+    }
+    cw.visitEnd();
+    return cw.toByteArray();
+  }
+
+  private static boolean isObjectMethod(String nameAndDescriptor) {
+    return "equals(Ljava/lang/Object;)Z".equals(nameAndDescriptor)
+        || "hashCode()I".equals(nameAndDescriptor)
+        || "toString()Ljava/lang/String;".equals(nameAndDescriptor);
+  }
+
+  private static boolean isPublic(Class<?> clazz) {
+    while (clazz.isArray()) {
+      clazz = clazz.getComponentType();
+    }
+    if (clazz.isPrimitive()) {
+      return true;
+    }
+    for (Class<?> c = clazz; c != null; c = c.getEnclosingClass()) {
+      if (!Modifier.isPublic(c.getModifiers())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Pushes the arguments of <code>method</code> as a boxed Object array.
+   */
+  private static void pushArguments(MethodVisitor mv, Method method) {
+    Type[] argTypes = Type.getArgumentTypes(method);
+    pushInt(mv, argTypes.length);
+    mv.visitTypeInsn(ANEWARRAY, OBJECT);
+    int local = 1;
+    for (int i = 0; i < argTypes.length; i++) {
+      mv.visitInsn(DUP);
+      pushInt(mv, i);
+      mv.visitVarInsn(argTypes[i].getOpcode(ILOAD), local);
+      box(mv, argTypes[i]);
+      mv.visitInsn(AASTORE);
+      local += argTypes[i].getSize();
+    }
+  }
+
+  /**
+   * Pushes the {@link Class} object for <code>type</code>.
+   */
+  private static void pushClass(MethodVisitor mv, Type type) {
+    Type boxed = boxedType(type);
+    if (boxed != null) {
+      mv.visitFieldInsn(GETSTATIC, boxed.getInternalName(), "TYPE", Type
+          .getDescriptor(Class.class));
+    } else {
+      mv.visitLdcInsn(type);
+    }
+  }
+
+  private static void pushInt(MethodVisitor mv, int value) {
+    if (value <= 5) {
+      mv.visitInsn(ICONST_0 + value);
+    } else if (value <= Byte.MAX_VALUE) {
+      mv.visitIntInsn(BIPUSH, value);
+    } else {
+      mv.visitIntInsn(SIPUSH, value);
+    }
+  }
+
+  private BeanClassGenerator() {
+  }
+}
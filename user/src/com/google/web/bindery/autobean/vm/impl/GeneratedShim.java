@@ -0,0 +1,67 @@
+/*
+ * Copyright 2013 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.web.bindery.autobean.vm.impl;
+
+/**
+ * The superclass of shims generated by {@link BeanClassGenerator}. A generated
+ * shim calls the wrapped object directly and hands the result to the same
+ * logic as {@link ShimHandler}, instead of dispatching through a
+ * {@link java.lang.reflect.Proxy}.
+ * 
+ * @param <T> the interface type of the AutoBean
+ */
+public abstract class GeneratedShim<T> {
+  private final ShimHandler<T> handler;
+
+  protected GeneratedShim(ProxyAutoBean<T> bean, T toWrap) {
+    handler = new ShimHandler<T>(bean, toWrap);
+  }
+
+  @Override
+  public boolean equals(Object couldBeShim) {
+    // Handles the foo.equals(foo) case
+    return couldBeShim == this || handler.equals(couldBeShim);
+  }
+
+  @Override
+  public int hashCode() {
+    return handler.hashCode();
+  }
+
+  @Override
+  public String toString() {
+    return handler.toString();
+  }
+
+  protected final Object afterCall(String method, Object returned, Object[] args,
+      Class<?> returnType) throws Throwable {
+    return handler.afterCall(method, returned, args, returnType);
+  }
+
+  protected final Object afterGet(String method, Object returned, Class<?> returnType)
+      throws Throwable {
+    return handler.afterGet(method, returned, returnType);
+  }
+
+  protected final Object afterSet(String method, Object value, Object returned,
+      Class<?> returnType) throws Throwable {
+    return handler.afterSet(method, value, returned, returnType);
+  }
+
+  protected final Object wrapped() {
+    return handler.getBean().getWrapped();
+  }
+}
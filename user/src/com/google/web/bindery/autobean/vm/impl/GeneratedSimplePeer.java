@@ -0,0 +1,69 @@
+/*
+ * Copyright 2013 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.web.bindery.autobean.vm.impl;
+
+import java.lang.reflect.Method;
+
+/**
+ * The superclass of simple peers generated by {@link BeanClassGenerator}.
+ * Getters and setters read and write the AutoBean's properties directly; other
+ * methods are dispatched like {@link SimpleBeanHandler} does.
+ * 
+ * @param <T> the type of interface the peer implements
+ */
+public abstract class GeneratedSimplePeer<T> {
+  private final ProxyAutoBean<T> bean;
+  private final SimpleBeanHandler<T> handler;
+
+  protected GeneratedSimplePeer(ProxyAutoBean<T> bean) {
+    this.bean = bean;
+    this.handler = new SimpleBeanHandler<T>(bean);
+  }
+
+  /**
+   * Returns the shim of the AutoBean, for chained setters.
+   */
+  protected final Object as() {
+    return bean.as();
+  }
+
+  protected final Object get(String propertyName) {
+    return bean.<Object> getOrReify(propertyName);
+  }
+
+  /**
+   * Returns the value of a property whose getter returns a primitive type.
+   */
+  protected final Object get(String propertyName, Class<?> primitiveType) {
+    Object toReturn = bean.getOrReify(propertyName);
+    if (toReturn == null) {
+      toReturn = TypeUtils.getDefaultPrimitiveValue(primitiveType);
+    }
+    return toReturn;
+  }
+
+  /**
+   * Dispatches methods other than getters and setters, including those
+   * declared by Object.
+   */
+  protected final Object invoke(Method method, Object[] args) throws Throwable {
+    return handler.invoke(this, method, args);
+  }
+
+  protected final void set(String propertyName, Object value) {
+    bean.setProperty(propertyName, value);
+  }
+}
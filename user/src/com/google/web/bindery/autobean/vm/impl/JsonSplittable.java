@@ -15,131 +15,317 @@
  */
 package com.google.web.bindery.autobean.vm.impl;
 
-import com.google.gwt.core.client.impl.WeakMapping;
 import com.google.web.bindery.autobean.shared.Splittable;
 import com.google.web.bindery.autobean.shared.impl.HasSplittable;
 import com.google.web.bindery.autobean.shared.impl.StringQuoter;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-
-import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
 /**
- * Uses the org.json packages to slice and dice request payloads.
+ * Slices and dices request payloads with a streaming JSON parser. Objects and
+ * arrays are split into their members only when they are first accessed, so
+ * parts of a payload that are never looked at are only scanned, and the
+ * payload of an object or array that has not been modified is returned as-is
+ * rather than being encoded again.
  */
 public class JsonSplittable implements Splittable, HasSplittable {
 
-  public static JsonSplittable create() {
-    return new JsonSplittable(new JSONObject());
-  }
+  /**
+   * Reads JSON values from a payload, starting at a given position.
+   */
+  private static class Parser {
+    private final String json;
+    private int pos;
 
-  public static Splittable create(String payload) {
-    try {
-      switch (payload.charAt(0)) {
+    Parser(String json, int pos) {
+      this.json = json;
+      this.pos = pos;
+    }
+
+    /**
+     * Skips the given character if it is the next non-whitespace character.
+     */
+    boolean consume(char c) {
+      if (peek() == c) {
+        pos++;
+        return true;
+      }
+      return false;
+    }
+
+    void end() {
+      skipWhitespace();
+      if (pos != json.length()) {
+        throw error("Unexpected trailing characters");
+      }
+    }
+
+    void expect(char c) {
+      if (!consume(c)) {
+        throw error("Expecting '" + c + "'");
+      }
+    }
+
+    /**
+     * Returns the next non-whitespace character, without consuming it.
+     */
+    char peek() {
+      skipWhitespace();
+      if (pos == json.length()) {
+        throw error("Unexpected end of payload");
+      }
+      return json.charAt(pos);
+    }
+
+    String string() {
+      expect('"');
+      StringBuilder sb = null;
+      int runStart = pos;
+      while (true) {
+        char c = next();
+        if (c == '"') {
+          if (sb == null) {
+            return json.substring(runStart, pos - 1);
+          }
+          return sb.append(json, runStart, pos - 1).toString();
+        } else if (c == '\\') {
+          if (sb == null) {
+            sb = new StringBuilder();
+          }
+          sb.append(json, runStart, pos - 1);
+          sb.append(unescape(next()));
+          runStart = pos;
+        }
+      }
+    }
+
+    /**
+     * Returns the next value, or {@code null} for a JSON {@code null}.
+     */
+    JsonSplittable value() {
+      switch (peek()) {
         case '{':
-          return new JsonSplittable(new JSONObject(payload));
         case '[':
-          return new JsonSplittable(new JSONArray(payload));
+          int start = pos;
+          skipObjectOrArray();
+          return new JsonSplittable(json, start, pos);
         case '"':
-          return new JsonSplittable(new JSONArray("[" + payload + "]").getString(0));
-        case '-':
-        case '0':
-        case '1':
-        case '2':
-        case '3':
-        case '4':
-        case '5':
-        case '6':
-        case '7':
-        case '8':
-        case '9':
-          return new JsonSplittable(Double.parseDouble(payload));
+          return new JsonSplittable(string());
         case 't':
+          literal("true");
+          return new JsonSplittable(true);
         case 'f':
-          return new JsonSplittable(Boolean.parseBoolean(payload));
+          literal("false");
+          return new JsonSplittable(false);
         case 'n':
+          literal("null");
           return null;
         default:
-          throw new RuntimeException("Could not parse payload: payload[0] = " + payload.charAt(0));
+          return new JsonSplittable(number());
+      }
+    }
+
+    private RuntimeException error(String message) {
+      return new RuntimeException("Could not parse payload: " + message + " at position " + pos);
+    }
+
+    private void literal(String literal) {
+      if (!json.startsWith(literal, pos)) {
+        throw error("Expecting " + literal);
+      }
+      pos += literal.length();
+    }
+
+    private char next() {
+      if (pos == json.length()) {
+        throw error("Unexpected end of payload");
+      }
+      return json.charAt(pos++);
+    }
+
+    private double number() {
+      int start = pos;
+      while (pos < json.length() && "+-0123456789.eE".indexOf(json.charAt(pos)) != -1) {
+        pos++;
+      }
+      try {
+        return Double.parseDouble(json.substring(start, pos));
+      } catch (NumberFormatException e) {
+        pos = start;
+        throw error("Expecting a value");
+      }
+    }
+
+    /**
+     * Advances past the object or array at the current position, checking only
+     * that its brackets are balanced.
+     */
+    private void skipObjectOrArray() {
+      int depth = 0;
+      do {
+        char c = next();
+        if (c == '"') {
+          skipString();
+        } else if (c == '{' || c == '[') {
+          depth++;
+        } else if (c == '}' || c == ']') {
+          depth--;
+        }
+      } while (depth > 0);
+    }
+
+    /**
+     * Advances past a string whose opening quote has already been read.
+     */
+    private void skipString() {
+      char c;
+      while ((c = next()) != '"') {
+        if (c == '\\') {
+          next();
+        }
+      }
+    }
+
+    private void skipWhitespace() {
+      while (pos < json.length() && Character.isWhitespace(json.charAt(pos))) {
+        pos++;
+      }
+    }
+
+    private char unescape(char c) {
+      switch (c) {
+        case 'b':
+          return '\b';
+        case 'f':
+          return '\f';
+        case 'n':
+          return '\n';
+        case 'r':
+          return '\r';
+        case 't':
+          return '\t';
+        case 'u':
+          if (pos + 4 > json.length()) {
+            throw error("Unterminated escape sequence");
+          }
+          try {
+            char unicode = (char) Integer.parseInt(json.substring(pos, pos + 4), 16);
+            pos += 4;
+            return unicode;
+          } catch (NumberFormatException e) {
+            throw error("Illegal escape sequence");
+          }
+        default:
+          // Handles \", \\, and \/
+          return c;
       }
-    } catch (JSONException e) {
-      throw new RuntimeException("Could not parse payload", e);
     }
   }
 
+  public static JsonSplittable create() {
+    JsonSplittable toReturn = new JsonSplittable('{');
+    toReturn.obj = new LinkedHashMap<String, JsonSplittable>();
+    return toReturn;
+  }
+
+  public static Splittable create(String payload) {
+    Parser parser = new Parser(payload, 0);
+    JsonSplittable toReturn = parser.value();
+    parser.end();
+    return toReturn;
+  }
+
   public static Splittable createIndexed() {
-    return new JsonSplittable(new JSONArray());
+    JsonSplittable toReturn = new JsonSplittable('[');
+    toReturn.array = new ArrayList<JsonSplittable>();
+    return toReturn;
   }
 
   public static Splittable createNull() {
-    return new JsonSplittable();
+    JsonSplittable toReturn = new JsonSplittable((char) 0);
+    toReturn.isNull = true;
+    return toReturn;
   }
 
   /**
-   * Private equivalent of org.json.JSONObject.getNames(JSONObject) since that
-   * method is not available in Android 2.2. Used to represent a null value.
+   * Formats numbers inside objects and arrays the same way as org.json, so
+   * that integral values are written without a fractional part.
    */
-  private static String[] getNames(JSONObject json) {
-    int length = json.length();
-    if (length == 0) {
-      return null;
-    }
-    String[] names = new String[length];
-    Iterator<?> i = json.keys();
-    int j = 0;
-    while (i.hasNext()) {
-      names[j++] = (String) i.next();
+  private static String numberToString(double value) {
+    String s = String.valueOf(value);
+    if (s.indexOf('.') > 0 && s.indexOf('E') < 0) {
+      int end = s.length();
+      while (s.charAt(end - 1) == '0') {
+        end--;
+      }
+      if (s.charAt(end - 1) == '.') {
+        end--;
+      }
+      s = s.substring(0, end);
     }
-    return names;
+    return s;
   }
 
-  private JSONArray array;
+  /**
+   * The members of an object or array, {@code null} until parsed. JSON nulls
+   * are stored as {@code null} elements.
+   */
+  private List<JsonSplittable> array;
+  private Map<String, JsonSplittable> obj;
+
   private Boolean bool;
   /**
    * Used to represent a null value.
    */
   private boolean isNull;
+  /**
+   * <code>'{'</code> for objects, <code>'['</code> for arrays, and zero for
+   * everything else.
+   */
+  private final char kind;
   private Double number;
-  private JSONObject obj;
   private String string;
-  private final Map<String, Object> reified = new HashMap<String, Object>();
+  private Map<String, Object> reified;
 
   /**
-   * Constructor for a null value.
+   * The payload containing an object or array that has not been parsed yet,
+   * and the bounds of the object or array within it. Cleared once parsed.
    */
-  private JsonSplittable() {
-    isNull = true;
-  }
+  private volatile String json;
+  private int jsonEnd;
+  private int jsonStart;
 
   private JsonSplittable(boolean value) {
+    this.kind = 0;
     this.bool = value;
   }
 
-  private JsonSplittable(double value) {
-    this.number = value;
+  private JsonSplittable(char kind) {
+    this.kind = kind;
   }
 
-  private JsonSplittable(JSONArray array) {
-    this.array = array;
-  }
-
-  private JsonSplittable(JSONObject obj) {
-    this.obj = obj;
+  private JsonSplittable(double value) {
+    this.kind = 0;
+    this.number = value;
   }
 
   private JsonSplittable(String string) {
-    this.array = null;
-    this.obj = null;
+    this.kind = 0;
     this.string = string;
   }
 
+  private JsonSplittable(String json, int start, int end) {
+    this.kind = json.charAt(start);
+    this.json = json;
+    this.jsonStart = start;
+    this.jsonEnd = end;
+  }
+
   public boolean asBoolean() {
     return bool;
   }
@@ -149,18 +335,21 @@ public class JsonSplittable implements Splittable, HasSplittable {
   }
 
   public void assign(Splittable parent, int index) {
-    try {
-      ((JsonSplittable) parent).array.put(index, value());
-    } catch (JSONException e) {
-      throw new RuntimeException(e);
+    List<JsonSplittable> parentArray = ((JsonSplittable) parent).array();
+    while (parentArray.size() <= index) {
+      parentArray.add(null);
     }
+    parentArray.set(index, value());
   }
 
   public void assign(Splittable parent, String propertyName) {
-    try {
-      ((JsonSplittable) parent).obj.put(propertyName, value());
-    } catch (JSONException e) {
-      throw new RuntimeException(e);
+    Map<String, JsonSplittable> parentObj = ((JsonSplittable) parent).obj();
+    JsonSplittable value = value();
+    if (value == null) {
+      // Matches org.json, which removes properties set to null
+      parentObj.remove(propertyName);
+    } else {
+      parentObj.put(propertyName, value);
     }
   }
 
@@ -173,54 +362,44 @@ public class JsonSplittable implements Splittable, HasSplittable {
   }
 
   public Splittable get(int index) {
-    try {
-      return makeSplittable(array.get(index));
-    } catch (JSONException e) {
-      throw new RuntimeException(e);
-    }
+    return array().get(index);
   }
 
   public Splittable get(String key) {
-    try {
-      return makeSplittable(obj.get(key));
-    } catch (JSONException e) {
-      throw new RuntimeException(key, e);
+    Map<String, JsonSplittable> members = obj();
+    if (!members.containsKey(key)) {
+      throw new RuntimeException(key);
     }
+    return members.get(key);
   }
 
   public String getPayload() {
     if (isNull) {
       return "null";
     }
-    if (obj != null) {
-      return obj.toString();
-    }
-    if (array != null) {
-      return array.toString();
-    }
-    if (string != null) {
-      return StringQuoter.quote(string);
-    }
     if (number != null) {
       return String.valueOf(number);
     }
-    if (bool != null) {
-      return String.valueOf(bool);
+    String unparsed = json;
+    if (unparsed != null) {
+      return unparsed.substring(jsonStart, jsonEnd);
     }
-    throw new RuntimeException("No data in this JsonSplittable");
+    StringBuilder sb = new StringBuilder();
+    appendPayload(sb);
+    return sb.toString();
   }
 
   public List<String> getPropertyKeys() {
-    String[] names = getNames(obj);
-    if (names == null) {
+    Map<String, JsonSplittable> members = obj();
+    if (members.isEmpty()) {
       return Collections.emptyList();
     } else {
-      return Collections.unmodifiableList(Arrays.asList(names));
+      return Collections.unmodifiableList(new ArrayList<String>(members.keySet()));
     }
   }
 
   public Object getReified(String key) {
-    return reified.get(key);
+    return reified == null ? null : reified.get(key);
   }
 
   public Splittable getSplittable() {
@@ -232,20 +411,21 @@ public class JsonSplittable implements Splittable, HasSplittable {
   }
 
   public boolean isIndexed() {
-    return array != null;
+    return kind == '[';
   }
 
   public boolean isKeyed() {
-    return obj != null;
+    return kind == '{';
   }
 
   public boolean isNull(int index) {
-    return array.isNull(index);
+    List<JsonSplittable> elements = array();
+    return index >= elements.size() || elements.get(index) == null;
   }
 
   public boolean isNull(String key) {
     // Treat undefined and null as the same
-    return !obj.has(key) || obj.isNull(key);
+    return obj().get(key) == null;
   }
 
   public boolean isNumber() {
@@ -253,7 +433,7 @@ public class JsonSplittable implements Splittable, HasSplittable {
   }
 
   public boolean isReified(String key) {
-    return reified.containsKey(key);
+    return reified != null && reified.containsKey(key);
   }
 
   public boolean isString() {
@@ -261,79 +441,128 @@ public class JsonSplittable implements Splittable, HasSplittable {
   }
 
   public boolean isUndefined(String key) {
-    return !obj.has(key);
+    return !obj().containsKey(key);
   }
 
   public void setReified(String key, Object object) {
+    if (reified == null) {
+      reified = new HashMap<String, Object>();
+    }
     reified.put(key, object);
   }
 
   public void setSize(int size) {
-    // This is terrible, but there's no API support for resizing or splicing
-    JSONArray newArray = new JSONArray();
-    for (int i = 0; i < size; i++) {
-      try {
-        newArray.put(i, array.get(i));
-      } catch (JSONException e) {
-        throw new RuntimeException(e);
+    List<JsonSplittable> elements = array();
+    if (size < elements.size()) {
+      elements.subList(size, elements.size()).clear();
+    } else {
+      while (elements.size() < size) {
+        elements.add(null);
       }
     }
-    array = newArray;
   }
 
   public int size() {
-    return array.length();
-  }
-
-  private synchronized JsonSplittable makeSplittable(Object object) {
-    if (JSONObject.NULL.equals(object)) {
-      return null;
-    }
-    /*
-     * Maintain a 1:1 mapping between object instances and JsonSplittables.
-     * Doing this with a WeakHashMap doesn't work on Android, since its org.json
-     * arrays appear to have value-based equality.
-     */
-    JsonSplittable seen = (JsonSplittable) WeakMapping.get(object, JsonSplittable.class.getName());
-    if (seen == null) {
-      if (object instanceof JSONObject) {
-        seen = new JsonSplittable((JSONObject) object);
-        WeakMapping.setWeak(object, JsonSplittable.class.getName(), seen);
-      } else if (object instanceof JSONArray) {
-        seen = new JsonSplittable((JSONArray) object);
-        WeakMapping.setWeak(object, JsonSplittable.class.getName(), seen);
-      } else if (object instanceof String) {
-        seen = new JsonSplittable(object.toString());
-      } else if (object instanceof Number) {
-        seen = new JsonSplittable(((Number) object).doubleValue());
-      } else if (object instanceof Boolean) {
-        seen = new JsonSplittable((Boolean) object);
-      } else {
-        throw new RuntimeException("Unhandled type " + object.getClass());
+    return array().size();
+  }
+
+  private void appendPayload(StringBuilder sb) {
+    String unparsed = json;
+    if (unparsed != null) {
+      sb.append(unparsed, jsonStart, jsonEnd);
+    } else if (obj != null) {
+      sb.append('{');
+      boolean needsComma = false;
+      for (Map.Entry<String, JsonSplittable> entry : obj.entrySet()) {
+        if (needsComma) {
+          sb.append(',');
+        } else {
+          needsComma = true;
+        }
+        sb.append(StringQuoter.quote(entry.getKey())).append(':');
+        appendPayload(sb, entry.getValue());
+      }
+      sb.append('}');
+    } else if (array != null) {
+      sb.append('[');
+      for (int i = 0, j = array.size(); i < j; i++) {
+        if (i > 0) {
+          sb.append(',');
+        }
+        appendPayload(sb, array.get(i));
       }
+      sb.append(']');
+    } else if (string != null) {
+      sb.append(StringQuoter.quote(string));
+    } else if (number != null) {
+      sb.append(numberToString(number));
+    } else if (bool != null) {
+      sb.append(bool.booleanValue());
+    } else if (isNull) {
+      sb.append("null");
+    } else {
+      throw new RuntimeException("No data in this JsonSplittable");
     }
-    return seen;
   }
 
-  private Object value() {
-    if (isNull) {
-      return null;
-    }
-    if (obj != null) {
-      return obj;
+  private void appendPayload(StringBuilder sb, JsonSplittable member) {
+    if (member == null) {
+      sb.append("null");
+    } else {
+      member.appendPayload(sb);
     }
-    if (array != null) {
-      return array;
+  }
+
+  private List<JsonSplittable> array() {
+    if (json != null) {
+      parse();
     }
-    if (string != null) {
-      return string;
+    return array;
+  }
+
+  private Map<String, JsonSplittable> obj() {
+    if (json != null) {
+      parse();
     }
-    if (number != null) {
-      return number;
+    return obj;
+  }
+
+  /**
+   * Splits an unparsed object or array into its members.
+   */
+  private synchronized void parse() {
+    String unparsed = json;
+    if (unparsed == null) {
+      return;
     }
-    if (bool != null) {
-      return bool;
+    Parser parser = new Parser(unparsed, jsonStart);
+    if (kind == '{') {
+      Map<String, JsonSplittable> members = new LinkedHashMap<String, JsonSplittable>();
+      parser.expect('{');
+      if (!parser.consume('}')) {
+        do {
+          String key = parser.string();
+          parser.expect(':');
+          members.put(key, parser.value());
+        } while (parser.consume(','));
+        parser.expect('}');
+      }
+      obj = members;
+    } else {
+      List<JsonSplittable> elements = new ArrayList<JsonSplittable>();
+      parser.expect('[');
+      if (!parser.consume(']')) {
+        do {
+          elements.add(parser.value());
+        } while (parser.consume(','));
+        parser.expect(']');
+      }
+      array = elements;
     }
-    throw new RuntimeException("No data");
+    json = null;
+  }
+
+  private JsonSplittable value() {
+    return isNull ? null : this;
   }
 }
@@ -24,6 +24,7 @@ import com.google.web.bindery.autobean.shared.impl.AbstractAutoBean;
 import com.google.web.bindery.autobean.vm.Configuration;
 
 import java.lang.ref.WeakReference;
+import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
@@ -45,6 +46,34 @@ public class ProxyAutoBean<T> extends AbstractAutoBean<T> {
     final List<Method> getters = new ArrayList<Method>();
     final List<String> getterNames = new ArrayList<String>();
     final List<PropertyType> propertyType = new ArrayList<PropertyType>();
+    private Constructor<?> peerConstructor;
+    private boolean peerGenerated;
+    private Constructor<?> shimConstructor;
+    private boolean shimGenerated;
+
+    /**
+     * Returns the constructor of the generated simple peer, or
+     * <code>null</code> if a Proxy must be used.
+     */
+    synchronized Constructor<?> getPeerConstructor(Class<?> beanType) {
+      if (!peerGenerated) {
+        peerConstructor = generate(GENERATE_PEER, beanType);
+        peerGenerated = true;
+      }
+      return peerConstructor;
+    }
+
+    /**
+     * Returns the constructor of the generated shim, or <code>null</code> if a
+     * Proxy must be used.
+     */
+    synchronized Constructor<?> getShimConstructor(Class<?> beanType) {
+      if (!shimGenerated) {
+        shimConstructor = generate(GENERATE_SHIM, beanType);
+        shimGenerated = true;
+      }
+      return shimConstructor;
+    }
   }
 
   private enum PropertyType {
@@ -53,6 +82,33 @@ public class ProxyAutoBean<T> extends AbstractAutoBean<T> {
 
   private static final Map<Class<?>, Data> cache = new WeakHashMap<Class<?>, Data>();
 
+  /**
+   * The methods of BeanClassGenerator, which is looked up by name so that
+   * client code, which cannot define classes, does not depend on ASM. These are
+   * <code>null</code> if it is unavailable.
+   */
+  private static final Method GENERATE_PEER;
+  private static final Method GENERATE_SHIM;
+
+  static {
+    Method peer = null;
+    Method shim = null;
+    try {
+      Class<?> generator =
+          Class.forName("com.google.web.bindery.autobean.vm.impl.BeanClassGenerator");
+      peer = generator.getMethod("peerConstructor", Class.class);
+      shim = generator.getMethod("shimConstructor", Class.class);
+    } catch (ClassNotFoundException e) {
+      // Use proxies
+    } catch (LinkageError e) {
+      // Use proxies
+    } catch (NoSuchMethodException e) {
+      // Use proxies
+    }
+    GENERATE_PEER = peer;
+    GENERATE_SHIM = shim;
+  }
+
   /**
    * Utility method to crete a new {@link Proxy} instance.
    * 
@@ -114,6 +170,31 @@ public class ProxyAutoBean<T> extends AbstractAutoBean<T> {
     return toReturn;
   }
 
+  private static Constructor<?> generate(Method generator, Class<?> beanType) {
+    if (generator == null) {
+      return null;
+    }
+    try {
+      return (Constructor<?>) generator.invoke(null, beanType);
+    } catch (IllegalAccessException e) {
+      return null;
+    } catch (InvocationTargetException e) {
+      return null;
+    }
+  }
+
+  private static Object newInstance(Constructor<?> constructor, Object... args) {
+    try {
+      return constructor.newInstance(args);
+    } catch (InstantiationException e) {
+      throw new RuntimeException(e);
+    } catch (IllegalAccessException e) {
+      throw new RuntimeException(e);
+    } catch (InvocationTargetException e) {
+      throw new RuntimeException(e.getCause());
+    }
+  }
+
   private final Class<T> beanType;
   private final Configuration configuration;
   private final Data data;
@@ -235,7 +316,12 @@ public class ProxyAutoBean<T> extends AbstractAutoBean<T> {
   @Override
   protected T getWrapped() {
     if (wrapped == null && isUsingSimplePeer()) {
-      wrapped = (T) ProxyAutoBean.makeProxy(beanType, new SimpleBeanHandler<T>(this));
+      Constructor<?> peer = data.getPeerConstructor(beanType);
+      if (peer == null) {
+        wrapped = (T) ProxyAutoBean.makeProxy(beanType, new SimpleBeanHandler<T>(this));
+      } else {
+        wrapped = beanType.cast(newInstance(peer, this));
+      }
     }
     return super.getWrapped();
   }
@@ -338,7 +424,13 @@ public class ProxyAutoBean<T> extends AbstractAutoBean<T> {
   }
 
   private T createShim() {
-    T toReturn = ProxyAutoBean.makeProxy(beanType, new ShimHandler<T>(this, getWrapped()));
+    Constructor<?> shim = data.getShimConstructor(beanType);
+    T toReturn;
+    if (shim == null) {
+      toReturn = ProxyAutoBean.makeProxy(beanType, new ShimHandler<T>(this, getWrapped()));
+    } else {
+      toReturn = beanType.cast(newInstance(shim, this, getWrapped()));
+    }
     WeakMapping.setWeak(toReturn, AutoBean.class.getName(), this);
     return toReturn;
   }
@@ -68,35 +68,52 @@ class ShimHandler<T> implements InvocationHandler {
 
   public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
     method.setAccessible(true);
-    Object toReturn;
     String name = method.getName();
-    method.setAccessible(true);
     try {
       if (BeanMethod.OBJECT.matches(method)) {
         return method.invoke(this, args);
       } else if (BeanMethod.GET.matches(method)) {
-        toReturn = method.invoke(bean.getWrapped(), args);
-        toReturn = bean.get(name, toReturn);
+        return afterGet(name, method.invoke(bean.getWrapped(), args), method.getReturnType());
       } else if (BeanMethod.SET.matches(method) || BeanMethod.SET_BUILDER.matches(method)) {
-        toReturn = method.invoke(bean.getWrapped(), args);
-        bean.set(name, args[0]);
+        return afterSet(name, args[0], method.invoke(bean.getWrapped(), args), method
+            .getReturnType());
       } else {
         // XXX How should freezing and calls work together?
-        toReturn = method.invoke(bean.getWrapped(), args);
-        bean.call(name, toReturn, args);
-      }
-      Class<?> intf = method.getReturnType();
-      if (!Object.class.equals(intf)) {
-        // XXX Need to deal with resolving generic T return types
-        toReturn = maybeWrap(intf, toReturn);
-      }
-      if (interceptor != null) {
-        toReturn = interceptor.invoke(null, bean, toReturn);
+        return afterCall(name, method.invoke(bean.getWrapped(), args), args, method
+            .getReturnType());
       }
     } catch (InvocationTargetException e) {
       throw e.getCause();
     }
-    return toReturn;
+  }
+
+  /**
+   * Finishes a call to a domain method once the wrapped object has returned.
+   */
+  Object afterCall(String method, Object returned, Object[] args, Class<?> returnType)
+      throws Throwable {
+    bean.call(method, returned, args);
+    return finish(returnType, returned);
+  }
+
+  /**
+   * Finishes a call to a getter once the wrapped object has returned.
+   */
+  Object afterGet(String method, Object returned, Class<?> returnType) throws Throwable {
+    return finish(returnType, bean.get(method, returned));
+  }
+
+  /**
+   * Finishes a call to a setter once the wrapped object has returned.
+   */
+  Object afterSet(String method, Object value, Object returned, Class<?> returnType)
+      throws Throwable {
+    bean.set(method, value);
+    return finish(returnType, returned);
+  }
+
+  ProxyAutoBean<T> getBean() {
+    return bean;
   }
 
   @Override
@@ -104,6 +121,21 @@ class ShimHandler<T> implements InvocationHandler {
     return bean.getWrapped().toString();
   }
 
+  private Object finish(Class<?> returnType, Object toReturn) throws Throwable {
+    if (!Object.class.equals(returnType)) {
+      // XXX Need to deal with resolving generic T return types
+      toReturn = maybeWrap(returnType, toReturn);
+    }
+    if (interceptor != null) {
+      try {
+        toReturn = interceptor.invoke(null, bean, toReturn);
+      } catch (InvocationTargetException e) {
+        throw e.getCause();
+      }
+    }
+    return toReturn;
+  }
+
   private Object maybeWrap(Class<?> intf, Object toReturn) {
     if (toReturn == null) {
       return null;
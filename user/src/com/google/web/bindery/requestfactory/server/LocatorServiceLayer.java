@@ -27,6 +27,13 @@ import com.google.web.bindery.requestfactory.shared.ServiceName;
 
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Adds support to the ServiceLayer chain for using {@link Locator} and
@@ -90,6 +97,74 @@ final class LocatorServiceLayer extends ServiceLayerDecorator {
     return doLoadDomainObject(clazz, domainId);
   }
 
+  /**
+   * Objects of a type whose {@link Locator} overrides
+   * {@link Locator#findAll(Class, List)} are loaded with a single call to that
+   * method per type. All other objects are passed on to the next layer, which
+   * loads them one at a time through {@code getTop().loadDomainObject()}.
+   */
+  @Override
+  public List<Object> loadDomainObjects(List<Class<?>> classes, List<Object> domainIds) {
+    if (classes.size() != domainIds.size()) {
+      die(null, "Size mismatch in paramaters. classes.size() = %d domainIds.size=%d", classes
+          .size(), domainIds.size());
+    }
+
+    // Group the requests by type, remembering where each one came from
+    Map<Class<?>, List<Integer>> indexesByClass = new LinkedHashMap<Class<?>, List<Integer>>();
+    Set<Class<?>> unbatchedClasses = new HashSet<Class<?>>();
+    List<Integer> unbatchedIndexes = new ArrayList<Integer>();
+    for (int i = 0, j = classes.size(); i < j; i++) {
+      Class<?> clazz = classes.get(i);
+      List<Integer> indexes = indexesByClass.get(clazz);
+      if (indexes == null) {
+        if (unbatchedClasses.contains(clazz)) {
+          unbatchedIndexes.add(i);
+          continue;
+        }
+        if (!hasBatchFind(clazz)) {
+          unbatchedClasses.add(clazz);
+          unbatchedIndexes.add(i);
+          continue;
+        }
+        indexes = new ArrayList<Integer>();
+        indexesByClass.put(clazz, indexes);
+      }
+      indexes.add(i);
+    }
+
+    Object[] toReturn = new Object[classes.size()];
+    for (Map.Entry<Class<?>, List<Integer>> entry : indexesByClass.entrySet()) {
+      List<Integer> indexes = entry.getValue();
+      List<Object> ids = new ArrayList<Object>(indexes.size());
+      for (int index : indexes) {
+        ids.add(domainIds.get(index));
+      }
+      List<?> found = doLoadDomainObjects(entry.getKey(), ids);
+      if (found == null || found.size() != indexes.size()) {
+        die(null, "Expected %d objects of type %s to be loaded, got %s", indexes.size(), entry
+            .getKey().getCanonicalName(), found == null ? null : found.size());
+      }
+      for (int i = 0, j = indexes.size(); i < j; i++) {
+        toReturn[indexes.get(i)] = found.get(i);
+      }
+    }
+
+    if (!unbatchedIndexes.isEmpty()) {
+      List<Class<?>> unbatchedClassList = new ArrayList<Class<?>>(unbatchedIndexes.size());
+      List<Object> unbatchedIds = new ArrayList<Object>(unbatchedIndexes.size());
+      for (int index : unbatchedIndexes) {
+        unbatchedClassList.add(classes.get(index));
+        unbatchedIds.add(domainIds.get(index));
+      }
+      List<Object> found = super.loadDomainObjects(unbatchedClassList, unbatchedIds);
+      for (int i = 0, j = unbatchedIndexes.size(); i < j; i++) {
+        toReturn[unbatchedIndexes.get(i)] = found.get(i);
+      }
+    }
+    return Arrays.asList(toReturn);
+  }
+
   /**
    * Returns true if the context method returns a {@link Request} and the domain
    * method is non-static.
@@ -198,6 +273,17 @@ final class LocatorServiceLayer extends ServiceLayerDecorator {
     return l.find(clazz, id);
   }
 
+  private <T, I> List<T> doLoadDomainObjects(Class<T> clazz, List<Object> domainIds) {
+    @SuppressWarnings("unchecked")
+    Locator<T, I> l = (Locator<T, I>) getLocator(clazz);
+    Class<I> idType = l.getIdType();
+    List<I> ids = new ArrayList<I>(domainIds.size());
+    for (Object domainId : domainIds) {
+      ids.add(idType.cast(domainId));
+    }
+    return l.findAll(clazz, ids);
+  }
+
   @SuppressWarnings("unchecked")
   private <T, I> Locator<T, I> getLocator(Class<T> domainType) {
     Class<? extends Locator<?, ?>> locatorType = getTop().resolveLocator(domainType);
@@ -207,6 +293,23 @@ final class LocatorServiceLayer extends ServiceLayerDecorator {
     return (Locator<T, I>) getTop().createLocator(locatorType);
   }
 
+  /**
+   * Returns {@code true} if {@code domainType} has a {@link Locator} that
+   * overrides {@link Locator#findAll(Class, List)}.
+   */
+  private boolean hasBatchFind(Class<?> domainType) {
+    Locator<?, ?> l = getLocator(domainType);
+    if (l == null) {
+      return false;
+    }
+    try {
+      return !Locator.class.equals(l.getClass().getMethod("findAll", Class.class, List.class)
+          .getDeclaringClass());
+    } catch (NoSuchMethodException e) {
+      return die(e, "Could not find the findAll method of %s", l.getClass().getCanonicalName());
+    }
+  }
+
   private <T> T newInstance(Class<T> clazz, Class<? super T> base) {
     Throwable ex;
     try {
@@ -191,6 +191,14 @@ final class ReflectiveServiceLayer extends ServiceLayerDecorator {
     return die(ex, "Could not invoke method %s", domainMethod.getName());
   }
 
+  /**
+   * This implementation assumes that any domain method may have side-effects.
+   */
+  @Override
+  public boolean isConcurrentInvocationAllowed(Method contextMethod, Method domainMethod) {
+    return false;
+  }
+
   /**
    * This implementation attempts to re-load the object from the backing store.
    */
@@ -31,6 +31,7 @@ import com.google.gwt.dev.asm.commons.Method;
 import com.google.gwt.dev.util.Name;
 import com.google.gwt.dev.util.Name.SourceOrBinaryName;
 import com.google.gwt.dev.util.Util;
+import com.google.web.bindery.autobean.vm.impl.BeanClassGenerator;
 import com.google.web.bindery.event.shared.SimpleEventBus;
 import com.google.web.bindery.requestfactory.apt.RfValidator;
 import com.google.web.bindery.requestfactory.apt.ValidationTool;
@@ -761,9 +762,9 @@ public class RequestFactoryJarExtractor {
    * Server public API classes and interfaces.
    */
   private static final Class<?>[] SERVER_CLASSES = {
-      DefaultExceptionHandler.class, ExceptionHandler.class, Logging.class, LoggingRequest.class,
-      RequestFactoryServlet.class, ServiceLayer.class, ServiceLayerDecorator.class,
-      SimpleRequestProcessor.class};
+      BeanClassGenerator.class, DefaultExceptionHandler.class, ExceptionHandler.class,
+      Logging.class, LoggingRequest.class, RequestFactoryServlet.class, ServiceLayer.class,
+      ServiceLayerDecorator.class, SimpleRequestProcessor.class};
 
   /**
    * Shared public API classes and interfaces.
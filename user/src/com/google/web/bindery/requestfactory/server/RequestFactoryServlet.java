@@ -20,6 +20,7 @@ import com.google.web.bindery.requestfactory.shared.RequestFactory;
 
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.util.concurrent.Executor;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -79,6 +80,11 @@ public class RequestFactoryServlet extends HttpServlet {
     return perThreadContext.get();
   }
 
+  /**
+   * Whether {@link #getInvocationExecutor()} has been passed to the processor.
+   */
+  private volatile boolean invocationExecutorInstalled;
+
   private final SimpleRequestProcessor processor;
 
   /**
@@ -123,6 +129,7 @@ public class RequestFactoryServlet extends HttpServlet {
     // No new code should be placed outside of this try block.
     try {
       ensureConfig();
+      ensureInvocationExecutor();
       String jsonRequestString =
           RPCServletUtils.readContent(request, JSON_CONTENT_TYPE, JSON_CHARSET);
       if (DUMP_PAYLOAD) {
@@ -151,10 +158,66 @@ public class RequestFactoryServlet extends HttpServlet {
     }
   }
 
+  /**
+   * Returns the executor used to run independent invocations in a request
+   * concurrently, or {@code null} to run them one after another. Invocations
+   * run concurrently see the same thread-local request and response. Called
+   * once, when the first request is processed. The default implementation
+   * returns {@code null}.
+   * 
+   * @see ServiceLayer#isConcurrentInvocationAllowed(java.lang.reflect.Method,
+   *      java.lang.reflect.Method)
+   */
+  protected Executor getInvocationExecutor() {
+    return null;
+  }
+
   private void ensureConfig() {
     String symbolMapsDirectory = getServletConfig().getInitParameter("symbolMapsDirectory");
     if (symbolMapsDirectory != null) {
       Logging.setSymbolMapsDirectory(symbolMapsDirectory);
     }
   }
+
+  /**
+   * Passes the executor returned by {@link #getInvocationExecutor()}, if any,
+   * to the request processor the first time a request is processed, so that
+   * subclasses need not call {@code super.init()}.
+   */
+  private void ensureInvocationExecutor() {
+    if (invocationExecutorInstalled) {
+      return;
+    }
+    synchronized (this) {
+      if (invocationExecutorInstalled) {
+        return;
+      }
+      final Executor executor = getInvocationExecutor();
+      if (executor != null) {
+        processor.setInvocationExecutor(new Executor() {
+          public void execute(final Runnable command) {
+            final ServletContext context = perThreadContext.get();
+            final HttpServletRequest request = perThreadRequest.get();
+            final HttpServletResponse response = perThreadResponse.get();
+            executor.execute(new Runnable() {
+              public void run() {
+                perThreadContext.set(context);
+                perThreadRequest.set(request);
+                perThreadResponse.set(response);
+                try {
+                  command.run();
+                } finally {
+                  // Pool threads outlive the request.
+                  perThreadContext.remove();
+                  perThreadRequest.remove();
+                  perThreadResponse.remove();
+                }
+              }
+            });
+          }
+        });
+      }
+      invocationExecutorInstalled = true;
+    }
+  }
 }
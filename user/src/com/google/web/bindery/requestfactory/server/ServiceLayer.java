@@ -139,6 +139,17 @@ public abstract class ServiceLayer {
    */
   public abstract <T extends ServiceLocator> T createServiceLocator(Class<T> clazz);
 
+  /**
+   * Returns a snapshot of the statistics of the cache kept for the idempotent
+   * methods of this service layer chain, or {@code null} if caching is
+   * disabled. Decorators may call this method on {@code getTop()}.
+   * 
+   * @return a {@link ServiceLayerCacheStats} instance, or {@code null}
+   */
+  public ServiceLayerCacheStats getCacheStats() {
+    return top instanceof ServiceLayerCache ? ((ServiceLayerCache) top).getStats() : null;
+  }
+
   /**
    * Returns the ClassLoader that should be used when attempting to access
    * domain classes or resources.
@@ -231,6 +242,22 @@ public abstract class ServiceLayer {
    */
   public abstract Object invoke(Method domainMethod, Object... args);
 
+  /**
+   * Returns {@code true} if an invocation of the given method does not modify
+   * any state that other invocations in the same request depend on, so that it
+   * may be executed concurrently with adjacent invocations for which this
+   * method also returns {@code true}. Invocations are only executed
+   * concurrently if the {@link SimpleRequestProcessor} has been given an
+   * executor. The results are always returned to the client in the order in
+   * which the invocations were made.
+   * 
+   * @param contextMethod a RequestContext method declaration
+   * @param domainMethod the domain method that will be invoked
+   * @return {@code true} if the invocation may run concurrently with other
+   *         such invocations
+   */
+  public abstract boolean isConcurrentInvocationAllowed(Method contextMethod, Method domainMethod);
+
   /**
    * Returns {@code true} if the given domain object is still live (i.e. not
    * deleted) in the backing store.
@@ -257,8 +284,10 @@ public abstract class ServiceLayer {
    * allow more efficient access to the backing store by providing all objects
    * referenced in an incoming payload.
    * <p>
-   * The default implementation of this method will delegate to
-   * {@link #loadDomainObject(Class, Object)}.
+   * The default implementation of this method loads the objects of each type
+   * whose {@link Locator} overrides {@link Locator#findAll(Class, List)} with
+   * one call to that method, and will delegate to
+   * {@link #loadDomainObject(Class, Object)} for all other objects.
    * 
    * @param classes type type of each object to load
    * @param domainIds the ids previously returned from {@link #getId(Object)}
@@ -22,28 +22,54 @@ import com.google.web.bindery.requestfactory.shared.RequestContext;
 import com.google.web.bindery.requestfactory.shared.RequestFactory;
 import com.google.web.bindery.requestfactory.shared.ServiceLocator;
 
-import java.lang.ref.SoftReference;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Type;
-import java.util.Map;
+import java.util.Queue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A cache for idempotent methods in {@link ServiceLayer}. The caching is
  * separate from {@link ReflectiveServiceLayer} so that the cache can be applied
  * to any decorators injected by the user.
+ * <p>
+ * Each service layer chain has its own cache, since the decorators in the chain
+ * determine the cached values. The values are strongly held, so that they are
+ * not all discarded at once under memory pressure. Instead, the number of
+ * values cached for each method is limited, and the values that were added
+ * first are evicted first.
  */
 class ServiceLayerCache extends ServiceLayerDecorator {
 
+  /**
+   * The cached values of a single {@link ServiceLayer} method.
+   */
+  private static class MethodCache {
+    /**
+     * The cached keys, oldest first. May briefly contain keys that have already
+     * been evicted from {@link #values}.
+     */
+    final Queue<Object> insertionOrder = new ConcurrentLinkedQueue<Object>();
+    final ConcurrentMap<Object, Object> values = new ConcurrentHashMap<Object, Object>();
+  }
+
+  /**
+   * The system property that sets the maximum number of values cached for
+   * each method.
+   */
+  static final String MAX_SIZE_PROPERTY = "gwt.rf.ServiceLayerCache.maxSize";
+
+  static final int DEFAULT_MAX_SIZE = 10000;
+
   /**
    * ConcurrentHashMaps don't allow null keys or values, but sometimes we want
    * to cache a null value.
    */
   private static final Object NULL_MARKER = new Object();
 
-  private static SoftReference<Map<Method, Map<Object, Object>>> methodCache;
-
   private static final Method createLocator;
   private static final Method createServiceInstance;
   private static final Method getDomainClassLoader;
@@ -51,6 +77,7 @@ class ServiceLayerCache extends ServiceLayerDecorator {
   private static final Method getIdType;
   private static final Method getRequestReturnType;
   private static final Method getSetter;
+  private static final Method isConcurrentInvocationAllowed;
   private static final Method requiresServiceLocator;
   private static final Method resolveClass;
   private static final Method resolveClientType;
@@ -72,6 +99,8 @@ class ServiceLayerCache extends ServiceLayerDecorator {
     getIdType = getMethod("getIdType", Class.class);
     getRequestReturnType = getMethod("getRequestReturnType", Method.class);
     getSetter = getMethod("getSetter", Class.class, String.class);
+    isConcurrentInvocationAllowed =
+        getMethod("isConcurrentInvocationAllowed", Method.class, Method.class);
     requiresServiceLocator = getMethod("requiresServiceLocator", Method.class, Method.class);
     resolveClass = getMethod("resolveClass", String.class);
     resolveClientType = getMethod("resolveClientType", Class.class, Class.class, boolean.class);
@@ -86,15 +115,6 @@ class ServiceLayerCache extends ServiceLayerDecorator {
     resolveTypeToken = getMethod("resolveTypeToken", Class.class);
   }
 
-  private static Map<Method, Map<Object, Object>> getCache() {
-    Map<Method, Map<Object, Object>> toReturn = methodCache == null ? null : methodCache.get();
-    if (toReturn == null) {
-      toReturn = new ConcurrentHashMap<Method, Map<Object, Object>>();
-      methodCache = new SoftReference<Map<Method, Map<Object, Object>>>(toReturn);
-    }
-    return toReturn;
-  }
-
   private static Method getMethod(String name, Class<?>... argTypes) {
     try {
       return ServiceLayer.class.getMethod(name, argTypes);
@@ -105,7 +125,20 @@ class ServiceLayerCache extends ServiceLayerDecorator {
     }
   }
 
-  private final Map<Method, Map<Object, Object>> methodMap = getCache();
+  private final AtomicLong evictions = new AtomicLong();
+  private final AtomicLong hits = new AtomicLong();
+  private final int maxSize;
+  private final ConcurrentMap<Method, MethodCache> methodMap =
+      new ConcurrentHashMap<Method, MethodCache>();
+  private final AtomicLong misses = new AtomicLong();
+
+  ServiceLayerCache() {
+    this(Math.max(1, Integer.getInteger(MAX_SIZE_PROPERTY, DEFAULT_MAX_SIZE)));
+  }
+
+  ServiceLayerCache(int maxSize) {
+    this.maxSize = maxSize;
+  }
 
   @Override
   public <T extends Locator<?, ?>> T createLocator(Class<T> clazz) {
@@ -144,6 +177,12 @@ class ServiceLayerCache extends ServiceLayerDecorator {
         domainType, property);
   }
 
+  @Override
+  public boolean isConcurrentInvocationAllowed(Method contextMethod, Method domainMethod) {
+    return getOrCache(isConcurrentInvocationAllowed, new Pair<Method, Method>(contextMethod,
+        domainMethod), Boolean.class, contextMethod, domainMethod);
+  }
+
   @Override
   public boolean requiresServiceLocator(Method contextMethod, Method domainMethod) {
     return getOrCache(requiresServiceLocator,
@@ -216,22 +255,56 @@ class ServiceLayerCache extends ServiceLayerDecorator {
     return getOrCache(resolveTypeToken, domainClass, String.class, domainClass);
   }
 
+  /**
+   * Returns a snapshot of the statistics of this cache.
+   */
+  ServiceLayerCacheStats getStats() {
+    int size = 0;
+    for (MethodCache cache : methodMap.values()) {
+      size += cache.values.size();
+    }
+    return new ServiceLayerCacheStats(hits.get(), misses.get(), evictions.get(), size);
+  }
+
+  private void cache(MethodCache cache, Object key, Object value) {
+    if (cache.values.putIfAbsent(key, value) != null) {
+      return;
+    }
+    cache.insertionOrder.add(key);
+    while (cache.values.size() > maxSize) {
+      Object eldest = cache.insertionOrder.poll();
+      if (eldest == null) {
+        break;
+      }
+      if (cache.values.remove(eldest) != null) {
+        evictions.incrementAndGet();
+      }
+    }
+  }
+
   private <K, T> T getOrCache(Method method, K key, Class<T> valueType, Object... args) {
-    Map<Object, Object> map = methodMap.get(method);
-    if (map == null) {
-      map = new ConcurrentHashMap<Object, Object>();
-      methodMap.put(method, map);
+    MethodCache cache = methodMap.get(method);
+    if (cache == null) {
+      cache = new MethodCache();
+      MethodCache existing = methodMap.putIfAbsent(method, cache);
+      if (existing != null) {
+        cache = existing;
+      }
     }
-    Object raw = map.get(key);
+    Object raw = cache.values.get(key);
     if (raw == NULL_MARKER) {
+      hits.incrementAndGet();
       return null;
     }
     T toReturn = valueType.cast(raw);
-    if (toReturn == null) {
+    if (toReturn != null) {
+      hits.incrementAndGet();
+    } else {
+      misses.incrementAndGet();
       Throwable ex = null;
       try {
         toReturn = valueType.cast(method.invoke(getNext(), args));
-        map.put(key, toReturn == null ? NULL_MARKER : toReturn);
+        cache(cache, key, toReturn == null ? NULL_MARKER : toReturn);
       } catch (InvocationTargetException e) {
         // The next layer threw an exception
         Throwable cause = e.getCause();
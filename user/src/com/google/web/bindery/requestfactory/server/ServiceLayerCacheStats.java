@@ -0,0 +1,70 @@
+/*
+ * Copyright 2013 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.web.bindery.requestfactory.server;
+
+/**
+ * A snapshot of the statistics of the cache that a {@link ServiceLayer} keeps
+ * for its idempotent methods.
+ * 
+ * @see ServiceLayer#getCacheStats()
+ */
+public final class ServiceLayerCacheStats {
+  private final long evictionCount;
+  private final long hitCount;
+  private final long missCount;
+  private final int size;
+
+  ServiceLayerCacheStats(long hitCount, long missCount, long evictionCount, int size) {
+    this.evictionCount = evictionCount;
+    this.hitCount = hitCount;
+    this.missCount = missCount;
+    this.size = size;
+  }
+
+  /**
+   * Returns the number of values evicted from the cache because it was full.
+   */
+  public long getEvictionCount() {
+    return evictionCount;
+  }
+
+  /**
+   * Returns the number of calls answered from the cache.
+   */
+  public long getHitCount() {
+    return hitCount;
+  }
+
+  /**
+   * Returns the number of calls passed on to the next layer.
+   */
+  public long getMissCount() {
+    return missCount;
+  }
+
+  /**
+   * Returns the number of values cached for all methods.
+   */
+  public int getSize() {
+    return size;
+  }
+
+  @Override
+  public String toString() {
+    return "hits=" + hitCount + ", misses=" + missCount + ", evictions=" + evictionCount
+        + ", size=" + size;
+  }
+}
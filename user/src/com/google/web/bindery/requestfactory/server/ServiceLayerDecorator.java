@@ -111,6 +111,11 @@ public class ServiceLayerDecorator extends ServiceLayer {
     return getNext().invoke(domainMethod, args);
   }
 
+  @Override
+  public boolean isConcurrentInvocationAllowed(Method contextMethod, Method domainMethod) {
+    return getNext().isConcurrentInvocationAllowed(contextMethod, domainMethod);
+  }
+
   @Override
   public boolean isLive(Object domainObject) {
     return getNext().isLive(domainObject);
@@ -62,6 +62,9 @@ import java.util.Map;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
 
 import javax.validation.ConstraintViolation;
 
@@ -86,6 +89,30 @@ public class SimpleRequestProcessor {
   static class IdToEntityMap extends HashMap<SimpleProxyId<?>, AutoBean<? extends BaseProxy>> {
   }
 
+  /**
+   * The state of a single invocation while a request is being processed.
+   */
+  private static class PendingInvocation {
+    final InvocationMessage invocation;
+    Method contextMethod;
+    Method domainMethod;
+    Object[] args;
+    Object returnValue;
+    ReportableException failure;
+
+    PendingInvocation(InvocationMessage invocation) {
+      this.invocation = invocation;
+    }
+
+    void invoke(ServiceLayer service) {
+      try {
+        returnValue = service.invoke(domainMethod, args);
+      } catch (ReportableException e) {
+        failure = e;
+      }
+    }
+  }
+
   /**
    * Allows the creation of properly-configured AutoBeans without having to
    * create an AutoBeanFactory with the desired annotations.
@@ -116,6 +143,7 @@ public class SimpleRequestProcessor {
   }
 
   private ExceptionHandler exceptionHandler = new DefaultExceptionHandler();
+  private Executor invocationExecutor;
   private final ServiceLayer service;
 
   public SimpleRequestProcessor(ServiceLayer serviceLayer) {
@@ -146,6 +174,21 @@ public class SimpleRequestProcessor {
     this.exceptionHandler = exceptionHandler;
   }
 
+  /**
+   * Sets the executor used to run invocations concurrently. Only adjacent
+   * invocations for which
+   * {@link ServiceLayer#isConcurrentInvocationAllowed(Method, Method)} returns
+   * {@code true} are executed concurrently; all other invocations, and all
+   * decoding and encoding of values, happen on the thread calling
+   * {@link #process(String)}. By default no executor is set and all
+   * invocations are executed sequentially.
+   * 
+   * @param invocationExecutor an {@link Executor}, or {@code null}
+   */
+  public void setInvocationExecutor(Executor invocationExecutor) {
+    this.invocationExecutor = invocationExecutor;
+  }
+
   /**
    * Encode a list of objects into a self-contained message that can be used for
    * out-of-band communication.
@@ -423,6 +466,43 @@ public class SimpleRequestProcessor {
     return args;
   }
 
+  /**
+   * Invokes a run of invocations which may execute concurrently. The
+   * invocations are invoked inline if there is only one of them.
+   */
+  private void invokeConcurrently(List<PendingInvocation> run) {
+    if (run.size() == 1) {
+      run.get(0).invoke(service);
+      return;
+    }
+    List<FutureTask<Void>> tasks = new ArrayList<FutureTask<Void>>(run.size());
+    for (final PendingInvocation pending : run) {
+      FutureTask<Void> task = new FutureTask<Void>(new Runnable() {
+        public void run() {
+          pending.invoke(service);
+        }
+      }, null);
+      tasks.add(task);
+      invocationExecutor.execute(task);
+    }
+    try {
+      for (FutureTask<Void> task : tasks) {
+        task.get();
+      }
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new UnexpectedException(cause);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new UnexpectedException(e);
+    }
+  }
+
   private void processInvocationMessages(RequestState state, RequestMessage req,
       List<Splittable> results, List<Boolean> success, RequestState returnState) {
     List<InvocationMessage> invocations = req.getInvocations();
@@ -430,12 +510,13 @@ public class SimpleRequestProcessor {
       // No method invocations which can happen via RequestContext.fire()
       return;
     }
-    List<Method> contextMethods = new ArrayList<Method>(invocations.size());
-    List<Object> invocationResults = new ArrayList<Object>(invocations.size());
-    Map<Object, SortedSet<String>> allPropertyRefs = new HashMap<Object, SortedSet<String>>();
+    List<PendingInvocation> pendingInvocations =
+        new ArrayList<PendingInvocation>(invocations.size());
+    // Adjacent invocations which may be executed together on the executor
+    List<PendingInvocation> concurrentRun = new ArrayList<PendingInvocation>();
     for (InvocationMessage invocation : invocations) {
-      Object domainReturnValue;
-      boolean ok;
+      PendingInvocation pending = new PendingInvocation(invocation);
+      pendingInvocations.add(pending);
       try {
         // Find the Method
         String operation = invocation.getOperation();
@@ -444,12 +525,22 @@ public class SimpleRequestProcessor {
           throw new UnexpectedException("Cannot resolve operation " + invocation.getOperation(),
               null);
         }
-        contextMethods.add(contextMethod);
+        pending.contextMethod = contextMethod;
         Method domainMethod = service.resolveDomainMethod(operation);
         if (domainMethod == null) {
           throw new UnexpectedException(
               "Cannot resolve domain method " + invocation.getOperation(), null);
         }
+        pending.domainMethod = domainMethod;
+
+        boolean concurrent =
+            invocationExecutor != null
+                && service.isConcurrentInvocationAllowed(contextMethod, domainMethod);
+        if (!concurrent && !concurrentRun.isEmpty()) {
+          // Earlier invocations must complete before this one starts
+          invokeConcurrently(concurrentRun);
+          concurrentRun.clear();
+        }
 
         // Compute the arguments
         List<Object> args = decodeInvocationArguments(state, invocation, contextMethod);
@@ -459,43 +550,47 @@ public class SimpleRequestProcessor {
           Object serviceInstance = service.createServiceInstance(requestContext);
           args.add(0, serviceInstance);
         }
-        // Invoke it
-        domainReturnValue = service.invoke(domainMethod, args.toArray());
-        if (invocation.getPropertyRefs() != null) {
-          SortedSet<String> paths = allPropertyRefs.get(domainReturnValue);
-          if (paths == null) {
-            paths = new TreeSet<String>();
-            allPropertyRefs.put(domainReturnValue, paths);
-          }
-          paths.addAll(invocation.getPropertyRefs());
+        pending.args = args.toArray();
+
+        if (concurrent) {
+          concurrentRun.add(pending);
+        } else {
+          // Invoke it
+          pending.invoke(service);
         }
-        ok = true;
       } catch (ReportableException e) {
-        domainReturnValue = AutoBeanCodex.encode(createFailureMessage(e));
-        ok = false;
+        pending.failure = e;
+      }
+    }
+    if (!concurrentRun.isEmpty()) {
+      invokeConcurrently(concurrentRun);
+    }
+
+    Map<Object, SortedSet<String>> allPropertyRefs = new HashMap<Object, SortedSet<String>>();
+    for (PendingInvocation pending : pendingInvocations) {
+      if (pending.failure == null && pending.invocation.getPropertyRefs() != null) {
+        SortedSet<String> paths = allPropertyRefs.get(pending.returnValue);
+        if (paths == null) {
+          paths = new TreeSet<String>();
+          allPropertyRefs.put(pending.returnValue, paths);
+        }
+        paths.addAll(pending.invocation.getPropertyRefs());
       }
-      invocationResults.add(domainReturnValue);
-      success.add(ok);
     }
-    Iterator<Method> contextMethodIt = contextMethods.iterator();
-    Iterator<Object> objects = invocationResults.iterator();
-    Iterator<Boolean> successes = success.iterator();
-    while (successes.hasNext()) {
-      assert contextMethodIt.hasNext();
-      assert objects.hasNext();
-      Method contextMethod = contextMethodIt.next();
-      Object returnValue = objects.next();
-      if (successes.next()) {
+    for (PendingInvocation pending : pendingInvocations) {
+      if (pending.failure == null) {
         // Convert domain object to client object
-        Type requestReturnType = service.getRequestReturnType(contextMethod);
-        returnValue =
-            state.getResolver().resolveClientValue(returnValue, requestReturnType,
-                allPropertyRefs.get(returnValue));
+        Type requestReturnType = service.getRequestReturnType(pending.contextMethod);
+        Object returnValue =
+            state.getResolver().resolveClientValue(pending.returnValue, requestReturnType,
+                allPropertyRefs.get(pending.returnValue));
 
         // Convert the client object to a string
         results.add(EntityCodex.encode(returnState, returnValue));
+        success.add(true);
       } else {
-        results.add((Splittable) returnValue);
+        results.add(AutoBeanCodex.encode(createFailureMessage(pending.failure)));
+        success.add(false);
       }
     }
   }
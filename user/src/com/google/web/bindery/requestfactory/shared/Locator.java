@@ -15,6 +15,9 @@
  */
 package com.google.web.bindery.requestfactory.shared;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * A Locator allows entity types that do not conform to the RequestFactory
  * entity protocol to be used. Instead of attempting to use a {@code findFoo()},
@@ -50,6 +53,31 @@ public abstract class Locator<T, I> {
    */
   public abstract T find(Class<? extends T> clazz, I id);
 
+  /**
+   * Retrieve several objects of the same type at once. Override this method to
+   * load all of the objects referenced by a request in a single query instead
+   * of one query per object.
+   * <p>
+   * The default implementation of this method calls
+   * {@link #find(Class, Object)} for each id. When this method is overridden,
+   * the service layer loads objects of this type with it instead of calling
+   * {@code ServiceLayer.loadDomainObject()} for each object, so decorators that
+   * change how objects are loaded should also override
+   * {@code ServiceLayer.loadDomainObjects()}.
+   * 
+   * @param clazz the type of objects to retrieve
+   * @param ids ids previously returned from {@link #getId(Object)}
+   * @return the requested objects, in the same order as {@code ids}, elements
+   *         of which may be {@code null} if an object could not be found
+   */
+  public List<T> findAll(Class<? extends T> clazz, List<I> ids) {
+    List<T> toReturn = new ArrayList<T>(ids.size());
+    for (I id : ids) {
+      toReturn.add(find(clazz, id));
+    }
+    return toReturn;
+  }
+
   /**
    * Returns the {@code T} type.
    */
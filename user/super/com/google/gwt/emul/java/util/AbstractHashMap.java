@@ -38,6 +38,10 @@ abstract class AbstractHashMap<K, V> extends AbstractMap<K, V> {
    * index in hashCodeMap which should contain that key. Since several keys may
    * have the same hash, each value in hashCodeMap is actually an array
    * containing all entries whose keys share the same hash.
+   * 
+   * If the browser provides a native Map, both stringMap and hashCodeMap are
+   * native Maps instead. String keys are then used as is, and iterating does
+   * not have to filter and parse property names.
    */
   private final class EntrySet extends AbstractSet<Entry<K, V>> {
 
@@ -158,6 +162,12 @@ abstract class AbstractHashMap<K, V> extends AbstractMap<K, V> {
     }
   }
 
+  /**
+   * Whether to use native Maps for {@link #hashCodeMap} and
+   * {@link #stringMap}.
+   */
+  private static final boolean USE_NATIVE_MAP = isNativeMapSupported();
+
   /**
    * A map of integral hashCodes onto entries.
    */
@@ -272,8 +282,29 @@ abstract class AbstractHashMap<K, V> extends AbstractMap<K, V> {
    */
   protected abstract int getHashCode(Object key);
 
+  private static native JavaScriptObject createNativeMap() /*-{
+    return new Map();
+  }-*/;
+
+  /**
+   * Returns true if the browser has a native Map that can be iterated with
+   * forEach.
+   */
+  private static native boolean isNativeMapSupported() /*-{
+    return typeof Map == 'function' && !!Map.prototype
+        && typeof Map.prototype.forEach == 'function';
+  }-*/;
+
   private native void addAllHashEntries(Collection<?> dest) /*-{
     var hashCodeMap = this.@java.util.AbstractHashMap::hashCodeMap;
+    if (@java.util.AbstractHashMap::USE_NATIVE_MAP) {
+      hashCodeMap.forEach(function(array) {
+        for ( var i = 0, c = array.length; i < c; ++i) {
+          dest.@java.util.Collection::add(Ljava/lang/Object;)(array[i]);
+        }
+      });
+      return;
+    }
     for ( var hashCode in hashCodeMap) {
       // sanity check that it's really an integer
       var hashCodeInt = parseInt(hashCode, 10);
@@ -288,6 +319,14 @@ abstract class AbstractHashMap<K, V> extends AbstractMap<K, V> {
 
   private native void addAllStringEntries(Collection<?> dest) /*-{
     var stringMap = this.@java.util.AbstractHashMap::stringMap;
+    if (@java.util.AbstractHashMap::USE_NATIVE_MAP) {
+      var map = this;
+      stringMap.forEach(function(value, key) {
+        var entry = @java.util.AbstractHashMap$MapEntryString::new(Ljava/util/AbstractHashMap;Ljava/lang/String;)(map, key);
+        dest.@java.util.Collection::add(Ljava/lang/Object;)(entry);
+      });
+      return;
+    }
     for (var key in stringMap) {
       // only keys that start with a colon ':' count
       if (key.charCodeAt(0) == 58) {
@@ -298,8 +337,13 @@ abstract class AbstractHashMap<K, V> extends AbstractMap<K, V> {
   }-*/;
 
   private void clearImpl() {
-    hashCodeMap = JavaScriptObject.createArray();
-    stringMap = JavaScriptObject.createObject();
+    if (USE_NATIVE_MAP) {
+      hashCodeMap = createNativeMap();
+      stringMap = createNativeMap();
+    } else {
+      hashCodeMap = JavaScriptObject.createArray();
+      stringMap = JavaScriptObject.createObject();
+    }
     nullSlotLive = false;
     nullSlot = null;
     size = 0;
@@ -311,6 +355,16 @@ abstract class AbstractHashMap<K, V> extends AbstractMap<K, V> {
    */
   private native boolean containsHashValue(Object value) /*-{
     var hashCodeMap = this.@java.util.AbstractHashMap::hashCodeMap;
+    if (@java.util.AbstractHashMap::USE_NATIVE_MAP) {
+      var map = this, found = false;
+      hashCodeMap.forEach(function(array) {
+        for ( var i = 0, c = array.length; !found && i < c; ++i) {
+          var entryValue = array[i].@java.util.Map$Entry::getValue()();
+          found = map.@java.util.AbstractHashMap::equalsBridge(Ljava/lang/Object;Ljava/lang/Object;)(value, entryValue);
+        }
+      });
+      return found;
+    }
     for ( var hashCode in hashCodeMap) {
       // sanity check that it's really one of ours
       var hashCodeInt = parseInt(hashCode, 10);
@@ -334,6 +388,13 @@ abstract class AbstractHashMap<K, V> extends AbstractMap<K, V> {
    */
   private native boolean containsStringValue(Object value) /*-{
     var stringMap = this.@java.util.AbstractHashMap::stringMap;
+    if (@java.util.AbstractHashMap::USE_NATIVE_MAP) {
+      var map = this, found = false;
+      stringMap.forEach(function(entryValue) {
+        found = found || map.@java.util.AbstractHashMap::equalsBridge(Ljava/lang/Object;Ljava/lang/Object;)(value, entryValue);
+      });
+      return found;
+    }
     for ( var key in stringMap) {
       // only keys that start with a colon ':' count
       if (key.charCodeAt(0) == 58) {
@@ -363,7 +424,9 @@ abstract class AbstractHashMap<K, V> extends AbstractMap<K, V> {
    * hashCode.
    */
   private native V getHashValue(Object key, int hashCode) /*-{
-    var array = this.@java.util.AbstractHashMap::hashCodeMap[hashCode];
+    var hashCodeMap = this.@java.util.AbstractHashMap::hashCodeMap;
+    var array = @java.util.AbstractHashMap::USE_NATIVE_MAP
+        ? hashCodeMap.get(hashCode) : hashCodeMap[hashCode];
     if (array) {
       for ( var i = 0, c = array.length; i < c; ++i) {
         var entry = array[i];
@@ -381,7 +444,9 @@ abstract class AbstractHashMap<K, V> extends AbstractMap<K, V> {
    * <code>null</code> if the specified key does not exist.
    */
   private native V getStringValue(String key) /*-{
-    return this.@java.util.AbstractHashMap::stringMap[':' + key];
+    var stringMap = this.@java.util.AbstractHashMap::stringMap;
+    return @java.util.AbstractHashMap::USE_NATIVE_MAP
+        ? stringMap.get(key) : stringMap[':' + key];
   }-*/;
 
   /**
@@ -390,7 +455,9 @@ abstract class AbstractHashMap<K, V> extends AbstractMap<K, V> {
    * <code>hashCode</code>.
    */
   private native boolean hasHashValue(Object key, int hashCode) /*-{
-    var array = this.@java.util.AbstractHashMap::hashCodeMap[hashCode];
+    var hashCodeMap = this.@java.util.AbstractHashMap::hashCodeMap;
+    var array = @java.util.AbstractHashMap::USE_NATIVE_MAP
+        ? hashCodeMap.get(hashCode) : hashCodeMap[hashCode];
     if (array) {
       for ( var i = 0, c = array.length; i < c; ++i) {
         var entry = array[i];
@@ -407,7 +474,9 @@ abstract class AbstractHashMap<K, V> extends AbstractMap<K, V> {
    * Returns true if the given key exists in the stringMap.
    */
   private native boolean hasStringValue(String key) /*-{
-    return (':' + key) in this.@java.util.AbstractHashMap::stringMap;
+    var stringMap = this.@java.util.AbstractHashMap::stringMap;
+    return @java.util.AbstractHashMap::USE_NATIVE_MAP
+        ? stringMap.has(key) : (':' + key) in stringMap;
   }-*/;
 
   /**
@@ -416,7 +485,9 @@ abstract class AbstractHashMap<K, V> extends AbstractMap<K, V> {
    * specified key did not exist.
    */
   private native V putHashValue(K key, V value, int hashCode) /*-{
-    var array = this.@java.util.AbstractHashMap::hashCodeMap[hashCode];
+    var hashCodeMap = this.@java.util.AbstractHashMap::hashCodeMap;
+    var array = @java.util.AbstractHashMap::USE_NATIVE_MAP
+        ? hashCodeMap.get(hashCode) : hashCodeMap[hashCode];
     if (array) {
       for ( var i = 0, c = array.length; i < c; ++i) {
         var entry = array[i];
@@ -429,7 +500,12 @@ abstract class AbstractHashMap<K, V> extends AbstractMap<K, V> {
         }
       }
     } else {
-      array = this.@java.util.AbstractHashMap::hashCodeMap[hashCode] = [];
+      array = [];
+      if (@java.util.AbstractHashMap::USE_NATIVE_MAP) {
+        hashCodeMap.set(hashCode, array);
+      } else {
+        hashCodeMap[hashCode] = array;
+      }
     }
     var entry = @java.util.MapEntryImpl::new(Ljava/lang/Object;Ljava/lang/Object;)(key, value);
     array.push(entry);
@@ -454,6 +530,15 @@ abstract class AbstractHashMap<K, V> extends AbstractMap<K, V> {
    */
   private native V putStringValue(String key, V value) /*-{
     var result, stringMap = this.@java.util.AbstractHashMap::stringMap;
+    if (@java.util.AbstractHashMap::USE_NATIVE_MAP) {
+      if (stringMap.has(key)) {
+        result = stringMap.get(key);
+      } else {
+        ++this.@java.util.AbstractHashMap::size;
+      }
+      stringMap.set(key, value);
+      return result;
+    }
     key = ':' + key;
     if (key in stringMap) {
       result = stringMap[key];
@@ -471,7 +556,9 @@ abstract class AbstractHashMap<K, V> extends AbstractMap<K, V> {
    * removed key, or null if no such key existed.
    */
   private native V removeHashValue(Object key, int hashCode) /*-{
-    var array = this.@java.util.AbstractHashMap::hashCodeMap[hashCode];
+    var hashCodeMap = this.@java.util.AbstractHashMap::hashCodeMap;
+    var array = @java.util.AbstractHashMap::USE_NATIVE_MAP
+        ? hashCodeMap.get(hashCode) : hashCodeMap[hashCode];
     if (array) {
       for ( var i = 0, c = array.length; i < c; ++i) {
         var entry = array[i];
@@ -479,7 +566,11 @@ abstract class AbstractHashMap<K, V> extends AbstractMap<K, V> {
         if (this.@java.util.AbstractHashMap::equalsBridge(Ljava/lang/Object;Ljava/lang/Object;)(key, entryKey)) {
           if (array.length == 1) {
             // remove the whole array
-            delete this.@java.util.AbstractHashMap::hashCodeMap[hashCode];
+            if (@java.util.AbstractHashMap::USE_NATIVE_MAP) {
+              hashCodeMap['delete'](hashCode);
+            } else {
+              delete hashCodeMap[hashCode];
+            }
           } else {
             // splice out the entry we're removing
             array.splice(i, 1);
@@ -509,6 +600,14 @@ abstract class AbstractHashMap<K, V> extends AbstractMap<K, V> {
    */
   private native V removeStringValue(String key) /*-{
     var result, stringMap = this.@java.util.AbstractHashMap::stringMap;
+    if (@java.util.AbstractHashMap::USE_NATIVE_MAP) {
+      if (stringMap.has(key)) {
+        result = stringMap.get(key);
+        --this.@java.util.AbstractHashMap::size;
+        stringMap['delete'](key);
+      }
+      return result;
+    }
     key = ':' + key;
     if (key in stringMap) {
       result = stringMap[key];
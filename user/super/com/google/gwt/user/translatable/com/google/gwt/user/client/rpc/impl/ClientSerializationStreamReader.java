@@ -38,6 +38,10 @@ public final class ClientSerializationStreamReader extends
     return array.length;
   }-*/;
 
+  private static long longFromDouble(double value) {
+    return (long) value;
+  }
+
   int index;
 
   JavaScriptObject results;
@@ -97,6 +101,10 @@ public final class ClientSerializationStreamReader extends
   @UnsafeNativeLong
   public native long readLong() /*-{
     var s = this.@com.google.gwt.user.client.rpc.impl.ClientSerializationStreamReader::results[--this.@com.google.gwt.user.client.rpc.impl.ClientSerializationStreamReader::index];
+    if (typeof s == 'number') {
+      // Written by a server honoring FLAG_COMPACT_NUMERICS
+      return @com.google.gwt.user.client.rpc.impl.ClientSerializationStreamReader::longFromDouble(D)(s);
+    }
     return @com.google.gwt.lang.LongLib::longFromBase64(Ljava/lang/String;)(s);
   }-*/;
 
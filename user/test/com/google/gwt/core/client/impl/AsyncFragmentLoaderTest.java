@@ -15,6 +15,7 @@
  */
 package com.google.gwt.core.client.impl;
 
+import com.google.gwt.core.client.impl.AsyncFragmentLoader.ConcurrentLoadingStrategy;
 import com.google.gwt.core.client.impl.AsyncFragmentLoader.LoadTerminatedHandler;
 import com.google.gwt.core.client.impl.AsyncFragmentLoader.LoadingStrategy;
 import com.google.gwt.core.client.impl.AsyncFragmentLoader.Logger;
@@ -22,6 +23,7 @@ import com.google.gwt.core.client.impl.AsyncFragmentLoader.Logger;
 import junit.framework.TestCase;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -101,6 +103,20 @@ public class AsyncFragmentLoaderTest extends TestCase {
     }
   }
 
+  private static class MockConcurrentLoadStrategy extends MockLoadStrategy implements
+      ConcurrentLoadingStrategy {
+    private List<Integer> downloadRequests = new LinkedList<Integer>();
+
+    public void assertFragmentsDownloaded(Integer... expected) {
+      assertEquals(Arrays.asList(expected), downloadRequests);
+      downloadRequests.clear();
+    }
+
+    public void startDownloadingFragment(int fragment) {
+      downloadRequests.add(fragment);
+    }
+  }
+
   private static class MockProgressEvent {
     public final String eventGroup;
     public final int fragment;
@@ -176,6 +192,63 @@ public class AsyncFragmentLoaderTest extends TestCase {
     progress.assertNoEvents();
   }
 
+  /**
+   * Check that fragments are downloaded ahead, but still loaded in order.
+   */
+  public void testConcurrentDownloads() {
+    MockConcurrentLoadStrategy reqs = new MockConcurrentLoadStrategy();
+    MockProgressLogger progress = new MockProgressLogger();
+    int numEntries = 6;
+    AsyncFragmentLoader loader = new AsyncFragmentLoader(numEntries, new int[] {1}, reqs,
+        progress);
+    loader.setMaxConcurrentDownloads(3);
+
+    // The leftovers and the exclusive download while the initial loads
+    loader.inject(4, NULL_ERROR_HANDLER);
+    reqs.assertFragmentsRequested(1);
+    reqs.assertFragmentsDownloaded(numEntries, 4);
+    progress.assertEvent("download1", BEGIN, 1);
+
+    // No room for another download
+    loader.inject(5, NULL_ERROR_HANDLER);
+    reqs.assertFragmentsRequested();
+    reqs.assertFragmentsDownloaded();
+
+    loader.fragmentHasLoaded(1);
+    reqs.assertFragmentsRequested(numEntries);
+    reqs.assertFragmentsDownloaded(5);
+    progress.assertEvent("download1", END, 1);
+    progress.assertEvent(LEFTOVERS_DOWNLOAD, BEGIN, numEntries);
+
+    loader.leftoversFragmentHasLoaded();
+    reqs.assertFragmentsRequested(4);
+    progress.assertEvent(LEFTOVERS_DOWNLOAD, END, numEntries);
+    progress.assertEvent("download4", BEGIN, 4);
+
+    loader.fragmentHasLoaded(4);
+    reqs.assertFragmentsRequested(5);
+    progress.assertEvent("download4", END, 4);
+    progress.assertEvent("download5", BEGIN, 5);
+
+    // A failure stops counting the downloads ahead against the limit
+    loader.inject(2, NULL_ERROR_HANDLER);
+    loader.inject(3, NULL_ERROR_HANDLER);
+    reqs.assertFragmentsDownloaded(2, 3);
+    loadFailed(reqs, 5);
+    reqs.assertFragmentsRequested();
+
+    loader.inject(3, NULL_ERROR_HANDLER);
+    reqs.assertFragmentsRequested(3);
+    reqs.assertFragmentsDownloaded();
+    progress.assertEvent("download3", BEGIN, 3);
+
+    loader.fragmentHasLoaded(3);
+    reqs.assertFragmentsRequested();
+    reqs.assertFragmentsDownloaded();
+    progress.assertEvent("download3", END, 3);
+    progress.assertNoEvents();
+  }
+
   /**
    * Check the behavior when there are download failures.
    */
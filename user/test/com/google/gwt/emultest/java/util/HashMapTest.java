@@ -718,6 +718,41 @@ public class HashMapTest extends TestMap {
     assertEquals(hashMap.size(), SIZE_ZERO);
   }
 
+  /**
+   * Test String keys that would clash with intrinsic properties or with the
+   * key prefix if they were stored as properties of a plain object.
+   */
+  public void testSpecialStringKeys() {
+    String[] keys = {"__proto__", "constructor", "hasOwnProperty", "", ":", ":0", "0"};
+    HashMap<Object, String> hashMap = new HashMap<Object, String>();
+    for (String key : keys) {
+      assertFalse(hashMap.containsKey(key));
+      assertNull(hashMap.put(key, "value" + key));
+    }
+    hashMap.put(INTEGER_ZERO_KEY, INTEGER_ZERO_VALUE);
+    assertEquals(keys.length + 1, hashMap.size());
+
+    for (String key : keys) {
+      assertTrue(hashMap.containsKey(key));
+      assertEquals("value" + key, hashMap.get(key));
+      assertTrue(hashMap.containsValue("value" + key));
+    }
+    assertEquals(INTEGER_ZERO_VALUE, hashMap.get(INTEGER_ZERO_KEY));
+
+    int count = 0;
+    for (Map.Entry<Object, String> entry : hashMap.entrySet()) {
+      assertEquals(hashMap.get(entry.getKey()), entry.getValue());
+      count++;
+    }
+    assertEquals(keys.length + 1, count);
+
+    for (String key : keys) {
+      assertEquals("value" + key, hashMap.remove(key));
+      assertFalse(hashMap.containsKey(key));
+    }
+    assertEquals(1, hashMap.size());
+  }
+
   /**
    * Test method for 'java.util.AbstractMap.toString()'.
    */
@@ -31,19 +31,42 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.zip.DeflaterOutputStream;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
 
 /**
  * Tests {@link PrecompressLinker}.
  */
 public class PrecompressLinkerTest extends TestCase {
+  /**
+   * A second codec, used to test emitting more than one variant.
+   */
+  public static class DeflateCodec implements PrecompressCodec {
+    public void compress(InputStream in, OutputStream out, boolean maximum)
+        throws IOException {
+      DeflaterOutputStream deflate = new DeflaterOutputStream(out);
+      byte[] buf = new byte[10000];
+      int n;
+      while ((n = in.read(buf)) > 0) {
+        deflate.write(buf, 0, n);
+      }
+      deflate.close();
+    }
+
+    public String getExtension() {
+      return ".deflate";
+    }
+  }
+
   private static class MockConfigurationProperty implements
       ConfigurationProperty, Comparable<MockConfigurationProperty> {
     private boolean hasMultipleValues;
@@ -84,8 +107,9 @@ public class PrecompressLinkerTest extends TestCase {
 
   private class MockLinkerContext implements LinkerContext {
     public SortedSet<ConfigurationProperty> getConfigurationProperties() {
-      return new TreeSet<ConfigurationProperty>(Arrays.asList(
-          propLeaveOriginals, propPathRegexes));
+      return new TreeSet<ConfigurationProperty>(Arrays.asList(propCodecs,
+          propLeaveOriginals, propMaxCompression, propPathRegexes,
+          propThreads));
     }
 
     public String getModuleFunctionName() {
@@ -224,10 +248,41 @@ public class PrecompressLinkerTest extends TestCase {
   private ArtifactSet artifacts;
   private LinkerContext context = new MockLinkerContext();
 
+  private MockConfigurationProperty propCodecs;
+
   private MockConfigurationProperty propLeaveOriginals;
 
+  private MockConfigurationProperty propMaxCompression;
+
   private MockConfigurationProperty propPathRegexes;
 
+  private MockConfigurationProperty propThreads;
+
+  /**
+   * Test that each codec produces its own variant.
+   */
+  public void testAdditionalCodec() throws UnableToCompleteException,
+      IOException {
+    propCodecs.values.add(DeflateCodec.class.getName());
+    ArtifactSet updated = linkArtifacts();
+
+    EmittedArtifact foo = findArtifact(updated, "foo.js");
+    assertEqualBytes(contents(foo),
+        decompress(contents(findArtifact(updated, "foo.js.gz"))));
+    InputStream inflate = new InflaterInputStream(
+        findArtifact(updated, "foo.js.deflate").getContents(TreeLogger.NULL));
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    byte[] buf = new byte[10000];
+    int n;
+    while ((n = inflate.read(buf)) > 0) {
+      baos.write(buf, 0, n);
+    }
+    assertEqualBytes(contents(foo), baos.toByteArray());
+
+    assertNull("uncompressible.js should have been left alone",
+        findArtifact(updated, "uncompressible.js.deflate"));
+  }
+
   /**
    * Test that foo.js gets compressed to foo.js.gz, and bar.js is left alone.
    */
@@ -267,6 +322,38 @@ public class PrecompressLinkerTest extends TestCase {
     assertNull("foo.js should not have been compressed", fooGz);
   }
 
+  /**
+   * Test that maximum compression still produces valid gzip files.
+   */
+  public void testMaxCompression() throws UnableToCompleteException,
+      IOException {
+    propMaxCompression.setValue("true");
+    ArtifactSet updated = linkArtifacts();
+
+    EmittedArtifact foo = findArtifact(updated, "foo.js");
+    EmittedArtifact fooGz = findArtifact(updated, "foo.js.gz");
+    assertNotNull(fooGz);
+    assertEqualBytes(contents(foo), decompress(contents(fooGz)));
+  }
+
+  /**
+   * Test that compressing on several threads gives the same result as
+   * compressing on one.
+   */
+  public void testMultipleThreads() throws UnableToCompleteException,
+      IOException {
+    ArtifactSet sequential = linkArtifacts();
+    propThreads.setValue("4");
+    ArtifactSet parallel = linkArtifacts();
+
+    assertEquals(sequential.size(), parallel.size());
+    for (EmittedArtifact art : sequential.find(EmittedArtifact.class)) {
+      EmittedArtifact other = findArtifact(parallel, art.getPartialPath());
+      assertNotNull(art.getPartialPath(), other);
+      assertEqualBytes(contents(art), contents(other));
+    }
+  }
+
   /**
    * Tests that if precompress.leave.original if false, the originals are
    * removed.
@@ -289,15 +376,25 @@ public class PrecompressLinkerTest extends TestCase {
     artifacts.add(emit("data.xml", fooFileContents()));
     artifacts.freeze();
 
+    propCodecs = new MockConfigurationProperty("precompress.codecs", true);
+    propCodecs.values.add("gzip");
+
     propLeaveOriginals = new MockConfigurationProperty(
         "precompress.leave.originals", false);
     propLeaveOriginals.setValue("true");
 
+    propMaxCompression = new MockConfigurationProperty(
+        "precompress.max.compression", false);
+    propMaxCompression.setValue("false");
+
     propPathRegexes = new MockConfigurationProperty("precompress.path.regexes",
         true);
     propPathRegexes.values.add(".*\\.html");
     propPathRegexes.values.add(".*\\.js");
     propPathRegexes.values.add(".*\\.css");
+
+    propThreads = new MockConfigurationProperty("precompress.threads", false);
+    propThreads.setValue("1");
   }
 
   private ArtifactSet linkArtifacts() throws UnableToCompleteException {
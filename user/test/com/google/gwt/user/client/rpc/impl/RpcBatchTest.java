@@ -0,0 +1,48 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.user.client.rpc.impl;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Tests {@link RpcBatch}.
+ */
+public class RpcBatchTest extends TestCase {
+
+  public void testJoinAndSplit() {
+    List<String> payloads = Arrays.asList("7|0|4|a:b|", "", "12:34", "\u00e9\u4e2d");
+    String batch = RpcBatch.join(payloads);
+    assertEquals("10:7|0|4|a:b|0:5:12:342:\u00e9\u4e2d", batch);
+    assertEquals(payloads, RpcBatch.split(batch));
+  }
+
+  public void testSplitEmpty() {
+    assertEquals(Collections.<String> emptyList(), RpcBatch.split(""));
+  }
+
+  public void testSplitMalformed() {
+    assertNull(RpcBatch.split("abc"));
+    assertNull(RpcBatch.split(":abc"));
+    assertNull(RpcBatch.split("x:abc"));
+    assertNull(RpcBatch.split("-1:abc"));
+    assertNull(RpcBatch.split("4:abc"));
+    assertNull(RpcBatch.split("3:abc5"));
+  }
+}
@@ -0,0 +1,322 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.user.server.rpc;
+
+import static com.google.gwt.user.client.rpc.impl.AbstractSerializationStream.RPC_SEPARATOR_CHAR;
+
+import com.google.gwt.user.client.rpc.RemoteService;
+import com.google.gwt.user.client.rpc.SerializableException;
+import com.google.gwt.user.client.rpc.SerializationException;
+import com.google.gwt.user.client.rpc.impl.AbstractSerializationStream;
+import com.google.gwt.user.server.rpc.AsyncRemoteServiceServlet.DeferredResponse;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Tests {@link AsyncRemoteServiceServlet}.
+ */
+@SuppressWarnings("deprecation")
+public class AsyncRemoteServiceServletTest extends TestCase {
+
+  /**
+   * The service implemented by {@link TestServlet}.
+   */
+  @SuppressWarnings("rpc-validation")
+  public static interface ValueService extends RemoteService {
+    int getValue() throws SerializableException;
+  }
+
+  /**
+   * A request that records its attributes.
+   */
+  private static class MockRequest extends MockHttpServletRequest {
+    private final Map<String, Object> attributes = new HashMap<String, Object>();
+
+    @Override
+    public Object getAttribute(String name) {
+      return attributes.get(name);
+    }
+
+    @Override
+    public String getContextPath() {
+      return "";
+    }
+
+    @Override
+    public String getHeader(String name) {
+      return null;
+    }
+
+    @Override
+    public void setAttribute(String name, Object value) {
+      attributes.put(name, value);
+    }
+  }
+
+  /**
+   * A servlet that defers every response, and records what it writes instead
+   * of writing it.
+   */
+  public static class TestServlet extends AsyncRemoteServiceServlet implements ValueService {
+    /**
+     * The context returned by {@link #startAsync}, or <code>null</code> to
+     * emulate a Servlet 2.5 container.
+     */
+    Object asyncContext;
+    Object completedAsyncContext;
+    volatile DeferredResponse<Integer> deferred;
+    /**
+     * Run by the service method after deferring its response.
+     */
+    Runnable onDeferred;
+    HttpServletRequest requestSeenByHook;
+    Throwable unexpectedFailure;
+    DeferredResponse<?> watched;
+    String written;
+
+    public int getValue() {
+      deferred = deferResponse();
+      if (onDeferred != null) {
+        onDeferred.run();
+      }
+      return 0;
+    }
+
+    @Override
+    protected void checkPermutationStrongName() {
+    }
+
+    @Override
+    protected void doUnexpectedFailure(Throwable e) {
+      unexpectedFailure = e;
+    }
+
+    @Override
+    protected void onAfterResponseSerialized(String serializedResponse) {
+      requestSeenByHook = getThreadLocalRequest();
+    }
+
+    @Override
+    void completeAsync(Object asyncContext) {
+      completedAsyncContext = asyncContext;
+    }
+
+    @Override
+    Object startAsync(HttpServletRequest request) {
+      return asyncContext;
+    }
+
+    @Override
+    void watchAsync(Object asyncContext, DeferredResponse<?> deferred) {
+      watched = deferred;
+    }
+
+    @Override
+    void writeResponse(HttpServletRequest request, HttpServletResponse response,
+        String responsePayload) {
+      written = responsePayload;
+    }
+  }
+
+  private static final String GET_VALUE_REQUEST = ""
+      + AbstractSerializationStream.SERIALIZATION_STREAM_VERSION
+      + RPC_SEPARATOR_CHAR + // version
+      "0" + RPC_SEPARATOR_CHAR + // flags
+      "4" + RPC_SEPARATOR_CHAR + // string table entry count
+      ValueService.class.getName() + RPC_SEPARATOR_CHAR + // string table entry #1
+      "getValue" + RPC_SEPARATOR_CHAR + // string table entry #2
+      "moduleBaseURL" + RPC_SEPARATOR_CHAR + // string table entry #3
+      "whitelistHashcode" + RPC_SEPARATOR_CHAR + // string table entry #4
+      "3" + RPC_SEPARATOR_CHAR + // module base URL
+      "4" + RPC_SEPARATOR_CHAR + // whitelist hashcode
+      "1" + RPC_SEPARATOR_CHAR + // interface name
+      "2" + RPC_SEPARATOR_CHAR + // method name
+      "0" + RPC_SEPARATOR_CHAR; // param count
+
+  private final MockRequest request = new MockRequest();
+
+  public void testCompleteTwice() throws Exception {
+    TestServlet servlet = createServlet(null);
+    servlet.asyncContext = new Object();
+    assertNull(processCall(servlet));
+
+    servlet.deferred.complete(1234);
+    try {
+      servlet.deferred.complete(5678);
+      fail("Expected IllegalStateException");
+    } catch (IllegalStateException expected) {
+    }
+    try {
+      servlet.deferred.fail(new SerializableException());
+      fail("Expected IllegalStateException");
+    } catch (IllegalStateException expected) {
+    }
+    assertTrue(servlet.written.startsWith("//OK"));
+    assertTrue(servlet.written.contains("1234"));
+  }
+
+  public void testFail() throws Exception {
+    TestServlet servlet = createServlet(null);
+    servlet.asyncContext = new Object();
+    assertNull(processCall(servlet));
+
+    servlet.deferred.fail(new SerializableException());
+    assertTrue(servlet.written.startsWith("//EX"));
+    assertTrue(servlet.written.contains("SerializableException"));
+    assertNull(servlet.unexpectedFailure);
+    assertSame(servlet.asyncContext, servlet.completedAsyncContext);
+  }
+
+  public void testFailUndeclared() throws Exception {
+    TestServlet servlet = createServlet(null);
+    servlet.asyncContext = new Object();
+    assertNull(processCall(servlet));
+
+    servlet.deferred.fail(new IOException());
+    assertNull(servlet.written);
+    assertTrue(servlet.unexpectedFailure instanceof UnexpectedException);
+    assertSame(servlet.asyncContext, servlet.completedAsyncContext);
+  }
+
+  /**
+   * Tests that a request that cannot be suspended waits for its response.
+   */
+  public void testFallback() throws Exception {
+    final TestServlet servlet = createServlet(null);
+    servlet.onDeferred = new Runnable() {
+      public void run() {
+        new Thread() {
+          @Override
+          public void run() {
+            servlet.deferred.complete(42);
+          }
+        }.start();
+      }
+    };
+
+    String response = processCall(servlet);
+    assertTrue(response.startsWith("//OK"));
+    assertTrue(response.contains("42"));
+    assertFalse(servlet.isResponseDeferred(request));
+    assertNull(servlet.written);
+  }
+
+  public void testFallbackTimeout() throws Exception {
+    TestServlet servlet = createServlet("10");
+    assertEquals(10, servlet.getDeferredResponseTimeout());
+    try {
+      processCall(servlet);
+      fail("Expected UnexpectedException");
+    } catch (UnexpectedException expected) {
+    }
+
+    try {
+      servlet.deferred.complete(1);
+      fail("Expected IllegalStateException");
+    } catch (IllegalStateException expected) {
+    }
+  }
+
+  /**
+   * Tests that a suspended request timed out by the container reports a
+   * failure, and cannot be completed afterwards.
+   */
+  public void testSuspendedTimeout() throws Exception {
+    TestServlet servlet = createServlet(null);
+    servlet.asyncContext = new Object();
+    assertNull(processCall(servlet));
+    assertSame(servlet.deferred, servlet.watched);
+
+    servlet.deferred.expire("timed out", null);
+    assertNull(servlet.written);
+    assertTrue(servlet.unexpectedFailure instanceof UnexpectedException);
+    assertSame(servlet.asyncContext, servlet.completedAsyncContext);
+    try {
+      servlet.deferred.complete(1);
+      fail("Expected IllegalStateException");
+    } catch (IllegalStateException expected) {
+    }
+  }
+
+  public void testSuspendedTimeoutAfterComplete() throws Exception {
+    TestServlet servlet = createServlet(null);
+    servlet.asyncContext = new Object();
+    assertNull(processCall(servlet));
+
+    servlet.deferred.complete(7);
+    servlet.deferred.expire("timed out", null);
+    assertTrue(servlet.written.startsWith("//OK"));
+    assertNull(servlet.unexpectedFailure);
+  }
+
+  public void testSuspended() throws Exception {
+    final TestServlet servlet = createServlet(null);
+    servlet.asyncContext = new Object();
+    assertNull(processCall(servlet));
+    assertTrue(servlet.isResponseDeferred(request));
+    assertNull(servlet.written);
+
+    Thread completer = new Thread() {
+      @Override
+      public void run() {
+        servlet.deferred.complete(4321);
+      }
+    };
+    completer.start();
+    completer.join();
+
+    assertTrue(servlet.written.startsWith("//OK"));
+    assertTrue(servlet.written.contains("4321"));
+    assertSame(request, servlet.requestSeenByHook);
+    assertSame(servlet.asyncContext, servlet.completedAsyncContext);
+    assertNull(servlet.getThreadLocalRequest());
+  }
+
+  private TestServlet createServlet(final String timeout) throws ServletException {
+    TestServlet servlet = new TestServlet();
+    servlet.init(new MockServletConfig(new MockServletContext()) {
+      @Override
+      public String getInitParameter(String name) {
+        return AsyncRemoteServiceServlet.DEFERRED_RESPONSE_TIMEOUT_PARAM.equals(name)
+            ? timeout : null;
+      }
+    });
+    return servlet;
+  }
+
+  /**
+   * Calls {@link ValueService#getValue()} on <code>servlet</code> from this
+   * thread, as if this thread were handling {@link #request}.
+   */
+  private String processCall(TestServlet servlet) throws SerializationException {
+    // Initializes the thread-locals.
+    servlet.getThreadLocalRequest();
+    servlet.perThreadRequest.set(request);
+    try {
+      return servlet.processCall(GET_VALUE_REQUEST);
+    } finally {
+      servlet.perThreadRequest.remove();
+    }
+  }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.user.server.rpc;
+
+import java.util.Enumeration;
+
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletContext;
+
+/**
+ * A dummy class for testing methods that require a ServletConfig.
+ */
+public class MockServletConfig implements ServletConfig {
+  private ServletContext context;
+
+  public MockServletConfig(ServletContext context) {
+    this.context = context;
+  }
+
+  public String getInitParameter(String arg0) {
+    return null;
+  }
+
+  public Enumeration<String> getInitParameterNames() {
+    throw new UnsupportedOperationException();
+  }
+
+  public ServletContext getServletContext() {
+    return context;
+  }
+
+  public String getServletName() {
+    return "MockServlet";
+  }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.user.server.rpc;
+
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import javax.servlet.RequestDispatcher;
+import javax.servlet.Servlet;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+
+/**
+ * A dummy class for testing methods that require a ServletContext. Records the
+ * last message logged.
+ */
+public class MockServletContext implements ServletContext {
+  private final Map<String, Object> attributes = new HashMap<String, Object>();
+  String messageLogged;
+
+  public MockServletContext() {
+  }
+
+  public Object getAttribute(String arg0) {
+    return attributes.get(arg0);
+  }
+
+  public Enumeration<String> getAttributeNames() {
+    throw new UnsupportedOperationException();
+  }
+
+  public ServletContext getContext(String arg0) {
+    throw new UnsupportedOperationException();
+  }
+
+  public String getContextPath() {
+    throw new UnsupportedOperationException();
+  }
+
+  public String getInitParameter(String arg0) {
+    return null;
+  }
+
+  public Enumeration<String> getInitParameterNames() {
+    throw new UnsupportedOperationException();
+  }
+
+  public int getMajorVersion() {
+    throw new UnsupportedOperationException();
+  }
+
+  public String getMimeType(String arg0) {
+    throw new UnsupportedOperationException();
+  }
+
+  public int getMinorVersion() {
+    throw new UnsupportedOperationException();
+  }
+
+  public RequestDispatcher getNamedDispatcher(String arg0) {
+    throw new UnsupportedOperationException();
+  }
+
+  public String getRealPath(String arg0) {
+    throw new UnsupportedOperationException();
+  }
+
+  public RequestDispatcher getRequestDispatcher(String arg0) {
+    throw new UnsupportedOperationException();
+  }
+
+  public URL getResource(String arg0) throws MalformedURLException {
+    throw new UnsupportedOperationException();
+  }
+
+  public InputStream getResourceAsStream(String arg0) {
+    throw new UnsupportedOperationException();
+  }
+
+  public Set<String> getResourcePaths(String arg0) {
+    throw new UnsupportedOperationException();
+  }
+
+  public String getServerInfo() {
+    throw new UnsupportedOperationException();
+  }
+
+  public Servlet getServlet(String arg0) throws ServletException {
+    throw new UnsupportedOperationException();
+  }
+
+  public String getServletContextName() {
+    throw new UnsupportedOperationException();
+  }
+
+  public Enumeration<String> getServletNames() {
+    throw new UnsupportedOperationException();
+  }
+
+  public Enumeration<String> getServlets() {
+    throw new UnsupportedOperationException();
+  }
+
+  public void log(Exception arg0, String arg1) {
+    log(arg1, arg0);
+  }
+
+  public void log(String arg0) {
+    log(arg0, null);
+  }
+
+  public void log(String arg0, Throwable arg1) {
+    messageLogged = arg0;
+  }
+
+  public void removeAttribute(String arg0) {
+    attributes.remove(arg0);
+  }
+
+  public void setAttribute(String arg0, Object arg1) {
+    attributes.put(arg0, arg1);
+  }
+}
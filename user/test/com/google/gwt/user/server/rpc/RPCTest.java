@@ -29,7 +29,9 @@ import com.google.gwt.user.server.rpc.impl.TypeNameObfuscator;
 
 import junit.framework.TestCase;
 
+import java.io.IOException;
 import java.io.Serializable;
+import java.io.StringWriter;
 import java.lang.reflect.Method;
 import java.util.Set;
 
@@ -469,6 +471,25 @@ public class RPCTest extends TestCase {
     }
   }
 
+  /**
+   * Tests that service methods resolved by an earlier request are reused, and
+   * that unknown methods are still rejected once the interface has been seen.
+   */
+  public void testDecodeRequestRepeated() throws NoSuchMethodException {
+    for (int i = 0; i < 2; i++) {
+      RPCRequest request = RPC.decodeRequest(VALID_ENCODED_REQUEST, A.class);
+      assertEquals(A.class.getMethod("method2"), request.getMethod());
+      assertEquals(0, request.getParameters().length);
+
+      try {
+        RPC.decodeRequest(INVALID_METHOD_REQUEST, A.class);
+        fail("Expected IncompatibleRemoteServiceException");
+      } catch (IncompatibleRemoteServiceException e) {
+        // should get here
+      }
+    }
+  }
+
   private static class TestRpcToken implements RpcToken {
     String tokenValue;
     public TestRpcToken() { }
@@ -836,6 +857,37 @@ public class RPCTest extends TestCase {
     }, A_method1, null);
   }
 
+  /**
+   * Tests that {@link RPC#invokeAndStreamResponse} writes the same response as
+   * {@link RPC#invokeAndEncodeResponse}, for both results and exceptions.
+   */
+  public void testInvokeAndStreamResponse() throws IOException, NoSuchMethodException,
+      SerializationException {
+    A a = new A() {
+      public void method1() throws SerializableException {
+        throw new SerializableException("failed");
+      }
+
+      public int method2() {
+        return 42;
+      }
+
+      public int method3(int val) {
+        return val;
+      }
+    };
+    SerializationPolicy policy = RPC.getDefaultSerializationPolicy();
+    int flags = AbstractSerializationStream.DEFAULT_FLAGS;
+
+    for (Method method : new Method[] {
+        A.class.getMethod("method1"), A.class.getMethod("method2")}) {
+      StringWriter out = new StringWriter();
+      RPC.invokeAndStreamResponse(a, method, null, policy, flags, out);
+      assertEquals(RPC.invokeAndEncodeResponse(a, method, null, policy, flags),
+          out.toString());
+    }
+  }
+
   public void testSerializationStreamDequote() throws SerializationException {
     ServerSerializationStreamReader reader = new ServerSerializationStreamReader(
         null, null);
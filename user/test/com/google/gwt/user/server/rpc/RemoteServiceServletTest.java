@@ -16,7 +16,10 @@
 package com.google.gwt.user.server.rpc;
 
 import com.google.gwt.user.client.rpc.IsSerializable;
+import com.google.gwt.user.client.rpc.RpcRequestBuilder;
+import com.google.gwt.user.client.rpc.SerializableException;
 import com.google.gwt.user.client.rpc.SerializationException;
+import com.google.gwt.user.client.rpc.impl.RpcBatch;
 
 import junit.framework.TestCase;
 
@@ -24,16 +27,15 @@ import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 import java.io.Serializable;
 import java.io.UnsupportedEncodingException;
-import java.net.MalformedURLException;
-import java.net.URL;
-import java.util.Enumeration;
-import java.util.Set;
-
-import javax.servlet.RequestDispatcher;
-import javax.servlet.Servlet;
-import javax.servlet.ServletConfig;
-import javax.servlet.ServletContext;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
 /**
  * Test some of the failure modes associated with
@@ -41,6 +43,7 @@ import javax.servlet.ServletException;
  * 
  * TODO: test caching of policies?
  */
+@SuppressWarnings("deprecation")
 public class RemoteServiceServletTest extends TestCase {
 
   private static class Bar implements Serializable {
@@ -62,133 +65,89 @@ public class RemoteServiceServletTest extends TestCase {
     }
   }
 
-  private static class MockServletConfig implements ServletConfig {
-    private ServletContext context;
+  /**
+   * A servlet that answers each call in a batch with the call's payload, or
+   * fails it if the payload names a failure.
+   */
+  private static class BatchServlet extends RemoteServiceServlet {
+    private final String batch;
+    private ExecutorService executor;
+    private String written;
 
-    public MockServletConfig(ServletContext context) {
-      this.context = context;
+    public BatchServlet(String... calls) {
+      batch = RpcBatch.join(Arrays.asList(calls));
     }
 
-    public String getInitParameter(String arg0) {
-      throw new UnsupportedOperationException();
+    @Override
+    public String processCall(String payload) {
+      assertNotNull(getThreadLocalRequest());
+      if ("checked".equals(payload)) {
+        throw new UnexpectedException("Undeclared", new SerializableException("checked"));
+      } else if ("runtime".equals(payload)) {
+        throw new IllegalStateException("runtime");
+      }
+      return "//OK" + payload;
     }
 
-    public Enumeration<String> getInitParameterNames() {
-      throw new UnsupportedOperationException();
+    @Override
+    protected ExecutorService getBatchExecutor() {
+      return executor;
     }
 
-    public ServletContext getServletContext() {
-      return context;
+    @Override
+    protected String readContent(HttpServletRequest request) {
+      return batch;
     }
 
-    public String getServletName() {
-      return "MockServlet";
+    @Override
+    void writeResponse(HttpServletRequest request, HttpServletResponse response,
+        String responsePayload) {
+      written = responsePayload;
     }
   }
 
-  private class MockServletContext implements ServletContext {
-    private String messageLogged;
-
-    public MockServletContext() {
-    }
-
-    public Object getAttribute(String arg0) {
-      throw new UnsupportedOperationException();
-    }
-
-    public Enumeration<String> getAttributeNames() {
-      throw new UnsupportedOperationException();
-    }
-
-    public ServletContext getContext(String arg0) {
-      throw new UnsupportedOperationException();
-    }
-
-    public String getContextPath() {
-      throw new UnsupportedOperationException();
-    }
-
-    public String getInitParameter(String arg0) {
-      throw new UnsupportedOperationException();
-    }
-
-    public Enumeration<String> getInitParameterNames() {
-      throw new UnsupportedOperationException();
-    }
-
-    public int getMajorVersion() {
-      throw new UnsupportedOperationException();
-    }
-
-    public String getMimeType(String arg0) {
-      throw new UnsupportedOperationException();
-    }
-
-    public int getMinorVersion() {
-      throw new UnsupportedOperationException();
-    }
-
-    public RequestDispatcher getNamedDispatcher(String arg0) {
-      throw new UnsupportedOperationException();
-    }
+  private static class MockHttpServletRequestBatch extends MockHttpServletRequest {
+    private final int batchSize;
 
-    public String getRealPath(String arg0) {
-      throw new UnsupportedOperationException();
+    public MockHttpServletRequestBatch(int batchSize) {
+      this.batchSize = batchSize;
     }
 
-    public RequestDispatcher getRequestDispatcher(String arg0) {
-      throw new UnsupportedOperationException();
-    }
-
-    public URL getResource(String arg0) throws MalformedURLException {
-      throw new UnsupportedOperationException();
-    }
-
-    public InputStream getResourceAsStream(String arg0) {
-      throw new UnsupportedOperationException();
-    }
-
-    public Set<String> getResourcePaths(String arg0) {
-      throw new UnsupportedOperationException();
-    }
-
-    public String getServerInfo() {
-      throw new UnsupportedOperationException();
-    }
-
-    public Servlet getServlet(String arg0) throws ServletException {
-      throw new UnsupportedOperationException();
-    }
-
-    public String getServletContextName() {
-      throw new UnsupportedOperationException();
-    }
-
-    public Enumeration<String> getServletNames() {
-      throw new UnsupportedOperationException();
-    }
-
-    public Enumeration<String> getServlets() {
-      throw new UnsupportedOperationException();
-    }
-
-    public void log(Exception arg0, String arg1) {
-      log(arg1, arg0);
-    }
-
-    public void log(String arg0) {
-      log(arg0, null);
-    }
-
-    public void log(String arg0, Throwable arg1) {
-      messageLogged = arg0;
+    @Override
+    public String getHeader(String name) {
+      return RpcRequestBuilder.BATCH_SIZE_HEADER.equals(name) ? String.valueOf(batchSize) : null;
     }
+  }
 
-    public void removeAttribute(String arg0) {
-    }
+  public void testBatchIsolatesFailures() throws Exception {
+    List<String> responses = processBatch(new BatchServlet("a", "checked", "runtime", "b"));
+    assertEquals(4, responses.size());
+    assertEquals("//OKa", responses.get(0));
+    assertTrue(responses.get(1).startsWith("//EX"));
+    assertTrue(responses.get(1).contains("SerializableException"));
+    assertEquals(RPCServletUtils.GENERIC_FAILURE_MSG, responses.get(2));
+    assertEquals("//OKb", responses.get(3));
+  }
 
-    public void setAttribute(String arg0, Object arg1) {
-      throw new UnsupportedOperationException();
+  public void testBatchWithExecutor() throws Exception {
+    final BatchServlet servlet = new BatchServlet("a", "checked", "runtime", "b");
+    servlet.executor = Executors.newSingleThreadExecutor();
+    try {
+      List<String> responses = processBatch(servlet);
+      assertEquals(4, responses.size());
+      assertEquals("//OKa", responses.get(0));
+      assertTrue(responses.get(1).startsWith("//EX"));
+      assertEquals(RPCServletUtils.GENERIC_FAILURE_MSG, responses.get(2));
+      assertEquals("//OKb", responses.get(3));
+
+      // The pool thread must not keep the request.
+      assertNull(servlet.executor.submit(new Callable<HttpServletRequest>() {
+        public HttpServletRequest call() {
+          return servlet.getThreadLocalRequest();
+        }
+      }).get());
+    } finally {
+      servlet.executor.shutdown();
     }
   }
 
@@ -289,6 +248,13 @@ public class RemoteServiceServletTest extends TestCase {
     assertNotValidDeserialize(serializationPolicy, Baz.class);
   }
 
+  private List<String> processBatch(BatchServlet servlet) throws Exception {
+    servlet.init(new MockServletConfig(new MockServletContext()));
+    int batchSize = RpcBatch.split(servlet.batch).size();
+    servlet.doPost(new MockHttpServletRequestBatch(batchSize), null);
+    return RpcBatch.split(servlet.written);
+  }
+
   private void assertDeserializeFields(SerializationPolicy policy,
       Class<?> clazz) {
     assertTrue(policy.shouldDeserializeFields(clazz));
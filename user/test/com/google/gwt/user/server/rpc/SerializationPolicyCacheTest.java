@@ -0,0 +1,51 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.user.server.rpc;
+
+import com.google.gwt.user.server.rpc.impl.LegacySerializationPolicy;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests {@link SerializationPolicyCache}.
+ */
+public class SerializationPolicyCacheTest extends TestCase {
+
+  public void testEvictsOldestEntries() {
+    SerializationPolicyCache cache = new SerializationPolicyCache(2);
+    SerializationPolicy policy = LegacySerializationPolicy.getInstance();
+    cache.put("a", policy);
+    cache.put("b", policy);
+    assertSame(policy, cache.get("a"));
+
+    cache.put("c", policy);
+    assertEquals(2, cache.size());
+    assertNull(cache.get("a"));
+    assertSame(policy, cache.get("b"));
+    assertSame(policy, cache.get("c"));
+  }
+
+  public void testPutExistingKey() {
+    SerializationPolicyCache cache = new SerializationPolicyCache(2);
+    SerializationPolicy policy = LegacySerializationPolicy.getInstance();
+    cache.put("a", policy);
+    cache.put("a", policy);
+    cache.put("b", policy);
+    assertEquals(2, cache.size());
+    assertSame(policy, cache.get("a"));
+    assertSame(policy, cache.get("b"));
+  }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.user.server.rpc.impl;
+
+import com.google.gwt.user.client.rpc.SerializationException;
+import com.google.gwt.user.client.rpc.impl.AbstractSerializationStreamWriter;
+import com.google.gwt.user.server.Base64Utils;
+
+import junit.framework.TestCase;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+
+/**
+ * Tests {@link FieldAccessor}.
+ */
+public class FieldAccessorTest extends TestCase {
+
+  @SuppressWarnings("unused")
+  private static class Fields {
+    private boolean aBoolean = true;
+    private byte aByte = -3;
+    private char aChar = 'x';
+    private double aDouble = 1.5;
+    private float aFloat = 0.25f;
+    private int anInt = 42;
+    private long aLong = 1234567890123L;
+    private short aShort = 300;
+    private String aString = "hello";
+    private Object anObject = "object";
+    private Object nullObject;
+  }
+
+  /**
+   * Writes tokens in the format that {@link ServerSerializationStreamReader}
+   * reads, as a client would.
+   */
+  private static class RequestWriter extends AbstractSerializationStreamWriter {
+    private final StringBuilder tokens = new StringBuilder();
+
+    @Override
+    public String toString() {
+      StringBuilder payload = new StringBuilder();
+      payload.append(getVersion()).append(RPC_SEPARATOR_CHAR);
+      payload.append(getFlags()).append(RPC_SEPARATOR_CHAR);
+      payload.append(getStringTable().size()).append(RPC_SEPARATOR_CHAR);
+      for (String string : getStringTable()) {
+        // The strings written by the test need no escaping
+        payload.append(string).append(RPC_SEPARATOR_CHAR);
+      }
+      return payload.append(tokens).toString();
+    }
+
+    @Override
+    public void writeLong(long value) {
+      append(Base64Utils.toBase64(value));
+    }
+
+    @Override
+    protected void append(String token) {
+      tokens.append(token).append(RPC_SEPARATOR_CHAR);
+    }
+
+    @Override
+    protected String getObjectTypeSignature(Object instance) {
+      return SerializabilityUtil.encodeSerializedInstanceReference(instance.getClass(),
+          LegacySerializationPolicy.getInstance());
+    }
+
+    @Override
+    protected void serialize(Object instance, String typeSignature)
+        throws SerializationException {
+      if (!(instance instanceof String)) {
+        throw new SerializationException("Cannot write " + typeSignature);
+      }
+      writeString((String) instance);
+    }
+  }
+
+  public void testAccessorsAreCached() {
+    assertSame(SerializabilityUtil.getFieldAccessors(Fields.class),
+        SerializabilityUtil.getFieldAccessors(Fields.class));
+  }
+
+  public void testAccessorsMatchSerializableFields() {
+    Field[] fields = SerializabilityUtil.applyFieldSerializationPolicy(Fields.class);
+    FieldAccessor[] accessors = SerializabilityUtil.getFieldAccessors(Fields.class);
+    assertEquals(fields.length, accessors.length);
+    for (int i = 0; i < fields.length; ++i) {
+      assertEquals(fields[i], accessors[i].field);
+      assertEquals(fields[i].getGenericType(), accessors[i].genericType);
+    }
+  }
+
+  public void testWrite() throws IllegalAccessException, SerializationException {
+    Fields instance = new Fields();
+    // Also makes the private fields accessible
+    FieldAccessor[] accessors = SerializabilityUtil.getFieldAccessors(Fields.class);
+
+    ServerSerializationStreamWriter expected = createWriter();
+    for (Field field : SerializabilityUtil.applyFieldSerializationPolicy(Fields.class)) {
+      expected.serializeValue(field.get(instance), field.getType());
+    }
+
+    ServerSerializationStreamWriter actual = createWriter();
+    for (FieldAccessor accessor : accessors) {
+      accessor.write(actual, instance);
+    }
+
+    assertEquals(expected.toString(), actual.toString());
+  }
+
+  /**
+   * Tests that every field written by its accessor is read back by it.
+   */
+  public void testWriteThenRead() throws IllegalAccessException, SerializationException {
+    Fields instance = new Fields();
+    instance.aBoolean = false;
+    instance.aByte = Byte.MIN_VALUE;
+    instance.aChar = '\uffff';
+    instance.aDouble = -Double.MAX_VALUE;
+    instance.aFloat = -0.125f;
+    instance.anInt = Integer.MIN_VALUE;
+    instance.aLong = Long.MIN_VALUE;
+    instance.aShort = Short.MIN_VALUE;
+    instance.aString = "goodbye";
+    instance.anObject = "other";
+    FieldAccessor[] accessors = SerializabilityUtil.getFieldAccessors(Fields.class);
+
+    RequestWriter writer = new RequestWriter();
+    writer.prepareToWrite();
+    writer.writeString("moduleBaseURL");
+    writer.writeString("strongName");
+    for (FieldAccessor accessor : accessors) {
+      accessor.write(writer, instance);
+    }
+
+    ServerSerializationStreamReader reader =
+        new ServerSerializationStreamReader(Fields.class.getClassLoader(), null);
+    reader.prepareToRead(writer.toString());
+    Fields copy = new Fields();
+    copy.nullObject = "not null";
+    for (FieldAccessor accessor : accessors) {
+      accessor.read(reader, copy, new DequeMap<TypeVariable<?>, Type>());
+    }
+
+    for (Field field : SerializabilityUtil.applyFieldSerializationPolicy(Fields.class)) {
+      assertEquals(field.getName(), field.get(instance), field.get(copy));
+    }
+    assertNull(copy.nullObject);
+  }
+
+  private ServerSerializationStreamWriter createWriter() {
+    ServerSerializationStreamWriter writer =
+        new ServerSerializationStreamWriter(LegacySerializationPolicy.getInstance());
+    writer.prepareToWrite();
+    return writer;
+  }
+}
@@ -16,13 +16,42 @@
 
 package com.google.gwt.user.server.rpc.impl;
 
+import com.google.gwt.user.client.rpc.impl.AbstractSerializationStream;
+import com.google.gwt.user.server.Base64Utils;
+
 import junit.framework.TestCase;
 
+import java.io.IOException;
+import java.io.StringWriter;
+
 /**
  * Tests {@link ServerSerializationStreamWriter}.
  */
 public class ServerSerializationStreamWriterTest extends TestCase {
 
+  public void testCompactDouble() {
+    assertEquals("3", ServerSerializationStreamWriter.compactDouble("3.0"));
+    assertEquals("-0", ServerSerializationStreamWriter.compactDouble("-0.0"));
+    assertEquals("1E10", ServerSerializationStreamWriter.compactDouble("1.0E10"));
+    assertEquals("1.05E-5", ServerSerializationStreamWriter.compactDouble("1.05E-5"));
+    assertEquals("0.1", ServerSerializationStreamWriter.compactDouble("0.1"));
+    assertEquals("NaN", ServerSerializationStreamWriter.compactDouble("NaN"));
+  }
+
+  public void testCompactNumerics() {
+    ServerSerializationStreamWriter writer =
+        new ServerSerializationStreamWriter(LegacySerializationPolicy.getInstance());
+    writer.setFlags(AbstractSerializationStream.FLAG_COMPACT_NUMERICS);
+    writer.prepareToWrite();
+    writer.writeLong(1L << 53);
+    writer.writeLong(-42L);
+    writer.writeLong((1L << 53) + 1);
+    writer.writeDouble(2.0);
+    writer.writeFloat(0.1f);
+    assertEquals("[0.1,2,'" + Base64Utils.toBase64((1L << 53) + 1)
+        + "',-42,9007199254740992,[],4,7]", writer.toString());
+  }
+
   public void testEscapeString() {
     // Ensure that when using escapeString, a large string is not split into
     // separate nodes like escapeStringSplitNodes does.
@@ -114,4 +143,25 @@ public class ServerSerializationStreamWriterTest extends TestCase {
         escaped);
   }
 
+  public void testWriteTo() throws IOException {
+    assertWriteToMatchesToString(10);
+    // Large enough to split both the payload and the string table into
+    // several array literals.
+    assertWriteToMatchesToString(
+        2 * ServerSerializationStreamWriter.LengthConstrainedArray.MAXIMUM_ARRAY_LENGTH + 10);
+  }
+
+  private void assertWriteToMatchesToString(int count) throws IOException {
+    ServerSerializationStreamWriter writer =
+        new ServerSerializationStreamWriter(LegacySerializationPolicy.getInstance());
+    writer.prepareToWrite();
+    for (int i = 0; i < count; i++) {
+      writer.writeInt(i);
+      writer.writeString("string" + i);
+    }
+
+    StringWriter out = new StringWriter();
+    writer.writeTo(out);
+    assertEquals(writer.toString(), out.toString());
+  }
 }
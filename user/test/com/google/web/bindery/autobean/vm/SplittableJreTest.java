@@ -15,7 +15,9 @@
  */
 package com.google.web.bindery.autobean.vm;
 
+import com.google.web.bindery.autobean.shared.Splittable;
 import com.google.web.bindery.autobean.shared.SplittableTest;
+import com.google.web.bindery.autobean.shared.impl.StringQuoter;
 
 /**
  * A JRE-only version of SplittableTest.
@@ -25,4 +27,41 @@ public class SplittableJreTest extends SplittableTest {
   public String getModuleName() {
     return null;
   }
+
+  public void testEscapes() {
+    Splittable s = StringQuoter.split("[\"a\\\"b\\\\c\\/d\\n\\u00e9\"]");
+    assertEquals("a\"b\\c/d\n\u00e9", s.get(0).asString());
+  }
+
+  public void testMalformedPayload() {
+    for (String payload : new String[] {"{\"a\":1", "[1,2", "\"abc", "tru", "1 2", "x"}) {
+      try {
+        StringQuoter.split(payload).size();
+        fail("Expected an exception for " + payload);
+      } catch (RuntimeException expected) {
+      }
+    }
+  }
+
+  public void testModifiedPayloadIsReencoded() {
+    Splittable s = StringQuoter.split("{ \"a\" : { \"b\" : [ 1 , 2 ] }, \"c\" : true }");
+    StringQuoter.create("x").assign(s.get("a"), "d");
+    assertEquals("{\"a\":{\"b\":[ 1 , 2 ],\"d\":\"x\"},\"c\":true}", s.getPayload());
+  }
+
+  public void testUnmodifiedPayloadIsPreserved() {
+    String payload = "{ \"a\" : [ 1 , 2.50 ], \"b\" : { \"c\" : null } }";
+    Splittable s = StringQuoter.split(payload);
+    assertEquals(payload, s.getPayload());
+
+    // Reading the members of the object must not change the payload of the
+    // members that have not been read
+    Splittable a = s.get("a");
+    assertTrue(s.get("b").isNull("c"));
+    assertEquals("[ 1 , 2.50 ]", a.getPayload());
+    assertEquals("{\"a\":[ 1 , 2.50 ],\"b\":{\"c\":null}}", s.getPayload());
+
+    assertEquals(2.5, a.get(1).asNumber());
+    assertEquals("[1,2.5]", a.getPayload());
+  }
 }
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.web.bindery.autobean.vm.impl;
+
+import com.google.web.bindery.autobean.shared.AutoBean;
+import com.google.web.bindery.autobean.shared.AutoBeanFactory;
+import com.google.web.bindery.autobean.shared.AutoBeanUtils;
+import com.google.web.bindery.autobean.vm.AutoBeanFactorySource;
+
+import junit.framework.TestCase;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests the AutoBean shims and simple peers generated by
+ * {@link BeanClassGenerator}.
+ */
+public class BeanClassGeneratorTest extends TestCase {
+
+  /**
+   * A bean with every kind of method.
+   */
+  public interface Bean {
+    String describe(int suffix);
+
+    int getInt();
+
+    List<String> getList();
+
+    long getLong();
+
+    String getString();
+
+    boolean isFlag();
+
+    void setFlag(boolean flag);
+
+    void setInt(int value);
+
+    void setList(List<String> list);
+
+    void setLong(long value);
+
+    Bean setString(String value);
+  }
+
+  /**
+   * Implements {@link Bean#describe(int)}.
+   */
+  public static class BeanCategory {
+    public static String describe(AutoBean<Bean> bean, int suffix) {
+      return bean.as().getString() + suffix;
+    }
+  }
+
+  /**
+   * The factory under test.
+   */
+  @AutoBeanFactory.Category(BeanCategory.class)
+  public interface Factory extends AutoBeanFactory {
+    AutoBean<Bean> bean();
+
+    AutoBean<Hidden> hidden();
+  }
+
+  interface Hidden {
+    int getInt();
+
+    void setInt(int value);
+  }
+
+  private Factory factory;
+
+  public void testCategory() {
+    Bean bean = factory.bean().as();
+    bean.setString("foo");
+    assertEquals("foo42", bean.describe(42));
+  }
+
+  public void testDefaultValues() {
+    Bean bean = factory.bean().as();
+    assertEquals(0, bean.getInt());
+    assertEquals(0L, bean.getLong());
+    assertFalse(bean.isFlag());
+    assertNull(bean.getString());
+  }
+
+  public void testEquality() {
+    AutoBean<Bean> autoBean = factory.bean();
+    Bean bean = autoBean.as();
+    assertEquals(bean, bean);
+    assertEquals(bean.hashCode(), bean.hashCode());
+    assertSame(autoBean, AutoBeanUtils.getAutoBean(bean));
+  }
+
+  public void testGenerated() {
+    Bean bean = factory.bean().as();
+    assertFalse(Proxy.isProxyClass(bean.getClass()));
+    assertTrue(bean instanceof GeneratedShim<?>);
+    assertTrue(((ProxyAutoBean<?>) AutoBeanUtils.getAutoBean(bean)).getWrapped()
+        instanceof GeneratedSimplePeer<?>);
+  }
+
+  /**
+   * Interfaces that a generated class cannot implement use a Proxy.
+   */
+  public void testNonPublicInterface() {
+    assertNull(BeanClassGenerator.shimConstructor(Hidden.class));
+    assertNull(BeanClassGenerator.peerConstructor(Hidden.class));
+
+    Hidden hidden = factory.hidden().as();
+    assertTrue(Proxy.isProxyClass(hidden.getClass()));
+    hidden.setInt(5);
+    assertEquals(5, hidden.getInt());
+  }
+
+  public void testProperties() {
+    AutoBean<Bean> autoBean = factory.bean();
+    Bean bean = autoBean.as();
+    assertSame(bean, bean.setString("foo"));
+    bean.setInt(1);
+    bean.setLong(Long.MAX_VALUE);
+    bean.setFlag(true);
+    List<String> list = new ArrayList<String>();
+    list.add("bar");
+    bean.setList(list);
+
+    assertEquals("foo", bean.getString());
+    assertEquals(1, bean.getInt());
+    assertEquals(Long.MAX_VALUE, bean.getLong());
+    assertTrue(bean.isFlag());
+    assertEquals(list, bean.getList());
+
+    // Collections returned by shims are wrapped
+    assertNotNull(AutoBeanUtils.getAutoBean(bean.getList()));
+
+    autoBean.setFrozen(true);
+    try {
+      bean.setInt(2);
+      fail("Expected IllegalStateException");
+    } catch (IllegalStateException expected) {
+    }
+  }
+
+  @Override
+  protected void setUp() throws Exception {
+    factory = AutoBeanFactorySource.create(Factory.class);
+  }
+}
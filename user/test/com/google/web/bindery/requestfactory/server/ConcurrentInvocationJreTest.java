@@ -0,0 +1,122 @@
+/*
+ * Copyright 2013 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.web.bindery.requestfactory.server;
+
+import com.google.web.bindery.event.shared.SimpleEventBus;
+import com.google.web.bindery.requestfactory.server.testing.InProcessRequestTransport;
+import com.google.web.bindery.requestfactory.shared.Receiver;
+import com.google.web.bindery.requestfactory.shared.Request;
+import com.google.web.bindery.requestfactory.shared.RequestContext;
+import com.google.web.bindery.requestfactory.shared.RequestFactory;
+import com.google.web.bindery.requestfactory.shared.Service;
+import com.google.web.bindery.requestfactory.vm.RequestFactorySource;
+
+import junit.framework.TestCase;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests that invocations allowed by the ServiceLayer are executed
+ * concurrently, and that their results are returned in order.
+ */
+public class ConcurrentInvocationJreTest extends TestCase {
+
+  /**
+   * Allows the {@code await} service method to run concurrently.
+   */
+  static class ConcurrentLayer extends ServiceLayerDecorator {
+    @Override
+    public boolean isConcurrentInvocationAllowed(Method contextMethod, Method domainMethod) {
+      return "await".equals(domainMethod.getName());
+    }
+  }
+
+  @Service(ServiceImpl.class)
+  interface Context extends RequestContext {
+    Request<Integer> await(int value);
+
+    Request<Integer> echo(int value);
+  }
+
+  interface Factory extends RequestFactory {
+    Context context();
+  }
+
+  /**
+   * The service method implementations.
+   */
+  static class ServiceImpl {
+    static CountDownLatch latch;
+
+    /**
+     * Returns {@code value} once all expected callers have arrived, or -1 if
+     * they do not arrive together.
+     */
+    public static Integer await(int value) throws InterruptedException {
+      latch.countDown();
+      return latch.await(10, TimeUnit.SECONDS) ? value : -1;
+    }
+
+    public static Integer echo(int value) {
+      return value;
+    }
+  }
+
+  private class RecordingReceiver extends Receiver<Integer> {
+    @Override
+    public void onSuccess(Integer response) {
+      results.add(response);
+    }
+  }
+
+  private ExecutorService executor;
+  private final List<Integer> results = new ArrayList<Integer>();
+
+  public void testConcurrentInvocationsReturnInOrder() {
+    ServiceImpl.latch = new CountDownLatch(3);
+    SimpleRequestProcessor processor =
+        new SimpleRequestProcessor(ServiceLayer.create(new ConcurrentLayer()));
+    processor.setInvocationExecutor(executor);
+    Factory factory = RequestFactorySource.create(Factory.class);
+    factory.initialize(new SimpleEventBus(), new InProcessRequestTransport(processor));
+
+    Context context = factory.context();
+    context.await(1).to(new RecordingReceiver());
+    context.await(2).to(new RecordingReceiver());
+    context.await(3).to(new RecordingReceiver());
+    context.echo(4).to(new RecordingReceiver());
+    context.fire();
+
+    assertEquals(Arrays.asList(1, 2, 3, 4), results);
+  }
+
+  @Override
+  protected void setUp() {
+    executor = Executors.newFixedThreadPool(3);
+  }
+
+  @Override
+  protected void tearDown() {
+    executor.shutdownNow();
+  }
+}
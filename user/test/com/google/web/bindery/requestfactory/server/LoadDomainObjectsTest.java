@@ -0,0 +1,221 @@
+/*
+ * Copyright 2013 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.web.bindery.requestfactory.server;
+
+import com.google.web.bindery.requestfactory.shared.Locator;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests that {@link ServiceLayer#loadDomainObjects(List, List)} loads all
+ * objects of a type with a {@link Locator} in one call.
+ */
+public class LoadDomainObjectsTest extends TestCase {
+
+  /**
+   * A domain type loaded through {@link EntityLocator}.
+   */
+  public static class Entity {
+    final Long id;
+
+    Entity(Long id) {
+      this.id = id;
+    }
+  }
+
+  /**
+   * Counts the calls to its find methods.
+   */
+  public static class EntityLocator extends Locator<Entity, Long> {
+    static int batches;
+    static int finds;
+
+    @Override
+    public Entity create(Class<? extends Entity> clazz) {
+      return new Entity(null);
+    }
+
+    @Override
+    public Entity find(Class<? extends Entity> clazz, Long id) {
+      finds++;
+      return new Entity(id);
+    }
+
+    @Override
+    public List<Entity> findAll(Class<? extends Entity> clazz, List<Long> ids) {
+      batches++;
+      return super.findAll(clazz, ids);
+    }
+
+    @Override
+    public Class<Entity> getDomainType() {
+      return Entity.class;
+    }
+
+    @Override
+    public Long getId(Entity domainObject) {
+      return domainObject.id;
+    }
+
+    @Override
+    public Class<Long> getIdType() {
+      return Long.class;
+    }
+
+    @Override
+    public Object getVersion(Entity domainObject) {
+      return null;
+    }
+  }
+
+  /**
+   * Uses {@link EntityLocator} for {@link Entity}, and {@link OtherLocator} for
+   * {@link Other}.
+   */
+  static class EntityLocatorLayer extends ServiceLayerDecorator {
+    @Override
+    public Class<? extends Locator<?, ?>> resolveLocator(Class<?> domainType) {
+      if (Entity.class.equals(domainType)) {
+        return EntityLocator.class;
+      } else if (Other.class.equals(domainType)) {
+        return OtherLocator.class;
+      }
+      return null;
+    }
+  }
+
+  /**
+   * Counts the objects loaded through {@link ServiceLayer#loadDomainObject}.
+   */
+  static class LoadCountingLayer extends ServiceLayerDecorator {
+    int loads;
+
+    @Override
+    public <T> T loadDomainObject(Class<T> clazz, Object domainId) {
+      loads++;
+      return super.loadDomainObject(clazz, domainId);
+    }
+  }
+
+  /**
+   * A domain type whose locator does not override
+   * {@link Locator#findAll(Class, List)}.
+   */
+  public static class Other extends Entity {
+    Other(Long id) {
+      super(id);
+    }
+  }
+
+  /**
+   * Counts the calls to {@link #find(Class, Long)}.
+   */
+  public static class OtherLocator extends Locator<Other, Long> {
+    static int finds;
+
+    @Override
+    public Other create(Class<? extends Other> clazz) {
+      return new Other(null);
+    }
+
+    @Override
+    public Other find(Class<? extends Other> clazz, Long id) {
+      finds++;
+      return new Other(id);
+    }
+
+    @Override
+    public Class<Other> getDomainType() {
+      return Other.class;
+    }
+
+    @Override
+    public Long getId(Other domainObject) {
+      return domainObject.id;
+    }
+
+    @Override
+    public Class<Long> getIdType() {
+      return Long.class;
+    }
+
+    @Override
+    public Object getVersion(Other domainObject) {
+      return null;
+    }
+  }
+
+  /**
+   * A domain type loaded through its static find method.
+   */
+  public static class Plain {
+    public static Plain findPlain(Long id) {
+      return new Plain(id);
+    }
+
+    final Long id;
+
+    Plain(Long id) {
+      this.id = id;
+    }
+  }
+
+  public void testLoadsLocatedObjectsInOneCall() {
+    ServiceLayer layer = ServiceLayer.create(new EntityLocatorLayer());
+    List<Object> loaded =
+        layer.loadDomainObjects(Arrays.<Class<?>> asList(Entity.class, Plain.class, Entity.class,
+            Entity.class), Arrays.<Object> asList(1L, 2L, 3L, 4L));
+
+    assertEquals(1, EntityLocator.batches);
+    assertEquals(3, EntityLocator.finds);
+    assertEquals(4, loaded.size());
+    assertEquals(Long.valueOf(1), ((Entity) loaded.get(0)).id);
+    assertEquals(Long.valueOf(2), ((Plain) loaded.get(1)).id);
+    assertEquals(Long.valueOf(3), ((Entity) loaded.get(2)).id);
+    assertEquals(Long.valueOf(4), ((Entity) loaded.get(3)).id);
+  }
+
+  /**
+   * Tests that objects whose locator cannot load them in a batch are still
+   * loaded through the top of the chain, so decorators see each of them.
+   */
+  public void testLoadsOtherObjectsThroughTop() {
+    LoadCountingLayer counting = new LoadCountingLayer();
+    ServiceLayer layer = ServiceLayer.create(counting, new EntityLocatorLayer());
+    List<Object> loaded =
+        layer.loadDomainObjects(Arrays.<Class<?>> asList(Other.class, Entity.class, Other.class,
+            Plain.class), Arrays.<Object> asList(1L, 2L, 3L, 4L));
+
+    assertEquals(1, EntityLocator.batches);
+    assertEquals(2, OtherLocator.finds);
+    // The two Other objects and the Plain object
+    assertEquals(3, counting.loads);
+    assertEquals(Long.valueOf(1), ((Other) loaded.get(0)).id);
+    assertEquals(Long.valueOf(2), ((Entity) loaded.get(1)).id);
+    assertEquals(Long.valueOf(3), ((Other) loaded.get(2)).id);
+    assertEquals(Long.valueOf(4), ((Plain) loaded.get(3)).id);
+  }
+
+  @Override
+  protected void setUp() {
+    EntityLocator.batches = 0;
+    EntityLocator.finds = 0;
+    OtherLocator.finds = 0;
+  }
+}
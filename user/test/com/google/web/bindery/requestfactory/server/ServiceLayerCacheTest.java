@@ -0,0 +1,97 @@
+/*
+ * Copyright 2013 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.web.bindery.requestfactory.server;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the bounds and statistics of {@link ServiceLayerCache}.
+ */
+public class ServiceLayerCacheTest extends TestCase {
+
+  /**
+   * Counts the calls which reach it through the cache.
+   */
+  static class CountingLayer extends ServiceLayerDecorator {
+    int calls;
+    private final Class<?> idType;
+
+    CountingLayer(Class<?> idType) {
+      this.idType = idType;
+    }
+
+    @Override
+    public Class<?> getIdType(Class<?> domainType) {
+      calls++;
+      return idType;
+    }
+  }
+
+  public void testCachesAreNotShared() {
+    ServiceLayer longs = ServiceLayer.create(new CountingLayer(Long.class));
+    ServiceLayer strings = ServiceLayer.create(new CountingLayer(String.class));
+    assertEquals(Long.class, longs.getIdType(Object.class));
+    assertEquals(String.class, strings.getIdType(Object.class));
+  }
+
+  public void testCacheStatsAreReachableFromDecorators() {
+    CountingLayer counting = new CountingLayer(Long.class);
+    ServiceLayer layer = ServiceLayer.create(counting);
+    layer.getIdType(Object.class);
+    assertEquals(1, counting.getTop().getCacheStats().getMissCount());
+    assertEquals(1, counting.getCacheStats().getSize());
+  }
+
+  public void testEvictsOldestValues() {
+    CountingLayer counting = new CountingLayer(Long.class);
+    ServiceLayerCache cache;
+    System.setProperty(ServiceLayerCache.MAX_SIZE_PROPERTY, "2");
+    try {
+      cache = (ServiceLayerCache) ServiceLayer.create(counting);
+    } finally {
+      System.clearProperty(ServiceLayerCache.MAX_SIZE_PROPERTY);
+    }
+
+    cache.getIdType(Integer.class);
+    cache.getIdType(Long.class);
+    cache.getIdType(String.class);
+    assertEquals(3, counting.calls);
+    assertEquals(2, cache.getCacheStats().getSize());
+    assertEquals(1, cache.getCacheStats().getEvictionCount());
+
+    // The most recent values are still cached
+    cache.getIdType(Long.class);
+    cache.getIdType(String.class);
+    assertEquals(3, counting.calls);
+
+    // The oldest value has to be computed again
+    cache.getIdType(Integer.class);
+    assertEquals(4, counting.calls);
+    assertEquals(2, cache.getCacheStats().getSize());
+  }
+
+  public void testHitsAndMisses() {
+    CountingLayer counting = new CountingLayer(Long.class);
+    ServiceLayerCache cache = (ServiceLayerCache) ServiceLayer.create(counting);
+
+    assertEquals(Long.class, cache.getIdType(Object.class));
+    assertEquals(Long.class, cache.getIdType(Object.class));
+    assertEquals(1, counting.calls);
+    assertEquals(1, cache.getCacheStats().getHitCount());
+    assertEquals(1, cache.getCacheStats().getMissCount());
+    assertEquals(0, cache.getCacheStats().getEvictionCount());
+  }
+}